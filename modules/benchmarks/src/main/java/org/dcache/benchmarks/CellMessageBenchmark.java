@@ -0,0 +1,170 @@
+package org.dcache.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.security.auth.Subject;
+
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.DoorTransferFinishedMessage;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+
+import org.dcache.auth.GidPrincipal;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.UserNamePrincipal;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Measures encoding and decoding of the message objects of cell messages
+ * for the most frequently routed message types.
+ *
+ * The decodeJava benchmark decodes a message object encoded with Java
+ * serialization, which is what a domain receives from peers that do not
+ * support the serializer of the message type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellMessageBenchmark
+{
+    private static final PnfsId PNFSID = new PnfsId("0000D1B2C3D4E5F6A7B8C9D0E1F2A3B4C5D6");
+
+    @Param({"PnfsGetFileAttributes", "DoorTransferFinishedMessage", "PoolDeliverFileMessage"})
+    private String type;
+
+    private CellMessage message;
+    private CellMessage encoded;
+    private CellMessage encodedJava;
+
+    @Setup
+    public void setup()
+    {
+        message = new CellMessage(new CellPath("PnfsManager"), createMessage(type));
+        encoded = message.encode();
+        encodedJava = encoded.encodeFor(Collections.emptySet());
+    }
+
+    @Benchmark
+    public CellMessage encode()
+    {
+        return message.encode();
+    }
+
+    @Benchmark
+    public CellMessage decode()
+    {
+        return encoded.decode();
+    }
+
+    @Benchmark
+    public CellMessage decodeJava()
+    {
+        return encodedJava.decode();
+    }
+
+    private static Serializable createMessage(String type)
+    {
+        DCapProtocolInfo protocolInfo = new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("localhost", 22125));
+        switch (type) {
+        case "PnfsGetFileAttributes":
+            PnfsGetFileAttributes request = new PnfsGetFileAttributes(PNFSID, EnumSet.allOf(FileAttribute.class));
+            request.setSubject(subject());
+            request.setFileAttributes(fileAttributes());
+            request.setSucceeded();
+            return request;
+        case "DoorTransferFinishedMessage":
+            DoorTransferFinishedMessage finished =
+                    new DoorTransferFinishedMessage(17, PNFSID, protocolInfo, fileAttributes(), "pool1", "regular");
+            finished.setSubject(subject());
+            return finished;
+        case "PoolDeliverFileMessage":
+            PoolDeliverFileMessage deliver =
+                    new PoolDeliverFileMessage("pool1", protocolInfo, fileAttributes(), Assumptions.none());
+            deliver.setSubject(subject());
+            deliver.setIoQueueName("regular");
+            deliver.setInitiator("door:dcap@dcapDomain");
+            deliver.setBillingPath("/pnfs/example.org/data/file");
+            return deliver;
+        default:
+            throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+    }
+
+    private static Subject subject()
+    {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UidPrincipal(1000));
+        subject.getPrincipals().add(new GidPrincipal(1000, true));
+        subject.getPrincipals().add(new GidPrincipal(2000, false));
+        subject.getPrincipals().add(new UserNamePrincipal("alice"));
+        return subject;
+    }
+
+    private static FileAttributes fileAttributes()
+    {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(PNFSID);
+        attributes.setSize(1024);
+        attributes.setMode(0644);
+        attributes.setOwner(1000);
+        attributes.setGroup(1000);
+        attributes.setNlink(1);
+        attributes.setFileType(FileType.REGULAR);
+        attributes.setAccessTime(1L);
+        attributes.setChangeTime(2L);
+        attributes.setCreationTime(3L);
+        attributes.setModificationTime(4L);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setChecksums(ImmutableSet.of(new Checksum(ChecksumType.ADLER32, "12345678")));
+        attributes.setLocations(asList("pool1", "pool2"));
+        attributes.setFlags(ImmutableMap.of("a", "b"));
+        attributes.setStorageInfo(new GenericStorageInfo("osm", "test:disk"));
+        attributes.setStorageClass("test:disk@osm");
+        attributes.setHsm("osm");
+        return attributes;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(CellMessageBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package org.dcache.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellRoute;
+import dmg.cells.nucleus.CellRoutingTable;
+
+/**
+ * Measures routing table lookup throughput while routes are concurrently
+ * added and removed, as happens in core domains when cells register with
+ * and unregister from the routing manager.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellRoutingTableBenchmark
+{
+    @Param({"100", "1000"})
+    private int cells;
+
+    private CellRoutingTable table;
+    private CellAddressCore[] wellKnown;
+    private CellAddressCore[] remote;
+    private CellRoute[] churn;
+
+    @Setup
+    public void setup()
+    {
+        table = new CellRoutingTable();
+        wellKnown = new CellAddressCore[cells];
+        remote = new CellAddressCore[cells];
+        churn = new CellRoute[cells];
+        for (int i = 0; i < cells; i++) {
+            String domain = "domain" + (i % 50);
+            table.add(new CellRoute("cell" + i, "*@" + domain, CellRoute.QUEUE));
+            wellKnown[i] = new CellAddressCore("cell" + i);
+            remote[i] = new CellAddressCore("cell" + i, domain);
+            churn[i] = new CellRoute("churn" + i, "*@" + domain, CellRoute.QUEUE);
+        }
+        for (int i = 0; i < 50; i++) {
+            String domain = "domain" + i;
+            table.add(new CellRoute(domain, "*@" + domain, CellRoute.DOMAIN));
+        }
+        table.add(new CellRoute(null, "*@core", CellRoute.DEFAULT));
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public CellRoute findWellKnown()
+    {
+        return table.find(wellKnown[ThreadLocalRandom.current().nextInt(cells)], true);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public CellRoute findInDomain()
+    {
+        return table.find(remote[ThreadLocalRandom.current().nextInt(cells)], true);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void updateRoutes()
+    {
+        CellRoute route = churn[ThreadLocalRandom.current().nextInt(cells)];
+        try {
+            table.add(route);
+        } catch (IllegalArgumentException e) {
+            table.delete(route);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(CellRoutingTableBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+package org.dcache.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.pool.movers.ChecksumChannel;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Measures the time to write a file through a ChecksumChannel and to
+ * obtain its checksums, as a mover does for every upload.
+ *
+ * The file is written to java.io.tmpdir; point that at a memory file
+ * system to measure checksum computation rather than disk throughput.
+ * The empty type list measures the cost of the channel without any
+ * digests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChecksumChannelBenchmark
+{
+    private static final int FILE_SIZE = 64 << 20;
+
+    @Param({"", "ADLER32", "MD5_TYPE", "ADLER32,MD5_TYPE"})
+    private String types;
+
+    @Param({"65536", "1048576"})
+    private int blockSize;
+
+    private Path file;
+    private ByteBuffer block;
+    private ChecksumChannel channel;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException
+    {
+        file = Files.createTempFile("checksum-channel-benchmark", null);
+        byte[] data = new byte[blockSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        block = ByteBuffer.allocateDirect(blockSize);
+        block.put(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException
+    {
+        Files.delete(file);
+    }
+
+    @Setup(Level.Invocation)
+    public void open() throws IOException
+    {
+        Set<ChecksumType> checksumTypes = EnumSet.noneOf(ChecksumType.class);
+        for (String type : types.split(",")) {
+            if (!type.isEmpty()) {
+                checksumTypes.add(ChecksumType.valueOf(type));
+            }
+        }
+        RepositoryChannel inner = new FileRepositoryChannel(file, EnumSet.of(READ, WRITE, TRUNCATE_EXISTING));
+        channel = new ChecksumChannel(inner, checksumTypes);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    @Benchmark
+    public Set<Checksum> write() throws IOException
+    {
+        for (long position = 0; position < FILE_SIZE; position += blockSize) {
+            block.clear();
+            while (block.hasRemaining()) {
+                channel.write(block, position + block.position());
+            }
+        }
+        return channel.getChecksums();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ChecksumChannelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
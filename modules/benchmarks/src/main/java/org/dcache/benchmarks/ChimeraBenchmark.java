@@ -0,0 +1,130 @@
+package org.dcache.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.sql.Connection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.chimera.FileSystemProvider;
+import org.dcache.chimera.FileSystemProvider.StatCacheOption;
+import org.dcache.chimera.FsFactory;
+import org.dcache.chimera.FsInode;
+import org.dcache.chimera.JdbcFs;
+import org.dcache.chimera.posix.Stat;
+
+/**
+ * Measures namespace lookups through the Chimera SQL driver against the
+ * embedded databases. The numbers are dominated by the queries issued by
+ * FsSqlDriver and thus expose regressions in the generated SQL and in
+ * the driver's use of JDBC, though not the latency of a remote database.
+ *
+ * The namespace consists of directories /data/dirN, each holding the
+ * given number of files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ChimeraBenchmark
+{
+    private static final int DIRECTORIES = 10;
+
+    @Param({"jdbc:h2:mem:chimera", "jdbc:hsqldb:mem:chimera"})
+    private String url;
+
+    @Param({"1000"})
+    private int files;
+
+    private HikariDataSource dataSource;
+    private FileSystemProvider fs;
+    private FsInode[] directories;
+    private String[] ids;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        dataSource = FsFactory.getDataSource(url, "sa", "");
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(conn));
+            Liquibase liquibase = new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                                                new ClassLoaderResourceAccessor(), database);
+            liquibase.update("");
+        }
+        fs = new JdbcFs(dataSource, new DataSourceTransactionManager(dataSource));
+
+        FsInode data = fs.mkdir("/data");
+        directories = new FsInode[DIRECTORIES];
+        ids = new String[DIRECTORIES * files];
+        for (int d = 0; d < DIRECTORIES; d++) {
+            directories[d] = fs.mkdir(data, "dir" + d);
+            for (int f = 0; f < files; f++) {
+                ids[d * files + f] = fs.createFile(directories[d], "file" + f).getId();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public FsInode path2inode() throws Exception
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return fs.path2inode("/data/dir" + random.nextInt(DIRECTORIES) + "/file" + random.nextInt(files));
+    }
+
+    @Benchmark
+    public FsInode inodeOf() throws Exception
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return fs.inodeOf(directories[random.nextInt(DIRECTORIES)], "file" + random.nextInt(files),
+                          StatCacheOption.STAT);
+    }
+
+    @Benchmark
+    public FsInode id2inode() throws Exception
+    {
+        return fs.id2inode(ids[ThreadLocalRandom.current().nextInt(ids.length)], StatCacheOption.STAT);
+    }
+
+    @Benchmark
+    public Stat statDirectory() throws Exception
+    {
+        return fs.stat(directories[ThreadLocalRandom.current().nextInt(DIRECTORIES)]);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ChimeraBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,211 @@
+package org.dcache.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import diskCacheV111.poolManager.CostModuleV1;
+import diskCacheV111.poolManager.PoolMonitorV5;
+import diskCacheV111.poolManager.PoolSelectionUnitV2;
+import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+
+import dmg.util.CommandException;
+import dmg.util.CommandInterpreter;
+
+import org.dcache.resilience.data.FileFilter;
+import org.dcache.resilience.data.FileOperationMap;
+import org.dcache.resilience.data.FileUpdate;
+import org.dcache.resilience.data.MessageType;
+import org.dcache.resilience.data.PoolInfoMap;
+import org.dcache.resilience.handlers.FileOperationHandler;
+import org.dcache.resilience.handlers.PoolTaskCompletionHandler;
+import org.dcache.resilience.util.OperationHistory;
+import org.dcache.resilience.util.OperationStatistics;
+import org.dcache.util.Args;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Measures the resilience file operation map with a large number of queued
+ * operations, as after the loss of a pool: registering further operations
+ * from several threads, cancelling the children of one pool and a single
+ * sweep of the consumer.
+ *
+ * Operations are children of pool scans spread evenly over the pools of a
+ * resilient pool group. Tasks are scheduled far in the future and are never
+ * run.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileOperationMapBenchmark
+{
+    private static final int POOLS = 100;
+    private static final int COPY_THREADS = 200;
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    @State(Scope.Benchmark)
+    public static class QueuedOperations
+    {
+        @Param({"1000000"})
+        int operations;
+
+        PoolInfoMap poolInfoMap;
+        Integer group;
+        ScheduledThreadPoolExecutor taskService;
+        FileOperationMap map;
+
+        @Setup(Level.Trial)
+        public void createPools() throws CommandException
+        {
+            PoolSelectionUnitV2 psu = new PoolSelectionUnitV2();
+            CommandInterpreter ci = new CommandInterpreter(psu);
+            ci.command(new Args("psu create pgroup resilient -resilient"));
+            for (int i = 0; i < POOLS; i++) {
+                String pool = "pool-" + i;
+                ci.command(new Args("psu create pool " + pool));
+                psu.getPool(pool).setPoolMode(new PoolV2Mode(PoolV2Mode.ENABLED));
+                ci.command(new Args("psu addto pgroup resilient " + pool));
+            }
+
+            PoolMonitorV5 poolMonitor = new PoolMonitorV5();
+            poolMonitor.setPoolSelectionUnit(psu);
+            poolMonitor.setCostModule(new CostModuleV1());
+
+            poolInfoMap = new PoolInfoMap();
+            poolInfoMap.apply(poolInfoMap.compare(poolMonitor));
+            group = poolInfoMap.getGroupIndex("resilient");
+
+            taskService = new ScheduledThreadPoolExecutor(1);
+        }
+
+        /*
+         * Invocation level, as the single shot benchmarks modify the map.
+         */
+        @Setup(Level.Invocation)
+        public void fillMap()
+        {
+            FileOperationHandler handler = new FileOperationHandler();
+            handler.setTaskService(taskService);
+            handler.setLaunchDelay(1);
+            handler.setLaunchDelayUnit(TimeUnit.DAYS);
+
+            OperationHistory history = new OperationHistory();
+            history.setCapacity(1000);
+            history.initialize();
+
+            map = new FileOperationMap();
+            map.setPoolInfoMap(poolInfoMap);
+            map.setOperationHandler(handler);
+            map.setCounters(new OperationStatistics());
+            map.setHistory(history);
+            map.setPoolTaskCompletionHandler(new PoolTaskCompletionHandler()
+            {
+                @Override
+                public void childTerminated(String pool, PnfsId pnfsId)
+                {
+                }
+            });
+            map.setCopyThreads(COPY_THREADS);
+
+            for (int i = 0; i < operations; i++) {
+                register(i % POOLS);
+            }
+
+            /* Moves the new operations to the waiting queues. */
+            map.scan();
+        }
+
+        @TearDown(Level.Invocation)
+        public void clearTasks()
+        {
+            taskService.getQueue().clear();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown()
+        {
+            taskService.shutdownNow();
+        }
+
+        void register(int pool)
+        {
+            String name = "pool-" + pool;
+            Integer index = poolInfoMap.getPoolIndex(name);
+            PnfsId pnfsId = new PnfsId(String.format("%036X", IDS.incrementAndGet()));
+            FileAttributes attributes = new FileAttributes();
+            attributes.setPnfsId(pnfsId);
+            attributes.setSize(1L);
+            attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+            FileUpdate update = new FileUpdate(pnfsId, name, MessageType.POOL_STATUS_DOWN,
+                                               index, group, null, attributes);
+            update.setCount(1);
+            map.register(update);
+        }
+    }
+
+    /**
+     * Registers another 10% of operations from four threads.
+     */
+    @Benchmark
+    @Threads(4)
+    public void register(QueuedOperations state)
+    {
+        for (int i = 0; i < state.operations / 40; i++) {
+            state.register(i % POOLS);
+        }
+    }
+
+    /**
+     * Cancels the 1% of operations whose parent is one of the pools, and
+     * runs the sweep which removes them.
+     */
+    @Benchmark
+    public long cancelPool(QueuedOperations state)
+    {
+        FileFilter filter = new FileFilter();
+        filter.setParent("pool-0");
+        filter.setForceRemoval(true);
+        state.map.cancel(filter);
+        state.map.scan();
+        return state.map.size();
+    }
+
+    /**
+     * A sweep of the consumer which promotes operations to the free
+     * task slots.
+     */
+    @Benchmark
+    public long sweep(QueuedOperations state)
+    {
+        state.map.scan();
+        return state.map.size();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(FileOperationMapBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,158 @@
+package org.dcache.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.poolManager.PoolPreferenceLevel;
+import diskCacheV111.poolManager.PoolSelectionUnit.DirectionType;
+import diskCacheV111.poolManager.PoolSelectionUnitV2;
+import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.StorageInfos;
+
+import dmg.util.CommandException;
+import dmg.util.CommandInterpreter;
+
+import org.dcache.util.Args;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Measures link matching in the pool selection unit for a configuration
+ * with one storage group, pool group and pair of read and write links per
+ * experiment, plus default links for all other storage classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PoolSelectionUnitBenchmark
+{
+    private static final int POOLS_PER_GROUP = 10;
+
+    @Param({"10", "100"})
+    private int groups;
+
+    private PoolSelectionUnitV2 psu;
+    private FileAttributes[] files;
+
+    @Setup
+    public void setup() throws CommandException
+    {
+        psu = new PoolSelectionUnitV2();
+        CommandInterpreter ci = new CommandInterpreter(psu);
+
+        command(ci, "psu create unit -net 131.169.0.0/255.255.0.0");
+        command(ci, "psu create unit -net 0.0.0.0/0.0.0.0");
+        command(ci, "psu create ugroup intern");
+        command(ci, "psu create ugroup extern");
+        command(ci, "psu addto ugroup intern 131.169.0.0/255.255.0.0");
+        command(ci, "psu addto ugroup extern 0.0.0.0/0.0.0.0");
+
+        for (int g = 0; g < groups; g++) {
+            String group = "exp" + g;
+            command(ci, "psu create unit -store " + group + ":disk@osm");
+            command(ci, "psu create ugroup " + group + "-units");
+            command(ci, "psu addto ugroup " + group + "-units " + group + ":disk@osm");
+            createPoolGroup(ci, group + "-pools");
+            createLink(ci, group + "-read-link", group + "-units", "intern", group + "-pools",
+                       "-readpref=20 -writepref=0 -cachepref=20");
+            createLink(ci, group + "-write-link", group + "-units", "intern", group + "-pools",
+                       "-readpref=0 -writepref=20 -cachepref=0");
+        }
+
+        command(ci, "psu create unit -store *@*");
+        command(ci, "psu create ugroup all");
+        command(ci, "psu addto ugroup all *@*");
+        createPoolGroup(ci, "default-pools");
+        createLink(ci, "default-link-in", "all", "intern", "default-pools",
+                   "-readpref=10 -writepref=10 -cachepref=10");
+        createLink(ci, "default-link-ex", "all", "extern", "default-pools",
+                   "-readpref=10 -writepref=10 -cachepref=10");
+        command(ci, "psu set allpoolsactive on");
+
+        /* One file per experiment plus one that only matches the default links. */
+        files = new FileAttributes[groups + 1];
+        for (int g = 0; g < groups; g++) {
+            files[g] = fileAttributes("osm", "exp" + g + ":disk");
+        }
+        files[groups] = fileAttributes("enstore", "other:tape");
+    }
+
+    private void createPoolGroup(CommandInterpreter ci, String name) throws CommandException
+    {
+        command(ci, "psu create pgroup " + name);
+        for (int i = 0; i < POOLS_PER_GROUP; i++) {
+            String pool = name + "-" + i;
+            command(ci, "psu create pool " + pool);
+            psu.getPool(pool).setPoolMode(new PoolV2Mode(PoolV2Mode.ENABLED));
+            command(ci, "psu addto pgroup " + name + " " + pool);
+        }
+    }
+
+    private static void createLink(CommandInterpreter ci, String name, String units, String net,
+                                   String pools, String preferences) throws CommandException
+    {
+        command(ci, "psu create link " + name + " " + units + " " + net);
+        command(ci, "psu set link " + name + " " + preferences);
+        command(ci, "psu add link " + name + " " + pools);
+    }
+
+    private static void command(CommandInterpreter ci, String command) throws CommandException
+    {
+        ci.command(new Args(command));
+    }
+
+    private static FileAttributes fileAttributes(String hsm, String storageClass)
+    {
+        FileAttributes attributes = new FileAttributes();
+        StorageInfos.injectInto(new GenericStorageInfo(hsm, storageClass), attributes);
+        return attributes;
+    }
+
+    private FileAttributes randomFile()
+    {
+        return files[ThreadLocalRandom.current().nextInt(files.length)];
+    }
+
+    @Benchmark
+    public PoolPreferenceLevel[] matchRead()
+    {
+        return psu.match(DirectionType.READ, "131.169.214.149", null, randomFile(), null);
+    }
+
+    @Benchmark
+    public PoolPreferenceLevel[] matchWrite()
+    {
+        return psu.match(DirectionType.WRITE, "131.169.214.149", null, randomFile(), null);
+    }
+
+    @Benchmark
+    public PoolPreferenceLevel[] matchReadExternal()
+    {
+        return psu.match(DirectionType.READ, "192.0.2.1", null, randomFile(), null);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(PoolSelectionUnitBenchmark.class.getSimpleName()).build()).run();
+    }
+}
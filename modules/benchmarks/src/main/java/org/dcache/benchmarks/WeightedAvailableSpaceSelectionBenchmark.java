@@ -0,0 +1,85 @@
+package org.dcache.benchmarks;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.pools.PoolCostInfo;
+
+import org.dcache.pool.classic.IoQueueManager;
+import org.dcache.poolmanager.WeightedAvailableSpaceSelection;
+
+/**
+ * Measures pool selection by weighted available space, which pool manager
+ * performs for every write and stage request.
+ *
+ * Pools are given random space usage, LRU ages and mover load, so that
+ * the selection exercises all terms of the cost function.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WeightedAvailableSpaceSelectionBenchmark
+{
+    private static final long GiB = 1L << 30;
+
+    @Param({"10", "100", "500", "1000"})
+    private int pools;
+
+    private final WeightedAvailableSpaceSelection wass = new WeightedAvailableSpaceSelection(1.0, 1.0);
+    private final Function<PoolCostInfo, PoolCostInfo> getCost = Functions.identity();
+    private List<PoolCostInfo> candidates;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(1);
+        candidates = new ArrayList<>(pools);
+        for (int i = 0; i < pools; i++) {
+            long total = 100 * GiB;
+            long free = (long) (random.nextDouble() * 50 * GiB);
+            long removable = (long) (random.nextDouble() * (total - free));
+            PoolCostInfo info = new PoolCostInfo("pool" + i, IoQueueManager.DEFAULT_QUEUE);
+            info.setSpaceUsage(total, free, 0, removable, random.nextInt(7 * 24 * 3600));
+            info.getSpaceInfo().setParameter(0.7, 4 * GiB);
+            info.setMoverCostFactor(0.5);
+            info.addExtendedMoverQueueSizes(IoQueueManager.DEFAULT_QUEUE, random.nextInt(100), 100,
+                                            random.nextInt(10), 0, 0);
+            candidates.add(info);
+        }
+    }
+
+    @Benchmark
+    public PoolCostInfo selectByAvailableSpace()
+    {
+        return wass.selectByAvailableSpace(candidates, GiB, getCost);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(WeightedAvailableSpaceSelectionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
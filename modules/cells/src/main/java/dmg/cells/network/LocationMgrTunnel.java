@@ -33,8 +33,15 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
 
 import dmg.cells.nucleus.CellAdapter;
@@ -45,9 +52,11 @@ import dmg.cells.nucleus.CellNucleus;
 import dmg.cells.nucleus.CellRoute;
 import dmg.cells.nucleus.CellTunnel;
 import dmg.cells.nucleus.CellTunnelInfo;
+import dmg.cells.nucleus.MessageCodec;
 import dmg.cells.nucleus.MessageEvent;
 import dmg.cells.nucleus.NoRouteToCellException;
 import dmg.cells.nucleus.RoutedMessageEvent;
+import dmg.cells.nucleus.SerializationException;
 import dmg.util.Releases;
 import dmg.util.Releases.BadVersionException;
 import dmg.util.StreamEngine;
@@ -69,15 +78,59 @@ public class LocationMgrTunnel
     private static final Logger _log =
         LoggerFactory.getLogger(LocationMgrTunnel.class);
 
+    /**
+     * Size of the output buffer. Messages of a batch are coalesced in
+     * this buffer and written to the socket when the batch is flushed.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final int DEFAULT_QUEUE_SIZE = 10_000;
+
+    /**
+     * How often a sender blocked on a full output queue checks whether
+     * the tunnel is closing.
+     */
+    private static final long QUEUE_POLL_INTERVAL = 100;
+
+    /**
+     * How long a closing tunnel waits for the writer to write the messages
+     * left in the output queue.
+     */
+    private static final long WRITER_DRAIN_TIMEOUT = 2_000;
+
     private final CellNucleus  _nucleus;
 
     private CellDomainInfo  _localDomainInfo;
     private CellDomainInfo  _remoteDomainInfo;
     private boolean _allowForwardingOfRemoteMessages;
 
+    /**
+     * Message serializers supported by the peer domain.
+     */
+    private Set<String> _serializers;
+
     private Thread _thread;
+    private TunnelWriter _writer;
+    private Thread _writerThread;
     private final Socket _socket;
 
+    /**
+     * Messages waiting to be written to the peer. Drained by the writer
+     * thread, which writes up to {@code _maxBatchSize} messages with a
+     * single flush. The queue is bounded; senders block while it is full.
+     */
+    private final BlockingQueue<CellMessage> _queue;
+    private final int _maxBatchSize;
+    private final long _maxBatchLatency;
+
+    /**
+     * Set once the tunnel is being closed. Messages are no longer queued
+     * after this point.
+     */
+    private volatile boolean _isClosing;
+
     private final OutputStream _rawOut;
     private final InputStream _rawIn;
 
@@ -87,20 +140,46 @@ public class LocationMgrTunnel
     //
     // some statistics
     //
-    private LongAdder _messagesToTunnel = new LongAdder();
     private LongAdder _messagesToSystem = new LongAdder();
+    private LongAdder _messagesTranscoded = new LongAdder();
+    private LongAccumulator _largestQueue = new LongAccumulator(Long::max, 0);
 
+    /**
+     * Supported options:
+     *
+     *   -batch-size=<messages>   maximum number of messages written to the
+     *                            socket with a single flush
+     *   -batch-latency=<millis>  maximum time to wait for further messages
+     *                            before flushing a batch that is not full
+     *   -queue-size=<messages>   maximum number of messages waiting to be
+     *                            written; senders block while the queue
+     *                            is full
+     */
     public LocationMgrTunnel(String cellName, StreamEngine engine, Args args)
     {
         super(cellName, "System", args);
         _nucleus = getNucleus();
         _socket = engine.getSocket();
-        _rawOut = new BufferedOutputStream(engine.getOutputStream());
+        _maxBatchSize = args.getIntOption("batch-size", DEFAULT_BATCH_SIZE);
+        _maxBatchLatency = TimeUnit.MILLISECONDS.toNanos(args.getLongOption("batch-latency", 0));
+        if (_maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + _maxBatchSize);
+        }
+        if (_maxBatchLatency < 0) {
+            throw new IllegalArgumentException("Batch latency must not be negative.");
+        }
+        int queueSize = args.getIntOption("queue-size", DEFAULT_QUEUE_SIZE);
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+        }
+        _queue = new LinkedBlockingQueue<>(queueSize);
+        _rawOut = new BufferedOutputStream(engine.getOutputStream(), OUTPUT_BUFFER_SIZE);
         _rawIn = new BufferedInputStream(engine.getInputStream());
         CellDomainRole role = args.hasOption("role") ? CellDomainRole.valueOf(
                 args.getOption("role").toUpperCase()) : CellDomainRole.SATELLITE;
         _localDomainInfo = new CellDomainInfo(_nucleus.getCellDomainName(),
-                                              Version.of(LocationMgrTunnel.class).getVersion(), role);
+                                              Version.of(LocationMgrTunnel.class).getVersion(), role,
+                                              MessageCodec.getDefault().getSerializerNames());
     }
 
     @Override
@@ -114,6 +193,17 @@ public class LocationMgrTunnel
     @Override
     protected void started()
     {
+        _writer = new TunnelWriter(_queue, _output, _maxBatchSize, _maxBatchLatency,
+                                   this::returnToSender, this::kill);
+        _writerThread = _nucleus.newThread(() -> {
+            NDC.push(_remoteDomainInfo.toString());
+            try {
+                _writer.run();
+            } finally {
+                NDC.pop();
+            }
+        }, "Tunnel-writer");
+        _writerThread.start();
         installRoutes();
         _thread = _nucleus.newThread(this, "Tunnel");
         _thread.start();
@@ -123,9 +213,18 @@ public class LocationMgrTunnel
     public void stopped()
     {
         _log.info("Closing tunnel to {}", getRemoteDomainName());
+        _isClosing = true;
         _tunnels.remove(this);
         try {
             try {
+                if (_writerThread != null) {
+                    /* Let the writer flush the queued messages before
+                     * interrupting it. Whatever is left is returned below.
+                     */
+                    _writer.close();
+                    _writerThread.join(WRITER_DRAIN_TIMEOUT);
+                    _writerThread.interrupt();
+                }
                 _socket.shutdownOutput();
                 if (_thread != null) {
                     _thread.join(2_000);
@@ -142,6 +241,7 @@ public class LocationMgrTunnel
             } catch (IOException e) {
                 _log.warn("Failed to close socket: {}", e.getMessage());
             }
+            returnQueuedToSender("Tunnel to " + getRemoteDomainName() + " was closed. Message could not be delivered.");
         }
     }
 
@@ -184,6 +284,12 @@ public class LocationMgrTunnel
                 _output = new RawObjectSink(_rawOut);
             }
 
+            /* Message objects encoded with a serializer the peer does not
+             * support are sent using Java serialization.
+             */
+            _serializers = _remoteDomainInfo.getMessageSerializers();
+            _log.debug("Peer supports message serializers {}", _serializers);
+
             _allowForwardingOfRemoteMessages = (_remoteDomainInfo.getRole() != CellDomainRole.CORE);
 
             _log.info("Established connection with {}", _remoteDomainInfo);
@@ -221,27 +327,71 @@ public class LocationMgrTunnel
         if (me instanceof RoutedMessageEvent) {
             CellMessage msg = me.getMessage();
             try {
-                _messagesToTunnel.increment();
-                _output.writeObject(msg);
-            } catch (IOException e) {
-                NDC.push(_remoteDomainInfo.toString());
-                try {
-                    kill();
-                    _log.warn("Error while sending message: {}", e.getMessage());
-                    NoRouteToCellException noRoute =
-                            new NoRouteToCellException(msg, "Communication failure. Message could not be delivered.");
-                    CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
-                    envelope.setLastUOID(msg.getUOID());
-                    _nucleus.sendMessage(envelope, true, true, true);
-                } finally {
-                    NDC.pop();
+                CellMessage encoded = msg.encodeFor(_serializers);
+                if (encoded != msg) {
+                    _messagesTranscoded.increment();
                 }
+                enqueue(encoded);
+            } catch (SerializationException e) {
+                _log.error("Failed to re-encode message for {}: {}", getRemoteDomainName(), e.getMessage());
+                returnToSender(msg, "Message could not be encoded for " + getRemoteDomainName() + '.');
             }
         } else {
             super.messageArrived(me);
         }
     }
 
+    /**
+     * Queues a message for the writer thread, blocking while the queue is
+     * full. Messages are returned to the sender if the tunnel is closing.
+     */
+    private void enqueue(CellMessage msg)
+    {
+        String reason = "Tunnel to " + getRemoteDomainName() + " was closed. Message could not be delivered.";
+        try {
+            while (!_queue.offer(msg, QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (_isClosing) {
+                    returnToSender(msg, reason);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            returnToSender(msg, reason);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        _largestQueue.accumulate(_queue.size());
+
+        /* If the tunnel started closing, the queue may already have been
+         * drained. Unless the message was drained too, it is returned here.
+         */
+        if (_isClosing && _queue.remove(msg)) {
+            returnToSender(msg, reason);
+        }
+    }
+
+    private void returnToSender(CellMessage msg, String reason)
+    {
+        NoRouteToCellException noRoute = new NoRouteToCellException(msg, reason);
+        CellMessage envelope = new CellMessage(msg.getSourcePath().revert(), noRoute);
+        envelope.setLastUOID(msg.getUOID());
+        _nucleus.sendMessage(envelope, true, true, true);
+    }
+
+    private void returnToSender(Iterable<CellMessage> messages, String reason)
+    {
+        for (CellMessage msg : messages) {
+            returnToSender(msg, reason);
+        }
+    }
+
+    private void returnQueuedToSender(String reason)
+    {
+        List<CellMessage> messages = new ArrayList<>();
+        _queue.drainTo(messages);
+        returnToSender(messages, reason);
+    }
+
     @Override
     public CellTunnelInfo getCellTunnelInfo()
     {
@@ -266,16 +416,30 @@ public class LocationMgrTunnel
     {
         pw.println("Tunnel        : " + getCellName());
         pw.println("Messages delivered to");
-        pw.println("   Peer       : " + _messagesToTunnel);
+        pw.println("   Peer       : " + _writer.getMessages());
         pw.println("   Local      : " + _messagesToSystem);
+        pw.println("Re-encoded    : " + _messagesTranscoded);
+        long batches = _writer.getBatches();
+        pw.println("Output batches");
+        pw.println("   Max size   : " + _maxBatchSize);
+        pw.println("   Max latency: " + TimeUnit.NANOSECONDS.toMillis(_maxBatchLatency) + " ms");
+        pw.println("   Written    : " + batches);
+        pw.println("   Average    : " + (batches == 0 ? "-" : String.format("%.1f", _writer.getMessages() / (double) batches)));
+        pw.println("   Largest    : " + _writer.getLargestBatch());
+        pw.println("Output queue");
+        pw.println("   Depth      : " + _queue.size());
+        pw.println("   Capacity   : " + (_queue.size() + _queue.remainingCapacity()));
+        pw.println("   Peak       : " + _largestQueue.get());
         pw.println("Local domain");
         pw.println("   Name       : " + _localDomainInfo.getCellDomainName());
         pw.println("   Version    : " + _localDomainInfo.getVersion());
         pw.println("   Role       : " + _localDomainInfo.getRole());
+        pw.println("   Serializers: " + _localDomainInfo.getMessageSerializers().size());
         pw.println("Peer domain");
         pw.println("   Name       : " + _remoteDomainInfo.getCellDomainName());
         pw.println("   Version    : " + _remoteDomainInfo.getVersion());
         pw.println("   Role       : " + _remoteDomainInfo.getRole());
+        pw.println("   Serializers: " + _remoteDomainInfo.getMessageSerializers().size());
     }
 
     /**
@@ -346,9 +510,11 @@ public class LocationMgrTunnel
         CellMessage readObject() throws IOException, ClassNotFoundException;
     }
 
-    private interface ObjectSink
+    interface ObjectSink
     {
         void writeObject(CellMessage message) throws IOException;
+
+        void flush() throws IOException;
     }
 
     private static class RawObjectSink implements ObjectSink
@@ -364,6 +530,11 @@ public class LocationMgrTunnel
         public void writeObject(CellMessage message) throws IOException
         {
             message.writeTo(out);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
             out.flush();
         }
     }
@@ -0,0 +1,179 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import dmg.cells.nucleus.CellMessage;
+
+/**
+ * Writes queued messages to the peer of a tunnel. Messages available in
+ * the queue are written in batches of at most {@code maxBatchSize} messages
+ * and the output is flushed once per batch, thus coalescing the messages
+ * into as few socket writes as possible. If a batch latency is configured,
+ * the writer waits up to that long for a batch to fill up before flushing it.
+ *
+ * Once closed, the writer writes the messages left in the queue and exits.
+ * Messages of a batch that could not be written because the writer was
+ * interrupted or the output failed are returned to their senders.
+ */
+class TunnelWriter implements Runnable
+{
+    private static final Logger _log =
+        LoggerFactory.getLogger(TunnelWriter.class);
+
+    /**
+     * How often an idle writer checks whether it has been closed.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final BlockingQueue<CellMessage> _queue;
+    private final LocationMgrTunnel.ObjectSink _output;
+    private final int _maxBatchSize;
+    private final long _maxBatchLatency;
+    private final BiConsumer<List<CellMessage>, String> _returnToSender;
+    private final Runnable _onFailure;
+
+    private final List<CellMessage> _batch;
+
+    private volatile boolean _isClosed;
+
+    private final LongAdder _messages = new LongAdder();
+    private final LongAdder _batches = new LongAdder();
+    private final LongAccumulator _largestBatch = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param maxBatchLatency maximum time in nanoseconds to wait for further
+     *                        messages before flushing a batch that is not full
+     * @param returnToSender  called with messages that could not be written
+     * @param onFailure       called if writing to the output fails
+     */
+    TunnelWriter(BlockingQueue<CellMessage> queue, LocationMgrTunnel.ObjectSink output,
+                 int maxBatchSize, long maxBatchLatency,
+                 BiConsumer<List<CellMessage>, String> returnToSender, Runnable onFailure)
+    {
+        _queue = queue;
+        _output = output;
+        _maxBatchSize = maxBatchSize;
+        _maxBatchLatency = maxBatchLatency;
+        _returnToSender = returnToSender;
+        _onFailure = onFailure;
+        _batch = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Makes the writer exit once the queue is empty.
+     */
+    public void close()
+    {
+        _isClosed = true;
+    }
+
+    public long getMessages()
+    {
+        return _messages.sum();
+    }
+
+    public long getBatches()
+    {
+        return _batches.sum();
+    }
+
+    public long getLargestBatch()
+    {
+        return _largestBatch.get();
+    }
+
+    @Override
+    public void run()
+    {
+        /* Number of messages of the current batch passed to the output. */
+        int written = 0;
+        try {
+            CellMessage message;
+            while ((message = next()) != null) {
+                _batch.add(message);
+                fill();
+                for (CellMessage m : _batch) {
+                    _output.writeObject(m);
+                    written++;
+                }
+                _output.flush();
+                _messages.add(_batch.size());
+                _batches.increment();
+                _largestBatch.accumulate(_batch.size());
+                _batch.clear();
+                written = 0;
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            _log.warn("Error while sending message: {}", e.getMessage());
+            _onFailure.run();
+        } finally {
+            /* Messages before the failing one were already written and are
+             * not returned, as the peer may have received them.
+             */
+            if (written < _batch.size()) {
+                _returnToSender.accept(new ArrayList<>(_batch.subList(written, _batch.size())),
+                                       "Communication failure. Message could not be delivered.");
+            }
+            _batch.clear();
+        }
+    }
+
+    /**
+     * Returns the next message to write, or null if the writer was closed
+     * and the queue is empty.
+     */
+    private CellMessage next() throws InterruptedException
+    {
+        CellMessage message;
+        while ((message = _queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+            if (_isClosed) {
+                return _queue.poll();
+            }
+        }
+        return message;
+    }
+
+    private void fill() throws InterruptedException
+    {
+        _queue.drainTo(_batch, _maxBatchSize - _batch.size());
+        if (_maxBatchLatency > 0 && !_isClosed) {
+            long deadline = System.nanoTime() + _maxBatchLatency;
+            while (_batch.size() < _maxBatchSize) {
+                CellMessage message = _queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (message == null) {
+                    break;
+                }
+                _batch.add(message);
+                _queue.drainTo(_batch, _maxBatchSize - _batch.size());
+            }
+        }
+    }
+}
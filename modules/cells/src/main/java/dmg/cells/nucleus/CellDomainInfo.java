@@ -18,6 +18,10 @@
 package dmg.cells.nucleus;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import dmg.util.Releases;
 import dmg.util.Releases.BadVersionException;
@@ -31,11 +35,24 @@ public class CellDomainInfo implements Serializable
     private final String _version;
     private CellDomainRole _role;
 
+    /**
+     * Names of the message serializers supported by the domain. Null for
+     * domains predating message serializers.
+     */
+    private HashSet<String> _messageSerializers;
+
     public CellDomainInfo(String name, String version, CellDomainRole role)
+    {
+        this(name, version, role, Collections.emptySet());
+    }
+
+    public CellDomainInfo(String name, String version, CellDomainRole role,
+                          Collection<String> messageSerializers)
     {
         _domainName = checkNotNull(name);
         _version = checkNotNull(version);
         _role = checkNotNull(role);
+        _messageSerializers = new HashSet<>(messageSerializers);
     }
 
     public String getVersion()
@@ -58,6 +75,18 @@ public class CellDomainInfo implements Serializable
         return _role;
     }
 
+    /**
+     * Returns the names of the message serializers supported by the domain.
+     *
+     * @see MessageSerializer
+     */
+    public Set<String> getMessageSerializers()
+    {
+        return _messageSerializers == null
+               ? Collections.emptySet()
+               : Collections.unmodifiableSet(_messageSerializers);
+    }
+
     public String toString()
     {
         return _domainName + ',' + _version + ',' + _role;
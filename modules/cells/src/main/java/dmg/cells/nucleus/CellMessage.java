@@ -3,17 +3,13 @@ package dmg.cells.nucleus ;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.io.InvalidClassException;
-import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Objects;
+import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -198,32 +194,32 @@ public boolean equals( Object obj ){
         return decoded;
     }
 
-    protected static byte[] encode(Object message)
+    /**
+     * Returns a stream mode copy of this message that can be decoded by a peer
+     * supporting the given message serializers. If the message object was
+     * encoded with any other serializer, it is re-encoded using Java serialization.
+     * Returns this message if no re-encoding is necessary.
+     */
+    public CellMessage encodeFor(Set<String> serializers) throws SerializationException
     {
-        int initialBufferSize = 256;
-        ByteArrayOutputStream array = new ByteArrayOutputStream(initialBufferSize);
-        try (ObjectOutputStream out = new ObjectOutputStream(array)) {
-            out.writeObject(message);
-        } catch (InvalidClassException e) {
-            throw new SerializationException("Failed to serialize object: "
-                    + e + "(this is usually a bug)", e);
-        } catch (NotSerializableException e) {
-            throw new SerializationException("Failed to serialize object because the object is not serializable (this is usually a bug)", e);
-        } catch (IOException e) {
-            throw new SerializationException("Failed to serialize object: " + e, e);
+        checkState(_mode == STREAM_MODE);
+        byte[] messageStream = MessageCodec.getDefault().transcode(_messageStream, serializers);
+        if (messageStream == _messageStream) {
+            return this;
         }
-        return array.toByteArray();
+        CellMessage encoded = clone();
+        encoded._messageStream = messageStream;
+        return encoded;
+    }
+
+    protected static byte[] encode(Object message)
+    {
+        return MessageCodec.getDefault().encode(message);
     }
 
     protected static Object decode(byte[] messageStream)
     {
-        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(messageStream))) {
-            return stream.readObject();
-        } catch (ClassNotFoundException e) {
-            throw new SerializationException("Failed to deserialize object: The class could not be found. Is there a software version mismatch in your installation?", e);
-        } catch (IOException e) {
-            throw new SerializationException("Failed to deserialize object: " + e, e);
-        }
+        return MessageCodec.getDefault().decode(messageStream);
     }
 
     public void addSourceAddress( CellAddressCore source ){
@@ -1,6 +1,10 @@
 package dmg.cells.nucleus;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.SetMultimap;
@@ -10,179 +14,141 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 import org.dcache.util.ColumnWriter;
 
-import static java.util.stream.Collectors.toList;
-
+/**
+ * Routing table of a cell domain.
+ *
+ * Route updates are serialized and modify a set of mutable tables. After
+ * each update an immutable snapshot of the tables is published, which is
+ * what message delivery uses for route lookups. Lookups thus never block
+ * and do not contend with concurrent route updates.
+ */
 public class CellRoutingTable implements Serializable
 {
     private static final long serialVersionUID = -1456280129622980563L;
 
+    /* Mutable tables. Guarded by this. */
     private final ListMultimap<String, CellRoute> _queue = ArrayListMultimap.create();
     private final SetMultimap<String, CellRoute> _domain = LinkedHashMultimap.create();
-    private final SetMultimap<String, CellRoute> _exact = LinkedHashMultimap.create();
-    private final Map<String, CopyOnWriteArraySet<CellRoute>> _topic = new HashMap<>();
-    private final AtomicReference<CellRoute> _dumpster = new AtomicReference<>();
+    private final SetMultimap<CellAddressCore, CellRoute> _exact = LinkedHashMultimap.create();
+    private final SetMultimap<String, CellRoute> _topic = LinkedHashMultimap.create();
     private final List<CellRoute> _default = new ArrayList<>();
-    private final Random _random = new Random();
+    private CellRoute _dumpster;
+
+    /* Immutable snapshot of the above used for lookups. */
+    private volatile Snapshot _snapshot = new Snapshot();
 
-    public void add(CellRoute route)
+    public synchronized void add(CellRoute route)
             throws IllegalArgumentException
     {
         String dest;
         switch (route.getRouteType()) {
         case CellRoute.EXACT:
         case CellRoute.ALIAS:
-            dest = route.getCellName() + '@' + route.getDomainName();
-            synchronized (_exact) {
-                if (!_exact.put(dest, route)) {
-                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                }
+            CellAddressCore address = new CellAddressCore(route.getCellName(), route.getDomainName());
+            if (!_exact.put(address, route)) {
+                throw new IllegalArgumentException("Duplicated route entry for : " + address);
             }
             break;
         case CellRoute.QUEUE:
             dest = route.getCellName();
-            synchronized (_queue) {
-                if (_queue.containsEntry(dest, route)) {
-                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                }
-                _queue.put(dest, route);
+            if (_queue.containsEntry(dest, route)) {
+                throw new IllegalArgumentException("Duplicated route entry for : " + dest);
             }
+            _queue.put(dest, route);
             break;
         case CellRoute.TOPIC:
             dest = route.getCellName();
-            synchronized (_topic) {
-                if (!_topic.computeIfAbsent(dest, key -> new CopyOnWriteArraySet()).add(route)) {
-                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                }
+            if (!_topic.put(dest, route)) {
+                throw new IllegalArgumentException("Duplicated route entry for : " + dest);
             }
             break;
         case CellRoute.DOMAIN:
             dest = route.getDomainName();
-            synchronized (_domain) {
-                if (!_domain.put(dest, route)) {
-                    throw new IllegalArgumentException("Duplicated route entry for : " + dest);
-                }
+            if (!_domain.put(dest, route)) {
+                throw new IllegalArgumentException("Duplicated route entry for : " + dest);
             }
             break;
         case CellRoute.DEFAULT:
-            synchronized (_default) {
-                if (!_default.contains(route)) {
-                    _default.add(route);
-                }
+            if (_default.contains(route)) {
+                return;
             }
+            _default.add(route);
             break;
         case CellRoute.DUMPSTER:
-            if (!_dumpster.compareAndSet(null, route)) {
+            if (_dumpster != null) {
                 throw new IllegalArgumentException("Duplicated route entry for dumpster");
             }
+            _dumpster = route;
             break;
         }
+        publish();
     }
 
-    public void delete(CellRoute route)
+    public synchronized void delete(CellRoute route)
             throws IllegalArgumentException
     {
         String dest;
         switch (route.getRouteType()) {
         case CellRoute.EXACT:
         case CellRoute.ALIAS:
-            dest = route.getCellName() + '@' + route.getDomainName();
-            synchronized (_exact) {
-                if (!_exact.remove(dest, route)) {
-                    throw new IllegalArgumentException("Route entry not found for : " + dest);
-                }
+            CellAddressCore address = new CellAddressCore(route.getCellName(), route.getDomainName());
+            if (!_exact.remove(address, route)) {
+                throw new IllegalArgumentException("Route entry not found for : " + address);
             }
             break;
         case CellRoute.QUEUE:
             dest = route.getCellName();
-            synchronized (_queue) {
-                if (!_queue.remove(dest, route)) {
-                    throw new IllegalArgumentException("Route entry not found for : " + dest);
-                }
+            if (!_queue.remove(dest, route)) {
+                throw new IllegalArgumentException("Route entry not found for : " + dest);
             }
             break;
         case CellRoute.TOPIC:
             dest = route.getCellName();
-            synchronized (_topic) {
-                Set<CellRoute> routes = _topic.get(dest);
-                if (!routes.remove(route)) {
-                    throw new IllegalArgumentException("Route entry not found for : " + dest);
-                }
-                if (routes.isEmpty()) {
-                    _topic.remove(dest);
-                }
+            if (!_topic.remove(dest, route)) {
+                throw new IllegalArgumentException("Route entry not found for : " + dest);
             }
             break;
         case CellRoute.DOMAIN:
             dest = route.getDomainName();
-            synchronized (_domain) {
-                if (!_domain.remove(dest, route)) {
-                    throw new IllegalArgumentException("Route entry not found for : " + dest);
-                }
+            if (!_domain.remove(dest, route)) {
+                throw new IllegalArgumentException("Route entry not found for : " + dest);
             }
             break;
         case CellRoute.DEFAULT:
-            synchronized (_default) {
-                if (!_default.remove(route)) {
-                    throw new IllegalArgumentException("Route entry not found for default");
-                }
+            if (!_default.remove(route)) {
+                throw new IllegalArgumentException("Route entry not found for default");
             }
             break;
         case CellRoute.DUMPSTER:
-            CellRoute currentDumpster = _dumpster.get();
-            if (!Objects.equals(currentDumpster, route) || !_dumpster.compareAndSet(currentDumpster, null)) {
+            if (_dumpster == null || !_dumpster.equals(route)) {
                 throw new IllegalArgumentException("Route entry not found dumpster");
             }
+            _dumpster = null;
             break;
         }
+        publish();
     }
 
-    public Collection<CellRoute> delete(CellAddressCore target)
+    public synchronized Collection<CellRoute> delete(CellAddressCore target)
     {
         Collection<CellRoute> deleted = new ArrayList<>();
 
         String addr = target.toString();
-        synchronized (_exact) {
-            delete(_exact.values(), addr, deleted);
-        }
-        synchronized (_queue) {
-            delete(_queue.values(), addr, deleted);
-        }
-        synchronized (_domain) {
-            delete(_domain.values(), addr, deleted);
-        }
-        synchronized (_topic) {
-            /* We cannot use the regular delete method because a CopyOnWriteArraySet iterator
-             * doesn't allow manipulating operations. We trade expensive deletion for not having
-             * to copy the set of topic routes in findTopicRoutes.
-             */
-            Iterator<CopyOnWriteArraySet<CellRoute>> iterator = _topic.values().iterator();
-            while (iterator.hasNext()) {
-                Set<CellRoute> routes = iterator.next();
-                List<CellRoute> toRemove =
-                        routes.stream().filter(route -> route.getTargetName().equals(addr)).collect(toList());
-                routes.removeAll(toRemove);
-                if (routes.isEmpty()) {
-                    iterator.remove();
-                }
-                deleted.addAll(toRemove);
-            }
-        }
-        synchronized (_default) {
-            delete(_default, addr, deleted);
+        delete(_exact.values(), addr, deleted);
+        delete(_queue.values(), addr, deleted);
+        delete(_domain.values(), addr, deleted);
+        delete(_topic.values(), addr, deleted);
+        delete(_default, addr, deleted);
+        if (!deleted.isEmpty()) {
+            publish();
         }
         return deleted;
     }
@@ -199,43 +165,44 @@ public class CellRoutingTable implements Serializable
         }
     }
 
+    /**
+     * Publishes a new snapshot of the routing tables. Must be called with
+     * the monitor held after every modification.
+     */
+    private void publish()
+    {
+        _snapshot = new Snapshot(this);
+    }
+
     public CellRoute find(CellAddressCore addr, boolean allowRemote)
     {
-        String cellName = addr.getCellName();
+        Snapshot snapshot = _snapshot;
         String domainName = addr.getCellDomainName();
-        Optional<CellRoute> route;
-        synchronized (_exact) {
-            route = _exact.get(cellName + '@' + domainName).stream().findFirst();
-        }
-        if (route.isPresent()) {
-            return route.get();
+        ImmutableSet<CellRoute> exact = snapshot.exact.get(addr);
+        if (!exact.isEmpty()) {
+            return exact.iterator().next();
         }
         if (domainName.equals("local")) {
             //
             // this is not really local but wellknown
             // we checked for local before we called this.
             //
-            synchronized (_queue) {
-                List<CellRoute> routes = _queue.get(cellName);
-                if (!allowRemote) {
-                    CellRoute[] localRoutes =
-                            routes.stream().filter(r -> !r.getTarget().isDomainAddress()).toArray(CellRoute[]::new);
-                    return (localRoutes.length > 0) ? localRoutes[_random.nextInt(localRoutes.length)] : null;
-                } else if (!routes.isEmpty()) {
-                    return routes.get(_random.nextInt(routes.size()));
-                }
+            List<CellRoute> routes = allowRemote
+                                     ? snapshot.queue.get(addr.getCellName())
+                                     : snapshot.localQueue.get(addr.getCellName());
+            if (!routes.isEmpty()) {
+                return routes.get(ThreadLocalRandom.current().nextInt(routes.size()));
+            } else if (!allowRemote) {
+                return null;
             }
         } else {
-            synchronized (_domain) {
-                route = _domain.get(domainName).stream().findFirst();
-            }
-            if (route.isPresent()) {
-                return route.get();
+            ImmutableSet<CellRoute> domain = snapshot.domain.get(domainName);
+            if (!domain.isEmpty()) {
+                return domain.iterator().next();
             }
         }
-        synchronized (_default) {
-            return _default.isEmpty() ? null : _default.get(IntMath.mod(addr.hashCode(), _default.size()));
-        }
+        List<CellRoute> defaults = snapshot.defaults;
+        return defaults.isEmpty() ? null : defaults.get(IntMath.mod(addr.hashCode(), defaults.size()));
     }
 
     public Set<CellRoute> findTopicRoutes(CellAddressCore addr)
@@ -245,11 +212,7 @@ public class CellRoutingTable implements Serializable
         if (!domainName.equals("local")) {
             return Collections.emptySet();
         }
-        CopyOnWriteArraySet<CellRoute> routes;
-        synchronized (_topic) {
-            routes = _topic.get(cellName);
-        }
-        return (routes != null) ? routes : Collections.emptySet();
+        return _snapshot.topic.get(cellName);
     }
 
     public String toString()
@@ -267,57 +230,77 @@ public class CellRoutingTable implements Serializable
                         .value("gateway", route.getTargetName())
                         .value("type", route.getRouteTypeName());
 
-        synchronized (_topic) {
-            _topic.values().forEach(routes -> routes.forEach(append));
-        }
-        synchronized (_exact) {
-            _exact.values().forEach(append);
-        }
-        synchronized (_queue) {
-            _queue.values().forEach(append);
-        }
-        synchronized (_domain) {
-            _domain.values().forEach(append);
-        }
-        synchronized (_default) {
-            _default.forEach(append);
-        }
-        CellRoute dumpsterRoute = _dumpster.get();
-        if (dumpsterRoute != null) {
-            append.accept(dumpsterRoute);
-        }
+        _snapshot.routes().forEach(append);
         return writer.toString();
     }
 
     public CellRoute[] getRoutingList()
     {
-        List<CellRoute> routes = new ArrayList<>();
-        synchronized (_topic) {
-            _topic.values().forEach(routes::addAll);
-        }
-        synchronized (_exact) {
-            routes.addAll(_exact.values());
-        }
-        synchronized (_queue) {
-            routes.addAll(_queue.values());
-        }
-        synchronized (_domain) {
-            routes.addAll(_domain.values());
-        }
-        synchronized (_default) {
-            routes.addAll(_default);
-        }
-        CellRoute dumpsterRoute = _dumpster.get();
-        if (dumpsterRoute != null) {
-            routes.add(dumpsterRoute);
-        }
+        List<CellRoute> routes = _snapshot.routes();
         return routes.toArray(new CellRoute[routes.size()]);
     }
 
     public boolean hasDefaultRoute()
     {
-        synchronized (_default) {
-            return !_default.isEmpty();
+        return !_snapshot.defaults.isEmpty();
+    }
+
+    /**
+     * Immutable copy of the routing tables.
+     */
+    private static class Snapshot implements Serializable
+    {
+        private static final long serialVersionUID = 6516487380455385373L;
+
+        final ImmutableSetMultimap<CellAddressCore, CellRoute> exact;
+        final ImmutableListMultimap<String, CellRoute> queue;
+
+        /* Subset of queue routes that point to cells in this domain. */
+        final ImmutableListMultimap<String, CellRoute> localQueue;
+
+        final ImmutableSetMultimap<String, CellRoute> topic;
+        final ImmutableSetMultimap<String, CellRoute> domain;
+        final ImmutableList<CellRoute> defaults;
+        final CellRoute dumpster;
+
+        Snapshot()
+        {
+            exact = ImmutableSetMultimap.of();
+            queue = ImmutableListMultimap.of();
+            localQueue = ImmutableListMultimap.of();
+            topic = ImmutableSetMultimap.of();
+            domain = ImmutableSetMultimap.of();
+            defaults = ImmutableList.of();
+            dumpster = null;
+        }
+
+        Snapshot(CellRoutingTable table)
+        {
+            exact = ImmutableSetMultimap.copyOf(table._exact);
+            queue = ImmutableListMultimap.copyOf(table._queue);
+            ImmutableListMultimap.Builder<String, CellRoute> local = ImmutableListMultimap.builder();
+            table._queue.entries().stream()
+                    .filter(e -> !e.getValue().getTarget().isDomainAddress())
+                    .forEach(local::put);
+            localQueue = local.build();
+            topic = ImmutableSetMultimap.copyOf(table._topic);
+            domain = ImmutableSetMultimap.copyOf(table._domain);
+            defaults = ImmutableList.copyOf(table._default);
+            dumpster = table._dumpster;
+        }
+
+        List<CellRoute> routes()
+        {
+            List<CellRoute> routes = new ArrayList<>();
+            routes.addAll(topic.values());
+            routes.addAll(exact.values());
+            routes.addAll(queue.values());
+            routes.addAll(domain.values());
+            routes.addAll(defaults);
+            if (dumpster != null) {
+                routes.add(dumpster);
+            }
+            return routes;
         }
     }
 }
@@ -0,0 +1,207 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Encodes and decodes message objects of CellMessages.
+ *
+ * Objects for which a {@link MessageSerializer} is registered are encoded
+ * using that serializer. All other objects are encoded using Java serialization.
+ * The two encodings are distinguished by the first byte of the encoded form:
+ * Java serialization streams always start with the stream magic 0xACED.
+ *
+ * As peer domains may not support the same set of serializers, tunnels exchange
+ * the names of the serializers they support and use {@link #transcode} to fall
+ * back to Java serialization for messages the peer cannot decode.
+ */
+public class MessageCodec
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCodec.class);
+
+    /**
+     * First byte of objects encoded with a MessageSerializer.
+     */
+    private static final byte SERIALIZER_TAG = 0x01;
+
+    private static final MessageCodec DEFAULT =
+            new MessageCodec(ServiceLoader.load(MessageSerializer.class, MessageCodec.class.getClassLoader()));
+
+    private final Map<Class<?>, MessageSerializer<?>> _byType;
+    private final Map<String, MessageSerializer<?>> _byName;
+
+    public MessageCodec(Iterable<? extends MessageSerializer> serializers)
+    {
+        ImmutableMap.Builder<Class<?>, MessageSerializer<?>> byType = ImmutableMap.builder();
+        ImmutableMap.Builder<String, MessageSerializer<?>> byName = ImmutableMap.builder();
+        for (MessageSerializer<?> serializer : serializers) {
+            byType.put(serializer.getType(), serializer);
+            byName.put(serializer.getName(), serializer);
+        }
+        _byType = byType.build();
+        _byName = byName.build();
+    }
+
+    /**
+     * Returns the codec with all serializers registered through ServiceLoader.
+     */
+    public static MessageCodec getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the names of the serializers supported by this codec.
+     */
+    public Set<String> getSerializerNames()
+    {
+        return _byName.keySet();
+    }
+
+    /**
+     * Returns the name of the serializer used to encode {@code bytes}, or null
+     * if the object was encoded using Java serialization.
+     */
+    public static String getSerializerName(byte[] bytes) throws SerializationException
+    {
+        if (bytes.length == 0 || bytes[0] != SERIALIZER_TAG) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readByte();
+            return in.readUTF();
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
+    }
+
+    public byte[] encode(Object message) throws SerializationException
+    {
+        MessageSerializer<?> serializer = (message == null) ? null : _byType.get(message.getClass());
+        if (serializer != null) {
+            try {
+                return encode(serializer, message);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Failed to encode {} with {}, falling back to Java serialization " +
+                             "(this is a bug): {}", message.getClass().getName(), serializer.getName(), e.toString());
+            }
+        }
+        return serialize(message);
+    }
+
+    public Object decode(byte[] bytes) throws SerializationException
+    {
+        if (bytes.length == 0 || bytes[0] != SERIALIZER_TAG) {
+            return deserialize(bytes);
+        }
+
+        ByteArrayInputStream array = new ByteArrayInputStream(bytes);
+        try {
+            DataInputStream in = new DataInputStream(array);
+            in.readByte();
+            String name = in.readUTF();
+            MessageSerializer<?> serializer = _byName.get(name);
+            if (serializer == null) {
+                throw new SerializationException("Failed to deserialize object: Unknown encoding " + name +
+                                                 ". Is there a software version mismatch in your installation?");
+            }
+            try (ObjectInputStream stream = new ObjectInputStream(array)) {
+                return serializer.readFrom(stream);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Failed to deserialize object: The class could not be found. Is there a software version mismatch in your installation?", e);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
+    }
+
+    /**
+     * Re-encodes {@code bytes} using Java serialization unless the object
+     * is already encoded with Java serialization or with one of {@code serializers}.
+     * Returns {@code bytes} if no re-encoding is necessary.
+     */
+    public byte[] transcode(byte[] bytes, Set<String> serializers) throws SerializationException
+    {
+        String name = getSerializerName(bytes);
+        if (name == null || serializers.contains(name)) {
+            return bytes;
+        }
+        return serialize(decode(bytes));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> byte[] encode(MessageSerializer<T> serializer, Object message)
+            throws IOException
+    {
+        ByteArrayOutputStream array = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(array);
+        out.writeByte(SERIALIZER_TAG);
+        out.writeUTF(serializer.getName());
+        out.flush();
+        try (ObjectOutputStream stream = new ObjectOutputStream(array)) {
+            serializer.writeTo((T) message, stream);
+        }
+        return array.toByteArray();
+    }
+
+    static byte[] serialize(Object message) throws SerializationException
+    {
+        int initialBufferSize = 256;
+        ByteArrayOutputStream array = new ByteArrayOutputStream(initialBufferSize);
+        try (ObjectOutputStream out = new ObjectOutputStream(array)) {
+            out.writeObject(message);
+        } catch (InvalidClassException e) {
+            throw new SerializationException("Failed to serialize object: "
+                    + e + "(this is usually a bug)", e);
+        } catch (NotSerializableException e) {
+            throw new SerializationException("Failed to serialize object because the object is not serializable (this is usually a bug)", e);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize object: " + e, e);
+        }
+        return array.toByteArray();
+    }
+
+    static Object deserialize(byte[] messageStream) throws SerializationException
+    {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(messageStream))) {
+            return stream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Failed to deserialize object: The class could not be found. Is there a software version mismatch in your installation?", e);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize object: " + e, e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dmg.cells.nucleus;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+
+/**
+ * Service provider interface for hand-written encodings of message objects.
+ *
+ * By default the message object of a CellMessage is encoded using Java
+ * serialization, which writes the class descriptors of every object in the
+ * graph for every message. A MessageSerializer instead writes the fields of
+ * a particular message class explicitly. Fields the serializer does not know
+ * how to encode may still be written using {@link ObjectOutput#writeObject}.
+ *
+ * A serializer is only used for objects of exactly the class returned by
+ * {@link #getType}, not for subclasses. If a serializer fails to encode an
+ * object, the object is encoded using Java serialization instead.
+ *
+ * Implementations are discovered using Java's ServiceLoader mechanism.
+ */
+public interface MessageSerializer<T extends Serializable>
+{
+    /**
+     * The name identifying the encoding. The name is exchanged with peer domains
+     * and must be changed whenever the encoding changes.
+     */
+    String getName();
+
+    /**
+     * The class of objects encoded by this serializer.
+     */
+    Class<T> getType();
+
+    /**
+     * Writes {@code message} to {@code out}.
+     */
+    void writeTo(T message, ObjectOutput out) throws IOException;
+
+    /**
+     * Reads a message previously written by {@link #writeTo}.
+     */
+    T readFrom(ObjectInput in) throws IOException, ClassNotFoundException;
+}
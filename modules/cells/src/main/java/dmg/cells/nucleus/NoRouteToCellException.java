@@ -3,6 +3,7 @@ package dmg.cells.nucleus;
 import javax.annotation.Nullable;
 
 import java.io.Serializable;
+import java.util.Collections;
 
 public class NoRouteToCellException extends Exception
 {
@@ -15,11 +16,24 @@ public class NoRouteToCellException extends Exception
     public NoRouteToCellException(CellMessage envelope, String str)
     {
         super(str);
-        _envelope = envelope.isStreamMode() ? envelope : envelope.encode();
+        _envelope = encodeForAnyDomain(envelope.isStreamMode() ? envelope : envelope.encode());
         _uoid = envelope.getUOID();
         _path = envelope.getDestinationPath();
     }
 
+    /**
+     * The exception may be forwarded to domains not supporting the serializer
+     * used for the message object of the envelope.
+     */
+    private static CellMessage encodeForAnyDomain(CellMessage envelope)
+    {
+        try {
+            return envelope.encodeFor(Collections.emptySet());
+        } catch (SerializationException e) {
+            return envelope;
+        }
+    }
+
     @Override
     public String toString()
     {
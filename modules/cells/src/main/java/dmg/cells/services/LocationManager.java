@@ -847,7 +847,9 @@ public class LocationManager extends CellAdapter
     }
 
     /**
-     * Usage : ... [-legacy=<port>] [-role=satellite|core] -mode=none|tls -- [<port>] <client options>
+     * Usage : ... [-legacy=<port>] [-role=satellite|core] -mode=none|tls
+     *             [-batch-size=<messages>] [-batch-latency=<millis>] [-queue-size=<messages>]
+     *             -- [<port>] <client options>
      */
     public LocationManager(String name, String args) throws CommandException, IOException, BadConfigException
     {
@@ -913,7 +915,7 @@ public class LocationManager extends CellAdapter
     {
         String cellName = "l*";
         String cellClass = "dmg.cells.network.LocationMgrTunnel";
-        String cellArgs = args + ' ' + cellClass + ' ' + "-prot=raw" + " -role=" + role;
+        String cellArgs = args + ' ' + cellClass + ' ' + "-prot=raw" + " -role=" + role + tunnelArgs();
         LOGGER.info("Starting acceptor with arguments: {}", cellArgs);
         LoginManager c = new LoginManager(cellName, "System", cellArgs);
         c.start().get();
@@ -968,7 +970,8 @@ public class LocationManager extends CellAdapter
                 + "-role=" + role + ' '
                 + "-where=" + where + ' '
                 + clientKey + ' '
-                + clientName;
+                + clientName
+                + tunnelArgs();
 
         LOGGER.info("Starting connector with {}", cellArgs);
         LocationManagerConnector c = new LocationManagerConnector(cellName, cellArgs, socketFactory);
@@ -976,6 +979,25 @@ public class LocationManager extends CellAdapter
         return c.getCellName();
     }
 
+    /**
+     * Returns the options passed on to the tunnels created by listeners
+     * and connectors.
+     */
+    private String tunnelArgs()
+    {
+        StringBuilder s = new StringBuilder();
+        if (args.hasOption("batch-size")) {
+            s.append(" -batch-size=").append(args.getOption("batch-size"));
+        }
+        if (args.hasOption("batch-latency")) {
+            s.append(" -batch-latency=").append(args.getOption("batch-latency"));
+        }
+        if (args.hasOption("queue-size")) {
+            s.append(" -queue-size=").append(args.getOption("queue-size"));
+        }
+        return s.toString();
+    }
+
     private void killConnector(String cell)
     {
         LOGGER.info("Killing connector {}", cell);
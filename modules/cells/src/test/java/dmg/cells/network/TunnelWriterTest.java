@@ -0,0 +1,123 @@
+package dmg.cells.network;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import dmg.cells.nucleus.CellMessage;
+import dmg.cells.nucleus.CellPath;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TunnelWriterTest
+{
+    private BlockingQueue<CellMessage> queue;
+    private RecordingSink sink;
+    private List<CellMessage> returned;
+    private AtomicBoolean failed;
+
+    @Before
+    public void setUp()
+    {
+        queue = new LinkedBlockingQueue<>();
+        sink = new RecordingSink();
+        returned = new ArrayList<>();
+        failed = new AtomicBoolean();
+    }
+
+    private TunnelWriter aWriter(int maxBatchSize)
+    {
+        return new TunnelWriter(queue, sink, maxBatchSize, 0,
+                                (messages, reason) -> returned.addAll(messages),
+                                () -> failed.set(true));
+    }
+
+    private List<CellMessage> enqueue(int count)
+    {
+        List<CellMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CellMessage message = new CellMessage(new CellPath("cell", "domain"), i);
+            messages.add(message);
+            queue.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    public void shouldWriteMessagesInQueueOrder()
+    {
+        List<CellMessage> messages = enqueue(5);
+        TunnelWriter writer = aWriter(2);
+
+        writer.close();
+        writer.run();
+
+        assertThat(sink.written, is(messages));
+        assertThat(sink.flushes, is(3));
+        assertThat(writer.getBatches(), is(3L));
+        assertThat(writer.getLargestBatch(), is(2L));
+        assertThat(returned, is(empty()));
+    }
+
+    @Test
+    public void shouldWriteQueuedMessagesWhenClosed() throws Exception
+    {
+        TunnelWriter writer = aWriter(64);
+        Thread thread = new Thread(writer);
+        thread.start();
+
+        List<CellMessage> messages = enqueue(100);
+        writer.close();
+        thread.join(5_000);
+
+        assertThat(thread.isAlive(), is(false));
+        assertThat(sink.written, is(messages));
+        assertThat(queue, is(empty()));
+        assertThat(returned, is(empty()));
+        assertThat(failed.get(), is(false));
+    }
+
+    @Test
+    public void shouldReturnUnwrittenMessagesOfFailedBatch()
+    {
+        List<CellMessage> messages = enqueue(5);
+        sink.failAt = 2;
+        TunnelWriter writer = aWriter(64);
+
+        writer.run();
+
+        assertThat(failed.get(), is(true));
+        assertThat(sink.written, is(messages.subList(0, 2)));
+        assertThat(returned, is(messages.subList(2, 5)));
+        assertThat(writer.getMessages(), is(0L));
+    }
+
+    private static class RecordingSink implements LocationMgrTunnel.ObjectSink
+    {
+        private final List<CellMessage> written = new ArrayList<>();
+        private int flushes;
+        private int failAt = -1;
+
+        @Override
+        public void writeObject(CellMessage message) throws IOException
+        {
+            if (written.size() == failAt) {
+                throw new IOException("Broken pipe");
+            }
+            written.add(message);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dmg.cells.nucleus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class CellRoutingTableTest
+{
+    private CellRoutingTable table;
+
+    @Before
+    public void setup()
+    {
+        table = new CellRoutingTable();
+    }
+
+    @Test
+    public void shouldPreferExactRoute() throws Exception
+    {
+        CellRoute exact = new CellRoute("a@b", "gateway1@c", CellRoute.EXACT);
+        table.add(new CellRoute("b", "*@b", CellRoute.DOMAIN));
+        table.add(exact);
+
+        assertThat(table.find(new CellAddressCore("a", "b"), true), is(exact));
+    }
+
+    @Test
+    public void shouldFindDomainRoute() throws Exception
+    {
+        CellRoute domain = new CellRoute("b", "*@b", CellRoute.DOMAIN);
+        table.add(domain);
+
+        assertThat(table.find(new CellAddressCore("a", "b"), true), is(domain));
+    }
+
+    @Test
+    public void shouldOnlyUseLocalQueueRoutesUnlessRemoteIsAllowed() throws Exception
+    {
+        CellRoute remote = new CellRoute("a", "*@b", CellRoute.QUEUE);
+        CellRoute fallback = new CellRoute(null, "*@core", CellRoute.DEFAULT);
+        table.add(remote);
+        table.add(fallback);
+
+        assertThat(table.find(new CellAddressCore("a"), false), is(nullValue()));
+        assertThat(table.find(new CellAddressCore("a"), true), is(remote));
+        assertThat(table.find(new CellAddressCore("b"), true), is(fallback));
+
+        CellRoute local = new CellRoute("a", "a-1@here", CellRoute.QUEUE);
+        table.add(local);
+
+        assertThat(table.find(new CellAddressCore("a"), false), is(local));
+    }
+
+    @Test
+    public void shouldNotSeeDeletedRoutes() throws Exception
+    {
+        CellRoute route = new CellRoute("a@b", "gateway1@c", CellRoute.EXACT);
+        table.add(route);
+        table.delete(route);
+
+        assertThat(table.find(new CellAddressCore("a", "b"), true), is(nullValue()));
+        assertThat(table.getRoutingList(), is(emptyArray()));
+    }
+
+    @Test
+    public void shouldDeleteRoutesByTarget() throws Exception
+    {
+        CellRoute topic = new CellRoute("t", "*@b", CellRoute.TOPIC);
+        CellRoute queue = new CellRoute("a", "*@b", CellRoute.QUEUE);
+        CellRoute other = new CellRoute("a", "*@c", CellRoute.QUEUE);
+        table.add(topic);
+        table.add(queue);
+        table.add(other);
+
+        assertThat(table.delete(new CellAddressCore("*", "b")), containsInAnyOrder(topic, queue));
+        assertThat(table.findTopicRoutes(new CellAddressCore("t")), is(empty()));
+        assertThat(table.getRoutingList(), is(arrayContaining(other)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDuplicateRoute() throws Exception
+    {
+        table.add(new CellRoute("a@b", "gateway1@c", CellRoute.EXACT));
+        table.add(new CellRoute("a@b", "gateway1@c", CellRoute.EXACT));
+    }
+}
@@ -0,0 +1,167 @@
+package dmg.cells.nucleus;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MessageCodecTest
+{
+    private MessageCodec codec;
+
+    @Before
+    public void setup()
+    {
+        codec = new MessageCodec(asList(new PayloadSerializer()));
+    }
+
+    @Test
+    public void shouldEncodeWithSerializer() throws Exception
+    {
+        byte[] bytes = codec.encode(new Payload("foo", 42));
+
+        assertThat(MessageCodec.getSerializerName(bytes), is("payload-1"));
+        assertThat(codec.decode(bytes), is((Object) new Payload("foo", 42)));
+    }
+
+    @Test
+    public void shouldUseJavaSerializationForOtherTypes() throws Exception
+    {
+        byte[] bytes = codec.encode("foo");
+
+        assertThat(MessageCodec.getSerializerName(bytes), is(nullValue()));
+        assertThat(codec.decode(bytes), is((Object) "foo"));
+    }
+
+    @Test
+    public void shouldUseJavaSerializationForSubclasses() throws Exception
+    {
+        byte[] bytes = codec.encode(new SpecialPayload("foo", 42));
+
+        assertThat(MessageCodec.getSerializerName(bytes), is(nullValue()));
+        assertThat(codec.decode(bytes), is(instanceOf(SpecialPayload.class)));
+    }
+
+    @Test
+    public void shouldFallBackToJavaSerializationOnFailure() throws Exception
+    {
+        byte[] bytes = codec.encode(new Payload(null, 42));
+
+        assertThat(MessageCodec.getSerializerName(bytes), is(nullValue()));
+        assertThat(codec.decode(bytes), is((Object) new Payload(null, 42)));
+    }
+
+    @Test
+    public void shouldNotTranscodeForPeerSupportingSerializer() throws Exception
+    {
+        byte[] bytes = codec.encode(new Payload("foo", 42));
+
+        assertThat(codec.transcode(bytes, ImmutableSet.of("payload-1")), is(sameInstance(bytes)));
+    }
+
+    @Test
+    public void shouldTranscodeForPeerNotSupportingSerializer() throws Exception
+    {
+        byte[] bytes = codec.encode(new Payload("foo", 42));
+
+        byte[] transcoded = codec.transcode(bytes, Collections.emptySet());
+
+        assertThat(MessageCodec.getSerializerName(transcoded), is(nullValue()));
+        assertThat(new MessageCodec(Collections.emptySet()).decode(transcoded),
+                   is((Object) new Payload("foo", 42)));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void shouldFailToDecodeUnknownEncoding() throws Exception
+    {
+        byte[] bytes = codec.encode(new Payload("foo", 42));
+
+        new MessageCodec(Collections.emptySet()).decode(bytes);
+    }
+
+    @Test
+    public void shouldNotReencodeJavaSerializedEnvelope() throws Exception
+    {
+        CellMessage message = new CellMessage(new CellPath("foo", "bar"), "payload");
+        CellMessage encoded = message.encode();
+
+        assertThat(encoded.encodeFor(Collections.emptySet()), is(sameInstance(encoded)));
+    }
+
+    public static class Payload implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final int value;
+
+        public Payload(String name, int value)
+        {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Payload)) {
+                return false;
+            }
+            Payload other = (Payload) o;
+            return value == other.value && (name == null ? other.name == null : name.equals(other.name));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return value;
+        }
+    }
+
+    public static class SpecialPayload extends Payload
+    {
+        private static final long serialVersionUID = 1L;
+
+        public SpecialPayload(String name, int value)
+        {
+            super(name, value);
+        }
+    }
+
+    public static class PayloadSerializer implements MessageSerializer<Payload>
+    {
+        @Override
+        public String getName()
+        {
+            return "payload-1";
+        }
+
+        @Override
+        public Class<Payload> getType()
+        {
+            return Payload.class;
+        }
+
+        @Override
+        public void writeTo(Payload message, ObjectOutput out) throws IOException
+        {
+            out.writeUTF(message.name);
+            out.writeInt(message.value);
+        }
+
+        @Override
+        public Payload readFrom(ObjectInput in) throws IOException
+        {
+            return new Payload(in.readUTF(), in.readInt());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.chimera.posix.Stat;
+
+/**
+ * Cache of directory entries that refer to directories, keyed by the inode
+ * number of the parent directory and the name of the entry.
+ *
+ * The cache is used to avoid repeated database queries when resolving the
+ * intermediate elements of a path. As the attributes of a directory (modification
+ * time, link count) change whenever an entry is added to it, cached attributes
+ * must only be used for path traversal and permission checks, never be returned
+ * as the attributes of the final path element.
+ *
+ * Entries are invalidated when modified through this JVM. Modifications by other
+ * processes only become visible once the cached entry expires.
+ */
+class DirectoryEntryCache
+{
+    /**
+     * Rough estimate of the memory used by a cache entry, excluding the name.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<Key, Entry> _entries;
+
+    /**
+     * Incremented on every invalidation. Lookups that race with a modification
+     * must not populate the cache with what may be stale information.
+     */
+    private final AtomicLong _modifications = new AtomicLong();
+
+    /**
+     * Incremented when a directory is modified in a way that affects its cached
+     * attributes but we do not know under which name it is cached.
+     */
+    private final AtomicLong _generation = new AtomicLong();
+
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    DirectoryEntryCache(long maxBytes, long lifetime, TimeUnit unit)
+    {
+        _entries = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, Entry entry) -> ENTRY_OVERHEAD + 2 * key.name.length())
+                .expireAfterWrite(lifetime, unit)
+                .build();
+    }
+
+    /**
+     * Returns a token to be passed to {@link #put}.
+     */
+    long beginLookup()
+    {
+        return _modifications.get();
+    }
+
+    /**
+     * Returns the inode of directory {@code name} in {@code parent}, or null
+     * if not cached.
+     */
+    FsInode get(FsInode parent, String name)
+    {
+        Entry entry = _entries.getIfPresent(new Key(parent.ino(), name));
+        if (entry == null || entry.generation != _generation.get()) {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        return new FsInode(parent.getFs(), entry.stat.getIno(), FsInodeType.INODE, 0,
+                           new Stat(entry.stat));
+    }
+
+    /**
+     * Caches {@code inode} as entry {@code name} of {@code parent}, unless the
+     * inode is not a directory or any modification has been registered since
+     * {@code token} was obtained.
+     */
+    void put(long token, FsInode parent, String name, FsInode inode)
+    {
+        Stat stat = inode.getStatCache();
+        if (stat != null && (stat.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFDIR) {
+            Key key = new Key(parent.ino(), name);
+            Entry entry = new Entry(new Stat(stat), _generation.get());
+            if (_modifications.get() == token) {
+                _entries.put(key, entry);
+                if (_modifications.get() != token) {
+                    _entries.invalidate(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops entry {@code name} of directory {@code parent}.
+     */
+    void invalidate(FsInode parent, String name)
+    {
+        _modifications.incrementAndGet();
+        _entries.invalidate(new Key(parent.ino(), name));
+    }
+
+    /**
+     * Drops all entries.
+     */
+    void invalidateAll()
+    {
+        _modifications.incrementAndGet();
+        _generation.incrementAndGet();
+    }
+
+    long getHits()
+    {
+        return _hits.sum();
+    }
+
+    long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    long size()
+    {
+        return _entries.size();
+    }
+
+    private static class Key
+    {
+        private final long parent;
+        private final String name;
+
+        Key(long parent, String name)
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return parent == other.parent && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(parent, name);
+        }
+    }
+
+    private static class Entry
+    {
+        private final Stat stat;
+        private final long generation;
+
+        Entry(Stat stat, long generation)
+        {
+            this.stat = stat;
+            this.generation = generation;
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.dcache.chimera;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
@@ -50,7 +51,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.ServiceLoader;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -87,6 +87,12 @@ public class FsSqlDriver {
     private static final ServiceLoader<DBDriverProvider> ALL_PROVIDERS
             = ServiceLoader.load(DBDriverProvider.class);
 
+    /**
+     * Number of directory entries fetched by a single query when
+     * listing a directory.
+     */
+    private static final int DIRECTORY_PAGE_SIZE = 1000;
+
     final JdbcTemplate _jdbc;
 
     private final long _root;
@@ -208,47 +214,30 @@ public class FsSqlDriver {
     DirectoryStreamB<HimeraDirectoryEntry> newDirectoryStream(FsInode dir) {
         return new DirectoryStreamB<HimeraDirectoryEntry>()
         {
-            final DirectoryStreamImpl stream = new DirectoryStreamImpl(dir, _jdbc);
-
             @Override
             public Iterator<HimeraDirectoryEntry> iterator()
             {
-                return new Iterator<HimeraDirectoryEntry>()
+                return new AbstractIterator<HimeraDirectoryEntry>()
                 {
-                    private HimeraDirectoryEntry current = innerNext();
-
-                    @Override
-                    public boolean hasNext()
-                    {
-                        return current != null;
-                    }
+                    private Iterator<HimeraDirectoryEntry> page = listPseudoEntries(dir).iterator();
+                    private String last;
+                    private boolean isLastPage;
 
                     @Override
-                    public HimeraDirectoryEntry next()
+                    protected HimeraDirectoryEntry computeNext()
                     {
-                        if (current == null) {
-                            throw new NoSuchElementException("No more entries");
-                        }
-                        HimeraDirectoryEntry entry = current;
-                        current = innerNext();
-                        return entry;
-                    }
-
-                    protected HimeraDirectoryEntry innerNext()
-                    {
-                        try {
-                            ResultSet rs = stream.next();
-                            if (rs == null) {
-                                return null;
+                        while (!page.hasNext()) {
+                            if (isLastPage) {
+                                return endOfData();
                             }
-                            Stat stat = toStat(rs);
-                            FsInode inode = new FsInode(dir.getFs(), rs.getLong("inumber"), FsInodeType.INODE, 0, stat);
-                            inode.setParent(dir);
-                            return new HimeraDirectoryEntry(rs.getString("iname"), inode, stat);
-                        } catch (SQLException e) {
-                            _log.error("failed to fetch next entry: {}", e.getMessage());
-                            return null;
+                            List<HimeraDirectoryEntry> entries = listDirectoryPage(dir, last, DIRECTORY_PAGE_SIZE);
+                            isLastPage = entries.size() < DIRECTORY_PAGE_SIZE;
+                            if (!entries.isEmpty()) {
+                                last = entries.get(entries.size() - 1).getName();
+                            }
+                            page = entries.iterator();
                         }
+                        return page.next();
                     }
                 };
             }
@@ -256,11 +245,56 @@ public class FsSqlDriver {
             @Override
             public void close() throws IOException
             {
-                stream.close();
             }
         };
     }
 
+    /**
+     * Returns the '.' and '..' entries of a directory.
+     */
+    private List<HimeraDirectoryEntry> listPseudoEntries(FsInode dir) {
+        return _jdbc.query("SELECT i.*, '.' AS iname FROM t_inodes i WHERE i.inumber=? " +
+                           "UNION ALL " +
+                           "SELECT i.*, '..' AS iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.iparent WHERE d.ichild=?",
+                           (rs, rowNum) -> toDirectoryEntry(dir, rs),
+                           dir.ino(), dir.ino());
+    }
+
+    /**
+     * Returns up to {@code limit} entries of a directory ordered by name and
+     * following the entry {@code after}, or starting with the first entry if
+     * {@code after} is null. The '.' and '..' entries are not included.
+     *
+     * Each page is fetched with a separate query using the primary key of
+     * t_dirs, thus neither the result set of the whole directory nor a
+     * database connection is held while a listing is consumed.
+     */
+    List<HimeraDirectoryEntry> listDirectoryPage(FsInode dir, String after, int limit) {
+        String sql = (after == null)
+                     ? "SELECT i.*, d.iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.ichild " +
+                       "WHERE d.iparent=? ORDER BY d.iname"
+                     : "SELECT i.*, d.iname FROM t_inodes i JOIN t_dirs d ON i.inumber = d.ichild " +
+                       "WHERE d.iparent=? AND d.iname > ? ORDER BY d.iname";
+        return _jdbc.query(con -> {
+                               PreparedStatement ps = con.prepareStatement(sql);
+                               ps.setMaxRows(limit);
+                               ps.setFetchSize(limit);
+                               ps.setLong(1, dir.ino());
+                               if (after != null) {
+                                   ps.setString(2, after);
+                               }
+                               return ps;
+                           },
+                           (rs, rowNum) -> toDirectoryEntry(dir, rs));
+    }
+
+    private HimeraDirectoryEntry toDirectoryEntry(FsInode dir, ResultSet rs) throws SQLException {
+        Stat stat = toStat(rs);
+        FsInode inode = new FsInode(dir.getFs(), rs.getLong("inumber"), FsInodeType.INODE, 0, stat);
+        inode.setParent(dir);
+        return new HimeraDirectoryEntry(rs.getString("iname"), inode, stat);
+    }
+
     /**
      * Removes the hard link {@code name} in {@code parent} to {@code inode}. If the
      * last link is removed the object is deleted.
@@ -371,7 +405,7 @@ public class FsSqlDriver {
         }
     }
 
-    private Stat toStat(ResultSet rs) throws SQLException
+    Stat toStat(ResultSet rs) throws SQLException
     {
         Stat stat = new Stat();
         stat.setIno(rs.getLong("inumber"));
@@ -1466,49 +1500,52 @@ public class FsSqlDriver {
      */
     FsInode path2inode(FsInode root, String path) throws ChimeraFsException
     {
-        File pathFile = new File(path);
-        List<String> pathElemts = new ArrayList<>();
-
-        do {
-            String fileName = pathFile.getName();
-            if (!fileName.isEmpty()) {
-                /*
-                 * skip multiple '/'
-                 */
-                pathElemts.add(pathFile.getName());
-            }
+        return path2inode(root, path, null);
+    }
 
-            pathFile = pathFile.getParentFile();
-        } while (pathFile != null);
+    /**
+     * get inode of given path starting <i>root</i> inode, using <i>cache</i>
+     * for intermediate path elements.
+     * @param root staring point
+     * @param path
+     * @param cache directory entry cache, may be null
+     * @return inode or null if path does not exist.
+     */
+    FsInode path2inode(FsInode root, String path, DirectoryEntryCache cache) throws ChimeraFsException
+    {
+        List<String> pathElements = splitPath(path);
 
         FsInode parentInode = root;
         FsInode inode = root;
-        /*
-         * while list in reverse order, we have too go backward
-         */
-        for (int i = pathElemts.size(); i > 0; i--) {
-            String f = pathElemts.get(i - 1);
-            inode = inodeOf(parentInode, f, STAT);
 
-            if (inode == null) {
+        int i = 0;
+        while (i < pathElements.size()) {
+            List<FsInode> resolved = resolve(parentInode, pathElements.subList(i, pathElements.size()), cache);
+            if (resolved.isEmpty()) {
                 /*
                  * element not found stop walking
                  */
-                break;
+                return null;
             }
+            i += resolved.size();
+            inode = resolved.get(resolved.size() - 1);
 
             /*
              * if is a link, then resolve it
              */
             Stat s = inode.statCache();
             if (UnixPermission.getType(s.getMode()) == UnixPermission.S_IFLNK) {
-                byte[] b = new byte[(int) s.getSize()];
-                int n = read(inode, 0, 0, b, 0, b.length);
-                String link = new String(b, 0, n);
+                if (resolved.size() > 1) {
+                    parentInode = resolved.get(resolved.size() - 2);
+                }
+                String link = readLink(inode, s);
                 if (link.charAt(0) == File.separatorChar) {
                     parentInode = new FsInode(parentInode.getFs(), _root);
                 }
-                inode = path2inode(parentInode, link);
+                inode = path2inode(parentInode, link, cache);
+                if (inode == null) {
+                    return null;
+                }
             }
             parentInode = inode;
         }
@@ -1525,18 +1562,21 @@ public class FsSqlDriver {
      */
     List<FsInode> path2inodes(FsInode root, String path) throws ChimeraFsException
     {
-        File pathFile = new File(path);
-        List<String> pathElements = new ArrayList<>();
+        return path2inodes(root, path, null);
+    }
 
-        do {
-            String fileName = pathFile.getName();
-            if (!fileName.isEmpty()) {
-                /* Skip multiple file separators.
-                 */
-                pathElements.add(pathFile.getName());
-            }
-            pathFile = pathFile.getParentFile();
-        } while (pathFile != null);
+    /**
+     * Get the inodes of given the path starting at <i>root</i>, using
+     * <i>cache</i> for intermediate path elements.
+     *
+     * @param root staring point
+     * @param path
+     * @param cache directory entry cache, may be null
+     * @return inode or null if path does not exist.
+     */
+    List<FsInode> path2inodes(FsInode root, String path, DirectoryEntryCache cache) throws ChimeraFsException
+    {
+        List<String> pathElements = splitPath(path);
 
         FsInode parentInode = root;
         FsInode inode;
@@ -1544,30 +1584,30 @@ public class FsSqlDriver {
         List<FsInode> inodes = new ArrayList<>(pathElements.size() + 1);
         inodes.add(root);
 
-        /* Path elements are in reverse order.
-         */
-        for (String f: Lists.reverse(pathElements)) {
-            inode = inodeOf(parentInode, f, STAT);
-
-            if (inode == null) {
+        int i = 0;
+        while (i < pathElements.size()) {
+            List<FsInode> resolved = resolve(parentInode, pathElements.subList(i, pathElements.size()), cache);
+            if (resolved.isEmpty()) {
                 return Collections.emptyList();
             }
-
-            inodes.add(inode);
+            i += resolved.size();
+            inodes.addAll(resolved);
+            inode = resolved.get(resolved.size() - 1);
 
             /* If inode is a link then resolve it.
              */
             Stat s = inode.statCache();
             if (UnixPermission.getType(s.getMode()) == UnixPermission.S_IFLNK) {
-                byte[] b = new byte[(int) s.getSize()];
-                int n = read(inode, 0, 0, b, 0, b.length);
-                String link = new String(b, 0, n);
+                if (resolved.size() > 1) {
+                    parentInode = resolved.get(resolved.size() - 2);
+                }
+                String link = readLink(inode, s);
                 if (link.charAt(0) == '/') {
                     parentInode = new FsInode(parentInode.getFs(), _root);
                     inodes.add(parentInode);
                 }
                 List<FsInode> linkInodes =
-                    path2inodes(parentInode, link);
+                    path2inodes(parentInode, link, cache);
                 if (linkInodes.isEmpty()) {
                     return Collections.emptyList();
                 }
@@ -1580,6 +1620,118 @@ public class FsSqlDriver {
         return inodes;
     }
 
+    /**
+     * Splits a path into its elements, skipping empty elements caused by
+     * multiple file separators.
+     */
+    private static List<String> splitPath(String path)
+    {
+        File pathFile = new File(path);
+        List<String> pathElements = new ArrayList<>();
+
+        do {
+            String fileName = pathFile.getName();
+            if (!fileName.isEmpty()) {
+                pathElements.add(fileName);
+            }
+            pathFile = pathFile.getParentFile();
+        } while (pathFile != null);
+
+        return Lists.reverse(pathElements);
+    }
+
+    private String readLink(FsInode inode, Stat stat)
+    {
+        byte[] b = new byte[(int) stat.getSize()];
+        int n = read(inode, 0, 0, b, 0, b.length);
+        return new String(b, 0, n);
+    }
+
+    /**
+     * Resolves a prefix of the given path elements relative to <i>parent</i>.
+     * The special names '.' and '..' are resolved by {@link #inodeOf}, while
+     * any sequence of ordinary names is passed to {@link #lookup}.
+     *
+     * If a cache is provided, it is consulted for all but the last of the
+     * given path elements, and directories found by {@link #lookup} are added
+     * to it.
+     *
+     * @return the inodes of the resolved prefix, or an empty list if the first
+     * element does not exist.
+     */
+    private List<FsInode> resolve(FsInode parent, List<String> names, DirectoryEntryCache cache)
+    {
+        String name = names.get(0);
+        if (name.equals(".") || name.equals("..")) {
+            FsInode inode = inodeOf(parent, name, STAT);
+            return (inode == null) ? Collections.emptyList() : Collections.singletonList(inode);
+        }
+
+        int end = 1;
+        while (end < names.size() && !names.get(end).equals(".") && !names.get(end).equals("..")) {
+            end++;
+        }
+
+        if (cache == null) {
+            return lookup(parent, names.subList(0, end));
+        }
+
+        List<FsInode> inodes = new ArrayList<>();
+        FsInode dir = parent;
+        for (int i = 0; i < end && i < names.size() - 1; i++) {
+            FsInode inode = cache.get(dir, names.get(i));
+            if (inode == null) {
+                break;
+            }
+            inodes.add(inode);
+            dir = inode;
+        }
+        if (!inodes.isEmpty()) {
+            return inodes;
+        }
+
+        long token = cache.beginLookup();
+        inodes = lookup(parent, names.subList(0, end));
+        for (int i = 0; i < inodes.size(); i++) {
+            cache.put(token, dir, names.get(i), inodes.get(i));
+            dir = inodes.get(i);
+        }
+        return inodes;
+    }
+
+    /**
+     * Looks up a sequence of directory entries starting at <i>parent</i>, with
+     * each element being looked up in the directory found for the previous
+     * element. Resolution stops at the first element that does not exist or
+     * that is not a directory. In the latter case the inode of that element is
+     * the last element of the result. Special names '.' and '..' are not
+     * interpreted.
+     *
+     * The default implementation issues one query per path element. Drivers
+     * for databases that support it may resolve all elements in a single
+     * query.
+     *
+     * @param parent the directory in which to look up the first element
+     * @param names path elements
+     * @return the inodes, with stat cache, of the resolved elements
+     */
+    List<FsInode> lookup(FsInode parent, List<String> names)
+    {
+        List<FsInode> inodes = new ArrayList<>(names.size());
+        FsInode inode = parent;
+        for (String name : names) {
+            inode = inodeOf(inode, name, STAT);
+            if (inode == null) {
+                break;
+            }
+            inodes.add(inode);
+            if (!inode.isDirectory()) {
+                break;
+            }
+        }
+        return inodes;
+    }
+
     /**
      * Get inode's Access Control List. An empty list is returned if there are no ACL assigned
      * to the <code>inode</code>.
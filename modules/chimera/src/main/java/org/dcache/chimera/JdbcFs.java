@@ -33,6 +33,8 @@ import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
 
@@ -147,6 +149,15 @@ public class JdbcFs implements FileSystemProvider {
                     .maximumSize(100000)
                     .build();
 
+    /**
+     * Cache of directory lookups used during path resolution; null if disabled.
+     */
+    private volatile DirectoryEntryCache _dirCache;
+
+    private long _dirCacheSize;
+    private long _dirCacheLifetime = 1;
+    private TimeUnit _dirCacheLifetimeUnit = TimeUnit.SECONDS;
+
     /**
      * current fs id
      */
@@ -181,6 +192,84 @@ public class JdbcFs implements FileSystemProvider {
         _sqlDriver = FsSqlDriver.getDriverInstance(dataSource);
     }
 
+    /**
+     * Sets the approximate amount of memory in bytes used to cache directory
+     * lookups. Zero disables the cache.
+     */
+    public synchronized void setDirectoryCacheSize(long bytes)
+    {
+        checkArgument(bytes >= 0, "Cache size must not be negative");
+        _dirCacheSize = bytes;
+        buildDirectoryCache();
+    }
+
+    /**
+     * Sets how long a directory lookup is cached. As modifications by other
+     * processes are not observed, this is the maximum time for which such
+     * modifications may go unnoticed.
+     */
+    public synchronized void setDirectoryCacheLifetime(long lifetime)
+    {
+        checkArgument(lifetime > 0, "Cache lifetime must be positive");
+        _dirCacheLifetime = lifetime;
+        buildDirectoryCache();
+    }
+
+    public synchronized void setDirectoryCacheLifetimeUnit(TimeUnit unit)
+    {
+        _dirCacheLifetimeUnit = unit;
+        buildDirectoryCache();
+    }
+
+    private void buildDirectoryCache()
+    {
+        _dirCache = (_dirCacheSize == 0)
+                    ? null
+                    : new DirectoryEntryCache(_dirCacheSize, _dirCacheLifetime, _dirCacheLifetimeUnit);
+    }
+
+    /**
+     * Drops entry {@code name} of {@code parent} from the directory cache. Must be
+     * called within the transaction that modifies the entry. The entry is dropped
+     * again when the transaction completes, as concurrent lookups may have cached
+     * the old state of the entry before the transaction committed.
+     */
+    private void invalidateDirectoryEntry(FsInode parent, String name)
+    {
+        DirectoryEntryCache cache = _dirCache;
+        if (cache != null) {
+            cache.invalidate(parent, name);
+            onTransactionCompletion(() -> cache.invalidate(parent, name));
+        }
+    }
+
+    /**
+     * Drops all entries from the directory cache. Must be called within the
+     * transaction that modifies the directory.
+     */
+    private void invalidateDirectoryCache()
+    {
+        DirectoryEntryCache cache = _dirCache;
+        if (cache != null) {
+            cache.invalidateAll();
+            onTransactionCompletion(cache::invalidateAll);
+        }
+    }
+
+    private static void onTransactionCompletion(Runnable runnable)
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion(int status)
+                {
+                    runnable.run();
+                }
+            });
+        }
+    }
+
     private FsInode getWormID() throws ChimeraFsException {
 
         return this.path2inode("/admin/etc/config");
@@ -260,6 +349,7 @@ public class JdbcFs implements FileSystemProvider {
             try {
                 Stat stat = parent.statCache();
                 int group = (stat.getMode() & UnixPermission.S_ISGID) != 0 ? stat.getGid() : gid;
+                invalidateDirectoryEntry(parent, name);
                 inode = _sqlDriver.createFile(parent, name, uid, group, mode, UnixPermission.S_IFLNK);
                 // link is a regular file where content is a reference
                 _sqlDriver.setInodeIo(inode, true);
@@ -396,6 +486,7 @@ public class JdbcFs implements FileSystemProvider {
                 }
 
                 int gid = (parentStat.getMode() & UnixPermission.S_ISGID) != 0 ? parentStat.getGid() : group;
+                invalidateDirectoryEntry(parent, name);
                 FsInode inode = _sqlDriver.createFile(parent, name, owner, gid, mode, type);
                 _sqlDriver.copyAcl(parent, inode, RsType.FILE,
                                    EnumSet.of(INHERIT_ONLY_ACE, DIRECTORY_INHERIT_ACE, FILE_INHERIT_ACE),
@@ -436,6 +527,7 @@ public class JdbcFs implements FileSystemProvider {
                 }
                 Stat stat = parent.statCache();
                 int gid = (stat.getMode() & UnixPermission.S_ISGID) != 0 ? stat.getGid() : group;
+                invalidateDirectoryEntry(parent, name);
                 FsInode inode = _sqlDriver.createFileWithId(parent, id, name, owner, gid, mode, type);
                 _sqlDriver.copyAcl(parent, inode, RsType.FILE,
                                    EnumSet.of(INHERIT_ONLY_ACE, DIRECTORY_INHERIT_ACE, FILE_INHERIT_ACE),
@@ -481,6 +573,7 @@ public class JdbcFs implements FileSystemProvider {
             FsInode parent = path2inode(parentPath);
             String name = filePath.getName();
             FsInode inode = _sqlDriver.inodeOf(parent, name, STAT);
+            invalidateDirectoryEntry(parent, name);
             if (inode == null || !_sqlDriver.remove(parent, name, inode)) {
                 throw new FileNotFoundHimeraFsException(path);
             }
@@ -491,6 +584,7 @@ public class JdbcFs implements FileSystemProvider {
     @Override
     public void remove(FsInode directory, String name, FsInode inode) throws ChimeraFsException {
         inTransaction(status -> {
+            invalidateDirectoryEntry(directory, name);
             if (!_sqlDriver.remove(directory, name, inode)) {
                 throw new FileNotFoundHimeraFsException(name);
             }
@@ -511,8 +605,11 @@ public class JdbcFs implements FileSystemProvider {
             if (!inode.exists()) {
                 throw new FileNotFoundHimeraFsException("No such file.");
             }
-            if (inode.isDirectory() && inode.statCache().getNlink() > 2) {
-                throw new DirNotEmptyHimeraFsException("Directory is not empty");
+            if (inode.isDirectory()) {
+                if (inode.statCache().getNlink() > 2) {
+                    throw new DirNotEmptyHimeraFsException("Directory is not empty");
+                }
+                invalidateDirectoryCache();
             }
             _sqlDriver.remove(inode);
             return null;
@@ -575,6 +672,7 @@ public class JdbcFs implements FileSystemProvider {
                     perm = mode;
                 }
 
+                invalidateDirectoryEntry(parent, name);
                 FsInode inode = _sqlDriver.mkdir(parent, name, owner, gid, perm);
                 _sqlDriver.copyTags(parent, inode);
                 _sqlDriver.copyAcl(parent, inode, RsType.DIR, EnumSet.of(INHERIT_ONLY_ACE),
@@ -617,6 +715,7 @@ public class JdbcFs implements FileSystemProvider {
                     gid = group;
                     perm = mode;
                 }
+                invalidateDirectoryEntry(parent, name);
                 FsInode inode = _sqlDriver.mkdir(parent, name, owner, gid, perm);
                 _sqlDriver.createTags(inode, owner, gid, perm & 0666, tags);
                 _sqlDriver.writeAcl(inode, RsType.DIR, acl);
@@ -635,7 +734,7 @@ public class JdbcFs implements FileSystemProvider {
 
     @Override
     public FsInode path2inode(String path, FsInode startFrom) throws ChimeraFsException {
-        FsInode inode = _sqlDriver.path2inode(startFrom, path);
+        FsInode inode = _sqlDriver.path2inode(startFrom, path, _dirCache);
         if (inode == null) {
             throw new FileNotFoundHimeraFsException(path);
         }
@@ -698,7 +797,7 @@ public class JdbcFs implements FileSystemProvider {
     public List<FsInode> path2inodes(String path, FsInode startFrom)
         throws ChimeraFsException
     {
-        List<FsInode> inodes = _sqlDriver.path2inodes(startFrom, path);
+        List<FsInode> inodes = _sqlDriver.path2inodes(startFrom, path, _dirCache);
         if (inodes.isEmpty()) {
             throw new FileNotFoundHimeraFsException(path);
         }
@@ -967,6 +1066,9 @@ public class JdbcFs implements FileSystemProvider {
             switch (inode.type()) {
             case INODE:
             case PSET:
+                if (level == 0 && mayAffectDirectoryLookup(inode, stat)) {
+                    invalidateDirectoryCache();
+                }
                 boolean applied = _sqlDriver.setInodeAttributes(inode, level, stat);
                 if (!applied) {
                     /**
@@ -1000,6 +1102,21 @@ public class JdbcFs implements FileSystemProvider {
         });
     }
 
+    /**
+     * Returns whether changing the attributes of {@code inode} may invalidate the
+     * information cached for directory lookups. Only the type, ownership and
+     * permissions of cached directories are relied upon.
+     */
+    private static boolean mayAffectDirectoryLookup(FsInode inode, Stat stat)
+    {
+        if (!stat.isDefined(Stat.StatAttributes.MODE) && !stat.isDefined(Stat.StatAttributes.UID)
+                && !stat.isDefined(Stat.StatAttributes.GID)) {
+            return false;
+        }
+        Stat cached = inode.getStatCache();
+        return cached == null || (cached.getMode() & UnixPermission.F_TYPE) == UnixPermission.S_IFDIR;
+    }
+
     @Override
     public boolean isIoEnabled(FsInode inode) throws ChimeraFsException {
         return _sqlDriver.isIoEnabled(inode);
@@ -1067,6 +1184,9 @@ public class JdbcFs implements FileSystemProvider {
                 throw new NotDirChimeraException(destDir);
             }
 
+            invalidateDirectoryEntry(srcDir, source);
+            invalidateDirectoryEntry(destDir, dest);
+
             FsInode destInode = _sqlDriver.inodeOf(destDir, dest, STAT);
 
             if (destInode != null) {
@@ -1369,6 +1489,12 @@ public class JdbcFs implements FileSystemProvider {
             sb.append("rootID    : ").append(e.getMessage()).append('\n');
         }
         sb.append("FsId      : ").append(_fsId).append('\n');
+        DirectoryEntryCache cache = _dirCache;
+        if (cache != null) {
+            sb.append("Dir cache : ").append(cache.size()).append(" entries, ")
+                    .append(cache.getHits()).append(" hits, ")
+                    .append(cache.getMisses()).append(" misses").append('\n');
+        }
         return sb.toString();
     }
 
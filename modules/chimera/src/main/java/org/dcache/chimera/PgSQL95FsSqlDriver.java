@@ -22,7 +22,10 @@ import org.springframework.dao.DuplicateKeyException;
 
 import javax.sql.DataSource;
 
+import java.sql.Array;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.dcache.chimera.store.InodeStorageInformation;
 
@@ -49,6 +52,43 @@ public class PgSQL95FsSqlDriver extends PgSQLFsSqlDriver {
     }
 
 
+    /**
+     * Resolves all path elements in a single query by walking t_dirs with a
+     * recursive common table expression. Recursion only descends into
+     * directories, thus the walk stops at the first element that does not
+     * exist or that is a file or symbolic link.
+     */
+    @Override
+    List<FsInode> lookup(FsInode parent, List<String> names) {
+        if (names.size() == 1) {
+            return super.lookup(parent, names);
+        }
+        return _jdbc.query("WITH RECURSIVE paths(inumber, depth) AS (" +
+                           "    VALUES (CAST(? AS bigint), 0) " +
+                           "  UNION ALL " +
+                           "    SELECT d.ichild, p.depth + 1 FROM paths p " +
+                           "      JOIN t_inodes i ON i.inumber = p.inumber " +
+                           "      JOIN t_dirs d ON d.iparent = p.inumber " +
+                           "    WHERE i.itype = ? AND d.iname = (CAST(? AS varchar[]))[p.depth + 1]" +
+                           ") " +
+                           "SELECT c.* FROM paths p JOIN t_inodes c ON c.inumber = p.inumber " +
+                           "WHERE p.depth > 0 ORDER BY p.depth",
+                           ps -> {
+                               Array elements = ps.getConnection().createArrayOf("varchar", names.toArray());
+                               ps.setLong(1, parent.ino());
+                               ps.setInt(2, UnixPermission.S_IFDIR);
+                               ps.setArray(3, elements);
+                           },
+                           rs -> {
+                               List<FsInode> inodes = new ArrayList<>(names.size());
+                               while (rs.next()) {
+                                   inodes.add(new FsInode(parent.getFs(), rs.getLong("inumber"),
+                                                          FsInodeType.INODE, 0, toStat(rs)));
+                               }
+                               return inodes;
+                           });
+    }
+
     @Override
     void createEntryInParent(FsInode parent, String name, FsInode inode) {
         int n = _jdbc.update("INSERT INTO t_dirs (iparent, iname, ichild) VALUES(?,?,?) ON CONFLICT ON CONSTRAINT t_dirs_pkey DO NOTHING",
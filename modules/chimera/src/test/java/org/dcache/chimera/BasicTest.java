@@ -13,7 +13,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
@@ -760,6 +762,112 @@ public class BasicTest extends ChimeraTestCaseHelper {
                      inodes);
     }
 
+    @Test
+    public void testResolveLinkInsideDeepPathToId() throws Exception
+    {
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        FsInode b = a.mkdir("b", 0, 0, 0755);
+        FsInode c = a.mkdir("c", 0, 0, 0755);
+        FsInode file = c.create("file", 0, 0, 0644);
+        b.createLink("aLink", 0, 0, 055, "../c".getBytes());
+
+        FsInode inode = _fs.path2inode("/a/b/aLink/file", _rootInode);
+        assertEquals("Link resolution did not work", file, inode);
+    }
+
+    @Test
+    public void testResolveLinkInsideDeepPathToIds() throws Exception
+    {
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        FsInode b = a.mkdir("b", 0, 0, 0755);
+        FsInode c = a.mkdir("c", 0, 0, 0755);
+        FsInode file = c.create("file", 0, 0, 0644);
+        FsInode linkInode = b.createLink("aLink", 0, 0, 055, "../c".getBytes());
+
+        List<FsInode> inodes = _fs.path2inodes("/a/b/aLink/file", _rootInode);
+        assertEquals("Link resolution did not work",
+                     Lists.newArrayList(_rootInode, a, b, linkInode, a, c, file),
+                     inodes);
+    }
+
+    @Test
+    public void testResolveDeepPathWithDots() throws Exception
+    {
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        FsInode b = a.mkdir("b", 0, 0, 0755);
+        FsInode c = a.mkdir("c", 0, 0, 0755);
+
+        assertEquals(c, _fs.path2inode("/a/b/../c/.", _rootInode));
+        assertEquals(Lists.newArrayList(_rootInode, a, b, a, c, c),
+                     _fs.path2inodes("/a/b/../c/.", _rootInode));
+    }
+
+    @Test(expected = FileNotFoundHimeraFsException.class)
+    public void testResolveDeepPathThroughFile() throws Exception
+    {
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        a.create("file", 0, 0, 0644);
+
+        _fs.path2inode("/a/file/b", _rootInode);
+    }
+
+    @Test
+    public void testDirectoryCacheRename() throws Exception
+    {
+        ((JdbcFs) _fs).setDirectoryCacheSize(1024 * 1024);
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        FsInode b = a.mkdir("b", 0, 0, 0755);
+        FsInode file = b.create("file", 0, 0, 0644);
+
+        assertEquals(file, _fs.path2inode("/a/b/file"));
+        assertEquals(file, _fs.path2inode("/a/b/file"));
+
+        _fs.rename(b, a, "b", _rootInode, "c");
+
+        assertEquals(file, _fs.path2inode("/c/file"));
+        try {
+            _fs.path2inode("/a/b/file");
+            fail("Renamed directory found under old name");
+        } catch (FileNotFoundHimeraFsException expected) {
+        }
+    }
+
+    @Test
+    public void testDirectoryCacheRemoveAndRecreate() throws Exception
+    {
+        ((JdbcFs) _fs).setDirectoryCacheSize(1024 * 1024);
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        FsInode b = a.mkdir("b", 0, 0, 0755);
+        b.create("file", 0, 0, 0644);
+
+        assertNotNull(_fs.path2inode("/a/b/file"));
+
+        _fs.remove(b, "file", _fs.path2inode("/a/b/file"));
+        _fs.remove(a, "b", b);
+        FsInode newB = a.mkdir("b", 0, 0, 0755);
+        FsInode newFile = newB.create("file", 0, 0, 0644);
+
+        assertEquals(newFile, _fs.path2inode("/a/b/file"));
+    }
+
+    @Test
+    public void testDirectoryCacheChmod() throws Exception
+    {
+        ((JdbcFs) _fs).setDirectoryCacheSize(1024 * 1024);
+        FsInode a = _rootInode.mkdir("a", 0, 0, 0755);
+        a.mkdir("b", 0, 0, 0755).create("file", 0, 0, 0644);
+
+        List<FsInode> inodes = _fs.path2inodes("/a/b/file");
+        assertEquals(0755, inodes.get(1).statCache().getMode() & 0777);
+
+        Stat stat = new Stat();
+        stat.setMode(0700);
+        _fs.setInodeAttributes(a, 0, stat);
+
+        inodes = _fs.path2inodes("/a/b/file");
+        assertEquals(0700, inodes.get(1).statCache().getMode() & 0777);
+    }
+
     @Test(expected = FileExistsChimeraFsException.class)
     public void testLinkWithExistingName() throws Exception {
 
@@ -1068,6 +1176,29 @@ public class BasicTest extends ChimeraTestCaseHelper {
         }
     }
 
+    @Test
+    public void testListDirectorySpanningPages() throws Exception {
+        FsInode dir = _rootInode.mkdir("junit");
+        int count = 2500;
+        for (int i = 0; i < count; i++) {
+            dir.create("file" + i, 0, 0, 0644);
+        }
+
+        Set<String> names = new HashSet<>();
+        try (DirectoryStreamB<HimeraDirectoryEntry> dirStream = _fs.newDirectoryStream(dir)) {
+            for (HimeraDirectoryEntry entry : dirStream) {
+                assertTrue("Duplicate entry " + entry.getName(), names.add(entry.getName()));
+            }
+        }
+
+        assertEquals(count + 2, names.size());
+        assertTrue(names.contains("."));
+        assertTrue(names.contains(".."));
+        for (int i = 0; i < count; i++) {
+            assertTrue("Missing entry file" + i, names.contains("file" + i));
+        }
+    }
+
     private void assertHasChecksum(Checksum expectedChecksum, FsInode inode) throws Exception {
         for(Checksum checksum: _fs.getInodeChecksums(inode)) {
             if (checksum.equals(expectedChecksum)) {
@@ -0,0 +1,182 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcache.chimera.posix.Stat;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * PostgreSQL specific queries cannot run on the HSQLDB database used by
+ * {@link BasicTest}. These tests check the parameters the driver binds and
+ * how it maps canned rows to inodes; the query itself is not verified.
+ */
+public class PgSQL95FsSqlDriverTest {
+
+    private static final long ROOT = 1;
+    private static final long PARENT = 2;
+
+    private final List<String> queries = new ArrayList<>();
+    private final List<PreparedStatement> statements = new ArrayList<>();
+    private final Deque<ResultSet> results = new ArrayDeque<>();
+
+    private Connection connection;
+    private Array elements;
+    private FsInode parent;
+    private PgSQL95FsSqlDriver driver;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        elements = mock(Array.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        given(metaData.getDatabaseProductName()).willReturn("PostgreSQL");
+        given(connection.getMetaData()).willReturn(metaData);
+        DataSource dataSource = mock(DataSource.class);
+        given(dataSource.getConnection()).willReturn(connection);
+        given(connection.createArrayOf(eq("varchar"), any(Object[].class))).willReturn(elements);
+        given(connection.prepareStatement(anyString())).willAnswer(invocation -> {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            given(ps.getConnection()).willReturn(connection);
+            given(ps.executeQuery()).willReturn(results.remove());
+            queries.add((String) invocation.getArguments()[0]);
+            statements.add(ps);
+            return ps;
+        });
+
+        results.add(aResultSet(ROOT));
+        driver = new PgSQL95FsSqlDriver(dataSource);
+        queries.clear();
+        statements.clear();
+
+        parent = new FsInode(mock(FileSystemProvider.class), PARENT);
+    }
+
+    /**
+     * Returns a result set with one t_inodes row per inumber. All but the
+     * last row are directories.
+     */
+    private static ResultSet aResultSet(long... inumbers) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        given(rs.next()).willAnswer(invocation -> row.incrementAndGet() < inumbers.length);
+        given(rs.getLong("inumber")).willAnswer(invocation -> inumbers[row.get()]);
+        given(rs.getLong("isize")).willAnswer(invocation -> inumbers[row.get()] * 100);
+        given(rs.getInt("itype")).willAnswer(invocation ->
+                (row.get() < inumbers.length - 1) ? UnixPermission.S_IFDIR : UnixPermission.S_IFREG);
+        given(rs.getInt("imode")).willReturn(0755);
+        given(rs.getInt("inlink")).willReturn(1);
+        given(rs.getString("ipnfsid")).willAnswer(invocation -> "id" + inumbers[row.get()]);
+        given(rs.getTimestamp(anyString())).willReturn(new Timestamp(1000));
+        return rs;
+    }
+
+    @Test
+    public void testLookupResolvesAllElementsInOneQuery() throws Exception {
+        results.add(aResultSet(10, 11, 12));
+
+        List<FsInode> inodes = driver.lookup(parent, Arrays.asList("a", "b", "c"));
+
+        assertThat(queries, hasSize(1));
+        PreparedStatement ps = statements.get(0);
+        verify(ps).setLong(1, PARENT);
+        verify(ps).setInt(2, UnixPermission.S_IFDIR);
+        verify(ps).setArray(3, elements);
+        verify(connection).createArrayOf("varchar", new Object[] { "a", "b", "c" });
+
+        assertThat(inodes, hasSize(3));
+        assertThat(inodes.get(0).ino(), is(10L));
+        assertThat(inodes.get(1).ino(), is(11L));
+        assertThat(inodes.get(2).ino(), is(12L));
+    }
+
+    @Test
+    public void testLookupMapsRowsToCachedStat() throws Exception {
+        results.add(aResultSet(10, 11));
+
+        List<FsInode> inodes = driver.lookup(parent, Arrays.asList("a", "b"));
+
+        FsInode dir = inodes.get(0);
+        assertThat(dir.type(), is(FsInodeType.INODE));
+        assertThat(dir.getLevel(), is(0));
+        Stat stat = dir.statCache();
+        assertThat(stat.getIno(), is(10L));
+        assertThat(stat.getId(), is("id10"));
+        assertThat(stat.getMode(), is(UnixPermission.S_IFDIR | 0755));
+        assertThat(stat.getSize(), is(1000L));
+        assertThat(stat.getMTime(), is(1000L));
+        assertThat(inodes.get(1).statCache().getMode(), is(UnixPermission.S_IFREG | 0755));
+        assertThat(queries, hasSize(1));
+    }
+
+    @Test
+    public void testLookupReturnsResolvedPrefix() throws Exception {
+        results.add(aResultSet(10));
+
+        List<FsInode> inodes = driver.lookup(parent, Arrays.asList("a", "b", "c"));
+
+        assertThat(inodes, hasSize(1));
+        assertThat(inodes.get(0).ino(), is(10L));
+    }
+
+    @Test
+    public void testLookupReturnsEmptyListIfFirstElementIsMissing() throws Exception {
+        results.add(aResultSet());
+
+        List<FsInode> inodes = driver.lookup(parent, Arrays.asList("a", "b"));
+
+        assertThat(inodes, is(empty()));
+    }
+
+    @Test
+    public void testLookupOfSingleElementDoesNotRecurse() throws Exception {
+        results.add(aResultSet(10));
+
+        List<FsInode> inodes = driver.lookup(parent, Arrays.asList("a"));
+
+        assertThat(queries, hasSize(1));
+        assertThat(inodes, hasSize(1));
+        assertThat(inodes.get(0).ino(), is(10L));
+        verify(connection, never()).createArrayOf(anyString(), any(Object[].class));
+    }
+}
@@ -0,0 +1,110 @@
+package org.dcache.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of latencies with millisecond resolution.
+ *
+ * Latencies are counted in buckets with exponentially growing widths:
+ * bucket 0 holds latencies below one millisecond and bucket n holds
+ * latencies in the range [2^(n-1), 2^n) milliseconds. Updates are wait
+ * free, which makes the histogram suitable for recording latencies on
+ * hot paths.
+ */
+public class LatencyHistogram
+{
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final LongAccumulator _max = new LongAccumulator(Long::max, 0);
+
+    public void update(long duration, TimeUnit unit)
+    {
+        long millis = Math.max(unit.toMillis(duration), 0);
+        _buckets.incrementAndGet(bucketOf(millis));
+        _count.increment();
+        _sum.add(millis);
+        _max.accumulate(millis);
+    }
+
+    private static int bucketOf(long millis)
+    {
+        return Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKETS - 1);
+    }
+
+    /**
+     * Returns the exclusive upper bound in milliseconds of latencies
+     * counted in {@code bucket}.
+     */
+    private static long upperBoundOf(int bucket)
+    {
+        return (bucket == BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public long getCount()
+    {
+        return _count.sum();
+    }
+
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    public double getMean()
+    {
+        long count = _count.sum();
+        return (count == 0) ? 0 : _sum.sum() / (double) count;
+    }
+
+    /**
+     * Returns an upper bound in milliseconds for the latency below which
+     * the given fraction of all recorded latencies fall. The bound is never
+     * larger than the largest recorded latency.
+     */
+    public long getPercentile(double fraction)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _buckets.get(i);
+            total += counts[i];
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of latencies counted per bucket. Element n holds
+     * the number of latencies below 2^n milliseconds that are not counted
+     * in any of the lower buckets.
+     */
+    public long[] getBuckets()
+    {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _buckets.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.1f ms 50%%<=%d ms 95%%<=%d ms 99%%<=%d ms max=%d ms",
+                             getCount(), getMean(), getPercentile(0.5), getPercentile(0.95),
+                             getPercentile(0.99), getMax());
+    }
+}
@@ -0,0 +1,68 @@
+package org.dcache.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest
+{
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setup()
+    {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void shouldBeEmptyInitially()
+    {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.99));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void shouldCountLatenciesInExponentialBuckets()
+    {
+        histogram.update(0, TimeUnit.MILLISECONDS);
+        histogram.update(1, TimeUnit.MILLISECONDS);
+        histogram.update(3, TimeUnit.MILLISECONDS);
+        histogram.update(1, TimeUnit.SECONDS);
+
+        long[] buckets = histogram.getBuckets();
+        assertEquals(1, buckets[0]);
+        assertEquals(1, buckets[1]);
+        assertEquals(1, buckets[2]);
+        assertEquals(1, buckets[10]);
+        assertEquals(4, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(251.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void shouldBoundPercentilesByBucket()
+    {
+        for (int i = 0; i < 99; i++) {
+            histogram.update(5, TimeUnit.MILLISECONDS);
+        }
+        histogram.update(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(8, histogram.getPercentile(0.5));
+        assertEquals(8, histogram.getPercentile(0.99));
+        assertEquals(100, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void shouldIgnoreSubMillisecondPrecision()
+    {
+        histogram.update(999, TimeUnit.MICROSECONDS);
+
+        assertEquals(1, histogram.getBuckets()[0]);
+        assertEquals(0, histogram.getMax());
+    }
+}
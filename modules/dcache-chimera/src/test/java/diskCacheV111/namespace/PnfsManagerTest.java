@@ -12,18 +12,27 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.security.auth.Subject;
+
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URI;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.FileNotFoundCacheException;
 import diskCacheV111.util.FsPath;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.util.RetentionPolicy;
@@ -34,10 +43,15 @@ import diskCacheV111.vehicles.PnfsCreateEntryMessage;
 import diskCacheV111.vehicles.PnfsCreateUploadPath;
 import diskCacheV111.vehicles.PnfsDeleteEntryMessage;
 import diskCacheV111.vehicles.PnfsGetCacheLocationsMessage;
+import diskCacheV111.vehicles.PnfsMessage;
 import diskCacheV111.vehicles.PnfsRenameMessage;
 import diskCacheV111.vehicles.PnfsSetChecksumMessage;
 import diskCacheV111.vehicles.StorageInfo;
 
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.CellEndpoint;
+import dmg.cells.nucleus.CellMessage;
+
 import org.dcache.auth.Subjects;
 import org.dcache.auth.attributes.Restrictions;
 import org.dcache.chimera.ChimeraFsException;
@@ -61,8 +75,14 @@ import static diskCacheV111.util.RetentionPolicy.CUSTODIAL;
 import static org.dcache.namespace.FileAttribute.*;
 import static org.dcache.namespace.FileType.DIR;
 import static org.dcache.namespace.FileType.REGULAR;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 public class PnfsManagerTest
 {
@@ -79,6 +99,9 @@ public class PnfsManagerTest
     private PnfsManagerV3 _pnfsManager;
     private Connection _conn;
     private FileSystemProvider _fs;
+    private final BlockingQueue<CellMessage> _replies = new LinkedBlockingQueue<>();
+    private final CountDownLatch _lookupStarted = new CountDownLatch(1);
+    private final CountDownLatch _lookupReleased = new CountDownLatch(1);
 
     @Before
     public void setUp() throws Exception {
@@ -135,6 +158,11 @@ public class PnfsManagerTest
         _pnfsManager.setDirectoryListLimit(100);
         _pnfsManager.init();
 
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+        doAnswer(invocation -> _replies.add((CellMessage) invocation.getArguments()[0]))
+                .when(endpoint).sendMessage(any(CellMessage.class));
+        _pnfsManager.setCellEndpoint(endpoint);
+
 
         _fs.mkdir("/pnfs");
         FsInode baseInode = _fs.mkdir("/pnfs/testRoot");
@@ -685,6 +713,152 @@ public class PnfsManagerTest
         assertTrue("atime is updated, but shouldn't", stat_after.getATime() == stat_before.getATime());
     }
 
+    @Test
+    public void testDuplicateGetFileAttributesIsAnsweredByRequestInFlight() throws Exception
+    {
+        PnfsId pnfsId = new PnfsId(_fs.createFile("/pnfs/testRoot/inFlight").getId());
+        NameSpaceProvider provider = blockFirstLookupOf(pnfsId);
+
+        PnfsGetFileAttributes first = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE, MODE));
+        send(first);
+        assertTrue("lookup did not start", _lookupStarted.await(5, SECONDS));
+        PnfsGetFileAttributes duplicate = new PnfsGetFileAttributes(pnfsId, EnumSet.of(MODE));
+        send(duplicate);
+        _lookupReleased.countDown();
+
+        List<PnfsMessage> replies = awaitReplies(2);
+
+        assertThat(replies.get(1), is(duplicate));
+        assertThat(duplicate.getReturnCode(), is(0));
+        assertTrue("mode is missing", duplicate.getFileAttributes().isDefined(MODE));
+        assertFalse("type was not requested", duplicate.getFileAttributes().isDefined(TYPE));
+        assertNotSame(first.getFileAttributes(), duplicate.getFileAttributes());
+        assertThat(getInfo(), containsString("Attached   : 1"));
+        verify(provider, times(1)).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+    }
+
+    @Test
+    public void testGetFileAttributesForMoreAttributesIsNotAnsweredByRequestInFlight() throws Exception
+    {
+        PnfsId pnfsId = new PnfsId(_fs.createFile("/pnfs/testRoot/inFlight").getId());
+        NameSpaceProvider provider = blockFirstLookupOf(pnfsId);
+
+        PnfsGetFileAttributes first = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        send(first);
+        assertTrue("lookup did not start", _lookupStarted.await(5, SECONDS));
+        PnfsGetFileAttributes superset = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE, MODE));
+        send(superset);
+        _lookupReleased.countDown();
+
+        List<PnfsMessage> replies = awaitReplies(2);
+
+        assertThat(replies.get(1), is(superset));
+        assertThat(superset.getReturnCode(), is(0));
+        assertTrue("mode is missing", superset.getFileAttributes().isDefined(MODE));
+        verify(provider, times(2)).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+    }
+
+    @Test
+    public void testFailureOfRequestInFlightIsSentToAllAttachedRequests() throws Exception
+    {
+        PnfsId pnfsId = new PnfsId(_fs.createFile("/pnfs/testRoot/inFlight").getId());
+        NameSpaceProvider provider = spy(_pnfsManager.getNameSpaceProvider());
+        doAnswer(invocation -> {
+            _lookupStarted.countDown();
+            _lookupReleased.await();
+            throw new FileNotFoundCacheException("no such file");
+        }).when(provider).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+        _pnfsManager.setNameSpaceProvider(provider);
+
+        PnfsGetFileAttributes first = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        send(first);
+        assertTrue("lookup did not start", _lookupStarted.await(5, SECONDS));
+        PnfsGetFileAttributes second = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        send(second);
+        PnfsGetFileAttributes third = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        send(third);
+        _lookupReleased.countDown();
+
+        awaitReplies(3);
+
+        assertThat(first.getReturnCode(), is(CacheException.FILE_NOT_FOUND));
+        assertThat(second.getReturnCode(), is(CacheException.FILE_NOT_FOUND));
+        assertThat(third.getReturnCode(), is(CacheException.FILE_NOT_FOUND));
+        verify(provider, times(1)).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+    }
+
+    @Test
+    public void testAttachedRequestsAreRequeuedIfRequestInFlightIsNotProcessed() throws Exception
+    {
+        PnfsId pnfsId = new PnfsId(_fs.createFile("/pnfs/testRoot/inFlight").getId());
+        NameSpaceProvider provider = blockFirstLookupOf(pnfsId);
+
+        PnfsGetFileAttributes first = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        CellMessage envelope = send(first);
+        assertTrue("lookup did not start", _lookupStarted.await(5, SECONDS));
+        PnfsGetFileAttributes duplicate = new PnfsGetFileAttributes(pnfsId, EnumSet.of(TYPE));
+        send(duplicate);
+
+        /* Prevent the first request from being processed by failing its reply. */
+        CellEndpoint endpoint = mock(CellEndpoint.class);
+        doAnswer(invocation -> {
+            CellMessage reply = (CellMessage) invocation.getArguments()[0];
+            if (reply == envelope) {
+                throw new RuntimeException("reply failed");
+            }
+            return _replies.add(reply);
+        }).when(endpoint).sendMessage(any(CellMessage.class));
+        _pnfsManager.setCellEndpoint(endpoint);
+        _lookupReleased.countDown();
+
+        List<PnfsMessage> replies = awaitReplies(1);
+
+        assertThat(replies.get(0), is(duplicate));
+        assertThat(duplicate.getReturnCode(), is(0));
+        assertThat(getInfo(), containsString("Requeued   : 1"));
+        verify(provider, times(2)).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+    }
+
+    private NameSpaceProvider blockFirstLookupOf(PnfsId pnfsId) throws CacheException
+    {
+        NameSpaceProvider provider = spy(_pnfsManager.getNameSpaceProvider());
+        doAnswer(invocation -> {
+            _lookupStarted.countDown();
+            _lookupReleased.await();
+            return invocation.callRealMethod();
+        }).doCallRealMethod()
+                .when(provider).getFileAttributes(any(Subject.class), eq(pnfsId), anySetOf(FileAttribute.class));
+        _pnfsManager.setNameSpaceProvider(provider);
+        return provider;
+    }
+
+    private CellMessage send(PnfsMessage message) throws CacheException
+    {
+        message.setReplyRequired(true);
+        CellMessage envelope = new CellMessage(new CellAddressCore("PnfsManager"), message);
+        envelope.addSourceAddress(new CellAddressCore("door"));
+        _pnfsManager.messageArrived(envelope, message);
+        return envelope;
+    }
+
+    private List<PnfsMessage> awaitReplies(int count) throws InterruptedException
+    {
+        List<PnfsMessage> replies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CellMessage reply = _replies.poll(5, SECONDS);
+            assertNotNull("missing reply", reply);
+            replies.add((PnfsMessage) reply.getMessageObject());
+        }
+        return replies;
+    }
+
+    private String getInfo()
+    {
+        StringWriter info = new StringWriter();
+        _pnfsManager.getInfo(new PrintWriter(info));
+        return info.toString();
+    }
+
     private void assertNotExists(String path) throws ChimeraFsException
     {
         try {
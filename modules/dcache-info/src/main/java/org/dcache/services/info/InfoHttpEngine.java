@@ -55,9 +55,10 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
  * specifying  the query parameter 'format', by specifying the HTTP Accept
  * header.  XML is the default if neither indicates which serialiser to use.
  * <p>
- * The implementation caches serialised data for one second.  This is a safety
- * feature to reducing the impact on info of pathologically broken clients that
- * make many requests per second.
+ * The implementation caches encoded serialised data for one second.  This is a
+ * safety feature to reducing the impact on info of pathologically broken
+ * clients that make many requests per second.  The info cell itself reuses
+ * its serialisation until dCache state changes.
  */
 public class InfoHttpEngine implements HttpResponseEngine, CellMessageSender
 {
@@ -100,18 +101,18 @@ public class InfoHttpEngine implements HttpResponseEngine, CellMessageSender
         private final String _name;
         private final String _mimeType;
 
-        LoadingCache<List<String>, String> resultCache = CacheBuilder.newBuilder()
+        LoadingCache<List<String>, byte[]> resultCache = CacheBuilder.newBuilder()
                 .maximumSize(10)
                 .expireAfterWrite(1, TimeUnit.SECONDS)
-                .build(new CacheLoader<List<String>, String>() {
+                .build(new CacheLoader<List<String>, byte[]>() {
                     @Override
-                    public String load(List<String> path) throws InterruptedException, CacheException, NoRouteToCellException
+                    public byte[] load(List<String> path) throws InterruptedException, CacheException, NoRouteToCellException
                     {
                         InfoGetSerialisedDataMessage message =
                                 (path == ENTIRE_TREE) ? new InfoGetSerialisedDataMessage(_name)
                                 : new InfoGetSerialisedDataMessage(path, _name);
                         message = _info.sendAndWait(message);
-                        return message.getSerialisedData();
+                        return message.getSerialisedData().getBytes(Charsets.UTF_8);
                     }
                 });
 
@@ -130,7 +131,7 @@ public class InfoHttpEngine implements HttpResponseEngine, CellMessageSender
                     Arrays.asList(urlItems).subList(1, urlItems.length);
 
             try {
-                byte[] raw = resultCache.get(path).getBytes(Charsets.UTF_8);
+                byte[] raw = resultCache.get(path);
                 request.printHttpHeader(raw.length);
                 request.setContentType(this._mimeType);
                 out.write(raw);
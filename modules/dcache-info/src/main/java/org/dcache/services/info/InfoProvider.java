@@ -22,6 +22,7 @@ import org.dcache.services.info.base.StatePath;
 import org.dcache.services.info.conduits.Conduit;
 import org.dcache.services.info.gathers.DataGatheringScheduler;
 import org.dcache.services.info.gathers.MessageHandlerChain;
+import org.dcache.services.info.serialisation.CachingSerialiser;
 import org.dcache.services.info.serialisation.SimpleTextSerialiser;
 import org.dcache.services.info.serialisation.StateSerialiser;
 import org.dcache.util.Args;
@@ -71,6 +72,13 @@ public class InfoProvider  implements CellCommandListener, CellInfoProvider,
 
         pw.print(_availableSerialisers.size());
         pw.println(" available serialisers.");
+        for (StateSerialiser serialiser : _availableSerialisers.values()) {
+            if (serialiser instanceof CachingSerialiser) {
+                CachingSerialiser cache = (CachingSerialiser) serialiser;
+                pw.println("    " + serialiser.getName() + ": " + cache.getHits() +
+                           " served from snapshot, " + cache.getMisses() + " serialised.");
+            }
+        }
 
         _state.getInfo(pw);
     }
@@ -191,7 +199,7 @@ public class InfoProvider  implements CellCommandListener, CellInfoProvider,
     }
 
 
-    public synchronized InfoGetSerialisedDataMessage messageArrived(InfoGetSerialisedDataMessage message)
+    public InfoGetSerialisedDataMessage messageArrived(InfoGetSerialisedDataMessage message)
     {
         LOGGER.trace("Received InfoGetSerialisedDataMessage.");
 
@@ -64,6 +64,12 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
     private final Lock _stateReadLock = _stateRWLock.readLock();
     private final Lock _stateWriteLock = _stateRWLock.writeLock();
 
+    /**
+     * The number of StateTransitions applied so far.  It is only modified
+     * whilst holding the write lock.
+     */
+    private volatile long _generation;
+
     // TODO: remove this completely. It's only needed to support derived
     // metrics
     private StateUpdateManager _updateManager;
@@ -196,12 +202,27 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
             _stateWriteLock.lock();
 
             _state.applyTransition(null, transition);
+            _generation++;
 
         } finally {
             _stateWriteLock.unlock();
         }
     }
 
+    /**
+     * Return the generation of dCache state.  The generation is incremented
+     * each time a StateTransition is applied, so two visits that observe the
+     * same generation see the same content.  A visitor that reads the
+     * generation before starting its visit may see more recent content than
+     * the generation suggests, but never older.
+     *
+     * @return the number of StateTransitions applied so far.
+     */
+    public long getGeneration()
+    {
+        return _generation;
+    }
+
     /**
      * For a given a StateTransition, check all registered StateWatchers to
      * see if they are affected. This is achieved by checking each
@@ -502,5 +523,8 @@ public class State implements StateCaretaker, StateExhibitor, StateObservatory
 
         pw.print(_updateManager.countPendingUpdates());
         pw.println(" pending updates to state.");
+
+        pw.print(_generation);
+        pw.println(" state transitions applied.");
     }
 }
@@ -10,7 +10,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 
-import org.dcache.services.info.serialisation.StateSerialiser;
+import org.dcache.services.info.serialisation.CachingSerialiser;
 
 /**
  * Information Exporter class.<br>
@@ -40,14 +40,27 @@ public class XmlConduit extends AbstractThreadedConduit
     private ServerSocket _svr_skt;
 
     /** Our serialiser for the current dCache state */
-    private StateSerialiser _serialiser;
+    private CachingSerialiser _serialiser;
+
+    /** Whether to gzip compress the data */
+    private boolean _compress;
 
     @Required
-    public void setSerialiser(StateSerialiser serialiser)
+    public void setSerialiser(CachingSerialiser serialiser)
     {
         _serialiser = serialiser;
     }
 
+    public void setCompress(boolean compress)
+    {
+        _compress = compress;
+    }
+
+    public boolean isCompress()
+    {
+        return _compress;
+    }
+
     @Required
     public void setPort(int port)
     {
@@ -117,6 +130,8 @@ public class XmlConduit extends AbstractThreadedConduit
     /**
      * Wait for an incoming connection to the listening socket.  When
      * one is received, send it the XML serialisation of our current state.
+     * The serialisation is reused for all connections until the state
+     * changes.
      */
     @Override
     void blockingActivity()
@@ -142,8 +157,7 @@ public class XmlConduit extends AbstractThreadedConduit
 
             try {
                 _callCount++;
-                String data = _serialiser.serialise();
-                skt.getOutputStream().write(data.getBytes());
+                _serialiser.serialise(skt.getOutputStream(), _compress);
             } catch (IOException e) {
                 LOGGER.error("failed to write XML data", e);
             } catch (Exception e) {
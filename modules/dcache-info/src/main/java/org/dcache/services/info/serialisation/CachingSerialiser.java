@@ -0,0 +1,164 @@
+package org.dcache.services.info.serialisation;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.dcache.services.info.base.State;
+import org.dcache.services.info.base.StatePath;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A StateSerialiser that keeps a snapshot of the complete serialisation of
+ * dCache state produced by some other StateSerialiser.  The snapshot is
+ * reused until the generation of the State changes, so clients that poll
+ * the info service repeatedly do not cause the state to be visited and
+ * serialised again if nothing has changed in the meantime.
+ * <p>
+ * The snapshot is also kept in its UTF-8 encoded form and, if requested,
+ * gzip compressed, so it may be written directly to a socket.
+ * <p>
+ * Serialising a subtree is not cached and is simply delegated.
+ * <p>
+ * Unlike the serialisers it wraps, instances of this class are thread-safe.
+ */
+public class CachingSerialiser implements StateSerialiser
+{
+    private StateSerialiser _serialiser;
+    private State _state;
+
+    private volatile Snapshot _snapshot;
+
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    @Required
+    public void setSerialiser(StateSerialiser serialiser)
+    {
+        _serialiser = serialiser;
+    }
+
+    @Required
+    public void setState(State state)
+    {
+        _state = state;
+    }
+
+    @Override
+    public String getName()
+    {
+        return _serialiser.getName();
+    }
+
+    @Override
+    public String serialise()
+    {
+        return getSnapshot().getData();
+    }
+
+    @Override
+    public synchronized String serialise(StatePath start)
+    {
+        return _serialiser.serialise(start);
+    }
+
+    /**
+     * Write the serialisation of dCache's current state to the supplied
+     * stream, optionally gzip compressed.  The stream is not closed.
+     */
+    public void serialise(OutputStream out, boolean compress) throws IOException
+    {
+        Snapshot snapshot = getSnapshot();
+        out.write(compress ? snapshot.getCompressed() : snapshot.getBytes());
+        out.flush();
+    }
+
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    private Snapshot getSnapshot()
+    {
+        long generation = _state.getGeneration();
+        Snapshot snapshot = _snapshot;
+        if (snapshot == null || snapshot._generation < generation) {
+            synchronized (this) {
+                snapshot = _snapshot;
+                if (snapshot == null || snapshot._generation < generation) {
+                    /* The generation is read before the state is visited, so
+                     * the snapshot is never older than its generation.
+                     */
+                    snapshot = new Snapshot(generation, _serialiser.serialise());
+                    _snapshot = snapshot;
+                    _misses.increment();
+                    return snapshot;
+                }
+            }
+        }
+        _hits.increment();
+        return snapshot;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName() + " (cached)";
+    }
+
+    /**
+     * The serialisation of one generation of dCache state.  The encoded
+     * forms are created on first use.
+     */
+    private static class Snapshot
+    {
+        private final long _generation;
+        private final String _data;
+        private byte[] _bytes;
+        private byte[] _compressed;
+
+        Snapshot(long generation, String data)
+        {
+            _generation = generation;
+            _data = data;
+        }
+
+        String getData()
+        {
+            return _data;
+        }
+
+        synchronized byte[] getBytes()
+        {
+            if (_bytes == null) {
+                _bytes = _data.getBytes(UTF_8);
+            }
+            return _bytes;
+        }
+
+        synchronized byte[] getCompressed()
+        {
+            if (_compressed == null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+                    out.write(getBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                _compressed = buffer.toByteArray();
+            }
+            return _compressed;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.dcache.services.info.serialisation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.dcache.services.info.base.State;
+import org.dcache.services.info.base.StatePath;
+import org.dcache.services.info.base.StateUpdate;
+import org.dcache.services.info.base.StringStateValue;
+
+import static com.google.common.io.ByteStreams.toByteArray;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class CachingSerialiserTests
+{
+    private State _state;
+    private StateSerialiser _inner;
+    private CachingSerialiser _serialiser;
+
+    @Before
+    public void setUp()
+    {
+        _state = new State();
+        _inner = mock(StateSerialiser.class);
+        when(_inner.serialise()).thenReturn("first", "second");
+
+        _serialiser = new CachingSerialiser();
+        _serialiser.setState(_state);
+        _serialiser.setSerialiser(_inner);
+    }
+
+    private void givenStateChanged(String value)
+    {
+        StateUpdate update = new StateUpdate();
+        update.appendUpdate(StatePath.parsePath("a.b"), new StringStateValue(value, true));
+        _state.processUpdate(update);
+    }
+
+    @Test
+    public void shouldReuseSnapshotWhileStateIsUnchanged()
+    {
+        assertThat(_serialiser.serialise(), is("first"));
+        assertThat(_serialiser.serialise(), is("first"));
+
+        verify(_inner, times(1)).serialise();
+        assertThat(_serialiser.getHits(), is(1L));
+        assertThat(_serialiser.getMisses(), is(1L));
+    }
+
+    @Test
+    public void shouldSerialiseAgainWhenStateChanges()
+    {
+        _serialiser.serialise();
+
+        givenStateChanged("value");
+
+        assertThat(_state.getGeneration(), is(1L));
+        assertThat(_serialiser.serialise(), is("second"));
+        verify(_inner, times(2)).serialise();
+    }
+
+    @Test
+    public void shouldWriteSnapshotToStream() throws Exception
+    {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        _serialiser.serialise(plain, false);
+        _serialiser.serialise(compressed, true);
+
+        assertThat(new String(plain.toByteArray(), UTF_8), is("first"));
+        byte[] decompressed = toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+        assertThat(new String(decompressed, UTF_8), is("first"));
+        verify(_inner, times(1)).serialise();
+    }
+
+    @Test
+    public void shouldDelegateSubtreeSerialisation()
+    {
+        StatePath path = StatePath.parsePath("a");
+        when(_inner.serialise(path)).thenReturn("subtree");
+
+        assertThat(_serialiser.serialise(path), is("subtree"));
+        assertThat(_serialiser.serialise(path), is("subtree"));
+
+        verify(_inner, times(2)).serialise(path);
+    }
+}
@@ -19,7 +19,6 @@
  */
 package org.dcache.chimera.nfsv41.door;
 
-import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +37,7 @@ import org.dcache.acl.enums.Who;
 import org.dcache.auth.Subjects;
 import org.dcache.chimera.ChimeraFsException;
 import org.dcache.chimera.DirNotEmptyHimeraFsException;
-import org.dcache.chimera.DirectoryStreamHelper;
+import org.dcache.chimera.DirectoryStreamB;
 import org.dcache.chimera.FileExistsChimeraFsException;
 import org.dcache.chimera.FileNotFoundHimeraFsException;
 import org.dcache.chimera.FsInode;
@@ -55,6 +54,7 @@ import org.dcache.chimera.FsInode_PSET;
 import org.dcache.chimera.FsInode_SURI;
 import org.dcache.chimera.FsInode_TAG;
 import org.dcache.chimera.FsInode_TAGS;
+import org.dcache.chimera.HimeraDirectoryEntry;
 import org.dcache.chimera.InvalidArgumentChimeraException;
 import org.dcache.chimera.IsDirChimeraException;
 import org.dcache.chimera.JdbcFs;
@@ -257,12 +257,20 @@ public class ChimeraVfs implements VirtualFileSystem, AclCheckable {
         // ignore whatever is sent by client
         byte[] currentVerifier = directoryVerifier(inode);
 
-        List<DirectoryEntry> list = Lists.transform(
-                DirectoryStreamHelper.listOf(parentFsInode),
-                e -> new DirectoryEntry(e.getName(),
+        /*
+         * Entries are converted while they are streamed from the database, so
+         * that the chimera entries of a large directory are never held in memory
+         * in addition to the listing returned to the client.
+         */
+        List<DirectoryEntry> list = new ArrayList<>();
+        try (DirectoryStreamB<HimeraDirectoryEntry> dirStream = parentFsInode.newDirectoryStream()) {
+            for (HimeraDirectoryEntry e : dirStream) {
+                list.add(new DirectoryEntry(e.getName(),
                         toInode(e.getInode()),
                         fromChimeraStat(e.getStat(), e.getInode().ino()),
                         directoryCookieOf(e.getStat(), e.getName())));
+            }
+        }
 
         return new DirectoryStream(currentVerifier, list);
     }
@@ -99,6 +99,21 @@ public final class FileFilter implements FileMatcher {
         return filterValue.equals(operationValue);
     }
 
+    @Override
+    public String getParent() {
+        return parent == null || parent.isEmpty() ? null : parent;
+    }
+
+    @Override
+    public Set<String> getPnfsIds() {
+        return pnfsids;
+    }
+
+    @Override
+    public String getStorageUnit() {
+        return storageUnit;
+    }
+
     @Override
     public boolean isForceRemoval() {
         return forceRemoval;
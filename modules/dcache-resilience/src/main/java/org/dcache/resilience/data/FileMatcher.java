@@ -59,6 +59,8 @@ documents or software obtained from this server.
  */
 package org.dcache.resilience.data;
 
+import java.util.Set;
+
 /**
  * <p>Used by admin commands to select operations for cancellation or
  *      listing.</p>
@@ -82,6 +84,27 @@ public interface FileMatcher {
      */
     boolean isSimplePnfsMatch();
 
+    /**
+     * <p>The following are used to look up the candidates for
+     *      a match in an index rather than testing all operations.</p>
+     *
+     * @return the pnfsids to which matches are restricted,
+     *         or <code>null</code> if unrestricted.
+     */
+    Set<String> getPnfsIds();
+
+    /**
+     * @return the parent pool to which matches are restricted,
+     *         or <code>null</code> if unrestricted.
+     */
+    String getParent();
+
+    /**
+     * @return the storage unit to which matches are restricted,
+     *         or <code>null</code> if unrestricted.
+     */
+    String getStorageUnit();
+
     /**
      * @param operation to be matched by the filter,
      * @param map to translate references to names.
@@ -185,6 +185,12 @@ public final class FileOperation {
     private ResilientFileTask task;
     private CacheException    exception;
 
+    /*
+     * Entry in the waiting queue, if queued.  Only accessed by the
+     * consumer thread of the map.
+     */
+    FileOperationQueue.Entry queueEntry;
+
     FileOperation(PnfsId pnfsId, int pgroup, Integer sunit, int action,
                   int opCount, long size) {
         this(pnfsId, opCount, size);
@@ -577,7 +583,7 @@ public final class FileOperation {
      *    queued, we simply overwrite the appropriate fields on
      *    this one.</p>
      */
-    void updateOperation(FileOperation operation) {
+    synchronized void updateOperation(FileOperation operation) {
         if (operation.storageUnit != NIL) {
             storageUnit = operation.storageUnit;
         }
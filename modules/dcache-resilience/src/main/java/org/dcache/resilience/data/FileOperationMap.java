@@ -63,18 +63,21 @@ import com.google.common.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import diskCacheV111.util.CacheException;
@@ -140,8 +143,16 @@ import org.dcache.vehicles.FileAttributes;
  *      place concurrently with any consumer thread removes.  All
  *      updating of operation state or settings in fact is done through
  *      an index read, since the necessary synchronization of those
- *      values is handled inside the operation object.  Only the initial
- *      queueing and cancellation requests require additional synchronization.</p>
+ *      values is handled inside the operation object.  New operations and
+ *      cancellation requests are handed to the consumer through lock-free
+ *      queues, and the consumer is woken without taking a lock, so that
+ *      neither the handler threads nor the task threads contend with
+ *      the consumer.</p>
+ *
+ * <p>Operations are also indexed by parent pool and by storage unit.
+ *      Cancellation by pool, storage unit or pnfsid thus only visits the
+ *      matching operations, and removes them from the waiting queues without
+ *      searching for them.</p>
  *
  * <p>However, since index reads are not blocked, the list and count methods,
  *      which filter against the index (and not the queues), along with
@@ -242,40 +253,60 @@ public class FileOperationMap extends RunnableModule {
         }
 
         private void appendIncoming() {
-            synchronized (incoming) {
-                while (true) {
-                    try {
-                        FileOperation operation = incoming.remove();
-                        if (operation.isBackground()) {
-                            background.addLast(operation);
-                        } else {
-                            foreground.addLast(operation);
-                        }
-                    } catch (NoSuchElementException e) {
-                        break;
-                    }
+            FileOperation operation;
+            while ((operation = incoming.poll()) != null) {
+                /*
+                 *  An operation may already have been cancelled,
+                 *  and possibly requeued, before reaching this point.
+                 */
+                if (operation.getState() != FileOperation.WAITING
+                                || operation.queueEntry != null) {
+                    continue;
+                }
+
+                if (operation.isBackground()) {
+                    background.addLast(operation);
+                } else {
+                    foreground.addLast(operation);
                 }
             }
         }
 
         /**
-         *  <p>This is a potentially expensive operation (O[n] in the
-         *     queue size), but should be called relatively infrequently.</p>
+         *  <p>Looks up the operations which could match the filter in
+         *     the indices.  Only filters which do not restrict the pnfsid,
+         *     parent pool or storage unit require a pass over all
+         *     operations.</p>
          */
-        private void cancel(Queue<FileOperation> queue,
-                            Collection<FileMatcher> filters,
-                            Collection<FileOperation> toProcess) {
-            for (Iterator<FileOperation> i = queue.iterator(); i.hasNext();) {
-                FileOperation operation = i.next();
-                for (FileMatcher filter : filters) {
-                    if (filter.matches(operation, poolInfoMap)
-                            && cancel(operation, filter.isForceRemoval())) {
-                        i.remove();
-                        toProcess.add(operation);
-                        break;
-                    }
+        private Collection<FileOperation> candidates(FileMatcher filter) {
+            Set<String> pnfsids = filter.getPnfsIds();
+            if (pnfsids != null) {
+                return pnfsids.stream()
+                              .filter(PnfsId::isValid)
+                              .map(PnfsId::new)
+                              .map(index::get)
+                              .filter(Objects::nonNull)
+                              .collect(Collectors.toList());
+            }
+
+            try {
+                String parent = filter.getParent();
+                if (parent != null) {
+                    return indexed(byParent, poolInfoMap.getPoolIndex(parent));
                 }
+
+                String unit = filter.getStorageUnit();
+                if (unit != null) {
+                    return indexed(byUnit, poolInfoMap.getUnitIndex(unit));
+                }
+            } catch (NoSuchElementException e) {
+                /*
+                 *  Unknown pool or storage unit; nothing can match.
+                 */
+                return Collections.emptyList();
             }
+
+            return index.values();
         }
 
         private boolean cancel(FileOperation operation, boolean remove) {
@@ -289,16 +320,18 @@ public class FileOperationMap extends RunnableModule {
         }
 
         private void gatherCanceled() {
-            Collection<FileMatcher> filters = new ArrayList<>();
-
-            synchronized (cancelFilters) {
-                filters.addAll(cancelFilters);
-                cancelFilters.clear();
+            FileMatcher filter;
+            while ((filter = cancelFilters.poll()) != null) {
+                for (FileOperation operation : candidates(filter)) {
+                    if (filter.matches(operation, poolInfoMap)
+                                    && cancel(operation, filter.isForceRemoval())) {
+                        if (!FileOperationQueue.dequeue(operation)) {
+                            running.remove(operation);
+                        }
+                        toProcess.add(operation);
+                    }
+                }
             }
-
-            cancel(running, filters, toProcess);
-            cancel(foreground, filters, toProcess);
-            cancel(background, filters, toProcess);
         }
 
         private void gatherTerminated() {
@@ -515,7 +548,7 @@ public class FileOperationMap extends RunnableModule {
          * <p>Dequeues up to the indicated number of operations and submits
          *      them.</p>
          */
-        private long promoteToRunning(Queue<FileOperation> queue, long limit) {
+        private long promoteToRunning(FileOperationQueue queue, long limit) {
             for (int i = 0; i < limit; i++) {
                 FileOperation operation = queue.poll();
                 if (operation == null) {
@@ -555,6 +588,14 @@ public class FileOperationMap extends RunnableModule {
      */
     final Map<PnfsId, FileOperation> index = new ConcurrentHashMap<>();
 
+    /**
+     *  <p>Operations by parent pool and by storage unit.  Updated
+     *      together with the index, and used to select the candidates
+     *      for cancellation.</p>
+     */
+    final Map<Integer, Set<FileOperation>> byParent = new ConcurrentHashMap<>();
+    final Map<Integer, Set<FileOperation>> byUnit   = new ConcurrentHashMap<>();
+
     /**
      *  <p>These queues are entirely used by the consumer thread. Hence
      *      there is no need for synchronization on any of them.</p>
@@ -566,17 +607,17 @@ public class FileOperationMap extends RunnableModule {
      *      is to be done, but to restoring it to the head of the
      *      queue if there is a retriable failure.</p>
      */
-    final Deque<FileOperation> foreground = new LinkedList<>();
-    final Deque<FileOperation> background = new LinkedList<>();
+    final FileOperationQueue   foreground = new FileOperationQueue();
+    final FileOperationQueue   background = new FileOperationQueue();
     final Queue<FileOperation> running    = new LinkedList<>();
 
     /**
-     *  <p>Queue of incoming/ready operations.  This buffer is
+     *  <p>Queue of incoming/ready operations.  This lock-free buffer is
      *       shared between the handler and consumer threads, to avoid
      *       synchronizing the internal queues.  The incoming operations
      *       are appended to the latter during the consumer scan.</p>
      */
-    final Queue<FileOperation> incoming = new LinkedList<>();
+    final Queue<FileOperation> incoming = new ConcurrentLinkedQueue<>();
 
     /**
      *  <p>List of filters for cancelling operations.  This buffer is
@@ -585,7 +626,7 @@ public class FileOperationMap extends RunnableModule {
      *       as it would have to be atomic anyway.  This avoids once again any
      *       extra locking on the internal queues.</p>
      */
-    final Collection<FileMatcher> cancelFilters = new ArrayList<>();
+    final Queue<FileMatcher> cancelFilters = new ConcurrentLinkedQueue<>();
 
     /**
      * <p>For recovery.</p>
@@ -607,6 +648,11 @@ public class FileOperationMap extends RunnableModule {
      */
     final AtomicInteger               signalled = new AtomicInteger(0);
 
+    /**
+     *  <p>The thread executing {@link #run()}, woken by {@link #signalAll()}.</p>
+     */
+    private volatile Thread consumer;
+
     /**
      *  <p>Maximum proportion to allocate to either foreground or
      *      background operations.</p>
@@ -666,9 +712,7 @@ public class FileOperationMap extends RunnableModule {
      * <p>The actual scan is conducted by the consumer thread.</p>
      */
     public void cancel(FileMatcher filter) {
-        synchronized (cancelFilters) {
-            cancelFilters.add(filter);
-        }
+        cancelFilters.add(filter);
         signalAll();
     }
 
@@ -827,6 +871,7 @@ public class FileOperationMap extends RunnableModule {
      *      the counter is non-zero after the scan.</p>
      */
     public void run() {
+        consumer = Thread.currentThread();
         try {
             while (!Thread.interrupted()) {
                 LOGGER.trace("Calling scan.");
@@ -858,6 +903,7 @@ public class FileOperationMap extends RunnableModule {
         }
 
         LOGGER.info("Exiting file operation consumer.");
+        consumer = null;
         clear();
 
         LOGGER.info("File operation queues and index cleared.");
@@ -1040,26 +1086,84 @@ public class FileOperationMap extends RunnableModule {
         }
     }
 
+    /**
+     * <p>The secondary indices are updated while holding the index entry
+     *      for the pnfsid, so that they always reflect the operation
+     *      stored in the index.</p>
+     */
     private boolean add(PnfsId pnfsId, FileOperation operation) {
-        synchronized (incoming) {
-            FileOperation present = index.get(pnfsId);
+        FileOperation stored = index.compute(pnfsId, (key, present) -> {
+            if (present == null) {
+                addToIndex(byParent, operation.getParent(), operation);
+                addToIndex(byUnit, operation.getStorageUnit(), operation);
+                return operation;
+            }
 
-            if (present != null) {
-                present.updateOperation(operation);
-                return false;
+            Integer unit = present.getStorageUnit();
+            present.updateOperation(operation);
+            Integer updated = present.getStorageUnit();
+            if (!Objects.equals(unit, updated)) {
+                removeFromIndex(byUnit, unit, present);
+                addToIndex(byUnit, updated, present);
             }
+            return present;
+        });
 
-            index.put(pnfsId, operation);
-            incoming.add(operation);
+        if (stored != operation) {
+            return false;
         }
 
+        incoming.add(operation);
         signalAll();
 
         return true;
     }
 
-    private synchronized void await() throws InterruptedException {
-        wait(timeoutUnit.toMillis(timeout));
+    private static void addToIndex(Map<Integer, Set<FileOperation>> map,
+                                   Integer key, FileOperation operation) {
+        if (key != null) {
+            map.compute(key, (k, operations) -> {
+                if (operations == null) {
+                    operations = ConcurrentHashMap.newKeySet();
+                }
+                operations.add(operation);
+                return operations;
+            });
+        }
+    }
+
+    private static void removeFromIndex(Map<Integer, Set<FileOperation>> map,
+                                        Integer key, FileOperation operation) {
+        if (key != null) {
+            map.computeIfPresent(key, (k, operations) -> {
+                operations.remove(operation);
+                return operations.isEmpty() ? null : operations;
+            });
+        }
+    }
+
+    private static Collection<FileOperation> indexed(
+                    Map<Integer, Set<FileOperation>> map, Integer key) {
+        Set<FileOperation> operations = key == null ? null : map.get(key);
+        if (operations == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(operations);
+    }
+
+    /**
+     * <p>Parks until signalled or timed out.  A signal sent before
+     *      the consumer parks is not lost, as it either shows up in the
+     *      counter or causes the park to return immediately.</p>
+     */
+    private void await() throws InterruptedException {
+        if (signalled.get() == 0) {
+            LockSupport.parkNanos(this, timeoutUnit.toNanos(timeout));
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
     }
 
     private void clear() {
@@ -1067,10 +1171,10 @@ public class FileOperationMap extends RunnableModule {
         background.clear();
         running.clear();
         cancelFilters.clear();
-        synchronized (incoming) {
-            incoming.clear();
-        }
+        incoming.clear();
         index.clear();
+        byParent.clear();
+        byUnit.clear();
     }
 
     private void remove(PnfsId pnfsId, boolean failed) {
@@ -1080,6 +1184,9 @@ public class FileOperationMap extends RunnableModule {
             return;
         }
 
+        removeFromIndex(byParent, operation.getParent(), operation);
+        removeFromIndex(byUnit, operation.getStorageUnit(), operation);
+
         if (operation.isBackground()) {
             String parent = poolInfoMap.getPool(operation.getParent());
             if (parent == null) {
@@ -1093,8 +1200,11 @@ public class FileOperationMap extends RunnableModule {
         history.add(operation.toHistoryString(), failed);
     }
 
-    private synchronized void signalAll() {
+    private void signalAll() {
         signalled.incrementAndGet();
-        notifyAll();
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
     }
 }
\ No newline at end of file
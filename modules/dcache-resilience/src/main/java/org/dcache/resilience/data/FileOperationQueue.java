@@ -0,0 +1,155 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.resilience.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>Queue of waiting operations which allows an operation to be removed
+ *      without searching for it.</p>
+ *
+ * <p>Each queued operation refers to its entry in the queue.  Removal
+ *      merely marks the entry, which is then discarded when it reaches
+ *      the head of the queue.  An operation is in at most one queue at
+ *      a time.</p>
+ *
+ * <p>The queue is used only by the consumer thread of the
+ *      {@link FileOperationMap} and is not thread-safe.</p>
+ */
+final class FileOperationQueue {
+    static final class Entry {
+        final FileOperationQueue queue;
+        final FileOperation      operation;
+        boolean                  removed;
+
+        Entry(FileOperationQueue queue, FileOperation operation) {
+            this.queue = queue;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * <p>Removes the operation from whichever queue it is in.</p>
+     *
+     * @return false if the operation was not queued.
+     */
+    static boolean dequeue(FileOperation operation) {
+        Entry entry = operation.queueEntry;
+        if (entry == null) {
+            return false;
+        }
+        entry.removed = true;
+        operation.queueEntry = null;
+        --entry.queue.size;
+        return true;
+    }
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private int                size;
+
+    void addFirst(FileOperation operation) {
+        entries.addFirst(enter(operation));
+    }
+
+    void addLast(FileOperation operation) {
+        entries.addLast(enter(operation));
+    }
+
+    void clear() {
+        entries.stream().forEach((e) -> e.operation.queueEntry = null);
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the first operation which has not been removed, or
+     *         <code>null</code> if there is none.
+     */
+    FileOperation poll() {
+        Entry entry;
+        while ((entry = entries.pollFirst()) != null) {
+            if (!entry.removed) {
+                entry.operation.queueEntry = null;
+                --size;
+                return entry.operation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of operations which have not been removed.
+     */
+    int size() {
+        return size;
+    }
+
+    private Entry enter(FileOperation operation) {
+        if (operation.queueEntry != null) {
+            throw new IllegalStateException(operation.getPnfsId()
+                                                + " is already queued.");
+        }
+        Entry entry = new Entry(this, operation);
+        operation.queueEntry = entry;
+        ++size;
+        return entry;
+    }
+}
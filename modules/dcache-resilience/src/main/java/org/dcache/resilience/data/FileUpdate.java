@@ -269,6 +269,15 @@ public final class FileUpdate {
         return type == POOL_STATUS_DOWN || type == POOL_STATUS_UP;
     }
 
+    /**
+     * <p>Used by the pool scan to supply attributes which have been
+     *      fetched together with the location, so that the scan need not
+     *      call {@link #validateAttributes(NamespaceAccess)}.</p>
+     */
+    public void setAttributes(FileAttributes attributes) {
+        this.attributes = attributes;
+    }
+
     public void setCount(Integer count) {
         this.count = count;
     }
@@ -80,6 +80,21 @@ public final class PoolFilter implements FileMatcher, PoolMatcher {
     private Long   lastScanBefore;
     private Long   lastScanAfter;
 
+    @Override
+    public String getParent() {
+        return null;
+    }
+
+    @Override
+    public Set<String> getPnfsIds() {
+        return null;
+    }
+
+    @Override
+    public String getStorageUnit() {
+        return null;
+    }
+
     public boolean isUndefined() {
         return          null == state &&
                         null == pools &&
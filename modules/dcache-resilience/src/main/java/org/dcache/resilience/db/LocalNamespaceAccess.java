@@ -67,13 +67,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import diskCacheV111.namespace.NameSpaceProvider;
+import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.FileNotFoundCacheException;
 import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
 import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
 
 import org.dcache.auth.Subjects;
@@ -86,6 +99,7 @@ import org.dcache.resilience.data.PoolInfoMap;
 import org.dcache.resilience.data.PoolOperation.SelectionAction;
 import org.dcache.resilience.handlers.FileOperationHandler;
 import org.dcache.resilience.handlers.PoolOperationHandler;
+import org.dcache.namespace.FileAttribute;
 import org.dcache.resilience.util.ExceptionMessage;
 import org.dcache.vehicles.FileAttributes;
 
@@ -99,6 +113,12 @@ import static org.dcache.util.SqlHelper.tryToClose;
  *      the {@link FileOperationHandler} to add
  *      an entry in the pnfsid operation tables for each pnfsid.</p>
  *
+ * <p>By default, the pool scan query also returns the attributes
+ *      and all disk locations of each file, so that the handler need not
+ *      go back to the namespace for every pnfsid.  The number of such
+ *      queries running concurrently is bounded in order to limit
+ *      the load on the database.</p>
+ *
  * <p>Class is not marked final so that a test version can be
  *      implemented by extension.</p>
  *
@@ -111,6 +131,39 @@ public class LocalNamespaceAccess implements NamespaceAccess {
                                     + "AND l.itype = 1 AND n.iaccess_latency = 1 "
                                     + "AND l.ilocation = ?";
 
+    /*
+     * Returns one row per location (disk or tape) of each ONLINE file
+     * on the given pool, ordered by inode, so that the rows of a file are
+     * consecutive.  The parent directory and storage info columns
+     * determine the storage class of the file.
+     */
+    static final String SQL_GET_ONLINE_WITH_ATTRIBUTES_FOR_LOCATION
+                    = "SELECT n.inumber, n.ipnfsid, n.isize, n.iatime, "
+                                    + "n.iretention_policy, s.ihsmName, "
+                                    + "s.istorageGroup, s.istorageSubGroup, "
+                                    + "(SELECT MIN(d.iparent) FROM t_dirs d "
+                                    + "WHERE d.ichild = n.inumber), "
+                                    + "a.itype, a.ilocation "
+                                    + "FROM t_locationinfo l "
+                                    + "JOIN t_inodes n ON l.inumber = n.inumber "
+                                    + "JOIN t_locationinfo a ON a.inumber = n.inumber "
+                                    + "AND a.itype IN (0, 1) "
+                                    + "LEFT JOIN t_storageinfo s ON s.inumber = n.inumber "
+                                    + "WHERE l.itype = 1 AND n.iaccess_latency = 1 "
+                                    + "AND l.ilocation = ? "
+                                    + "ORDER BY n.inumber";
+
+    private static final int TAPE_LOCATION = 0;
+
+    private static final Set<FileAttribute> STORAGE_CLASS_ATTRIBUTES
+                    = EnumSet.of(FileAttribute.STORAGECLASS, FileAttribute.HSM);
+
+    /*
+     * Bound on the number of distinct directories and storage infos
+     * for which the storage class is remembered during a single scan.
+     */
+    private static final int MAX_CACHED_STORAGE_CLASSES = 10000;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalNamespaceAccess.class);
 
     /**
@@ -136,6 +189,17 @@ public class LocalNamespaceAccess implements NamespaceAccess {
      */
     private int fetchSize;
 
+    /**
+     * <p>Whether the pool scan query should also return the attributes
+     *      and locations of the files.</p>
+     */
+    private boolean fetchAttributes = true;
+
+    /**
+     * <p>Bounds the number of pool scan queries running concurrently.</p>
+     */
+    private Semaphore scanQueries = new Semaphore(Integer.MAX_VALUE);
+
     @Override
     public void printInaccessibleFiles(String location,
                                        PoolInfoMap poolInfoMap,
@@ -179,10 +243,18 @@ public class LocalNamespaceAccess implements NamespaceAccess {
     @Override
     public void handlePnfsidsForPool(ScanSummary scan)
                     throws CacheException {
+        if (!acquireScanQuery(scan)) {
+            return;
+        }
+
         try {
             Connection connection = getConnection();
             try {
-                handleQuery(connection, scan);
+                if (fetchAttributes) {
+                    handleAttributeQuery(connection, scan);
+                } else {
+                    handleQuery(connection, scan);
+                }
             } catch (SQLException | CacheException e) {
                 throw new IOHimeraFsException(e.getMessage());
             } finally {
@@ -192,6 +264,8 @@ public class LocalNamespaceAccess implements NamespaceAccess {
             throw new CacheException(CacheException.RESOURCE,
                                      String.format("Could not handle pnfsids for %s",
                                                    scan.getPool()), e);
+        } finally {
+            scanQueries.release();
         }
     }
 
@@ -217,15 +291,47 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         this.fetchSize = fetchSize;
     }
 
+    public void setFetchAttributes(boolean fetchAttributes) {
+        this.fetchAttributes = fetchAttributes;
+    }
+
     public void setHandler(FileOperationHandler handler) {
         this.handler = handler;
     }
 
+    public void setMaxScanQueries(int maxScanQueries) {
+        scanQueries = new Semaphore(maxScanQueries);
+    }
+
     @Override
     public void setNamespace(NameSpaceProvider namespace) {
         this.namespace = namespace;
     }
 
+    /**
+     * <p>Waits for one of the scan query slots to become free.</p>
+     *
+     * @return false if the scan was cancelled while waiting.
+     */
+    private boolean acquireScanQuery(ScanSummary scan) throws CacheException {
+        try {
+            while (!scanQueries.tryAcquire(1, TimeUnit.SECONDS)) {
+                if (scan.isCancelled()) {
+                    return false;
+                }
+                LOGGER.trace("Scan of {} waiting for a free query slot.",
+                             scan.getPool());
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException(CacheException.RESOURCE,
+                                     String.format("Interrupted while waiting "
+                                                   + "to scan %s",
+                                                   scan.getPool()), e);
+        }
+    }
+
     private Connection getConnection() throws IOHimeraFsException {
         try {
             return connectionPool.getConnection();
@@ -234,6 +340,95 @@ public class LocalNamespaceAccess implements NamespaceAccess {
         }
     }
 
+    /**
+     * <p>The query processes all files for the given location which
+     *      have access latency = ONLINE, together with their attributes
+     *      and current locations.  The rows belonging to a file are
+     *      aggregated and the result is passed to the
+     *      {@link FileOperationHandler} with the attributes already set, so
+     *      that no further namespace lookup is needed.</p>
+     *
+     * <p>The storage class is not stored as such, but derived from the
+     *      storage info or from the tags of the parent directory.  It is
+     *      therefore obtained from the namespace once for each distinct
+     *      combination of parent directory and storage info.</p>
+     */
+    private void handleAttributeQuery(Connection connection, ScanSummary scan)
+                    throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        Map<List<Object>, FileAttributes> storageClasses
+                        = new LinkedHashMap<List<Object>, FileAttributes>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, FileAttributes> eldest) {
+                return size() > MAX_CACHED_STORAGE_CLASSES;
+            }
+        };
+
+        try {
+            statement = connection.prepareStatement(
+                            SQL_GET_ONLINE_WITH_ATTRIBUTES_FOR_LOCATION);
+            statement.setString(1, scan.getPool());
+            statement.setFetchSize(fetchSize);
+            if (scan.isCancelled()) {
+                return;
+            }
+
+            resultSet = statement.executeQuery();
+
+            ScannedFile file = null;
+            while (resultSet.next() && !scan.isCancelled()) {
+                long inumber = resultSet.getLong(1);
+                if (file == null || file.inumber != inumber) {
+                    if (file != null) {
+                        handleScannedFile(file, scan, storageClasses);
+                    }
+                    file = new ScannedFile(inumber, resultSet);
+                }
+                file.addLocation(resultSet.getInt(10), resultSet.getString(11));
+            }
+
+            if (file != null && !scan.isCancelled()) {
+                handleScannedFile(file, scan, storageClasses);
+            }
+        } finally {
+            tryToClose(resultSet);
+            tryToClose(statement);
+        }
+    }
+
+    private void handleScannedFile(ScannedFile file, ScanSummary scan,
+                                   Map<List<Object>, FileAttributes> storageClasses) {
+        String pool = scan.getPool();
+        FileUpdate data = new FileUpdate(file.pnfsId, pool, scan.getType(),
+                                         scan.getAction(), scan.getGroup(),
+                                         scan.isForced());
+        try {
+            List<Object> key = file.getStorageKey();
+            FileAttributes storage = storageClasses.get(key);
+            if (storage == null) {
+                storage = namespace.getFileAttributes(Subjects.ROOT,
+                                                      file.pnfsId,
+                                                      STORAGE_CLASS_ATTRIBUTES);
+                storageClasses.put(key, storage);
+            }
+
+            data.setAttributes(file.toAttributes(storage));
+
+            LOGGER.debug("checking {}, {}.", pool, file.pnfsId);
+            if (handler.handleScannedLocation(data, scan.getStorageUnit())) {
+                scan.incrementCount();
+            }
+            LOGGER.debug("after checking {}, {}, count is {}.", pool,
+                         file.pnfsId, scan.getCount());
+        } catch (FileNotFoundCacheException e) {
+            LOGGER.debug("{}; {} has likely been deleted from the namespace.",
+                         e.getMessage(), file.pnfsId);
+        } catch (CacheException e) {
+            LOGGER.debug("{}: {}", data, new ExceptionMessage(e));
+        }
+    }
+
     /**
      * <p>The query processes all pnfsids for the given location which
      *      have access latency = ONLINE.  These are sent one-by-one to the
@@ -328,4 +523,64 @@ public class LocalNamespaceAccess implements NamespaceAccess {
 
         LOGGER.info("Printing of inaccessible files for {} completed.", location);
     }
+
+    /**
+     * <p>Aggregates the rows returned by the attribute query for
+     *      a single file.</p>
+     */
+    private static class ScannedFile {
+        final long               inumber;
+        final PnfsId             pnfsId;
+        final long               size;
+        final long               accessTime;
+        final RetentionPolicy    retentionPolicy;
+        final String             hsm;
+        final String             storageGroup;
+        final String             storageSubGroup;
+        final long               parent;
+        final Collection<String> locations = new ArrayList<>();
+
+        boolean onTape;
+
+        ScannedFile(long inumber, ResultSet resultSet) throws SQLException {
+            this.inumber = inumber;
+            pnfsId = new PnfsId(resultSet.getString(2));
+            size = resultSet.getLong(3);
+            accessTime = resultSet.getTimestamp(4).getTime();
+            retentionPolicy = RetentionPolicy.getRetentionPolicy(resultSet.getInt(5));
+            hsm = resultSet.getString(6);
+            storageGroup = resultSet.getString(7);
+            storageSubGroup = resultSet.getString(8);
+            parent = resultSet.getLong(9);
+        }
+
+        void addLocation(int type, String location) {
+            if (type == TAPE_LOCATION) {
+                onTape = true;
+            } else {
+                locations.add(location);
+            }
+        }
+
+        /*
+         * Files sharing this key have the same storage class.
+         */
+        List<Object> getStorageKey() {
+            return Arrays.asList(parent, onTape, hsm, storageGroup,
+                                 storageSubGroup);
+        }
+
+        FileAttributes toAttributes(FileAttributes storage) {
+            FileAttributes attributes = new FileAttributes();
+            attributes.setPnfsId(pnfsId);
+            attributes.setSize(size);
+            attributes.setAccessTime(accessTime);
+            attributes.setAccessLatency(AccessLatency.ONLINE);
+            attributes.setRetentionPolicy(retentionPolicy);
+            attributes.setStorageClass(storage.getStorageClass());
+            attributes.setHsm(storage.getHsm());
+            attributes.setLocations(locations);
+            return attributes;
+        }
+    }
 }
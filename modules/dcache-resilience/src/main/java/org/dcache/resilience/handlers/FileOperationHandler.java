@@ -310,9 +310,10 @@ public class FileOperationHandler implements CellMessageSender {
         LOGGER.debug("handleScannedLocation {}", data);
 
         /*
-         * Prefetch all necessary file attributes, including current locations.
+         * Prefetch all necessary file attributes, including current locations,
+         * unless the scan query has already provided them.
          */
-        if (!data.validateAttributes(namespace)) {
+        if (data.getAttributes() == null && !data.validateAttributes(namespace)) {
             /*
              * Could be the result of deletion from namespace during the scan.
              */
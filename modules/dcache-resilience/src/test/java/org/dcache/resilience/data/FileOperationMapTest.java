@@ -74,6 +74,7 @@ import org.dcache.resilience.handlers.PoolTaskCompletionHandler;
 import org.dcache.vehicles.FileAttributes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -290,6 +291,34 @@ public final class FileOperationMapTest extends TestBase {
         assertNull(fileOperationMap.getOperation(operation.getPnfsId()));
     }
 
+    @Test
+    public void shouldPromoteOperationsAfterCancellingUnknownUnitAndParent()
+                    throws CacheException, IOException {
+        givenANewPnfsId();
+        afterOperationAdded(1);
+        whenOperationsForUnknownStorageUnitAreCancelled();
+        whenOperationsForUnknownParentAreCancelled();
+        whenScanIsRun();
+        assertNotNull(fileOperationMap.getOperation(operation.getPnfsId()));
+        assertThatOperationIsRunning(operation.getPnfsId());
+    }
+
+    @Test
+    public void shouldRemoveWaitingOperationWhenCancelledByStorageUnit()
+                    throws CacheException, IOException {
+        givenANewPnfsId();
+        afterOperationAdded(1);
+        givenASecondPnfsId();
+        afterOperationAdded(1);
+        whenScanIsRun();
+        whenOperationsForStorageUnitAreCancelled();
+        whenScanIsRun();
+        assertNull(fileOperationMap.getOperation(operation.getPnfsId()));
+        assertEquals(0, fileOperationMap.background.size()
+                        + fileOperationMap.foreground.size());
+        assertFalse(fileOperationMap.byUnit.containsKey(operation.getStorageUnit()));
+    }
+
     @Test
     public void shouldReorderOperationWhenCompletesButMoreWork()
                     throws CacheException, IOException {
@@ -407,6 +436,27 @@ public final class FileOperationMapTest extends TestBase {
         fileOperationMap.cancel(operation.getPnfsId(), true);
     }
 
+    private void whenOperationsForStorageUnitAreCancelled() {
+        FileFilter filter = new FileFilter();
+        filter.setStorageUnit(poolInfoMap.getUnit(operation.getStorageUnit()));
+        filter.setForceRemoval(true);
+        fileOperationMap.cancel(filter);
+    }
+
+    private void whenOperationsForUnknownParentAreCancelled() {
+        FileFilter filter = new FileFilter();
+        filter.setParent("no-such-pool");
+        filter.setForceRemoval(true);
+        fileOperationMap.cancel(filter);
+    }
+
+    private void whenOperationsForUnknownStorageUnitAreCancelled() {
+        FileFilter filter = new FileFilter();
+        filter.setStorageUnit("no-such-unit@osm");
+        filter.setForceRemoval(true);
+        fileOperationMap.cancel(filter);
+    }
+
     private void whenLoadIsCalled() throws IOException {
         fileOperationMap.reload();
     }
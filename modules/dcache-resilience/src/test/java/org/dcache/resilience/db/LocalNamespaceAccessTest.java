@@ -0,0 +1,227 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.resilience.db;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import diskCacheV111.namespace.NameSpaceProvider;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.resilience.data.FileUpdate;
+import org.dcache.resilience.data.MessageType;
+import org.dcache.resilience.data.PoolOperation.SelectionAction;
+import org.dcache.resilience.handlers.FileOperationHandler;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class LocalNamespaceAccessTest {
+    static final PnfsId FILE_1 = new PnfsId("000000000000000000000000000000000001");
+    static final PnfsId FILE_2 = new PnfsId("000000000000000000000000000000000002");
+    static final PnfsId FILE_3 = new PnfsId("000000000000000000000000000000000003");
+
+    LocalNamespaceAccess access;
+    NameSpaceProvider namespace;
+    FileOperationHandler handler;
+    ResultSet resultSet;
+    PreparedStatement statement;
+    Object[][] rows;
+    int row;
+
+    @Before
+    public void setUp() throws Exception {
+        namespace = mock(NameSpaceProvider.class);
+        handler = mock(FileOperationHandler.class);
+        resultSet = mock(ResultSet.class);
+        statement = mock(PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        DataSource dataSource = mock(DataSource.class);
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenAnswer((i) -> ++row < rows.length);
+        when(resultSet.getLong(anyInt())).thenAnswer(
+                        (i) -> ((Number) column(i.getArgumentAt(0, Integer.class))).longValue());
+        when(resultSet.getInt(anyInt())).thenAnswer(
+                        (i) -> ((Number) column(i.getArgumentAt(0, Integer.class))).intValue());
+        when(resultSet.getString(anyInt())).thenAnswer(
+                        (i) -> column(i.getArgumentAt(0, Integer.class)));
+        when(resultSet.getTimestamp(anyInt())).thenAnswer(
+                        (i) -> new Timestamp((Long) column(i.getArgumentAt(0, Integer.class))));
+        when(namespace.getFileAttributes(any(), any(), anySetOf(FileAttribute.class))).thenAnswer((i) -> {
+            FileAttributes attributes = new FileAttributes();
+            attributes.setStorageClass("test:" + i.getArgumentAt(1, PnfsId.class));
+            attributes.setHsm("osm");
+            return attributes;
+        });
+        when(handler.handleScannedLocation(any(), any())).thenReturn(true);
+
+        access = new LocalNamespaceAccess();
+        access.setConnectionPool(dataSource);
+        access.setNamespace(namespace);
+        access.setHandler(handler);
+        row = -1;
+    }
+
+    @Test
+    public void shouldAggregateLocationsOfEachFile() throws Exception {
+        givenRows(fileRow(1, FILE_1, 10L, 1, "pool1"),
+                  fileRow(1, FILE_1, 10L, 1, "pool2"),
+                  fileRow(2, FILE_2, 10L, 1, "pool1"),
+                  fileRow(3, FILE_3, 10L, 0, "osm://osm/?store=test"),
+                  fileRow(3, FILE_3, 10L, 1, "pool1"));
+
+        ScanSummary scan = whenPoolIsScanned();
+
+        List<FileUpdate> updates = scannedUpdates(3);
+        assertEquals(3, scan.getCount());
+        assertEquals(FILE_1, updates.get(0).pnfsId);
+        assertEquals("[pool1, pool2]",
+                     updates.get(0).getAttributes().getLocations().toString());
+        assertEquals(RetentionPolicy.REPLICA,
+                     updates.get(0).getAttributes().getRetentionPolicy());
+        assertEquals("[pool1]",
+                     updates.get(2).getAttributes().getLocations().toString());
+        assertEquals("test:" + FILE_3,
+                     updates.get(2).getAttributes().getStorageClass());
+    }
+
+    @Test
+    public void shouldLookUpStorageClassOncePerDirectory() throws Exception {
+        givenRows(fileRow(1, FILE_1, 10L, 1, "pool1"),
+                  fileRow(2, FILE_2, 10L, 1, "pool1"),
+                  fileRow(3, FILE_3, 11L, 1, "pool1"));
+
+        whenPoolIsScanned();
+
+        List<FileUpdate> updates = scannedUpdates(3);
+        assertEquals("test:" + FILE_1,
+                     updates.get(1).getAttributes().getStorageClass());
+        verify(namespace, never()).getFileAttributes(any(), eq(FILE_2), any());
+        verify(namespace).getFileAttributes(any(), eq(FILE_3), any());
+    }
+
+    @Test
+    public void shouldNotScanWhenCancelledWaitingForQuery() throws Exception {
+        givenRows(fileRow(1, FILE_1, 10L, 1, "pool1"));
+        access.setMaxScanQueries(0);
+        ScanSummary scan = new ScanSummary("pool1", MessageType.POOL_STATUS_DOWN,
+                                           SelectionAction.NONE, null,
+                                           ScanSummary.ALL_UNITS, false);
+        scan.setCancelled(true);
+
+        access.handlePnfsidsForPool(scan);
+
+        verify(statement, never()).executeQuery();
+        assertEquals(0, scan.getCount());
+    }
+
+    private Object column(int index) {
+        return rows[row][index - 1];
+    }
+
+    private Object[] fileRow(long inumber, PnfsId pnfsId, long parent,
+                             int type, String location) {
+        return new Object[] { inumber, pnfsId.toString(), 1024L, 0L,
+                              RetentionPolicy.REPLICA.getId(), null, null,
+                              null, parent, type, location };
+    }
+
+    private void givenRows(Object[]... rows) {
+        this.rows = rows;
+    }
+
+    private List<FileUpdate> scannedUpdates(int count) throws Exception {
+        ArgumentCaptor<FileUpdate> captor = ArgumentCaptor.forClass(FileUpdate.class);
+        verify(handler, times(count)).handleScannedLocation(captor.capture(),
+                                                            any());
+        return captor.getAllValues();
+    }
+
+    private ScanSummary whenPoolIsScanned() throws Exception {
+        ScanSummary scan = new ScanSummary("pool1", MessageType.POOL_STATUS_DOWN,
+                                           SelectionAction.NONE, null,
+                                           ScanSummary.ALL_UNITS, false);
+        access.handlePnfsidsForPool(scan);
+        return scan;
+    }
+}
@@ -18,8 +18,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -104,10 +106,62 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
     */
     private static final String SPACEFILE_TABLE = "srmspacefile";
 
+    /*
+            Table "public.srmaccounting"
+       Column   |  Type   | Modifiers
+    ------------+---------+-----------
+     isdeferred | integer | not null
+    */
+    private static final String ACCOUNTING_TABLE = "srmaccounting";
+
+    private boolean isAccountingDeferred;
+
+    private SpaceAccounting accounting;
+
+    /**
+     * Whether the used and allocated space of reservations is accounted for in
+     * memory and persisted periodically, rather than by database triggers
+     * whenever a file reservation changes.
+     */
+    public void setAccountingDeferred(boolean isAccountingDeferred)
+    {
+        this.isAccountingDeferred = isAccountingDeferred;
+    }
+
     public void init() throws DataAccessException
     {
         insertRetentionPolicies();
         insertAccessLatencies();
+        initAccounting();
+    }
+
+    @Transactional
+    private void initAccounting() throws DataAccessException
+    {
+        boolean wasDeferred = getJdbcTemplate().queryForObject(
+                "SELECT isdeferred FROM " + ACCOUNTING_TABLE, Integer.class) != 0;
+        if (wasDeferred != isAccountingDeferred) {
+            getJdbcTemplate().update("UPDATE " + ACCOUNTING_TABLE + " SET isdeferred = ?", isAccountingDeferred ? 1 : 0);
+        }
+        if (wasDeferred) {
+            /* The flag is only left set if space manager was not shut down cleanly. Changes
+             * not persisted before are lost, thus the accumulated fields are recomputed from
+             * the file reservations.
+             */
+            LOGGER.warn("Space manager was not shut down cleanly. Recomputing used and allocated space of space reservations.");
+            getJdbcTemplate().update(
+                    "UPDATE " + SPACE_TABLE + " SET "
+                            + "allocatedspaceinbytes = COALESCE((SELECT SUM(sizeinbytes) FROM " + SPACEFILE_TABLE
+                            + " WHERE spacereservationid = " + SPACE_TABLE + ".id AND state = "
+                            + FileState.TRANSFERRING.getStateId() + "), 0),"
+                            + "usedspaceinbytes = COALESCE((SELECT SUM(sizeinbytes) FROM " + SPACEFILE_TABLE
+                            + " WHERE spacereservationid = " + SPACE_TABLE + ".id AND state = "
+                            + FileState.STORED.getStateId() + "), 0)");
+        }
+        if (isAccountingDeferred) {
+            accounting = new SpaceAccounting(id -> getJdbcTemplate().queryForObject(
+                    "SELECT * FROM " + SPACE_TABLE + " WHERE id = ?", this::toSpace, id));
+        }
     }
 
     private void insertRetentionPolicies() throws DataAccessException
@@ -148,9 +202,16 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         }
     }
 
-    @Override
+    @Override @Transactional
     public void removeFile(long fileId) throws DataAccessException
     {
+        if (accounting != null) {
+            List<File> files = getJdbcTemplate().query(
+                    "SELECT * FROM " + SPACEFILE_TABLE + " WHERE id = ? FOR UPDATE", this::toFile, fileId);
+            for (File file : files) {
+                accounting.adjust(file.getSpaceId(), -allocated(file), -used(file));
+            }
+        }
         int rc = getJdbcTemplate().update("DELETE FROM " + SPACEFILE_TABLE + " WHERE id=?", fileId);
         if (rc > 1) {
             throw new JdbcUpdateAffectedIncorrectNumberOfRowsException("delete returned row count = " + rc, 1, rc);
@@ -162,7 +223,7 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
     {
         try {
             return getJdbcTemplate().queryForObject(
-                    "SELECT * FROM " + SPACE_TABLE + " WHERE id = ? FOR UPDATE", this::toSpace, id);
+                    "SELECT * FROM " + SPACE_TABLE + " WHERE id = ? FOR UPDATE", this::toAccountedSpace, id);
         } catch (EmptyResultDataAccessException e) {
             throw new EmptyResultDataAccessException("No such space reservation: " + id, 1, e);
         }
@@ -372,7 +433,7 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
     {
         try {
             return getJdbcTemplate().queryForObject(
-                    "SELECT * FROM " + SPACE_TABLE + " WHERE id=?", this::toSpace, id);
+                    "SELECT * FROM " + SPACE_TABLE + " WHERE id=?", this::toAccountedSpace, id);
         } catch (EmptyResultDataAccessException e) {
             throw new EmptyResultDataAccessException("No such space reservation: " + id, 1, e);
         }
@@ -400,10 +461,16 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         }
     }
 
-    @Override
+    @Override @Transactional
     public void updateFile(File f)
             throws DataAccessException
     {
+        if (accounting != null) {
+            File old = getJdbcTemplate().queryForObject(
+                    "SELECT * FROM " + SPACEFILE_TABLE + " WHERE id = ? FOR UPDATE", this::toFile, f.getId());
+            accounting.adjust(old.getSpaceId(), -allocated(old), -used(old));
+            accounting.adjust(f.getSpaceId(), allocated(f), used(f));
+        }
         int rc = getJdbcTemplate().update(
                 "UPDATE " + SPACEFILE_TABLE +
                         " SET vogroup=?, vorole=?, sizeinbytes=?, pnfsid=?, state=? WHERE id=?",
@@ -452,7 +519,7 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         JdbcCriterion c = (JdbcCriterion) criterion;
         return getJdbcTemplate().query(
                 "SELECT * FROM " + SPACE_TABLE + " WHERE " + c.getPredicate() + (limit != null ? " LIMIT " + limit : ""),
-                c.getArguments(), this::toSpace);
+                c.getArguments(), this::toAccountedSpace);
     }
 
     @Override
@@ -495,12 +562,35 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
                 Integer.class);
     }
 
-    @Override
+    @Override @Transactional
     public int remove(FileCriterion criterion)
     {
         JdbcCriterion c = (JdbcCriterion) criterion;
-        return getJdbcTemplate().update(
-                "DELETE FROM " + SPACEFILE_TABLE + " WHERE " + c.getPredicate(), c.getArguments());
+        if (accounting == null) {
+            return getJdbcTemplate().update(
+                    "DELETE FROM " + SPACEFILE_TABLE + " WHERE " + c.getPredicate(), c.getArguments());
+        }
+        /* The rows are locked so that concurrent updates cannot change the files
+         * deleted below after their space has been accounted for.
+         */
+        List<Long> ids = new ArrayList<>();
+        Map<Long,long[]> changes = new HashMap<>();
+        getJdbcTemplate().query(
+                "SELECT id, spacereservationid, state, sizeinbytes FROM " + SPACEFILE_TABLE +
+                " WHERE " + c.getPredicate() + " FOR UPDATE",
+                c.getArguments(),
+                rs -> {
+                    FileState state = FileState.valueOf(rs.getInt("state"));
+                    long size = rs.getLong("sizeinbytes");
+                    long[] change = changes.computeIfAbsent(rs.getLong("spacereservationid"), id -> new long[2]);
+                    change[0] -= allocated(state, size);
+                    change[1] -= used(state, size);
+                    ids.add(rs.getLong("id"));
+                });
+        getJdbcTemplate().batchUpdate("DELETE FROM " + SPACEFILE_TABLE + " WHERE id=?", ids, ids.size(),
+                                      (ps, id) -> ps.setLong(1, id));
+        changes.forEach((id, change) -> accounting.adjust(id, change[0], change[1]));
+        return ids.size();
     }
 
     @Override
@@ -522,7 +612,11 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
     {
         final long creationTime = System.currentTimeMillis();
 
-        Space space = selectSpaceForUpdate(reservationId);
+        /* With deferred accounting the reservation is not locked. A concurrent release
+         * or expiration is equivalent to one that happens right after the file was
+         * added, as neither affects existing file reservations.
+         */
+        Space space = (accounting == null) ? selectSpaceForUpdate(reservationId) : getSpace(reservationId);
         long currentTime = System.currentTimeMillis();
         if (space.getExpirationTime() != null && space.getExpirationTime() <= currentTime) {
             throw new SpaceExpiredException("space with id=" + reservationId + " has expired");
@@ -533,7 +627,9 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         if (space.getState() == SpaceState.RELEASED) {
             throw new SpaceReleasedException("space with id=" + reservationId + " was released");
         }
-        if (space.getAvailableSpaceInBytes() < sizeInBytes) {
+        if (accounting != null) {
+            accounting.allocate(space, allocated(state, sizeInBytes), used(state, sizeInBytes));
+        } else if (space.getAvailableSpaceInBytes() < sizeInBytes) {
             throw new NoFreeSpaceException("space with id=" + reservationId + " does not have enough space");
         }
 
@@ -564,6 +660,58 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         return (Long) keyHolder.getKeys().get("id");
     }
 
+    @Override
+    public boolean isAccountingDeferred()
+    {
+        return accounting != null;
+    }
+
+    @Override
+    public synchronized void flushSpaceUsage() throws DataAccessException
+    {
+        if (accounting != null) {
+            List<SpaceAccounting.Change> changes = accounting.drain();
+            if (!changes.isEmpty()) {
+                try {
+                    updateSpaceUsage(changes);
+                } catch (RuntimeException e) {
+                    accounting.restore(changes);
+                    throw e;
+                }
+            }
+            accounting.evictIdle();
+        }
+    }
+
+    /**
+     * Clears the isdeferred flag, which re-enables the srmspacefile triggers until
+     * space manager is started again. Since the database is up to date, the next
+     * start does not recompute the used and allocated space.
+     */
+    @Override
+    public synchronized boolean markSpaceUsageClean() throws DataAccessException
+    {
+        if (accounting == null || accounting.size() > 0) {
+            return false;
+        }
+        getJdbcTemplate().update("UPDATE " + ACCOUNTING_TABLE + " SET isdeferred = 0");
+        return true;
+    }
+
+    @Transactional
+    private void updateSpaceUsage(List<SpaceAccounting.Change> changes) throws DataAccessException
+    {
+        getJdbcTemplate().batchUpdate(
+                "UPDATE " + SPACE_TABLE + " SET allocatedspaceinbytes = allocatedspaceinbytes + ?,"
+                        + " usedspaceinbytes = usedspaceinbytes + ? WHERE id = ?",
+                changes, changes.size(),
+                (ps, change) -> {
+                    ps.setLong(1, change.getAllocated());
+                    ps.setLong(2, change.getUsed());
+                    ps.setLong(3, change.getId());
+                });
+    }
+
     @Override
     public void expire(SpaceCriterion criterion)
     {
@@ -852,6 +1000,32 @@ public class JdbcSpaceManagerDatabase extends JdbcDaoSupport implements SpaceMan
         return lg;
     }
 
+    private Space toAccountedSpace(ResultSet set, int rowNum) throws SQLException
+    {
+        Space space = toSpace(set, rowNum);
+        return (accounting == null) ? space : accounting.apply(space);
+    }
+
+    private static long allocated(FileState state, long sizeInBytes)
+    {
+        return (state == FileState.TRANSFERRING) ? sizeInBytes : 0;
+    }
+
+    private static long used(FileState state, long sizeInBytes)
+    {
+        return (state == FileState.STORED) ? sizeInBytes : 0;
+    }
+
+    private static long allocated(File file)
+    {
+        return allocated(file.getState(), file.getSizeInBytes());
+    }
+
+    private static long used(File file)
+    {
+        return used(file.getState(), file.getSizeInBytes());
+    }
+
     private File toFile(ResultSet set, int rowNum) throws SQLException
     {
         String pnfsId = set.getString("pnfsId");
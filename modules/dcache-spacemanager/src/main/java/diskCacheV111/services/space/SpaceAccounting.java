@@ -0,0 +1,263 @@
+package diskCacheV111.services.space;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongFunction;
+
+/**
+ * In-memory accounting of the used and allocated space of space reservations.
+ *
+ * When accounting is deferred, the database no longer maintains the accumulated
+ * columns of srmspace whenever a file reservation is added, updated or removed.
+ * Instead changes are applied to counters kept by this class, and space for new
+ * files is admitted against these counters without locking the reservation in
+ * the database. The accumulated changes are periodically drained and written to
+ * the database in a single transaction.
+ *
+ * Counters are loaded from the database when a reservation is first used.
+ * Changes made within a transaction are immediately visible to other threads,
+ * thus concurrent uploads cannot overbook a reservation, but they are only
+ * queued for persisting once the transaction has committed. They are undone
+ * if the transaction rolls back.
+ *
+ * Counters of reservations without queued or uncommitted changes are dropped
+ * after each flush.
+ */
+public class SpaceAccounting
+{
+    private final ConcurrentMap<Long,Account> accounts = new ConcurrentHashMap<>();
+
+    private final LongFunction<Space> loader;
+
+    /**
+     * @param loader reads a space reservation from the database
+     */
+    public SpaceAccounting(LongFunction<Space> loader)
+    {
+        this.loader = loader;
+    }
+
+    /**
+     * Adds space to a reservation if the reservation has enough space available.
+     */
+    public void allocate(Space space, long allocated, long used) throws NoFreeSpaceException
+    {
+        while (true) {
+            Account account = getAccount(space.getId());
+            synchronized (account) {
+                if (!account.isEvicted) {
+                    if (space.getSizeInBytes() - account.used - account.allocated < allocated + used) {
+                        throw new NoFreeSpaceException("space with id=" + space.getId() + " does not have enough space");
+                    }
+                    account.change(allocated, used);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or removes space from a reservation.
+     */
+    public void adjust(long id, long allocated, long used)
+    {
+        if (allocated == 0 && used == 0) {
+            return;
+        }
+        while (true) {
+            Account account = getAccount(id);
+            synchronized (account) {
+                if (!account.isEvicted) {
+                    account.change(allocated, used);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns space with the used and allocated space replaced by the in-memory
+     * counters of the reservation, if any.
+     */
+    public Space apply(Space space)
+    {
+        Account account = accounts.get(space.getId());
+        if (account == null) {
+            return space;
+        }
+        long used;
+        long allocated;
+        synchronized (account) {
+            used = account.used;
+            allocated = account.allocated;
+        }
+        return new Space(space.getId(),
+                         space.getVoGroup(),
+                         space.getVoRole(),
+                         space.getRetentionPolicy(),
+                         space.getAccessLatency(),
+                         space.getLinkGroupId(),
+                         space.getSizeInBytes(),
+                         space.getCreationTime(),
+                         space.getExpirationTime(),
+                         space.getDescription(),
+                         space.getState(),
+                         used,
+                         allocated);
+    }
+
+    /**
+     * Removes and returns all committed changes not yet persisted. Changes are
+     * ordered by reservation to avoid deadlocks when writing them.
+     */
+    public List<Change> drain()
+    {
+        List<Change> changes = new ArrayList<>();
+        for (Account account : accounts.values()) {
+            synchronized (account) {
+                if (account.pendingAllocated != 0 || account.pendingUsed != 0) {
+                    changes.add(new Change(account.id, account.pendingAllocated, account.pendingUsed));
+                    account.pendingAllocated = 0;
+                    account.pendingUsed = 0;
+                }
+            }
+        }
+        changes.sort(Comparator.comparingLong(Change::getId));
+        return changes;
+    }
+
+    /**
+     * Requeues changes previously drained that failed to be persisted.
+     */
+    public void restore(List<Change> changes)
+    {
+        for (Change change : changes) {
+            Account account = accounts.get(change.id);
+            synchronized (account) {
+                account.pendingAllocated += change.allocated;
+                account.pendingUsed += change.used;
+            }
+        }
+    }
+
+    /**
+     * Drops the counters of reservations without queued or uncommitted changes.
+     *
+     * The database must be up to date with all drained changes, ie this must
+     * not be called while changes are written to the database.
+     */
+    public void evictIdle()
+    {
+        for (Account account : accounts.values()) {
+            synchronized (account) {
+                if (account.pendingAllocated == 0 && account.pendingUsed == 0 && account.transactions == 0) {
+                    account.isEvicted = true;
+                    accounts.remove(account.id, account);
+                }
+            }
+        }
+    }
+
+    public int size()
+    {
+        return accounts.size();
+    }
+
+    private Account getAccount(long id)
+    {
+        return accounts.computeIfAbsent(id, key -> new Account(loader.apply(key)));
+    }
+
+    /**
+     * The counters of a single space reservation.
+     *
+     * The used and allocated space are the values in the database plus the
+     * queued and uncommitted changes.
+     */
+    private static class Account
+    {
+        private final long id;
+        private long used;
+        private long allocated;
+        private long pendingUsed;
+        private long pendingAllocated;
+        private int transactions;
+        private boolean isEvicted;
+
+        Account(Space space)
+        {
+            id = space.getId();
+            used = space.getUsedSizeInBytes();
+            allocated = space.getAllocatedSpaceInBytes();
+        }
+
+        /* Must be called while holding the monitor of this account. */
+        void change(long allocatedDelta, long usedDelta)
+        {
+            allocated += allocatedDelta;
+            used += usedDelta;
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                transactions++;
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+                {
+                    @Override
+                    public void afterCompletion(int status)
+                    {
+                        synchronized (Account.this) {
+                            transactions--;
+                            if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                                allocated -= allocatedDelta;
+                                used -= usedDelta;
+                            } else {
+                                pendingAllocated += allocatedDelta;
+                                pendingUsed += usedDelta;
+                            }
+                        }
+                    }
+                });
+            } else {
+                pendingAllocated += allocatedDelta;
+                pendingUsed += usedDelta;
+            }
+        }
+    }
+
+    /**
+     * Accumulated change of the used and allocated space of a reservation.
+     */
+    public static class Change
+    {
+        private final long id;
+        private final long allocated;
+        private final long used;
+
+        Change(long id, long allocated, long used)
+        {
+            this.id = id;
+            this.allocated = allocated;
+            this.used = used;
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public long getAllocated()
+        {
+            return allocated;
+        }
+
+        public long getUsed()
+        {
+            return used;
+        }
+    }
+}
@@ -111,6 +111,29 @@ public interface SpaceManagerDatabase
     /** Delete all files matching criterion. */
     int remove(FileCriterion criterion);
 
+    /**
+     * Returns whether the used and allocated space of space reservations is
+     * accounted for in memory rather than by the database.
+     */
+    boolean isAccountingDeferred();
+
+    /**
+     * Persist accumulated changes to the used and allocated space of space
+     * reservations. Does nothing unless accounting is deferred.
+     */
+    void flushSpaceUsage() throws DataAccessException;
+
+    /**
+     * Record that the used and allocated space of space reservations in the
+     * database is up to date, thus need not be recomputed on the next start.
+     * Must only be called after a final flush once no other updates are in
+     * progress. Does nothing unless accounting is deferred.
+     *
+     * @return true if the database was marked as up to date, false if there
+     * are changes that have not been persisted
+     */
+    boolean markSpaceUsageClean() throws DataAccessException;
+
     /** Selection criterion for link groups. */
     interface LinkGroupCriterion
     {
@@ -134,6 +134,10 @@ public final class SpaceManagerService
 
     private Thread expireSpaceReservations;
 
+    private long spaceUsageFlushPeriod;
+
+    private Thread flushSpaceUsage;
+
     private boolean shouldDeleteStoredFileRecord;
     private boolean allowUnreservedUploadsToLinkGroups;
     private boolean shouldReturnFlushedSpaceToReservation;
@@ -206,6 +210,12 @@ public final class SpaceManagerService
         this.expireSpaceReservationsPeriod = expireSpaceReservationsPeriod;
     }
 
+    @Required
+    public void setSpaceUsageFlushPeriod(long spaceUsageFlushPeriod)
+    {
+        this.spaceUsageFlushPeriod = spaceUsageFlushPeriod;
+    }
+
     @Required
     public void setAllowUnreservedUploadsToLinkGroups(boolean allowUnreservedUploadsToLinkGroups)
     {
@@ -264,6 +274,9 @@ public final class SpaceManagerService
     {
         executor = new CDCExecutorServiceDecorator<>(new BoundedExecutor(executor, threads));
         (expireSpaceReservations = new Thread(this, "ExpireThreadReservations")).start();
+        if (db.isAccountingDeferred()) {
+            (flushSpaceUsage = new Thread(this::flushSpaceUsage, "FlushSpaceUsage")).start();
+        }
     }
 
     public void stop() throws InterruptedException
@@ -281,6 +294,19 @@ public final class SpaceManagerService
                 ((FibonacciBackoffMessageProcessor) runnable).notifyShutdown();
             }
         }
+        if (flushSpaceUsage != null) {
+            flushSpaceUsage.interrupt();
+            flushSpaceUsage.join();
+            boolean isIdle = executor.awaitTermination(1, TimeUnit.SECONDS);
+            try {
+                db.flushSpaceUsage();
+                if (!isIdle || !db.markSpaceUsageClean()) {
+                    LOGGER.warn("Space usage will be recomputed on the next start as updates are still in progress.");
+                }
+            } catch (DataAccessException e) {
+                LOGGER.error("Failed to persist space usage: {}", e.getMessage());
+            }
+        }
     }
 
 
@@ -296,6 +322,10 @@ public final class SpaceManagerService
                             + allowUnreservedUploadsToLinkGroups);
         printWriter.println("shouldReturnFlushedSpaceToReservation="
                             + shouldReturnFlushedSpaceToReservation);
+        printWriter.println("isAccountingDeferred=" + db.isAccountingDeferred());
+        if (db.isAccountingDeferred()) {
+            printWriter.println("spaceUsageFlushPeriod=" + spaceUsageFlushPeriod);
+        }
     }
 
     private void expireSpaceReservations() throws DataAccessException
@@ -678,6 +708,26 @@ public final class SpaceManagerService
         }
     }
 
+    private void flushSpaceUsage()
+    {
+        try {
+            while (true) {
+                Thread.sleep(spaceUsageFlushPeriod);
+                try {
+                    db.flushSpaceUsage();
+                } catch (TransientDataAccessException e) {
+                    LOGGER.warn("Failed to persist space usage: {}", e.getMessage());
+                } catch (DataAccessException e) {
+                    LOGGER.error("Failed to persist space usage: {}", e.getMessage());
+                } catch (Exception e) {
+                    LOGGER.error("Failed to persist space usage: {}", e.toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.trace("Space usage flush thread has terminated.");
+        }
+    }
+
     private void releaseSpace(Release release)
             throws DataAccessException, SpaceException
     {
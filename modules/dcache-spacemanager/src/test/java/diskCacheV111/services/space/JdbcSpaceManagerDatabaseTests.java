@@ -0,0 +1,298 @@
+package diskCacheV111.services.space;
+
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.sql.Connection;
+import java.util.concurrent.Callable;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.RetentionPolicy;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests space usage accounting of JdbcSpaceManagerDatabase against the
+ * HSQLDB schema, both by the srmspacefile triggers and deferred to memory.
+ */
+public class JdbcSpaceManagerDatabaseTests
+{
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private PlatformTransactionManager txManager;
+    private JdbcSpaceManagerDatabase db;
+    private long linkGroupId;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:spacemanager", "sa", "");
+        try (Connection conn = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(conn));
+            Liquibase liquibase = new Liquibase("diskCacheV111/services/space/db/spacemanager.changelog-master.xml",
+                                                new ClassLoaderResourceAccessor(), database);
+            liquibase.update("");
+        }
+        jdbc = new JdbcTemplate(dataSource);
+        txManager = new DataSourceTransactionManager(dataSource);
+        db = start(true);
+        linkGroupId = db.updateLinkGroup("lg", 1000, System.currentTimeMillis(),
+                                         true, true, true, true, true, null);
+    }
+
+    @After
+    public void tearDown()
+    {
+        jdbc.execute("SHUTDOWN");
+    }
+
+    private JdbcSpaceManagerDatabase start(boolean isAccountingDeferred)
+    {
+        JdbcSpaceManagerDatabase db = new JdbcSpaceManagerDatabase();
+        db.setDataSource(dataSource);
+        db.setAccountingDeferred(isAccountingDeferred);
+        db.init();
+        return db;
+    }
+
+    private <T> T inTransaction(Callable<T> callable) throws Exception
+    {
+        TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+        T result;
+        try {
+            result = callable.call();
+        } catch (Exception e) {
+            txManager.rollback(status);
+            throw e;
+        }
+        txManager.commit(status);
+        return result;
+    }
+
+    private long aSpace(long size)
+    {
+        return db.insertSpace(null, null, RetentionPolicy.REPLICA, AccessLatency.ONLINE, linkGroupId,
+                              size, -1, null, SpaceState.RESERVED, 0, 0).getId();
+    }
+
+    private long aFile(long space, long size, FileState state) throws Exception
+    {
+        return inTransaction(() -> db.insertFile(space, null, null, size, null, state));
+    }
+
+    private long allocatedInDatabase(long space)
+    {
+        return jdbc.queryForObject("SELECT allocatedspaceinbytes FROM srmspace WHERE id = ?", Long.class, space);
+    }
+
+    private long usedInDatabase(long space)
+    {
+        return jdbc.queryForObject("SELECT usedspaceinbytes FROM srmspace WHERE id = ?", Long.class, space);
+    }
+
+    private boolean isDeferredInDatabase()
+    {
+        return jdbc.queryForObject("SELECT isdeferred FROM srmaccounting", Integer.class) != 0;
+    }
+
+    @Test
+    public void shouldAccountWithTriggersUnlessDeferred() throws Exception
+    {
+        db = start(false);
+        long space = aSpace(100);
+
+        long transferring = aFile(space, 10, FileState.TRANSFERRING);
+        aFile(space, 20, FileState.STORED);
+        assertThat(allocatedInDatabase(space), is(10L));
+        assertThat(usedInDatabase(space), is(20L));
+
+        File file = db.selectFileForUpdate(transferring);
+        file.setState(FileState.STORED);
+        file.setSizeInBytes(15);
+        inTransaction(() -> { db.updateFile(file); return null; });
+        assertThat(allocatedInDatabase(space), is(0L));
+        assertThat(usedInDatabase(space), is(35L));
+
+        assertThat(inTransaction(() -> db.remove(db.files().whereSpaceTokenIs(space))), is(2));
+        assertThat(usedInDatabase(space), is(0L));
+        assertThat(isDeferredInDatabase(), is(false));
+    }
+
+    @Test
+    public void shouldPersistDeferredSpaceUsageWhenFlushed() throws Exception
+    {
+        long space = aSpace(100);
+
+        aFile(space, 10, FileState.TRANSFERRING);
+        aFile(space, 20, FileState.STORED);
+
+        assertThat(allocatedInDatabase(space), is(0L));
+        assertThat(usedInDatabase(space), is(0L));
+        assertThat(db.getSpace(space).getAllocatedSpaceInBytes(), is(10L));
+        assertThat(db.getSpace(space).getUsedSizeInBytes(), is(20L));
+
+        db.flushSpaceUsage();
+
+        assertThat(allocatedInDatabase(space), is(10L));
+        assertThat(usedInDatabase(space), is(20L));
+    }
+
+    @Test(expected = NoFreeSpaceException.class)
+    public void shouldRejectFilesBeyondDeferredSpaceUsage() throws Exception
+    {
+        long space = aSpace(100);
+        aFile(space, 60, FileState.TRANSFERRING);
+
+        aFile(space, 60, FileState.TRANSFERRING);
+    }
+
+    @Test
+    public void shouldNotAccountForRolledBackFiles() throws Exception
+    {
+        long space = aSpace(100);
+
+        TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+        db.insertFile(space, null, null, 60, null, FileState.TRANSFERRING);
+        txManager.rollback(status);
+        db.flushSpaceUsage();
+
+        assertThat(db.getSpace(space).getAllocatedSpaceInBytes(), is(0L));
+        assertThat(allocatedInDatabase(space), is(0L));
+    }
+
+    @Test
+    public void shouldAccountForUpdatedFiles() throws Exception
+    {
+        long space = aSpace(100);
+        long id = aFile(space, 10, FileState.TRANSFERRING);
+
+        File file = db.selectFileForUpdate(id);
+        file.setState(FileState.STORED);
+        file.setSizeInBytes(15);
+        inTransaction(() -> { db.updateFile(file); return null; });
+        db.flushSpaceUsage();
+
+        assertThat(allocatedInDatabase(space), is(0L));
+        assertThat(usedInDatabase(space), is(15L));
+    }
+
+    @Test
+    public void shouldAccountForRemovedFiles() throws Exception
+    {
+        long space = aSpace(100);
+        long other = aSpace(100);
+        aFile(space, 10, FileState.TRANSFERRING);
+        aFile(space, 20, FileState.STORED);
+        aFile(space, 40, FileState.FLUSHED);
+        aFile(other, 5, FileState.TRANSFERRING);
+        aFile(other, 7, FileState.STORED);
+
+        int removed = inTransaction(() -> db.remove(db.files().whereStateIsIn(FileState.TRANSFERRING, FileState.FLUSHED)));
+        db.flushSpaceUsage();
+
+        assertThat(removed, is(3));
+        assertThat(db.count(db.files()), is(2));
+        assertThat(allocatedInDatabase(space), is(0L));
+        assertThat(usedInDatabase(space), is(20L));
+        assertThat(allocatedInDatabase(other), is(0L));
+        assertThat(usedInDatabase(other), is(7L));
+    }
+
+    @Test
+    public void shouldRemoveNothingIfNoFilesMatch() throws Exception
+    {
+        long space = aSpace(100);
+        aFile(space, 20, FileState.STORED);
+
+        int removed = inTransaction(() -> db.remove(db.files().whereStateIsIn(FileState.TRANSFERRING)));
+
+        assertThat(removed, is(0));
+        assertThat(db.getSpace(space).getUsedSizeInBytes(), is(20L));
+    }
+
+    @Test
+    public void shouldRecomputeSpaceUsageAfterUncleanShutdown() throws Exception
+    {
+        long space = aSpace(100);
+        aFile(space, 10, FileState.TRANSFERRING);
+        aFile(space, 20, FileState.STORED);
+        db.flushSpaceUsage();
+        aFile(space, 30, FileState.STORED);
+
+        db = start(true);
+
+        assertThat(isDeferredInDatabase(), is(true));
+        assertThat(allocatedInDatabase(space), is(10L));
+        assertThat(usedInDatabase(space), is(50L));
+        assertThat(db.getSpace(space).getUsedSizeInBytes(), is(50L));
+    }
+
+    @Test
+    public void shouldNotRecomputeSpaceUsageAfterCleanShutdown() throws Exception
+    {
+        long space = aSpace(100);
+        aFile(space, 20, FileState.STORED);
+        db.flushSpaceUsage();
+
+        assertThat(db.markSpaceUsageClean(), is(true));
+        assertThat(isDeferredInDatabase(), is(false));
+
+        /* Recomputing would reset this value to 20. */
+        jdbc.update("UPDATE srmspace SET usedspaceinbytes = 25 WHERE id = ?", space);
+        db = start(true);
+
+        assertThat(isDeferredInDatabase(), is(true));
+        assertThat(usedInDatabase(space), is(25L));
+    }
+
+    @Test
+    public void shouldAccountWithTriggersAfterCleanShutdown() throws Exception
+    {
+        long space = aSpace(100);
+        db.flushSpaceUsage();
+        db.markSpaceUsageClean();
+
+        jdbc.update("INSERT INTO srmspacefile (spacereservationid, sizeinbytes, creationtime, state) VALUES (?, ?, ?, ?)",
+                    space, 20, System.currentTimeMillis(), FileState.STORED.getStateId());
+
+        assertThat(usedInDatabase(space), is(20L));
+    }
+
+    @Test
+    public void shouldNotMarkSpaceUsageCleanWithUnflushedChanges() throws Exception
+    {
+        long space = aSpace(100);
+        aFile(space, 20, FileState.STORED);
+
+        assertThat(db.markSpaceUsageClean(), is(false));
+        assertThat(isDeferredInDatabase(), is(true));
+    }
+
+    @Test
+    public void shouldNotMarkSpaceUsageCleanWithUncommittedChanges() throws Exception
+    {
+        long space = aSpace(100);
+        TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            db.insertFile(space, null, null, 20, null, FileState.STORED);
+            db.flushSpaceUsage();
+
+            assertThat(db.markSpaceUsageClean(), is(false));
+        } finally {
+            txManager.rollback(status);
+        }
+    }
+}
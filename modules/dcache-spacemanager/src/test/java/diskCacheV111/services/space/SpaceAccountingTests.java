@@ -0,0 +1,152 @@
+package diskCacheV111.services.space;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.RetentionPolicy;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SpaceAccountingTests
+{
+    private final AtomicInteger loads = new AtomicInteger();
+    private Space space;
+    private SpaceAccounting accounting;
+
+    @Before
+    public void setUp()
+    {
+        space = aSpace(100, 10, 20);
+        accounting = new SpaceAccounting(id -> {
+            loads.incrementAndGet();
+            return space;
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Space aSpace(long size, long used, long allocated)
+    {
+        return new Space(1, "atlas", null, RetentionPolicy.REPLICA, AccessLatency.ONLINE, 1, size,
+                         0, null, null, SpaceState.RESERVED, used, allocated);
+    }
+
+    private void completeTransaction(int status)
+    {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void shouldAdmitAllocationsUpToSize() throws Exception
+    {
+        accounting.allocate(space, 40, 0);
+        accounting.allocate(space, 30, 0);
+
+        Space accounted = accounting.apply(space);
+        assertThat(accounted.getAllocatedSpaceInBytes(), is(90L));
+        assertThat(accounted.getUsedSizeInBytes(), is(10L));
+    }
+
+    @Test(expected = NoFreeSpaceException.class)
+    public void shouldRejectAllocationsBeyondSize() throws Exception
+    {
+        accounting.allocate(space, 40, 0);
+        accounting.allocate(space, 31, 0);
+    }
+
+    @Test
+    public void shouldDrainAccumulatedChanges() throws Exception
+    {
+        accounting.allocate(space, 40, 0);
+        accounting.adjust(1, -40, 40);
+        accounting.allocate(space, 5, 0);
+
+        List<SpaceAccounting.Change> changes = accounting.drain();
+
+        assertThat(changes, hasSize(1));
+        assertThat(changes.get(0).getId(), is(1L));
+        assertThat(changes.get(0).getAllocated(), is(5L));
+        assertThat(changes.get(0).getUsed(), is(40L));
+        assertThat(accounting.drain(), is(empty()));
+    }
+
+    @Test
+    public void shouldRestoreChangesThatFailedToPersist() throws Exception
+    {
+        accounting.allocate(space, 40, 0);
+
+        accounting.restore(accounting.drain());
+
+        assertThat(accounting.drain().get(0).getAllocated(), is(40L));
+    }
+
+    @Test
+    public void shouldNotDrainUncommittedChanges() throws Exception
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        accounting.allocate(space, 40, 0);
+
+        assertThat(accounting.drain(), is(empty()));
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(accounting.drain().get(0).getAllocated(), is(40L));
+    }
+
+    @Test
+    public void shouldUndoRolledBackChanges() throws Exception
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        accounting.allocate(space, 70, 0);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(accounting.drain(), is(empty()));
+        assertThat(accounting.apply(space).getAllocatedSpaceInBytes(), is(20L));
+        accounting.allocate(space, 70, 0);
+    }
+
+    @Test
+    public void shouldReloadCountersAfterEviction() throws Exception
+    {
+        accounting.allocate(space, 40, 0);
+        accounting.drain();
+        space = aSpace(100, 10, 60);
+
+        accounting.evictIdle();
+
+        assertThat(accounting.size(), is(0));
+        assertThat(accounting.apply(space).getAllocatedSpaceInBytes(), is(60L));
+        accounting.allocate(space, 30, 0);
+        assertThat(loads.get(), is(2));
+        assertThat(accounting.apply(space).getAllocatedSpaceInBytes(), is(90L));
+    }
+
+    @Test
+    public void shouldNotEvictAccountsWithUncommittedChanges() throws Exception
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        accounting.allocate(space, 40, 0);
+
+        accounting.evictIdle();
+
+        assertThat(accounting.size(), is(1));
+    }
+}
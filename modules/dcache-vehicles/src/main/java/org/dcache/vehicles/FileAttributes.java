@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -539,6 +540,92 @@ public class FileAttributes implements Serializable {
         return _fileType;
     }
 
+    /**
+     * Returns a copy of these file attributes limited to {@code attributes}.
+     * Attributes not defined in this object are not defined in the copy.
+     * Collections and the storage info are copied, so the copy can be
+     * modified without affecting this object.
+     */
+    @Nonnull
+    public FileAttributes copy(Set<FileAttribute> attributes)
+    {
+        FileAttributes copy = new FileAttributes();
+        for (FileAttribute attribute : attributes) {
+            if (isUndefined(attribute)) {
+                continue;
+            }
+            switch (attribute) {
+            case ACCESS_LATENCY:
+                copy.setAccessLatency(_accessLatency);
+                break;
+            case ACCESS_TIME:
+                copy.setAccessTime(_atime);
+                break;
+            case ACL:
+                copy.setAcl(_acl);
+                break;
+            case CACHECLASS:
+                copy.setCacheClass(_cacheClass);
+                break;
+            case CHECKSUM:
+                copy.setChecksums(new HashSet<>(_checksums));
+                break;
+            case CHANGE_TIME:
+                copy.setChangeTime(_ctime);
+                break;
+            case CREATION_TIME:
+                copy.setCreationTime(_creationTime);
+                break;
+            case FLAGS:
+                copy.setFlags(new HashMap<>(_flags));
+                break;
+            case HSM:
+                copy.setHsm(_hsm);
+                break;
+            case LOCATIONS:
+                copy.setLocations(new ArrayList<>(_locations));
+                break;
+            case MODE:
+                copy.setMode(_mode);
+                break;
+            case MODIFICATION_TIME:
+                copy.setModificationTime(_mtime);
+                break;
+            case OWNER:
+                copy.setOwner(_owner);
+                break;
+            case OWNER_GROUP:
+                copy.setGroup(_group);
+                break;
+            case RETENTION_POLICY:
+                copy.setRetentionPolicy(_retentionPolicy);
+                break;
+            case SIZE:
+                copy.setSize(_size);
+                break;
+            case STORAGECLASS:
+                copy.setStorageClass(_storageClass);
+                break;
+            case STORAGEINFO:
+                copy.setStorageInfo(_storageInfo.clone());
+                break;
+            case TYPE:
+                copy.setFileType(_fileType);
+                break;
+            case PNFSID:
+                copy.setPnfsId(_pnfsId);
+                break;
+            case NLINK:
+                copy.setNlink(_nlink);
+                break;
+            default:
+                copy.define(attribute);
+                break;
+            }
+        }
+        return copy;
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,66 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import diskCacheV111.vehicles.DoorTransferFinishedMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+
+import dmg.cells.nucleus.MessageSerializer;
+
+import static org.dcache.vehicles.serializers.MessageFields.*;
+
+public class DoorTransferFinishedMessageSerializer implements MessageSerializer<DoorTransferFinishedMessage>
+{
+    @Override
+    public String getName()
+    {
+        return "DoorTransferFinishedMessage-1";
+    }
+
+    @Override
+    public Class<DoorTransferFinishedMessage> getType()
+    {
+        return DoorTransferFinishedMessage.class;
+    }
+
+    @Override
+    public void writeTo(DoorTransferFinishedMessage message, ObjectOutput out) throws IOException
+    {
+        writePnfsId(out, message.getPnfsId());
+        out.writeObject(message.getProtocolInfo());
+        writeFileAttributes(out, message.getFileAttributes());
+        writeString(out, message.getPoolName());
+        writeString(out, message.getIoQueueName());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public DoorTransferFinishedMessage readFrom(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        DoorTransferFinishedMessage message =
+                new DoorTransferFinishedMessage(0, readPnfsId(in), (ProtocolInfo) in.readObject(),
+                                                readFileAttributes(in), readString(in), readString(in));
+        readMessage(in, message);
+        return message;
+    }
+}
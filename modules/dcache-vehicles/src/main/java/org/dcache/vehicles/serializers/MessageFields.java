@@ -0,0 +1,503 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import javax.security.auth.Subject;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.Message;
+import diskCacheV111.vehicles.StorageInfo;
+
+import dmg.cells.nucleus.CellAddressCore;
+
+import org.dcache.acl.ACL;
+import org.dcache.auth.GidPrincipal;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.UserNamePrincipal;
+import org.dcache.auth.attributes.Restriction;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Utility methods for writing and reading fields of messages in
+ * {@link dmg.cells.nucleus.MessageSerializer} implementations.
+ *
+ * Values for which no explicit encoding is defined are written using Java
+ * serialization.
+ */
+public final class MessageFields
+{
+    private static final byte NULL = 0;
+    private static final byte UTF = 1;
+    private static final byte OBJECT = 2;
+
+    /**
+     * Longest string guaranteed to fit into the modified UTF-8 encoding of
+     * {@link java.io.DataOutput#writeUTF}.
+     */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    private static final byte OTHER_PRINCIPAL = 0;
+    private static final byte UID_PRINCIPAL = 1;
+    private static final byte GID_PRINCIPAL = 2;
+    private static final byte USER_NAME_PRINCIPAL = 3;
+
+    private MessageFields()
+    {
+    }
+
+    public static void writeString(ObjectOutput out, String s) throws IOException
+    {
+        if (s == null) {
+            out.writeByte(NULL);
+        } else if (s.length() <= MAX_UTF_LENGTH) {
+            out.writeByte(UTF);
+            out.writeUTF(s);
+        } else {
+            out.writeByte(OBJECT);
+            out.writeObject(s);
+        }
+    }
+
+    public static String readString(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case UTF:
+            return in.readUTF();
+        case OBJECT:
+            return (String) in.readObject();
+        default:
+            throw new IOException("Invalid string encoding: " + type);
+        }
+    }
+
+    public static void writePnfsId(ObjectOutput out, PnfsId pnfsId) throws IOException
+    {
+        writeString(out, (pnfsId == null) ? null : pnfsId.toString());
+    }
+
+    public static PnfsId readPnfsId(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        String id = readString(in);
+        return (id == null) ? null : new PnfsId(id);
+    }
+
+    public static void writeCellAddress(ObjectOutput out, CellAddressCore address) throws IOException
+    {
+        out.writeBoolean(address != null);
+        if (address != null) {
+            writeString(out, address.getCellName());
+            writeString(out, address.getCellDomainName());
+        }
+    }
+
+    public static CellAddressCore readCellAddress(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        return in.readBoolean() ? new CellAddressCore(readString(in), readString(in)) : null;
+    }
+
+    /**
+     * Writes a set of enum constants by name. The set may be null.
+     */
+    public static <E extends Enum<E>> void writeEnumSet(ObjectOutput out, Set<E> set) throws IOException
+    {
+        if (set == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(set.size());
+            for (E e : set) {
+                out.writeUTF(e.name());
+            }
+        }
+    }
+
+    public static <E extends Enum<E>> EnumSet<E> readEnumSet(ObjectInput in, Class<E> type) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        EnumSet<E> set = EnumSet.noneOf(type);
+        for (int i = 0; i < size; i++) {
+            set.add(Enum.valueOf(type, in.readUTF()));
+        }
+        return set;
+    }
+
+    public static void writeRestriction(ObjectOutput out, Restriction restriction) throws IOException
+    {
+        out.writeObject(Restrictions.none().equals(restriction) ? null : restriction);
+    }
+
+    public static Restriction readRestriction(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        Restriction restriction = (Restriction) in.readObject();
+        return (restriction == null) ? Restrictions.none() : restriction;
+    }
+
+    public static void writeAssumption(ObjectOutput out, Assumption assumption) throws IOException
+    {
+        out.writeObject(assumption == Assumptions.none() ? null : assumption);
+    }
+
+    public static Assumption readAssumption(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        Assumption assumption = (Assumption) in.readObject();
+        return (assumption == null) ? Assumptions.none() : assumption;
+    }
+
+    public static void writeSubject(ObjectOutput out, Subject subject) throws IOException
+    {
+        out.writeBoolean(subject.isReadOnly());
+        List<Principal> principals = new ArrayList<>(subject.getPrincipals());
+        out.writeInt(principals.size());
+        for (Principal principal : principals) {
+            if (principal.getClass() == UidPrincipal.class) {
+                out.writeByte(UID_PRINCIPAL);
+                out.writeLong(((UidPrincipal) principal).getUid());
+            } else if (principal.getClass() == GidPrincipal.class) {
+                out.writeByte(GID_PRINCIPAL);
+                out.writeLong(((GidPrincipal) principal).getGid());
+                out.writeBoolean(((GidPrincipal) principal).isPrimaryGroup());
+            } else if (principal.getClass() == UserNamePrincipal.class) {
+                out.writeByte(USER_NAME_PRINCIPAL);
+                writeString(out, principal.getName());
+            } else {
+                out.writeByte(OTHER_PRINCIPAL);
+                out.writeObject(principal);
+            }
+        }
+    }
+
+    public static Subject readSubject(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        boolean isReadOnly = in.readBoolean();
+        int size = in.readInt();
+        Set<Principal> principals = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            byte type = in.readByte();
+            switch (type) {
+            case UID_PRINCIPAL:
+                principals.add(new UidPrincipal(in.readLong()));
+                break;
+            case GID_PRINCIPAL:
+                principals.add(new GidPrincipal(in.readLong(), in.readBoolean()));
+                break;
+            case USER_NAME_PRINCIPAL:
+                principals.add(new UserNamePrincipal(readString(in)));
+                break;
+            case OTHER_PRINCIPAL:
+                principals.add((Principal) in.readObject());
+                break;
+            default:
+                throw new IOException("Invalid principal encoding: " + type);
+            }
+        }
+        return new Subject(isReadOnly, principals, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * Writes the fields declared by {@link Message}.
+     *
+     * To allow subclasses with constructor arguments to be instantiated before
+     * these fields are read, serializers write them after the fields of the subclass.
+     */
+    public static void writeMessage(ObjectOutput out, Message message) throws IOException
+    {
+        if (!message.isReply() && (message.getReturnCode() != 0 || message.getErrorObject() != null)) {
+            throw new IOException("Cannot encode return code of a message that is not a reply");
+        }
+        out.writeBoolean(message.getReplyRequired());
+        out.writeBoolean(message.isReply());
+        out.writeInt(message.getReturnCode());
+        out.writeObject(message.getErrorObject());
+        out.writeLong(message.getId());
+        writeSubject(out, message.getSubject());
+    }
+
+    public static void readMessage(ObjectInput in, Message message) throws IOException, ClassNotFoundException
+    {
+        message.setReplyRequired(in.readBoolean());
+        boolean isReply = in.readBoolean();
+        int returnCode = in.readInt();
+        Serializable errorObject = (Serializable) in.readObject();
+        if (isReply) {
+            message.setReply(returnCode, errorObject);
+        }
+        message.setId(in.readLong());
+        message.setSubject(readSubject(in));
+    }
+
+    /**
+     * Writes the defined attributes of {@code attributes}, which may be null.
+     *
+     * @throws IOException if {@code attributes} defines an attribute without encoding
+     */
+    public static void writeFileAttributes(ObjectOutput out, FileAttributes attributes) throws IOException
+    {
+        if (attributes == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        Set<FileAttribute> defined = attributes.getDefinedAttributes();
+        out.writeInt(defined.size());
+        for (FileAttribute attribute : defined) {
+            out.writeUTF(attribute.name());
+            switch (attribute) {
+            case ACCESS_LATENCY:
+                AccessLatency accessLatency = attributes.getAccessLatency();
+                out.writeInt(accessLatency == null ? -1 : accessLatency.getId());
+                break;
+            case ACCESS_TIME:
+                out.writeLong(attributes.getAccessTime());
+                break;
+            case ACL:
+                out.writeObject(attributes.getAcl());
+                break;
+            case CACHECLASS:
+                writeString(out, attributes.getCacheClass());
+                break;
+            case CHECKSUM:
+                Set<Checksum> checksums = attributes.getChecksums();
+                if (checksums == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(checksums.size());
+                    for (Checksum checksum : checksums) {
+                        out.writeInt(checksum.getType().getType());
+                        out.writeUTF(checksum.getValue());
+                    }
+                }
+                break;
+            case CHANGE_TIME:
+                out.writeLong(attributes.getChangeTime());
+                break;
+            case CREATION_TIME:
+                out.writeLong(attributes.getCreationTime());
+                break;
+            case FLAGS:
+                Map<String, String> flags = attributes.getFlags();
+                if (flags == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(flags.size());
+                    for (Map.Entry<String, String> flag : flags.entrySet()) {
+                        writeString(out, flag.getKey());
+                        writeString(out, flag.getValue());
+                    }
+                }
+                break;
+            case HSM:
+                writeString(out, attributes.getHsm());
+                break;
+            case LOCATIONS:
+                Collection<String> locations = attributes.getLocations();
+                if (locations == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(locations.size());
+                    for (String location : locations) {
+                        writeString(out, location);
+                    }
+                }
+                break;
+            case MODE:
+                out.writeInt(attributes.getMode());
+                break;
+            case MODIFICATION_TIME:
+                out.writeLong(attributes.getModificationTime());
+                break;
+            case OWNER:
+                out.writeInt(attributes.getOwner());
+                break;
+            case OWNER_GROUP:
+                out.writeInt(attributes.getGroup());
+                break;
+            case RETENTION_POLICY:
+                RetentionPolicy retentionPolicy = attributes.getRetentionPolicy();
+                out.writeInt(retentionPolicy == null ? -1 : retentionPolicy.getId());
+                break;
+            case SIZE:
+                out.writeLong(attributes.getSize());
+                break;
+            case STORAGECLASS:
+                writeString(out, attributes.getStorageClass());
+                break;
+            case STORAGEINFO:
+                out.writeObject(attributes.getStorageInfo());
+                break;
+            case TYPE:
+                FileType type = attributes.getFileType();
+                writeString(out, type == null ? null : type.name());
+                break;
+            case PNFSID:
+                writePnfsId(out, attributes.getPnfsId());
+                break;
+            case NLINK:
+                out.writeInt(attributes.getNlink());
+                break;
+            default:
+                throw new IOException("No encoding for attribute " + attribute);
+            }
+        }
+    }
+
+    public static FileAttributes readFileAttributes(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        FileAttributes attributes = new FileAttributes();
+        for (int i = 0; i < size; i++) {
+            FileAttribute attribute = FileAttribute.valueOf(in.readUTF());
+            switch (attribute) {
+            case ACCESS_LATENCY:
+                int accessLatency = in.readInt();
+                attributes.setAccessLatency(accessLatency < 0 ? null : AccessLatency.getAccessLatency(accessLatency));
+                break;
+            case ACCESS_TIME:
+                attributes.setAccessTime(in.readLong());
+                break;
+            case ACL:
+                attributes.setAcl((ACL) in.readObject());
+                break;
+            case CACHECLASS:
+                attributes.setCacheClass(intern(readString(in)));
+                break;
+            case CHECKSUM:
+                int checksumCount = in.readInt();
+                if (checksumCount < 0) {
+                    attributes.setChecksums(null);
+                } else {
+                    Set<Checksum> checksums = new HashSet<>();
+                    for (int j = 0; j < checksumCount; j++) {
+                        checksums.add(new Checksum(ChecksumType.getChecksumType(in.readInt()), in.readUTF()));
+                    }
+                    attributes.setChecksums(checksums);
+                }
+                break;
+            case CHANGE_TIME:
+                attributes.setChangeTime(in.readLong());
+                break;
+            case CREATION_TIME:
+                attributes.setCreationTime(in.readLong());
+                break;
+            case FLAGS:
+                int flagCount = in.readInt();
+                if (flagCount < 0) {
+                    attributes.setFlags(null);
+                } else {
+                    Map<String, String> flags = new HashMap<>();
+                    for (int j = 0; j < flagCount; j++) {
+                        flags.put(intern(readString(in)), readString(in));
+                    }
+                    attributes.setFlags(flags);
+                }
+                break;
+            case HSM:
+                attributes.setHsm(intern(readString(in)));
+                break;
+            case LOCATIONS:
+                int locationCount = in.readInt();
+                if (locationCount < 0) {
+                    attributes.setLocations(null);
+                } else {
+                    List<String> locations = new ArrayList<>(locationCount);
+                    for (int j = 0; j < locationCount; j++) {
+                        locations.add(readString(in));
+                    }
+                    attributes.setLocations(locations);
+                }
+                break;
+            case MODE:
+                attributes.setMode(in.readInt());
+                break;
+            case MODIFICATION_TIME:
+                attributes.setModificationTime(in.readLong());
+                break;
+            case OWNER:
+                attributes.setOwner(in.readInt());
+                break;
+            case OWNER_GROUP:
+                attributes.setGroup(in.readInt());
+                break;
+            case RETENTION_POLICY:
+                int retentionPolicy = in.readInt();
+                attributes.setRetentionPolicy(retentionPolicy < 0 ? null : RetentionPolicy.getRetentionPolicy(retentionPolicy));
+                break;
+            case SIZE:
+                attributes.setSize(in.readLong());
+                break;
+            case STORAGECLASS:
+                attributes.setStorageClass(intern(readString(in)));
+                break;
+            case STORAGEINFO:
+                attributes.setStorageInfo((StorageInfo) in.readObject());
+                break;
+            case TYPE:
+                String type = readString(in);
+                attributes.setFileType(type == null ? null : FileType.valueOf(type));
+                break;
+            case PNFSID:
+                attributes.setPnfsId(readPnfsId(in));
+                break;
+            case NLINK:
+                attributes.setNlink(in.readInt());
+                break;
+            default:
+                throw new IOException("No encoding for attribute " + attribute);
+            }
+        }
+        return attributes;
+    }
+
+    private static String intern(String s)
+    {
+        return (s == null) ? null : s.intern();
+    }
+}
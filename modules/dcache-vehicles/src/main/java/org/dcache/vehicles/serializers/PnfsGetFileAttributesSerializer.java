@@ -0,0 +1,73 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import dmg.cells.nucleus.MessageSerializer;
+
+import org.dcache.acl.enums.AccessMask;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+
+import static org.dcache.vehicles.serializers.MessageFields.*;
+
+public class PnfsGetFileAttributesSerializer implements MessageSerializer<PnfsGetFileAttributes>
+{
+    @Override
+    public String getName()
+    {
+        return "PnfsGetFileAttributes-1";
+    }
+
+    @Override
+    public Class<PnfsGetFileAttributes> getType()
+    {
+        return PnfsGetFileAttributes.class;
+    }
+
+    @Override
+    public void writeTo(PnfsGetFileAttributes message, ObjectOutput out) throws IOException
+    {
+        writePnfsId(out, message.getPnfsId());
+        writeEnumSet(out, message.getRequestedAttributes());
+        writeString(out, message.getPnfsPath());
+        writeFileAttributes(out, message.getFileAttributes());
+        out.writeBoolean(message.getUpdateAtime());
+        writeEnumSet(out, message.getAccessMask());
+        writeRestriction(out, message.getRestriction());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public PnfsGetFileAttributes readFrom(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        PnfsGetFileAttributes message =
+                new PnfsGetFileAttributes(readPnfsId(in), readEnumSet(in, FileAttribute.class));
+        message.setPnfsPath(readString(in));
+        message.setFileAttributes(readFileAttributes(in));
+        message.setUpdateAtime(in.readBoolean());
+        message.setAccessMask(readEnumSet(in, AccessMask.class));
+        message.setRestriction(readRestriction(in));
+        readMessage(in, message);
+        return message;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import diskCacheV111.vehicles.PoolAcceptFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.vehicles.FileAttributes;
+
+public class PoolAcceptFileMessageSerializer extends PoolIoFileMessageSerializer<PoolAcceptFileMessage>
+{
+    @Override
+    public String getName()
+    {
+        return "PoolAcceptFileMessage-1";
+    }
+
+    @Override
+    public Class<PoolAcceptFileMessage> getType()
+    {
+        return PoolAcceptFileMessage.class;
+    }
+
+    @Override
+    protected void writeFields(PoolAcceptFileMessage message, ObjectOutput out) throws IOException
+    {
+        out.writeLong(message.getPreallocated());
+    }
+
+    @Override
+    protected PoolAcceptFileMessage createMessage(String pool, ProtocolInfo protocolInfo,
+                                                  FileAttributes fileAttributes, Assumption assumption,
+                                                  ObjectInput in)
+            throws IOException
+    {
+        return new PoolAcceptFileMessage(pool, protocolInfo, fileAttributes, assumption, in.readLong());
+    }
+}
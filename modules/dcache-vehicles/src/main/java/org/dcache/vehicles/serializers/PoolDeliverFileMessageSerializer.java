@@ -0,0 +1,56 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.vehicles.FileAttributes;
+
+public class PoolDeliverFileMessageSerializer extends PoolIoFileMessageSerializer<PoolDeliverFileMessage>
+{
+    @Override
+    public String getName()
+    {
+        return "PoolDeliverFileMessage-1";
+    }
+
+    @Override
+    public Class<PoolDeliverFileMessage> getType()
+    {
+        return PoolDeliverFileMessage.class;
+    }
+
+    @Override
+    protected void writeFields(PoolDeliverFileMessage message, ObjectOutput out)
+    {
+    }
+
+    @Override
+    protected PoolDeliverFileMessage createMessage(String pool, ProtocolInfo protocolInfo,
+                                                   FileAttributes fileAttributes, Assumption assumption,
+                                                   ObjectInput in)
+    {
+        return new PoolDeliverFileMessage(pool, protocolInfo, fileAttributes, assumption);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import diskCacheV111.vehicles.PoolIoFileMessage;
+import diskCacheV111.vehicles.ProtocolInfo;
+
+import dmg.cells.nucleus.MessageSerializer;
+
+import org.dcache.pool.assumption.Assumption;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.dcache.vehicles.serializers.MessageFields.*;
+
+/**
+ * Base class for serializers of the subclasses of PoolIoFileMessage.
+ */
+public abstract class PoolIoFileMessageSerializer<T extends PoolIoFileMessage> implements MessageSerializer<T>
+{
+    @Override
+    public void writeTo(T message, ObjectOutput out) throws IOException
+    {
+        writeString(out, message.getPoolName());
+        out.writeObject(message.getProtocolInfo());
+        writeFileAttributes(out, message.getFileAttributes());
+        writeAssumption(out, message.getAssumption());
+        writeFields(message, out);
+        out.writeBoolean(message.isPool2Pool());
+        writeString(out, message.getIoQueueName());
+        out.writeInt(message.getMoverId());
+        writeString(out, message.getInitiator());
+        out.writeBoolean(message.isForceSourceMode());
+        writeString(out, message.getBillingPath());
+        writeString(out, message.getTransferPath());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public T readFrom(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        T message = createMessage(readString(in), (ProtocolInfo) in.readObject(),
+                                  readFileAttributes(in), readAssumption(in), in);
+        if (in.readBoolean()) {
+            message.setPool2Pool();
+        }
+        message.setIoQueueName(readString(in));
+        message.setMoverId(in.readInt());
+        message.setInitiator(readString(in));
+        message.setForceSourceMode(in.readBoolean());
+        message.setBillingPath(readString(in));
+        message.setTransferPath(readString(in));
+        readMessage(in, message);
+        return message;
+    }
+
+    /**
+     * Writes the fields declared by the subclass of PoolIoFileMessage.
+     */
+    protected abstract void writeFields(T message, ObjectOutput out) throws IOException;
+
+    /**
+     * Creates a message, reading the fields written by {@link #writeFields}.
+     */
+    protected abstract T createMessage(String pool, ProtocolInfo protocolInfo, FileAttributes fileAttributes,
+                                       Assumption assumption, ObjectInput in)
+            throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,236 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import javax.security.auth.Subject;
+
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.DoorTransferFinishedMessage;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.PoolAcceptFileMessage;
+import diskCacheV111.vehicles.PoolDeliverFileMessage;
+
+import dmg.cells.nucleus.MessageCodec;
+
+import org.dcache.acl.enums.AccessMask;
+import org.dcache.auth.GidPrincipal;
+import org.dcache.auth.LoginNamePrincipal;
+import org.dcache.auth.UidPrincipal;
+import org.dcache.auth.UserNamePrincipal;
+import org.dcache.auth.attributes.Restrictions;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.namespace.FileType;
+import org.dcache.pool.assumption.Assumptions;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+import org.dcache.vehicles.PnfsGetFileAttributes;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MessageSerializersTest
+{
+    private static final PnfsId PNFSID = new PnfsId("0000D1B2C3D4E5F6A7B8C9D0E1F2A3B4C5D6");
+
+    private final MessageCodec codec = MessageCodec.getDefault();
+
+    @Test
+    public void shouldRoundTripPnfsGetFileAttributesRequest() throws Exception
+    {
+        PnfsGetFileAttributes message =
+                new PnfsGetFileAttributes("/pnfs/example.org/data/file", EnumSet.of(FileAttribute.SIZE, FileAttribute.PNFSID));
+        message.setSubject(subject());
+        message.setAccessMask(EnumSet.of(AccessMask.READ_DATA));
+        message.setRestriction(Restrictions.readOnly());
+        message.setUpdateAtime(true);
+        message.setId(42);
+
+        PnfsGetFileAttributes decoded = roundTrip(message, "PnfsGetFileAttributes-1");
+
+        assertThat(decoded.getPnfsId(), is(nullValue()));
+        assertThat(decoded.getPnfsPath(), is("/pnfs/example.org/data/file"));
+        assertThat(decoded.getRequestedAttributes(), is(message.getRequestedAttributes()));
+        assertThat(decoded.getSubject(), is(message.getSubject()));
+        assertThat(decoded.getAccessMask(), is(message.getAccessMask()));
+        assertThat(decoded.getRestriction(), is(Restrictions.readOnly()));
+        assertThat(decoded.getUpdateAtime(), is(true));
+        assertThat(decoded.getId(), is(42L));
+        assertThat(decoded.getReplyRequired(), is(true));
+        assertThat(decoded.isReply(), is(false));
+        assertThat(decoded.getFileAttributes(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRoundTripPnfsGetFileAttributesReply() throws Exception
+    {
+        PnfsGetFileAttributes message = new PnfsGetFileAttributes(PNFSID, EnumSet.allOf(FileAttribute.class));
+        FileAttributes attributes = fileAttributes();
+        message.setFileAttributes(attributes);
+        message.setSucceeded();
+
+        PnfsGetFileAttributes decoded = roundTrip(message, "PnfsGetFileAttributes-1");
+
+        assertThat(decoded.getPnfsId(), is(PNFSID));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(0));
+        assertThat(decoded.getRestriction(), is(Restrictions.none()));
+        assertSameAttributes(decoded.getFileAttributes(), attributes);
+    }
+
+    @Test
+    public void shouldRoundTripFailedPnfsGetFileAttributes() throws Exception
+    {
+        PnfsGetFileAttributes message = new PnfsGetFileAttributes(PNFSID, EnumSet.of(FileAttribute.SIZE));
+        message.setFailed(10001, "No such file");
+
+        PnfsGetFileAttributes decoded = roundTrip(message, "PnfsGetFileAttributes-1");
+
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReturnCode(), is(10001));
+        assertThat(decoded.getErrorObject(), is((Object) "No such file"));
+    }
+
+    @Test
+    public void shouldRoundTripDoorTransferFinishedMessage() throws Exception
+    {
+        DCapProtocolInfo protocolInfo = new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("localhost", 22125));
+        DoorTransferFinishedMessage message =
+                new DoorTransferFinishedMessage(17, PNFSID, protocolInfo, fileAttributes(), "pool1", null);
+        message.setSubject(subject());
+
+        DoorTransferFinishedMessage decoded = roundTrip(message, "DoorTransferFinishedMessage-1");
+
+        assertThat(decoded.getId(), is(17L));
+        assertThat(decoded.getPnfsId(), is(PNFSID));
+        assertThat(decoded.getPoolName(), is("pool1"));
+        assertThat(decoded.getIoQueueName(), is(nullValue()));
+        assertThat(decoded.getProtocolInfo().getProtocol(), is("DCap"));
+        assertThat(decoded.getSubject(), is(message.getSubject()));
+        assertSameAttributes(decoded.getFileAttributes(), message.getFileAttributes());
+    }
+
+    @Test
+    public void shouldRoundTripPoolDeliverFileMessage() throws Exception
+    {
+        DCapProtocolInfo protocolInfo = new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("localhost", 22125));
+        PoolDeliverFileMessage message =
+                new PoolDeliverFileMessage("pool1", protocolInfo, fileAttributes(), Assumptions.none());
+        message.setIoQueueName("regular");
+        message.setInitiator("door:dcap@dcapDomain");
+        message.setBillingPath("/pnfs/example.org/data/file");
+        message.setId(7);
+
+        PoolDeliverFileMessage decoded = roundTrip(message, "PoolDeliverFileMessage-1");
+
+        assertThat(decoded.getPoolName(), is("pool1"));
+        assertThat(decoded.getPnfsId(), is(PNFSID));
+        assertThat(decoded.getIoQueueName(), is("regular"));
+        assertThat(decoded.getInitiator(), is("door:dcap@dcapDomain"));
+        assertThat(decoded.getBillingPath(), is("/pnfs/example.org/data/file"));
+        assertThat(decoded.getTransferPath(), is("/pnfs/example.org/data/file"));
+        assertThat(decoded.isPool2Pool(), is(false));
+        assertThat(decoded.isForceSourceMode(), is(false));
+        assertThat(decoded.getAssumption(), is(sameInstance(Assumptions.none())));
+        assertThat(decoded.getId(), is(7L));
+    }
+
+    @Test
+    public void shouldRoundTripPoolAcceptFileMessage() throws Exception
+    {
+        DCapProtocolInfo protocolInfo = new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("localhost", 22125));
+        PoolAcceptFileMessage message =
+                new PoolAcceptFileMessage("pool1", protocolInfo, fileAttributes(), Assumptions.none(), 1024);
+        message.setPool2Pool();
+        message.setForceSourceMode(true);
+        message.setMoverId(3);
+
+        PoolAcceptFileMessage decoded = roundTrip(message, "PoolAcceptFileMessage-1");
+
+        assertThat(decoded.getPreallocated(), is(1024L));
+        assertThat(decoded.isPool2Pool(), is(true));
+        assertThat(decoded.isForceSourceMode(), is(true));
+        assertThat(decoded.getMoverId(), is(3));
+        assertSameAttributes(decoded.getFileAttributes(), message.getFileAttributes());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T message, String serializer)
+    {
+        byte[] bytes = codec.encode(message);
+        assertThat(MessageCodec.getSerializerName(bytes), is(serializer));
+        Object decoded = codec.decode(bytes);
+        assertThat(decoded, is(instanceOf(message.getClass())));
+        return (T) decoded;
+    }
+
+    private static Subject subject()
+    {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new UidPrincipal(1000));
+        subject.getPrincipals().add(new GidPrincipal(1000, true));
+        subject.getPrincipals().add(new GidPrincipal(2000, false));
+        subject.getPrincipals().add(new UserNamePrincipal("alice"));
+        subject.getPrincipals().add(new LoginNamePrincipal("alice"));
+        return subject;
+    }
+
+    private static FileAttributes fileAttributes()
+    {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(PNFSID);
+        attributes.setSize(1024);
+        attributes.setMode(0644);
+        attributes.setOwner(1000);
+        attributes.setGroup(1000);
+        attributes.setNlink(1);
+        attributes.setFileType(FileType.REGULAR);
+        attributes.setAccessTime(1L);
+        attributes.setChangeTime(2L);
+        attributes.setCreationTime(3L);
+        attributes.setModificationTime(4L);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setChecksums(ImmutableSet.of(new Checksum(ChecksumType.ADLER32, "12345678")));
+        attributes.setLocations(asList("pool1", "pool2"));
+        attributes.setFlags(ImmutableMap.of("a", "b"));
+        attributes.setStorageInfo(new GenericStorageInfo("osm", "test:disk"));
+        attributes.setStorageClass("test:disk@osm");
+        attributes.setHsm("osm");
+        attributes.setCacheClass(null);
+        return attributes;
+    }
+
+    private static void assertSameAttributes(FileAttributes actual, FileAttributes expected)
+    {
+        assertThat(actual.getDefinedAttributes(), is(expected.getDefinedAttributes()));
+        assertThat(actual.toString(), is(expected.toString()));
+    }
+}
@@ -12,8 +12,6 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
 import io.netty.handler.logging.LoggingHandler;
 import org.slf4j.Logger;
@@ -38,6 +36,7 @@ import dmg.util.TimebasedCounter;
 
 import org.dcache.util.NDC;
 import org.dcache.util.CDCThreadFactory;
+import org.dcache.util.NettyTransport;
 import org.dcache.xrootd.core.XrootdDecoder;
 import org.dcache.xrootd.core.XrootdEncoder;
 import org.dcache.xrootd.core.XrootdHandshakeHandler;
@@ -68,6 +67,7 @@ public class NettyXrootdServer implements CellIdentityAware
     private String sessionPrefix;
     private EventLoopGroup _acceptGroup;
     private EventLoopGroup _socketGroup;
+    private NettyTransport _transport = NettyTransport.AUTO;
     private Map<String, String> _queryConfig;
     private Map<String, String> _appIoQueues;
     private CellAddressCore _myAddress;
@@ -168,6 +168,11 @@ public class NettyXrootdServer implements CellIdentityAware
         _appIoQueues = appIoQueues;
     }
 
+    public void setTransport(NettyTransport transport)
+    {
+        _transport = transport;
+    }
+
     public void setExpectedProxyProtocol(boolean allowProxyProtocol)
     {
         this._expectProxyProtocol = allowProxyProtocol;
@@ -182,12 +187,13 @@ public class NettyXrootdServer implements CellIdentityAware
     {
         sessionPrefix = "door:" + _myAddress.getCellName() + "@" + _myAddress.getCellDomainName() + ":";
 
-        _acceptGroup = new NioEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat("xrootd-listen-%d").build()));
-        _socketGroup = new NioEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat("xrootd-net-%d").build()));
+        NettyTransport transport = _transport.resolve();
+        _acceptGroup = transport.newEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat("xrootd-listen-%d").build()));
+        _socketGroup = transport.newEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat("xrootd-net-%d").build()));
 
         ServerBootstrap bootstrap = new ServerBootstrap()
                 .group(_acceptGroup, _socketGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.getServerChannelClass())
                 .childOption(ChannelOption.TCP_NODELAY, true)
                 .childOption(ChannelOption.SO_KEEPALIVE, true)
                 .childHandler(new ChannelInitializer<Channel>()
@@ -6,6 +6,7 @@ import io.netty.util.ReferenceCountUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
 
 import org.dcache.xrootd.protocol.messages.ReadRequest;
 import org.dcache.xrootd.stream.AbstractChunkedReadResponse;
@@ -13,13 +14,19 @@ import org.dcache.xrootd.stream.AbstractChunkedReadResponse;
 public class ChunkedFileDescriptorReadResponse extends AbstractChunkedReadResponse
 {
     private final FileDescriptor descriptor;
+    private final LongConsumer onRead;
 
+    /**
+     * @param onRead called with the size of each chunk read from the file
+     */
     public ChunkedFileDescriptorReadResponse(ReadRequest request,
                                              int maxFrameSize,
-                                             FileDescriptor descriptor)
+                                             FileDescriptor descriptor,
+                                             LongConsumer onRead)
     {
         super(request, maxFrameSize);
         this.descriptor = descriptor;
+        this.onRead = onRead;
     }
 
     @Override
@@ -31,6 +38,7 @@ public class ChunkedFileDescriptorReadResponse extends AbstractChunkedReadRespon
             ByteBuffer buffer = chunk.nioBuffer(0, length);
             descriptor.read(buffer, position);
             chunk.writerIndex(buffer.position());
+            onRead.accept(buffer.position());
             return chunk;
         } catch (RuntimeException | IOException e) {
             ReferenceCountUtil.release(chunk);
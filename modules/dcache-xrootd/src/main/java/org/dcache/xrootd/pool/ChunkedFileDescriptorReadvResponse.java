@@ -7,44 +7,182 @@ import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.protocol.messages.GenericReadRequestMessage.EmbeddedReadRequest;
 import org.dcache.xrootd.protocol.messages.ReadVRequest;
 import org.dcache.xrootd.stream.AbstractChunkedReadvResponse;
 
 import static org.dcache.xrootd.protocol.XrootdProtocol.kXR_FileNotOpen;
 
+/**
+ * Reads the segments of a vector read.
+ *
+ * Segments of the same file that are adjacent or separated by at most
+ * {@code maxGap} bytes are coalesced into a single read into a buffer of
+ * the buffer pool. The segments are returned as slices of that buffer, so
+ * the response is assembled without copying the data. Segments larger than
+ * a pooled buffer are read individually.
+ *
+ * The response must be closed once it has been written or has failed, so
+ * that a buffer holding segments not yet sent is returned to the pool.
+ */
 public class ChunkedFileDescriptorReadvResponse extends AbstractChunkedReadvResponse
 {
     private final List<FileDescriptor> descriptors;
+    private final EmbeddedReadRequest[] segments;
+    private final DirectBufferPool pool;
+    private final int maxGap;
+    private final LongConsumer onRead;
+
+    /** Index of the segment expected to be read next. */
+    private int next;
+
+    /** Buffer holding the data of the segments up to blockEnd. */
+    private ByteBuf block;
+    private int blockFd;
+    private long blockPosition;
+    private int blockLength;
+    private int blockEnd;
 
     public ChunkedFileDescriptorReadvResponse(ReadVRequest request,
                                               int maxFrameSize,
-                                              List<FileDescriptor> descriptors)
+                                              List<FileDescriptor> descriptors,
+                                              DirectBufferPool pool,
+                                              int maxGap,
+                                              LongConsumer onRead)
     {
         super(request, maxFrameSize);
         this.descriptors = descriptors;
+        this.segments = request.getReadRequestList();
+        this.pool = pool;
+        this.maxGap = maxGap;
+        this.onRead = onRead;
     }
 
     @Override
     protected long getSize(int fd) throws IOException, XrootdException
     {
-        if (fd < 0 || fd >= descriptors.size() || descriptors.get(fd) == null) {
-            throw new XrootdException(kXR_FileNotOpen, "Invalid file descriptor");
-        }
-        return descriptors.get(fd).getChannel().size();
+        return getDescriptor(fd).getChannel().size();
     }
 
     @Override
     protected ByteBuf read(ByteBufAllocator alloc, int fd, long position, int length)
             throws IOException, XrootdException
+    {
+        FileDescriptor descriptor = getDescriptor(fd);
+
+        int index = indexOf(fd, position);
+        if (index < 0 || segments[index].BytesToRead() > pool.getBufferSize()) {
+            ByteBuf chunk = readSegment(alloc, descriptor, position, length);
+            onRead.accept(chunk.readableBytes());
+            return chunk;
+        }
+        next = index + 1;
+
+        if (!isInBlock(fd, position, length)) {
+            releaseBlock();
+            readBlock(descriptor, index);
+        }
+
+        int offset = (int) (position - blockPosition);
+        int available = Math.max(0, Math.min(length, block.writerIndex() - offset));
+        ByteBuf chunk = block.retainedSlice(offset, available);
+        onRead.accept(available);
+        if (index >= blockEnd) {
+            releaseBlock();
+        }
+        return chunk;
+    }
+
+    /**
+     * Releases the buffer holding segments that have not been read yet.
+     * The response cannot be used afterwards.
+     */
+    public void close()
+    {
+        releaseBlock();
+    }
+
+    private FileDescriptor getDescriptor(int fd) throws XrootdException
     {
         if (fd < 0 || fd >= descriptors.size() || descriptors.get(fd) == null) {
             throw new XrootdException(kXR_FileNotOpen, "Invalid file descriptor");
         }
+        return descriptors.get(fd);
+    }
+
+    /**
+     * Returns the index of the segment starting at the given position of
+     * the given file, or -1 if no such segment follows the previous one.
+     */
+    private int indexOf(int fd, long position)
+    {
+        for (int i = next; i < segments.length; i++) {
+            if (segments[i].getFileHandle() == fd && segments[i].getOffset() == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isInBlock(int fd, long position, int length)
+    {
+        return block != null && fd == blockFd && position >= blockPosition &&
+               position + length <= blockPosition + blockLength;
+    }
+
+    /**
+     * Reads the segment at the given index together with as many of the
+     * following segments as can be coalesced with it.
+     */
+    private void readBlock(FileDescriptor descriptor, int index) throws IOException
+    {
+        int fd = segments[index].getFileHandle();
+        long start = segments[index].getOffset();
+        long end = start + segments[index].BytesToRead();
+        int last = index;
+        for (int i = index + 1; i < segments.length; i++) {
+            EmbeddedReadRequest segment = segments[i];
+            long segmentEnd = segment.getOffset() + segment.BytesToRead();
+            if (segment.getFileHandle() != fd || segment.getOffset() < start ||
+                segment.getOffset() > end + maxGap ||
+                Math.max(end, segmentEnd) - start > pool.getBufferSize()) {
+                break;
+            }
+            end = Math.max(end, segmentEnd);
+            last = i;
+        }
+
+        ByteBuf buffer = pool.acquire();
+        try {
+            ByteBuffer nioBuffer = buffer.nioBuffer(0, (int) (end - start));
+            descriptor.read(nioBuffer, start);
+            buffer.writerIndex(nioBuffer.position());
+        } catch (RuntimeException | IOException e) {
+            buffer.release();
+            throw e;
+        }
+
+        block = buffer;
+        blockFd = fd;
+        blockPosition = start;
+        blockLength = (int) (end - start);
+        blockEnd = last;
+    }
 
-        FileDescriptor descriptor = descriptors.get(fd);
+    private void releaseBlock()
+    {
+        if (block != null) {
+            block.release();
+            block = null;
+        }
+    }
 
+    private static ByteBuf readSegment(ByteBufAllocator alloc, FileDescriptor descriptor,
+                                       long position, int length) throws IOException
+    {
         ByteBuf chunk = alloc.ioBuffer(length);
         try {
             ByteBuffer buffer = chunk.nioBuffer(0, length);
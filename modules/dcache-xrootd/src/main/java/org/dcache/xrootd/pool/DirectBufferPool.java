@@ -0,0 +1,74 @@
+package org.dcache.xrootd.pool;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of direct buffers of a fixed size.
+ *
+ * Buffers are handed out as ByteBufs that return their memory to the pool
+ * once fully released, including any slices derived from them. At most
+ * {@code maxIdle} released buffers are kept for reuse. As the memory of the
+ * buffers is owned by the JVM rather than by Netty, a buffer that is never
+ * released is reclaimed by the garbage collector like any other direct
+ * ByteBuffer.
+ */
+class DirectBufferPool
+{
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> idle;
+
+    DirectBufferPool(int bufferSize, int maxIdle)
+    {
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Returns an empty buffer with a capacity of the buffer size of this
+     * pool.
+     */
+    ByteBuf acquire()
+    {
+        ByteBuffer memory = idle.poll();
+        if (memory == null) {
+            memory = ByteBuffer.allocateDirect(bufferSize);
+        }
+        memory.clear();
+        return new PooledByteBuf(memory).clear();
+    }
+
+    private class PooledByteBuf extends UnpooledDirectByteBuf
+    {
+        private final ByteBuffer memory;
+
+        PooledByteBuf(ByteBuffer memory)
+        {
+            super(UnpooledByteBufAllocator.DEFAULT, memory, memory.capacity());
+            this.memory = memory;
+        }
+
+        @Override
+        public ByteBuf capacity(int newCapacity)
+        {
+            throw new UnsupportedOperationException("Pooled buffers cannot be resized");
+        }
+
+        @Override
+        protected void deallocate()
+        {
+            super.deallocate();
+            idle.offer(memory);
+        }
+    }
+}
@@ -21,7 +21,10 @@ import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Uninterruptibles;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
@@ -44,6 +47,7 @@ import diskCacheV111.util.FileCorruptedCacheException;
 
 import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.movers.NettyTransferService;
+import org.dcache.pool.movers.RepositoryFileRegion;
 import org.dcache.pool.repository.RepositoryChannel;
 import org.dcache.util.Checksum;
 import org.dcache.util.Checksums;
@@ -110,6 +114,15 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
     private static final int READV_HEADER_LENGTH = 24;
     private static final int READV_ELEMENT_LENGTH = 12;
     private static final int READV_IOV_MAX = (MAX_JAVA_ARRAY - READV_HEADER_LENGTH) / READV_ELEMENT_LENGTH;
+    private static final int RESPONSE_HEADER_LENGTH = 8;
+
+    /**
+     * Size and number of idle buffers retained for vector reads, and the
+     * largest gap between segments of a vector read that are read together.
+     */
+    private static final int READV_BUFFER_SIZE = 256 * 1024;
+    private static final int READV_MAX_IDLE_BUFFERS = 4;
+    private static final int READV_MAX_GAP = 32 * 1024;
 
     /**
      * Store file descriptors of open files.
@@ -143,6 +156,12 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
      */
     private final Map<String,String> _queryConfig;
 
+    /**
+     * Buffers for coalesced reads of vector read segments.
+     */
+    private final DirectBufferPool _readvBuffers =
+            new DirectBufferPool(READV_BUFFER_SIZE, READV_MAX_IDLE_BUFFERS);
+
     public XrootdPoolRequestHandler(NettyTransferService<XrootdProtocolInfo> server, int maxFrameSize,
                                     Map<String, String> queryConfig)
     {
@@ -394,7 +413,8 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
     /**
      * Lookup the file descriptor and obtain a Reader from it. The
      * Reader will be placed in a queue from which it is taken when
-     * sending data to the client.
+     * sending data to the client. If zero-copy is enabled, the data is
+     * instead written directly as file regions where possible.
      *
      * @param ctx Received from the netty pipeline
      * @param msg The actual request
@@ -412,13 +432,61 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
                                       "file.");
         }
 
+        FileDescriptor descriptor = _descriptors.get(fd);
         if (msg.bytesToRead() == 0) {
             return withOk(msg);
+        } else if (_server.isZeroCopy() && isZeroCopyPossible(ctx, descriptor)) {
+            try {
+                sendFileRegions(ctx, msg, descriptor.getChannel());
+            } catch (IOException e) {
+                throw new XrootdException(kXR_IOError, e.getMessage());
+            }
+            return null;
         } else {
-            return new ChunkedFileDescriptorReadResponse(msg, _maxFrameSize, _descriptors.get(fd));
+            return new ChunkedFileDescriptorReadResponse(msg, _maxFrameSize, descriptor,
+                                                         _server::addCopiedBytes);
         }
     }
 
+    /**
+     * Whether the data of the file may be sent without copying it. Files
+     * open for writing are checksummed while being written and the data of
+     * encrypted connections has to pass through the SslHandler.
+     */
+    private static boolean isZeroCopyPossible(ChannelHandlerContext ctx, FileDescriptor descriptor)
+    {
+        return !descriptor.getChannel().getIoMode().contains(StandardOpenOption.WRITE) &&
+               ctx.pipeline().get(SslHandler.class) == null;
+    }
+
+    /**
+     * Sends the reply to a read request as file regions, thus without
+     * copying the data to buffers. As with ChunkedFileDescriptorReadResponse
+     * the reply is split into frames of at most the maximum frame size, all
+     * but the last of which have status kXR_oksofar. Reads beyond the end of
+     * the file are truncated.
+     */
+    private void sendFileRegions(ChannelHandlerContext ctx, ReadRequest msg, RepositoryChannel channel)
+            throws IOException
+    {
+        long position = msg.getReadOffset();
+        long end = position + Math.min(msg.bytesToRead(), Math.max(0, channel.size() - position));
+        do {
+            int length = (int) Math.min(_maxFrameSize, end - position);
+            ByteBuf header = ctx.alloc().buffer(RESPONSE_HEADER_LENGTH);
+            header.writeShort(msg.getStreamId());
+            header.writeShort(position + length < end ? kXR_oksofar : kXR_ok);
+            header.writeInt(length);
+            ctx.write(header).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            if (length > 0) {
+                ctx.write(new RepositoryFileRegion(channel, position, length, _server::addZeroCopyBytes))
+                        .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            }
+            position += length;
+        } while (position < end);
+        ctx.flush();
+    }
+
     /**
      * Vector reads consist of several embedded read requests, which
      * can even contain different file handles. All the descriptors
@@ -459,7 +527,16 @@ public class XrootdPoolRequestHandler extends AbstractXrootdRequestHandler
             }
         }
 
-        return new ChunkedFileDescriptorReadvResponse(msg, _maxFrameSize, new ArrayList<>(_descriptors));
+        ChunkedFileDescriptorReadvResponse response =
+                new ChunkedFileDescriptorReadvResponse(msg, _maxFrameSize, new ArrayList<>(_descriptors),
+                                                       _readvBuffers, READV_MAX_GAP, _server::addCopiedBytes);
+        /* Release any buffer still held if the response is discarded, e.g.
+         * because the client disconnected.
+         */
+        ctx.writeAndFlush(response)
+                .addListener(future -> response.close())
+                .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        return null;
     }
 
     /**
@@ -0,0 +1,269 @@
+package org.dcache.xrootd.pool;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dcache.xrootd.core.XrootdException;
+import org.dcache.xrootd.protocol.messages.GenericReadRequestMessage.EmbeddedReadRequest;
+import org.dcache.xrootd.protocol.messages.ReadVRequest;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ChunkedFileDescriptorReadvResponseTest
+{
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_GAP = 64;
+
+    private final ByteBufAllocator alloc = UnpooledByteBufAllocator.DEFAULT;
+    private final AtomicLong counted = new AtomicLong();
+
+    private byte[] data;
+    private List<FileDescriptor> descriptors;
+    private List<long[]> reads;
+    private DirectBufferPool pool;
+    private ChunkedFileDescriptorReadvResponse response;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        data = new byte[8192];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251 + 1);
+        }
+        reads = new ArrayList<>();
+        descriptors = Arrays.asList(aDescriptor(), aDescriptor());
+        pool = new DirectBufferPool(BUFFER_SIZE, 4);
+    }
+
+    /**
+     * Returns a descriptor of a file with the content of data that records
+     * the position and length of each read.
+     */
+    private FileDescriptor aDescriptor() throws IOException
+    {
+        FileDescriptor descriptor = mock(FileDescriptor.class);
+        doAnswer(invocation -> {
+            ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+            long position = (Long) invocation.getArguments()[1];
+            reads.add(new long[] { position, buffer.remaining() });
+            int length = (int) Math.max(0, Math.min(buffer.remaining(), data.length - position));
+            buffer.put(data, (int) position, length);
+            return null;
+        }).when(descriptor).read(any(ByteBuffer.class), anyLong());
+        return descriptor;
+    }
+
+    private static EmbeddedReadRequest aSegment(int fd, long offset, int length)
+    {
+        EmbeddedReadRequest segment = mock(EmbeddedReadRequest.class);
+        when(segment.getFileHandle()).thenReturn(fd);
+        when(segment.getOffset()).thenReturn(offset);
+        when(segment.BytesToRead()).thenReturn(length);
+        return segment;
+    }
+
+    private void givenSegments(EmbeddedReadRequest... segments)
+    {
+        ReadVRequest request = mock(ReadVRequest.class);
+        when(request.getReadRequestList()).thenReturn(segments);
+        response = new ChunkedFileDescriptorReadvResponse(request, 1 << 20, descriptors,
+                                                          pool, MAX_GAP, counted::addAndGet);
+    }
+
+    private ByteBuf read(int fd, long position, int length) throws IOException, XrootdException
+    {
+        ByteBuf chunk = response.read(alloc, fd, position, length);
+        assertThat(chunk.readableBytes(), is((int) Math.max(0, Math.min(length, data.length - position))));
+        for (int i = 0; i < chunk.readableBytes(); i++) {
+            assertThat(chunk.getByte(chunk.readerIndex() + i), is(data[(int) position + i]));
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns whether the next buffer acquired from the pool was used
+     * before. Fresh direct buffers are zeroed, while the data is not.
+     */
+    private boolean isPooledBufferReused()
+    {
+        ByteBuf buffer = pool.acquire();
+        try {
+            return buffer.getByte(0) != 0;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void shouldCoalesceSegmentsWithinMaximumGap() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(0, 100, 50), aSegment(0, 214, 100));
+
+        read(0, 0, 100).release();
+        read(0, 100, 50).release();
+        read(0, 214, 100).release();
+
+        assertThat(reads, hasSize(1));
+        assertThat(reads.get(0), is(new long[] { 0, 314 }));
+        assertThat(counted.get(), is(250L));
+    }
+
+    @Test
+    public void shouldNotCoalesceSegmentsBeyondMaximumGap() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(0, 165, 100));
+
+        read(0, 0, 100).release();
+        read(0, 165, 100).release();
+
+        assertThat(reads, hasSize(2));
+        assertThat(reads.get(0), is(new long[] { 0, 100 }));
+        assertThat(reads.get(1), is(new long[] { 165, 100 }));
+    }
+
+    @Test
+    public void shouldNotCoalesceSegmentsBeyondBufferSize() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 600), aSegment(0, 600, 424), aSegment(0, 1024, 1));
+
+        read(0, 0, 600).release();
+        read(0, 600, 424).release();
+        read(0, 1024, 1).release();
+
+        assertThat(reads, hasSize(2));
+        assertThat(reads.get(0), is(new long[] { 0, 1024 }));
+        assertThat(reads.get(1), is(new long[] { 1024, 1 }));
+    }
+
+    @Test
+    public void shouldNotCoalesceSegmentsOfDifferentFiles() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(1, 100, 100));
+
+        read(0, 0, 100).release();
+        read(1, 100, 100).release();
+
+        assertThat(reads, hasSize(2));
+    }
+
+    @Test
+    public void shouldNotCoalesceSegmentsPrecedingRun() throws Exception
+    {
+        givenSegments(aSegment(0, 500, 100), aSegment(0, 400, 50));
+
+        read(0, 500, 100).release();
+        read(0, 400, 50).release();
+
+        assertThat(reads, hasSize(2));
+    }
+
+    @Test
+    public void shouldSliceOverlappingSegmentsFromBlock() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 200), aSegment(0, 100, 200), aSegment(0, 150, 10));
+
+        read(0, 0, 200).release();
+        read(0, 100, 200).release();
+        read(0, 150, 10).release();
+
+        assertThat(reads, hasSize(1));
+        assertThat(reads.get(0), is(new long[] { 0, 300 }));
+    }
+
+    @Test
+    public void shouldReadSegmentsLargerThanBufferIndividually() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 2000), aSegment(0, 2000, 10));
+
+        ByteBuf chunk = read(0, 0, 2000);
+        read(0, 2000, 10).release();
+
+        assertThat(chunk.capacity(), is(greaterThanOrEqualTo(2000)));
+        assertThat(reads, hasSize(2));
+        assertThat(reads.get(0), is(new long[] { 0, 2000 }));
+        chunk.release();
+    }
+
+    @Test
+    public void shouldTruncateSegmentsAtEndOfFile() throws Exception
+    {
+        givenSegments(aSegment(0, 8000, 150), aSegment(0, 8150, 100));
+
+        read(0, 8000, 150).release();
+        read(0, 8150, 100).release();
+
+        assertThat(reads, hasSize(1));
+        assertThat(counted.get(), is(192L));
+    }
+
+    @Test
+    public void shouldReturnBufferToPoolOnceAllSegmentsAreReleased() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(0, 100, 100));
+
+        ByteBuf first = read(0, 0, 100);
+        ByteBuf second = read(0, 100, 100);
+        first.release();
+
+        ByteBuf other = pool.acquire();
+        assertThat(other.getByte(0), is((byte) 0));
+
+        second.release();
+
+        assertThat(isPooledBufferReused(), is(true));
+        other.release();
+    }
+
+    @Test
+    public void shouldReleaseBlockOnClose() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(0, 100, 100));
+
+        read(0, 0, 100).release();
+        response.close();
+
+        assertThat(isPooledBufferReused(), is(true));
+    }
+
+    @Test
+    public void shouldReturnBufferToPoolIfReadFails() throws Exception
+    {
+        givenSegments(aSegment(0, 0, 100), aSegment(0, 100, 100));
+        doAnswer(invocation -> {
+            ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+            buffer.put(data, 0, 10);
+            throw new IOException("disk failure");
+        }).when(descriptors.get(0)).read(any(ByteBuffer.class), anyLong());
+
+        try {
+            response.read(alloc, 0, 0, 100);
+            fail("read did not fail");
+        } catch (IOException expected) {
+        }
+
+        assertThat(isPooledBufferReused(), is(true));
+    }
+
+    @Test(expected = XrootdException.class)
+    public void shouldRejectInvalidFileDescriptor() throws Exception
+    {
+        givenSegments(aSegment(2, 0, 100));
+
+        response.read(alloc, 2, 0, 100);
+    }
+}
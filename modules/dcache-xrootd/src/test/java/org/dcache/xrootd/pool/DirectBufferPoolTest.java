@@ -0,0 +1,117 @@
+package org.dcache.xrootd.pool;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DirectBufferPoolTest
+{
+    private DirectBufferPool pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = new DirectBufferPool(1024, 1);
+    }
+
+    /**
+     * Acquires a buffer and returns whether its memory was used before,
+     * i.e. whether it still holds data written by an earlier user. Fresh
+     * direct buffers are zeroed.
+     */
+    private boolean acquireIsReused()
+    {
+        ByteBuf buffer = pool.acquire();
+        try {
+            return buffer.getByte(0) != 0;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private ByteBuf acquireAndFill(int value)
+    {
+        ByteBuf buffer = pool.acquire();
+        buffer.setByte(0, value);
+        return buffer;
+    }
+
+    @Test
+    public void shouldReturnEmptyBufferOfPoolSize()
+    {
+        ByteBuf buffer = pool.acquire();
+
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(buffer.capacity(), is(1024));
+        assertThat(buffer.readableBytes(), is(0));
+        assertThat(buffer.writableBytes(), is(1024));
+        buffer.release();
+    }
+
+    @Test
+    public void shouldReuseReleasedBuffer()
+    {
+        acquireAndFill(1).release();
+
+        assertThat(acquireIsReused(), is(true));
+    }
+
+    @Test
+    public void shouldClearReusedBuffer()
+    {
+        ByteBuf buffer = acquireAndFill(1);
+        buffer.writerIndex(512);
+        buffer.release();
+
+        buffer = pool.acquire();
+        assertThat(buffer.readableBytes(), is(0));
+        assertThat(buffer.writableBytes(), is(1024));
+        buffer.release();
+    }
+
+    @Test
+    public void shouldNotReuseBufferWhileSliceIsRetained()
+    {
+        ByteBuf buffer = acquireAndFill(1);
+        ByteBuf slice = buffer.retainedSlice(0, 16);
+        buffer.release();
+
+        ByteBuf other = pool.acquire();
+        assertThat(other.getByte(0), is((byte) 0));
+
+        slice.release();
+
+        assertThat(acquireIsReused(), is(true));
+        other.release();
+    }
+
+    @Test
+    public void shouldKeepAtMostMaxIdleBuffers()
+    {
+        ByteBuf first = acquireAndFill(1);
+        ByteBuf second = acquireAndFill(2);
+        first.release();
+        second.release();
+
+        ByteBuf buffer = pool.acquire();
+        ByteBuf other = pool.acquire();
+        assertThat(buffer.getByte(0), is((byte) 1));
+        assertThat(other.getByte(0), is((byte) 0));
+        buffer.release();
+        other.release();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotResizeBuffer()
+    {
+        ByteBuf buffer = pool.acquire();
+        try {
+            buffer.capacity(2048);
+        } finally {
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dcache.xrootd.pool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.dcache.pool.movers.NettyTransferService;
+import org.dcache.vehicles.XrootdProtocolInfo;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ReadDescriptorTest
+{
+    private static final int SHORT_READ = 10;
+
+    private final byte[] data = new byte[100];
+
+    private NettyTransferService<XrootdProtocolInfo>.NettyMoverChannel channel;
+    private ReadDescriptor descriptor;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        channel = mock(NettyTransferService.NettyMoverChannel.class);
+        /* Returns at most SHORT_READ bytes per call. */
+        when(channel.read(any(ByteBuffer.class), anyLong())).thenAnswer(invocation -> {
+            ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+            long position = (Long) invocation.getArguments()[1];
+            if (position >= data.length) {
+                return -1;
+            }
+            int length = (int) Math.min(Math.min(buffer.remaining(), SHORT_READ), data.length - position);
+            buffer.put(data, (int) position, length);
+            return length;
+        });
+        descriptor = new ReadDescriptor(channel);
+    }
+
+    @Test
+    public void shouldReadUntilBufferIsFull() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(35);
+
+        descriptor.read(buffer, 20);
+
+        assertThat(buffer.position(), is(35));
+        assertThat(buffer.get(0), is((byte) 20));
+        assertThat(buffer.get(34), is((byte) 54));
+        verify(channel, times(4)).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void shouldStopAtEndOfFile() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(50);
+
+        descriptor.read(buffer, 75);
+
+        assertThat(buffer.position(), is(25));
+        assertThat(buffer.get(24), is((byte) 99));
+    }
+}
@@ -0,0 +1,415 @@
+package diskCacheV111.namespace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.util.LatencyHistogram;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Schedules requests for processing by a fixed number of workers while
+ * preserving the order of requests with the same key.
+ *
+ * Requests with the same key are collected in a key queue. At most one
+ * worker processes the requests of a key queue at any time, thus requests
+ * with the same key are processed in submission order. Requests without
+ * a key are not ordered with respect to any other request.
+ *
+ * Every key is assigned to one of several shards and each shard is
+ * associated with one worker. Key queues with pending requests are put
+ * on the ready list of their shard. A worker serves its own shard first;
+ * when that is empty it steals a whole key queue from the ready list of
+ * another shard. A slow request thus only delays later requests with the
+ * same key, rather than every request that happens to hash to the same
+ * shard.
+ *
+ * After processing a request, a worker puts the key queue back on the
+ * ready list if it has more requests. This keeps a key with many requests
+ * from starving other keys of the same shard.
+ */
+class KeyedRequestScheduler<E>
+{
+    private static final Logger _log = LoggerFactory.getLogger(KeyedRequestScheduler.class);
+
+    /**
+     * Callback for processing requests.
+     */
+    interface Processor<E>
+    {
+        /**
+         * Processes {@code request}. {@code queued} provides access to the
+         * requests with the same key queued behind {@code request}; requests
+         * may be removed from the queue through its iterator.
+         */
+        void process(E request, Iterable<E> queued);
+    }
+
+    private final Processor<E> _processor;
+    private final Shard[] _shards;
+    private final int _maxQueued;
+    private final ConcurrentHashMap<Object, KeyQueue> _keyQueues = new ConcurrentHashMap<>();
+
+    /**
+     * Number of key queues on the ready lists of all shards.
+     */
+    private final Semaphore _ready = new Semaphore(0);
+
+    private volatile boolean _isShutdown;
+
+    /**
+     * @param shards number of shards and workers
+     * @param maxQueued maximum number of requests queued per shard, or zero
+     *                  for no limit
+     * @param processor callback for processing requests
+     */
+    KeyedRequestScheduler(int shards, int maxQueued, Processor<E> processor)
+    {
+        checkArgument(shards > 0, "Number of shards must be positive.");
+        _processor = processor;
+        _maxQueued = maxQueued;
+        _shards = new KeyedRequestScheduler.Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            _shards[i] = new Shard(i);
+        }
+    }
+
+    int getShardCount()
+    {
+        return _shards.length;
+    }
+
+    /**
+     * Returns the worker serving shard {@code shard}. The worker returns
+     * after the scheduler has been shut down.
+     */
+    Runnable getWorker(int shard)
+    {
+        return new Worker(_shards[shard]);
+    }
+
+    private Shard shardOf(Object key)
+    {
+        int index = (key == null)
+                    ? ThreadLocalRandom.current().nextInt(_shards.length)
+                    : (int) (Math.abs((long) key.hashCode()) % _shards.length);
+        return _shards[index];
+    }
+
+    /**
+     * Submits a request for processing. Returns false if the queue limit
+     * of the shard of the request has been reached.
+     *
+     * @param key requests with equal keys are processed in submission order;
+     *            may be null
+     * @param request the request to process
+     */
+    boolean offer(Object key, E request)
+    {
+        Shard shard = shardOf(key);
+        if (!shard.reserve()) {
+            return false;
+        }
+
+        Entry<E> entry = new Entry<>(request);
+        if (key == null) {
+            KeyQueue queue = new KeyQueue(null, shard);
+            queue.requests.add(entry);
+            queue.isScheduled = true;
+            shard.schedule(queue);
+            return true;
+        }
+
+        while (true) {
+            KeyQueue queue = _keyQueues.computeIfAbsent(key, k -> new KeyQueue(k, shard));
+            synchronized (queue) {
+                if (!queue.isRemoved) {
+                    queue.requests.add(entry);
+                    if (!queue.isScheduled) {
+                        queue.isScheduled = true;
+                        shard.schedule(queue);
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and returns all queued requests.
+     */
+    List<E> drain()
+    {
+        List<E> drained = new ArrayList<>();
+        for (Shard shard : _shards) {
+            for (KeyQueue queue : shard.ready) {
+                drain(queue, drained);
+            }
+        }
+        for (KeyQueue queue : _keyQueues.values()) {
+            drain(queue, drained);
+        }
+        return drained;
+    }
+
+    private void drain(KeyQueue queue, List<E> drained)
+    {
+        Entry<E> entry;
+        while ((entry = queue.requests.poll()) != null) {
+            queue.shard.queued.decrementAndGet();
+            drained.add(entry.request);
+        }
+    }
+
+    /**
+     * Makes all workers return once they finish their current request.
+     * Queued requests are not processed.
+     */
+    void shutdown()
+    {
+        _isShutdown = true;
+        _ready.release(_shards.length);
+    }
+
+    /**
+     * Returns the requests queued in shard {@code shard}.
+     */
+    List<E> getQueued(int shard)
+    {
+        List<E> queued = new ArrayList<>();
+        for (KeyQueue queue : _keyQueues.values()) {
+            if (queue.shard.index == shard) {
+                queue.requests.forEach(e -> queued.add(e.request));
+            }
+        }
+        for (KeyQueue queue : _shards[shard].ready) {
+            if (queue.key == null) {
+                queue.requests.forEach(e -> queued.add(e.request));
+            }
+        }
+        return queued;
+    }
+
+    int getQueueSize(int shard)
+    {
+        return _shards[shard].queued.get();
+    }
+
+    int getQueueSize()
+    {
+        int size = 0;
+        for (Shard shard : _shards) {
+            size += shard.queued.get();
+        }
+        return size;
+    }
+
+    void getInfo(PrintWriter pw)
+    {
+        pw.println("Threads (" + _shards.length + ") Queue");
+        for (Shard shard : _shards) {
+            pw.println("    [" + shard.index + "] " + shard.queued.get());
+        }
+        pw.println();
+        pw.println("Threads: " + getQueueSize());
+        pw.println("Active keys: " + _keyQueues.size());
+        pw.println();
+        pw.println("Request latency per thread (queued and processed):");
+        for (Shard shard : _shards) {
+            pw.println("    [" + shard.index + "] " + shard.latency + " stolen=" + shard.stolen.sum());
+        }
+    }
+
+    private static class Entry<E>
+    {
+        final E request;
+        final long submitted = System.nanoTime();
+
+        Entry(E request)
+        {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Requests with the same key. A key queue is scheduled while it is on
+     * a ready list or being processed by a worker. A key queue that is no
+     * longer scheduled and has no requests is removed from {@code _keyQueues};
+     * once removed it is never reused.
+     */
+    private class KeyQueue implements Iterable<E>
+    {
+        final Object key;
+        final Shard shard;
+        final Queue<Entry<E>> requests = new ConcurrentLinkedQueue<>();
+
+        /* Guarded by this. */
+        boolean isScheduled;
+        boolean isRemoved;
+
+        KeyQueue(Object key, Shard shard)
+        {
+            this.key = key;
+            this.shard = shard;
+        }
+
+        /**
+         * Called by the worker after processing a request. Returns true if
+         * the queue has more requests and thus is to be scheduled again.
+         */
+        synchronized boolean reschedule()
+        {
+            if (!requests.isEmpty()) {
+                return true;
+            }
+            isScheduled = false;
+            if (key != null) {
+                isRemoved = true;
+                _keyQueues.remove(key, this);
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<E> iterator()
+        {
+            Iterator<Entry<E>> iterator = requests.iterator();
+            return new Iterator<E>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public E next()
+                {
+                    return iterator.next().request;
+                }
+
+                @Override
+                public void remove()
+                {
+                    iterator.remove();
+                    shard.queued.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    private class Shard
+    {
+        final int index;
+        final ConcurrentLinkedDeque<KeyQueue> ready = new ConcurrentLinkedDeque<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder stolen = new LongAdder();
+
+        Shard(int index)
+        {
+            this.index = index;
+        }
+
+        boolean reserve()
+        {
+            if (_maxQueued <= 0) {
+                queued.incrementAndGet();
+                return true;
+            }
+            int n;
+            do {
+                n = queued.get();
+                if (n >= _maxQueued) {
+                    return false;
+                }
+            } while (!queued.compareAndSet(n, n + 1));
+            return true;
+        }
+
+        void schedule(KeyQueue queue)
+        {
+            ready.addLast(queue);
+            _ready.release();
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private final Shard _shard;
+
+        Worker(Shard shard)
+        {
+            _shard = shard;
+        }
+
+        /**
+         * Takes a key queue from the own shard or, if that has no ready key
+         * queues, steals one from another shard.
+         */
+        private KeyQueue take() throws InterruptedException
+        {
+            _ready.acquire();
+            while (!_isShutdown) {
+                KeyQueue queue = _shard.ready.pollFirst();
+                if (queue != null) {
+                    return queue;
+                }
+                for (int i = 1; i < _shards.length; i++) {
+                    Shard victim = _shards[(_shard.index + i) % _shards.length];
+                    queue = victim.ready.pollLast();
+                    if (queue != null) {
+                        victim.stolen.increment();
+                        return queue;
+                    }
+                }
+                /* A key queue is added to a ready list before the permit is
+                 * released, but another worker may have raced us to it; the
+                 * permit we hold guarantees that it shows up eventually.
+                 */
+                Thread.yield();
+            }
+            return null;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                KeyQueue queue;
+                while ((queue = take()) != null) {
+                    Entry<E> entry = queue.requests.poll();
+                    if (entry != null) {
+                        queue.shard.queued.decrementAndGet();
+                        try {
+                            _processor.process(entry.request, queue);
+                        } catch (RuntimeException e) {
+                            _log.error("Failed to process request: {}", e.toString(), e);
+                        } finally {
+                            queue.shard.latency.update(System.nanoTime() - entry.submitted, TimeUnit.NANOSECONDS);
+                        }
+                    }
+                    if (queue.reschedule()) {
+                        queue.shard.schedule(queue);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package diskCacheV111.namespace;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -21,21 +22,21 @@ import java.io.PrintWriter;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileNotFoundCacheException;
@@ -124,13 +125,20 @@ public class PnfsManagerV3
 
     private static final CellMessage SHUTDOWN_SENTINEL = new CellMessage();
 
-    private final Random _random = new Random(System.currentTimeMillis());
-
     private final RequestExecutionTimeGauges<Class<? extends PnfsMessage>> _gauges =
         new RequestExecutionTimeGauges<>("PnfsManagerV3");
     private final RequestCounters<Class<?>> _foldedCounters =
         new RequestCounters<>("PnfsManagerV3.Folded");
 
+    /**
+     * PnfsGetFileAttributes requests by PNFS-ID currently being processed.
+     * Compatible requests arriving while one of these is processed are
+     * answered with its result rather than being queued.
+     */
+    private final ConcurrentHashMap<PnfsId, InFlightRequest> _inFlight = new ConcurrentHashMap<>();
+    private final LongAdder _attachedRequests = new LongAdder();
+    private final LongAdder _requeuedRequests = new LongAdder();
+
     /**
      * These messages are subject to being discarded if their time to
      * live has been exceeded (or is expected to be exceeded).
@@ -163,10 +171,10 @@ public class PnfsManagerV3
     private BlockingQueue<CellMessage> _listQueue;
 
     /**
-     * Tasks queues used for messages that do not operate on cache
-     * locations.
+     * Scheduler for messages other than list operations. Messages are
+     * ordered by PNFS-ID or path.
      */
-    private BlockingQueue<CellMessage>[] _fifos;
+    private KeyedRequestScheduler<CellMessage> _scheduler;
 
     /**
      * Executor for ProcessThread instances.
@@ -306,15 +314,10 @@ public class PnfsManagerV3
     {
         _stub = new CellStub(getCellEndpoint());
 
-        _fifos = new BlockingQueue[_threads];
-        _log.info("Starting {} threads", _fifos.length);
-        for (int i = 0; i < _fifos.length; i++) {
-            if (_queueMaxSize > 0) {
-                _fifos[i] = new LinkedBlockingQueue<>(_queueMaxSize);
-            } else {
-                _fifos[i] = new LinkedBlockingQueue<>();
-            }
-            executor.execute(new ProcessThread(_fifos[i]));
+        _scheduler = new KeyedRequestScheduler<>(_threads, _queueMaxSize, this::processQueuedMessage);
+        _log.info("Starting {} threads", _scheduler.getShardCount());
+        for (int i = 0; i < _scheduler.getShardCount(); i++) {
+            executor.execute(_scheduler.getWorker(i));
         }
 
         /* Start a seperate queue for list operations.  We use a shared queue,
@@ -329,21 +332,23 @@ public class PnfsManagerV3
 
     public void shutdown() throws InterruptedException
     {
-        drainQueues(_fifos);
+        discard(_scheduler.drain());
+        _scheduler.shutdown();
         drainQueue(_listQueue);
         MoreExecutors.shutdownAndAwaitTermination(executor, 1, TimeUnit.SECONDS);
     }
 
-    private void drainQueues(BlockingQueue<CellMessage>[] queues)
+    private void drainQueue(BlockingQueue<CellMessage> queue)
     {
-        Arrays.stream(queues).forEach(this::drainQueue);
+        ArrayList<CellMessage> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        discard(drained);
+        queue.offer(SHUTDOWN_SENTINEL);
     }
 
-    private void drainQueue(BlockingQueue<CellMessage> queue)
+    private void discard(List<CellMessage> drained)
     {
         String error = "Name space is shutting down.";
-        ArrayList<CellMessage> drained = new ArrayList<>();
-        queue.drainTo(drained);
         for (CellMessage envelope : drained) {
             Message msg = (Message) envelope.getMessageObject();
             if (msg.getReplyRequired()) {
@@ -352,7 +357,6 @@ public class PnfsManagerV3
                 sendMessage(envelope);
             }
         }
-        queue.offer(SHUTDOWN_SENTINEL);
     }
 
     @Override
@@ -366,18 +370,16 @@ public class PnfsManagerV3
         pw.println();
         pw.println("List queue: " + _listQueue.size());
         pw.println();
-        pw.println("Threads (" + _fifos.length + ") Queue");
-        for (int i = 0; i < _fifos.length; i++) {
-            pw.println( "    ["+i+"] "+_fifos[i].size() ) ;
-        }
-        pw.println();
-        pw.println("Threads: "
-                + Arrays.stream(_fifos).mapToInt(BlockingQueue::size).sum());
+        _scheduler.getInfo(pw);
         pw.println();
 
         pw.println( "Statistics:" ) ;
         pw.println(_gauges.toString());
         pw.println(_foldedCounters.toString());
+        pw.println("In-flight requests:");
+        pw.println("    Processing : " + _inFlight.size());
+        pw.println("    Attached   : " + _attachedRequests + " (saved name space lookups)");
+        pw.println("    Requeued   : " + _requeuedRequests);
     }
 
     @Command(name = "pnfsidof",
@@ -726,7 +728,7 @@ public class PnfsManagerV3
             dumpThreadQueue(threadId);
             return "dumped";
         }
-        for (int threadId = 0; threadId < _fifos.length; ++threadId) {
+        for (int threadId = 0; threadId < _scheduler.getShardCount(); ++threadId) {
             dumpThreadQueue(threadId);
         }
         return "dumped";
@@ -970,11 +972,10 @@ public class PnfsManagerV3
     }
 
     private void dumpThreadQueue(int queueId) {
-        if (queueId < 0 || queueId >= _fifos.length) {
+        if (queueId < 0 || queueId >= _scheduler.getShardCount()) {
             throw new IllegalArgumentException(" illegal queue #" + queueId);
         }
-        BlockingQueue<CellMessage> fifo = _fifos[queueId];
-        Object[] fifoContent = fifo.toArray();
+        Object[] fifoContent = _scheduler.getQueued(queueId).toArray();
 
         _log.warn("PnfsManager thread #{} queue dump ({}):", queueId, fifoContent.length);
 
@@ -1591,6 +1592,202 @@ public class PnfsManagerV3
         }
     }
 
+    /**
+     * Processes a message taken from the scheduler and folds messages
+     * queued behind it for the same PNFS-ID or path.
+     */
+    private void processQueuedMessage(CellMessage message, Iterable<CellMessage> queued)
+    {
+        InFlightRequest inFlight = null;
+        Object request = message.getMessageObject();
+        if (_canFold && request instanceof PnfsGetFileAttributes && ((PnfsMessage) request).getPnfsId() != null) {
+            /* Requests with the same PNFS-ID are processed sequentially, thus
+             * no other request for this PNFS-ID is in flight.
+             */
+            inFlight = new InFlightRequest((PnfsGetFileAttributes) request);
+            _inFlight.put(inFlight.getPnfsId(), inFlight);
+        }
+        PnfsMessage pnfs = null;
+        try {
+            pnfs = processMessage(message);
+            if (pnfs != null) {
+                fold(pnfs, queued);
+            }
+        } finally {
+            if (inFlight != null) {
+                _inFlight.remove(inFlight.getPnfsId(), inFlight);
+                inFlight.complete(pnfs != null);
+            }
+        }
+    }
+
+    /**
+     * Processes a message unless its time to live has been exceeded.
+     * Returns the processed message, or null if the message was discarded.
+     */
+    private PnfsMessage processMessage(CellMessage message)
+    {
+        CDC.setMessageContext(message);
+        try {
+            /* Discard messages if we are close to their
+             * timeout (within 10% of the TTL or 10 seconds,
+             * whatever is smaller)
+             */
+            PnfsMessage pnfs = (PnfsMessage) message.getMessageObject();
+            if (message.getLocalAge() > message.getAdjustedTtl() && useEarlyDiscard(pnfs)) {
+                _log.warn("Discarding {} because its time to live has been exceeded.",
+                          pnfs.getClass().getSimpleName());
+                sendTimeout(message, "TTL exceeded");
+                return null;
+            }
+
+            processPnfsMessage(message, pnfs);
+            return pnfs;
+        } catch (Throwable e) {
+            _log.warn("processPnfsMessage: {} : {}", Thread.currentThread().getName(), e);
+            return null;
+        } finally {
+            CDC.clearMessageContext();
+        }
+    }
+
+    private void fold(PnfsMessage message, Iterable<CellMessage> queued)
+    {
+        if (_canFold && message.getReturnCode() == 0) {
+            Iterator<CellMessage> i = queued.iterator();
+            while (i.hasNext()) {
+                CellMessage envelope = i.next();
+                PnfsMessage other =
+                    (PnfsMessage) envelope.getMessageObject();
+
+                if (other.invalidates(message)) {
+                    break;
+                }
+
+                if (other.fold(message)) {
+                    _log.info("Folded {}", other.getClass().getSimpleName());
+                    _foldedCounters.incrementRequests(message.getClass());
+
+                    i.remove();
+                    envelope.revertDirection();
+
+                    sendMessage(envelope);
+                }
+            }
+        }
+    }
+
+    /**
+     * A PnfsGetFileAttributes request being processed, together with the
+     * requests attached to it. Attached requests are answered with the
+     * result of the request once it completes.
+     */
+    private class InFlightRequest
+    {
+        private final PnfsGetFileAttributes _request;
+
+        /* The request is modified while it is processed, thus what it asks
+         * for is captured before it is processed.
+         */
+        private final PnfsId _pnfsId;
+        private final String _path;
+        private final Subject _subject;
+        private final Set<AccessMask> _accessMask;
+        private final Restriction _restriction;
+        private final boolean _updateAtime;
+        private final Set<FileAttribute> _requested;
+
+        /* Guarded by this. */
+        private final List<CellMessage> _attached = new ArrayList<>();
+        private boolean _isClosed;
+
+        InFlightRequest(PnfsGetFileAttributes request)
+        {
+            _request = request;
+            _pnfsId = request.getPnfsId();
+            _path = request.getPnfsPath();
+            _subject = request.getSubject();
+            _accessMask = ImmutableSet.copyOf(request.getAccessMask());
+            _restriction = request.getRestriction();
+            _updateAtime = request.getUpdateAtime();
+            _requested = ImmutableSet.copyOf(request.getRequestedAttributes());
+        }
+
+        PnfsId getPnfsId()
+        {
+            return _pnfsId;
+        }
+
+        /**
+         * Attaches {@code envelope} to this request. Returns false if the
+         * request has completed or was invalidated, or if the result of the
+         * request cannot be used to answer {@code message}.
+         */
+        synchronized boolean attach(CellMessage envelope, PnfsGetFileAttributes message)
+        {
+            if (_isClosed || !isAnsweredBy(message)) {
+                return false;
+            }
+            _attached.add(envelope);
+            return true;
+        }
+
+        /**
+         * Prevents further requests from being attached, as a request
+         * that modifies the file was received.
+         */
+        synchronized void close()
+        {
+            _isClosed = true;
+        }
+
+        private boolean isAnsweredBy(PnfsGetFileAttributes message)
+        {
+            return _pnfsId.equals(message.getPnfsId()) &&
+                   (message.getPnfsPath() == null || message.getPnfsPath().equals(_path)) &&
+                   _subject.equals(message.getSubject()) &&
+                   _accessMask.equals(message.getAccessMask()) &&
+                   _restriction.equals(message.getRestriction()) &&
+                   (!message.getUpdateAtime() || _updateAtime) &&
+                   _requested.containsAll(message.getRequestedAttributes());
+        }
+
+        /**
+         * Answers the attached requests with the result of this request. If
+         * this request was not processed, the attached requests are queued
+         * for processing instead.
+         */
+        void complete(boolean isProcessed)
+        {
+            List<CellMessage> attached;
+            synchronized (this) {
+                _isClosed = true;
+                attached = new ArrayList<>(_attached);
+                _attached.clear();
+            }
+            for (CellMessage envelope : attached) {
+                PnfsGetFileAttributes message = (PnfsGetFileAttributes) envelope.getMessageObject();
+                if (!isProcessed) {
+                    _requeuedRequests.increment();
+                    if (!_scheduler.offer(message.getPnfsId(), envelope)) {
+                        message.setFailed(CacheException.RESOURCE, "PnfsManager queue limit exceeded");
+                        postProcessMessage(envelope, message);
+                    }
+                    continue;
+                }
+                if (_request.getReturnCode() == 0) {
+                    message.setPnfsPath(_request.getPnfsPath());
+                    message.setFileAttributes(_request.getFileAttributes().copy(message.getRequestedAttributes()));
+                    message.setSucceeded();
+                } else {
+                    message.setFailed(_request.getReturnCode(), _request.getErrorObject());
+                }
+                _attachedRequests.increment();
+                postProcessMessage(envelope, message);
+            }
+        }
+    }
+
     private class ProcessThread implements Runnable
     {
         private final BlockingQueue<CellMessage> _fifo ;
@@ -1605,58 +1802,15 @@ public class PnfsManagerV3
         {
             try {
                 for (CellMessage message = _fifo.take(); message != SHUTDOWN_SENTINEL; message = _fifo.take()) {
-                    CDC.setMessageContext(message);
-                    try {
-                        /* Discard messages if we are close to their
-                         * timeout (within 10% of the TTL or 10 seconds,
-                         * whatever is smaller)
-                         */
-                        PnfsMessage pnfs = (PnfsMessage) message.getMessageObject();
-                        if (message.getLocalAge() > message.getAdjustedTtl() && useEarlyDiscard(pnfs)) {
-                            _log.warn("Discarding {} because its time to live has been exceeded.",
-                                      pnfs.getClass().getSimpleName());
-                            sendTimeout(message, "TTL exceeded");
-                            continue;
-                        }
-
-                        processPnfsMessage(message, pnfs);
-                        fold(pnfs);
-                    } catch (Throwable e) {
-                        _log.warn("processPnfsMessage: {} : {}", Thread.currentThread().getName(), e);
-                    } finally {
-                        CDC.clearMessageContext();
+                    PnfsMessage pnfs = processMessage(message);
+                    if (pnfs != null) {
+                        fold(pnfs, _fifo);
                     }
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
-
-        protected void fold(PnfsMessage message)
-        {
-            if (_canFold && message.getReturnCode() == 0) {
-                Iterator<CellMessage> i = _fifo.iterator();
-                while (i.hasNext()) {
-                    CellMessage envelope = i.next();
-                    PnfsMessage other =
-                        (PnfsMessage) envelope.getMessageObject();
-
-                    if (other.invalidates(message)) {
-                        break;
-                    }
-
-                    if (other.fold(message)) {
-                        _log.info("Folded {}", other.getClass().getSimpleName());
-                        _foldedCounters.incrementRequests(message.getClass());
-
-                        i.remove();
-                        envelope.revertDirection();
-
-                        sendMessage(envelope);
-                    }
-                }
-            }
-        }
     }
 
     public void messageArrived(CellMessage envelope, PnfsListDirectoryMessage message)
@@ -1677,23 +1831,34 @@ public class PnfsManagerV3
         PnfsId pnfsId = message.getPnfsId();
         String path = message.getPnfsPath();
 
-        int index;
+        /*
+         * Attach to an identical request being processed, unless this
+         * message modifies the file. Messages by path are not ordered with
+         * respect to messages by PNFS-ID and are thus not considered.
+         */
         if (pnfsId != null) {
-            index = (int) (Math.abs((long) pnfsId.hashCode()) % _threads);
-            _log.info("Using thread [{}] {}", pnfsId, index);
-        } else if (path != null) {
-            index = (int) (Math.abs((long) path.hashCode()) % _threads);
-            _log.info("Using thread [{}] {}", path, index);
-        } else {
-            index = _random.nextInt(_fifos.length);
-            _log.info("Using random thread {}", index);
+            InFlightRequest inFlight = _inFlight.get(pnfsId);
+            if (inFlight != null) {
+                if (message instanceof PnfsGetFileAttributes) {
+                    if (inFlight.attach(envelope, (PnfsGetFileAttributes) message)) {
+                        return;
+                    }
+                } else if (message.invalidates(inFlight._request)) {
+                    inFlight.close();
+                }
+            }
         }
 
+        /*
+         * Messages for the same PNFS-ID or path are processed in order.
+         */
+        Object key = (pnfsId != null) ? pnfsId : path;
+
         /*
          * try to add a message into queue.
          * tell requester, that queue is full
          */
-        if (!_fifos[index].offer(envelope)) {
+        if (!_scheduler.offer(key, envelope)) {
             throw new MissingResourceCacheException("PnfsManager queue limit exceeded");
         }
     }
@@ -3,6 +3,8 @@ package diskCacheV111.poolManager;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -10,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
@@ -59,6 +62,7 @@ public class PoolSelectionUnitV2
     private static final String __version = "$Id: PoolSelectionUnitV2.java,v 1.42 2007-10-25 14:03:54 tigran Exp $";
     private static final Logger _log = LoggerFactory.getLogger(PoolSelectionUnitV2.class);
     private static final String NO_NET = "<no net>";
+    private static final int DEFAULT_MATCH_CACHE_SIZE = 10000;
 
     @Override
     public String getVersion() {
@@ -94,6 +98,15 @@ public class PoolSelectionUnitV2
 
     private final NetHandler _netHandler = new NetHandler();
 
+    /**
+     * Selection plans, i.e. the ordered list of links matching a combination of
+     * units, only depend on the setup. They are cached until the next time the
+     * write lock is released.
+     */
+    private transient int _matchCacheSize = DEFAULT_MATCH_CACHE_SIZE;
+    private transient volatile Cache<MatchKey, List<Link>> _matchCache;
+    private transient volatile List<StorageUnit> _storeUnits;
+
     @Override
     public Map<String, SelectionLink> getLinks() {
         rlock();
@@ -577,6 +590,154 @@ public class PoolSelectionUnitV2
         PoolPreferenceLevel[] result = null;
         rlock();
         try {
+            List<Link> links = getSelectionPlan(type, storeUnitName, dCacheUnitName,
+                                                netUnitName, protocolUnitName, linkGroupName);
+
+            List<Link> sortedSet = new ArrayList<>(links.size());
+            for (Link link : links) {
+                if ((variableMap == null) || link.exec(variableMap)) {
+                    sortedSet.add(link);
+                }
+            }
+            int pref = -1;
+            List<List<Link>> listList = new ArrayList<>();
+            List<Link> current = null;
+
+            switch (type) {
+
+                case READ:
+                    for (Link link : sortedSet) {
+                        if (link.getReadPref() < 1) {
+                            continue;
+                        }
+                        if (link.getReadPref() != pref) {
+                            listList.add(current = new ArrayList<>());
+                            pref = link.getReadPref();
+                        }
+                        current.add(link);
+                    }
+                    break;
+                case CACHE:
+                    for (Link link : sortedSet) {
+                        if (link.getCachePref() < 1) {
+                            continue;
+                        }
+                        if (link.getCachePref() != pref) {
+                            listList.add(current = new ArrayList<>());
+                            pref = link.getCachePref();
+                        }
+                        current.add(link);
+                    }
+                    break;
+                case P2P:
+                    for (Link link : sortedSet) {
+                        int tmpPref = link.getP2pPref() < 0 ? link.getReadPref()
+                                        : link.getP2pPref();
+                        if (tmpPref < 1) {
+                            continue;
+                        }
+                        if (tmpPref != pref) {
+                            listList.add(current = new ArrayList<>());
+                            pref = tmpPref;
+                        }
+                        current.add(link);
+                    }
+                    break;
+                case WRITE:
+                    for (Link link : sortedSet) {
+                        if (link.getWritePref() < 1) {
+                            continue;
+                        }
+                        if (link.getWritePref() != pref) {
+                            listList.add(current = new ArrayList<>());
+                            pref = link.getWritePref();
+                        }
+                        current.add(link);
+                    }
+            }
+            List<Link>[] x = listList.toArray(new List[listList.size()]);
+            result = new PoolPreferenceLevel[x.length];
+            //
+            // resolve the links to the pools
+            //
+            for (int i = 0; i < x.length; i++) {
+
+                List<Link> linkList = x[i];
+                List<String> resultList = new ArrayList<>();
+                String tag = null;
+
+                for (Link link : linkList) {
+                    //
+                    // get the link if available
+                    //
+                    if ((tag == null) && (link.getTag() != null)) {
+                        tag = link.getTag();
+                    }
+
+                    for (PoolCore poolCore : link._poolList.values()) {
+                        if (poolCore instanceof Pool) {
+                            Pool pool = (Pool) poolCore;
+                            _log.debug("Pool: {} can read from tape? : {}", pool, pool.canReadFromTape());
+                            if (((type == DirectionType.READ && pool.canRead())
+                                            || (type == DirectionType.CACHE && pool.canReadFromTape()
+                                            && poolCanStageFile(pool, fileAttributes))
+                                            || (type == DirectionType.WRITE && pool.canWrite())
+                                            || (type == DirectionType.P2P && pool.canWriteForP2P()))
+                                            && (_allPoolsActive || pool.isActive())) {
+                                resultList.add(pool.getName());
+                            }
+                        } else {
+                            for (Pool pool : ((PGroup)poolCore)._poolList.values()) {
+                                _log.debug("Pool: {} can read from tape? : {}", pool, pool.canReadFromTape());
+                                if (((type == DirectionType.READ && pool.canRead())
+                                                || (type == DirectionType.CACHE && pool.canReadFromTape()
+                                                && poolCanStageFile(pool, fileAttributes))
+                                                || (type == DirectionType.WRITE && pool.canWrite())
+                                                || (type == DirectionType.P2P && pool.canWriteForP2P()))
+                                                && (_allPoolsActive || pool.isActive())) {
+                                    resultList.add(pool.getName());
+                                }
+                            }
+                        }
+                    }
+                }
+                result[i] = new PoolPreferenceLevel(resultList, tag);
+            }
+
+        } finally {
+            runlock();
+        }
+
+        if( _log.isDebugEnabled() ) {
+
+            StringBuilder sb = new StringBuilder("match done: ");
+
+            for( int i = 0; i < result.length; i++) {
+                sb.append("[").append(i).append("] :");
+                for(String poolName: result[i].getPoolList()) {
+                    sb.append(" ").append(poolName);
+                }
+            }
+            _log.debug(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the links matching the given units, ordered by the preference for
+     * the given direction.
+     *
+     * The result only depends on the PSU setup and is cached until the setup
+     * changes. Must be called with the read lock held.
+     */
+    private List<Link> getSelectionPlan(DirectionType type, String storeUnitName, String dCacheUnitName,
+                                        String netUnitName, String protocolUnitName, String linkGroupName)
+    {
+        MatchKey key = new MatchKey(type, storeUnitName, dCacheUnitName, netUnitName,
+                                    protocolUnitName, linkGroupName);
+        Cache<MatchKey, List<Link>> cache = getMatchCache();
+        List<Link> plan = cache.getIfPresent(key);
+        if (plan == null) {
             //
             // resolve the unit from the unitname (or net unit mask)
             //
@@ -588,17 +749,13 @@ public class PoolSelectionUnitV2
                 Unit universalCoverage = null;
                 Unit classCoverage = null;
 
-                for (Unit unit : _units.values()) {
-                    if (unit.getType() != STORE) {
-                        continue;
-                    }
-
+                for (StorageUnit unit : getStoreUnits()) {
                     if (unit.getName().equals("*@*")) {
                         universalCoverage = unit;
                     } else if (unit.getName().equals("*@" + storeUnitName)) {
                         classCoverage = unit;
                     } else {
-                        if (Pattern.matches(unit.getName(), storeUnitName)) {
+                        if (unit.matches(storeUnitName)) {
                             list.add(unit);
                             break;
                         }
@@ -723,136 +880,97 @@ public class PoolSelectionUnitV2
 
             Iterator<Link> linkIterator = matchingLinks.iterator();
             while (linkIterator.hasNext()) {
-
                 Link link = linkIterator.next();
-                if ((link._uGroupList.size() <= fitCount)
-                                && ((variableMap == null) || link.exec(variableMap))) {
-
+                if (link._uGroupList.size() <= fitCount) {
                     sortedSet.add(link);
                 }
             }
-            int pref = -1;
-            List<List<Link>> listList = new ArrayList<>();
-            List<Link> current = null;
 
-            switch (type) {
+            plan = ImmutableList.copyOf(sortedSet);
+            cache.put(key, plan);
+        }
+        return plan;
+    }
 
-                case READ:
-                    for (Link link : sortedSet) {
-                        if (link.getReadPref() < 1) {
-                            continue;
-                        }
-                        if (link.getReadPref() != pref) {
-                            listList.add(current = new ArrayList<>());
-                            pref = link.getReadPref();
-                        }
-                        current.add(link);
-                    }
-                    break;
-                case CACHE:
-                    for (Link link : sortedSet) {
-                        if (link.getCachePref() < 1) {
-                            continue;
-                        }
-                        if (link.getCachePref() != pref) {
-                            listList.add(current = new ArrayList<>());
-                            pref = link.getCachePref();
-                        }
-                        current.add(link);
-                    }
-                    break;
-                case P2P:
-                    for (Link link : sortedSet) {
-                        int tmpPref = link.getP2pPref() < 0 ? link.getReadPref()
-                                        : link.getP2pPref();
-                        if (tmpPref < 1) {
-                            continue;
-                        }
-                        if (tmpPref != pref) {
-                            listList.add(current = new ArrayList<>());
-                            pref = tmpPref;
-                        }
-                        current.add(link);
-                    }
-                    break;
-                case WRITE:
-                    for (Link link : sortedSet) {
-                        if (link.getWritePref() < 1) {
-                            continue;
-                        }
-                        if (link.getWritePref() != pref) {
-                            listList.add(current = new ArrayList<>());
-                            pref = link.getWritePref();
-                        }
-                        current.add(link);
-                    }
+    private Cache<MatchKey, List<Link>> getMatchCache()
+    {
+        Cache<MatchKey, List<Link>> cache = _matchCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = _matchCache;
+                if (cache == null) {
+                    cache = CacheBuilder.newBuilder().maximumSize(_matchCacheSize).build();
+                    _matchCache = cache;
+                }
             }
-            List<Link>[] x = listList.toArray(new List[listList.size()]);
-            result = new PoolPreferenceLevel[x.length];
-            //
-            // resolve the links to the pools
-            //
-            for (int i = 0; i < x.length; i++) {
-
-                List<Link> linkList = x[i];
-                List<String> resultList = new ArrayList<>();
-                String tag = null;
-
-                for (Link link : linkList) {
-                    //
-                    // get the link if available
-                    //
-                    if ((tag == null) && (link.getTag() != null)) {
-                        tag = link.getTag();
-                    }
+        }
+        return cache;
+    }
 
-                    for (PoolCore poolCore : link._poolList.values()) {
-                        if (poolCore instanceof Pool) {
-                            Pool pool = (Pool) poolCore;
-                            _log.debug("Pool: {} can read from tape? : {}", pool, pool.canReadFromTape());
-                            if (((type == DirectionType.READ && pool.canRead())
-                                            || (type == DirectionType.CACHE && pool.canReadFromTape()
-                                            && poolCanStageFile(pool, fileAttributes))
-                                            || (type == DirectionType.WRITE && pool.canWrite())
-                                            || (type == DirectionType.P2P && pool.canWriteForP2P()))
-                                            && (_allPoolsActive || pool.isActive())) {
-                                resultList.add(pool.getName());
-                            }
-                        } else {
-                            for (Pool pool : ((PGroup)poolCore)._poolList.values()) {
-                                _log.debug("Pool: {} can read from tape? : {}", pool, pool.canReadFromTape());
-                                if (((type == DirectionType.READ && pool.canRead())
-                                                || (type == DirectionType.CACHE && pool.canReadFromTape()
-                                                && poolCanStageFile(pool, fileAttributes))
-                                                || (type == DirectionType.WRITE && pool.canWrite())
-                                                || (type == DirectionType.P2P && pool.canWriteForP2P()))
-                                                && (_allPoolsActive || pool.isActive())) {
-                                    resultList.add(pool.getName());
-                                }
-                            }
-                        }
-                    }
+    /**
+     * Returns all store units. Must be called with the read lock held.
+     */
+    private List<StorageUnit> getStoreUnits()
+    {
+        List<StorageUnit> units = _storeUnits;
+        if (units == null) {
+            units = new ArrayList<>();
+            for (Unit unit : _units.values()) {
+                if (unit.getType() == STORE) {
+                    units.add((StorageUnit) unit);
                 }
-                result[i] = new PoolPreferenceLevel(resultList, tag);
             }
-
-        } finally {
-            runlock();
+            _storeUnits = units;
         }
+        return units;
+    }
 
-        if( _log.isDebugEnabled() ) {
+    /**
+     * Key of a cached selection plan.
+     */
+    private static final class MatchKey
+    {
+        private final DirectionType type;
+        private final String storeUnit;
+        private final String dCacheUnit;
+        private final String netUnit;
+        private final String protocolUnit;
+        private final String linkGroup;
 
-            StringBuilder sb = new StringBuilder("match done: ");
+        private MatchKey(DirectionType type, String storeUnit, String dCacheUnit,
+                         String netUnit, String protocolUnit, String linkGroup)
+        {
+            this.type = type;
+            this.storeUnit = storeUnit;
+            this.dCacheUnit = dCacheUnit;
+            this.netUnit = netUnit;
+            this.protocolUnit = protocolUnit;
+            this.linkGroup = linkGroup;
+        }
 
-            for( int i = 0; i < result.length; i++) {
-                sb.append("[").append(i).append("] :");
-                for(String poolName: result[i].getPoolList()) {
-                    sb.append(" ").append(poolName);
-                }
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
             }
-            _log.debug(sb.toString());
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            MatchKey that = (MatchKey) o;
+            return type == that.type &&
+                   storeUnit.equals(that.storeUnit) &&
+                   Objects.equals(dCacheUnit, that.dCacheUnit) &&
+                   Objects.equals(netUnit, that.netUnit) &&
+                   Objects.equals(protocolUnit, that.protocolUnit) &&
+                   Objects.equals(linkGroup, that.linkGroup);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(type, storeUnit, dCacheUnit, netUnit, protocolUnit, linkGroup);
         }
-        return result;
     }
 
     @Override
@@ -1128,22 +1246,42 @@ public class PoolSelectionUnitV2
 
     public String setRegex(String onOff) {
         String retVal;
-        switch (onOff) {
-            case "on":
-                _useRegex = true;
-                retVal = "regex turned on";
-                break;
-            case "off":
-                _useRegex = false;
-                retVal = "regex turned off";
-                break;
-            default:
-                throw new IllegalArgumentException(
-                                "please set regex either on or off");
+        wlock();
+        try {
+            switch (onOff) {
+                case "on":
+                    _useRegex = true;
+                    retVal = "regex turned on";
+                    break;
+                case "off":
+                    _useRegex = false;
+                    retVal = "regex turned off";
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                                    "please set regex either on or off");
+            }
+        } finally {
+            wunlock();
         }
         return retVal;
     }
 
+    /**
+     * Sets the maximum number of selection plans cached by {@link #match}. A
+     * value of zero disables the cache.
+     */
+    public void setMatchCacheSize(int size) {
+        Preconditions.checkArgument(size >= 0, "Cache size must not be negative");
+        wlock();
+        try {
+            _matchCacheSize = size;
+            _matchCache = null;
+        } finally {
+            wunlock();
+        }
+    }
+
     public void createPool(String name, boolean isNoPing, boolean isDisabled, boolean isReadOnly) {
         wlock();
         try {
@@ -2449,6 +2587,15 @@ public class PoolSelectionUnitV2
 
     protected void wunlock()
     {
+        /* Any modification of the setup invalidates cached selection plans. This
+         * has to happen before the write lock is released, as otherwise a reader
+         * could observe a plan computed from the previous setup.
+         */
+        Cache<MatchKey, List<Link>> cache = _matchCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        _storeUnits = null;
         _psuWriteLock.unlock();
     }
 
@@ -3015,6 +3162,12 @@ public class PoolSelectionUnitV2
                                   args.argv(4));
     }
 
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        _matchCacheSize = DEFAULT_MATCH_CACHE_SIZE;
+    }
+
     private void writeObject(ObjectOutputStream stream) throws IOException
     {
         rlock();
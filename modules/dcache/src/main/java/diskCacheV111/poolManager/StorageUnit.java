@@ -62,6 +62,7 @@ package diskCacheV111.poolManager;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Unit specifically defining storage properties.  This has been
@@ -74,6 +75,12 @@ public class StorageUnit extends Unit {
     private int required;
     private List<String> onlyOneCopyPer;
 
+    /**
+     * The unit name compiled as a regular expression. Only used when
+     * regex matching is enabled in the PSU; compiled on first use.
+     */
+    private transient volatile Pattern pattern;
+
     public StorageUnit(String name) {
         super(name, PoolSelectionUnitV2.STORE);
         required = 1;
@@ -96,6 +103,19 @@ public class StorageUnit extends Unit {
         this.onlyOneCopyPer = ImmutableList.copyOf(onlyOneCopyPer);
     }
 
+    /**
+     * Returns true if the name of this unit, interpreted as a regular
+     * expression, matches the given store unit name.
+     */
+    boolean matches(String storeUnitName) {
+        Pattern p = pattern;
+        if (p == null) {
+            p = Pattern.compile(getName());
+            pattern = p;
+        }
+        return p.matcher(storeUnitName).matches();
+    }
+
     @Override
     public String toString() {
         return String.format("%s (required=%s; onlyOneCopyPer=%s)",
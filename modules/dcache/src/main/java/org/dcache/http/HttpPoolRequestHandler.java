@@ -20,7 +20,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.QueryStringDecoder;
-import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
@@ -49,6 +49,7 @@ import diskCacheV111.vehicles.HttpProtocolInfo;
 import dmg.util.HttpException;
 
 import org.dcache.pool.movers.NettyTransferService;
+import org.dcache.pool.movers.RepositoryFileRegion;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.Checksums;
 import org.dcache.vehicles.FileAttributes;
@@ -293,7 +294,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
              */
             context.write(new HttpGetResponse(fileSize, file, digest))
                     .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            context.write(read(file, 0, fileSize - 1))
+            context.write(read(context, file, 0, fileSize - 1))
                     .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
             return context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
         } else if (ranges.size() == 1) {
@@ -304,7 +305,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
             context.write(new HttpPartialContentResponse(range.getLower(), range.getUpper(),
                                                          fileSize, digest))
                     .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            context.write(read(file, range.getLower(), range.getUpper()))
+            context.write(read(context, file, range.getLower(), range.getUpper()))
                     .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
             return context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
         } else {
@@ -332,7 +333,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
                 HttpByteRange range = ranges.get(i);
                 context.write(fragmentMarkers[i])
                         .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-                context.write(read(file, range.getLower(), range.getUpper()))
+                context.write(read(context, file, range.getLower(), range.getUpper()))
                         .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
             }
             return context.writeAndFlush(new DefaultLastHttpContent(endMarker));
@@ -538,26 +539,33 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
 
     /**
      * Read the resources requested in HTTP-request from the pool. Return a
-     * ChunkedInput pointing to the requested portions of the file.
+     * ChunkedInput pointing to the requested portions of the file or, if
+     * the transfer service has zero-copy enabled and the connection is not
+     * encrypted, a FileRegion of the requested portions.
      *
      * Renew the keep-alive heartbeat, meaning that the last transferred time
      * will be updated, resetting the keep-alive timeout.
      *
+     * @param context the context of the connection the data is sent on
      * @param file the mover channel to read from
      * @param lowerRange The lower delimiter of the requested byte range of the
      *                   file
      * @param upperRange The upper delimiter of the requested byte range of the
      *                   file
-     * @return ChunkedInput View upon the file suitable for sending with
-     *         netty and representing the requested parts.
+     * @return View upon the file suitable for sending with netty and
+     *         representing the requested parts.
      */
-    private ChunkedInput read(NettyTransferService<HttpProtocolInfo>.NettyMoverChannel file,
-                              long lowerRange, long upperRange)
+    private Object read(ChannelHandlerContext context,
+                        NettyTransferService<HttpProtocolInfo>.NettyMoverChannel file,
+                        long lowerRange, long upperRange)
     {
         /* need to count position 0 as well */
         long length = (upperRange - lowerRange) + 1;
 
-        return new ReusableChunkedNioFile(file, lowerRange, length, _chunkSize);
+        if (_server.isZeroCopy() && context.pipeline().get(SslHandler.class) == null) {
+            return new RepositoryFileRegion(file, lowerRange, length, _server::addZeroCopyBytes);
+        }
+        return new ReusableChunkedNioFile(file, lowerRange, length, _chunkSize, _server::addCopiedBytes);
     }
 
     private static String buildDigest(NettyTransferService<HttpProtocolInfo>.NettyMoverChannel file)
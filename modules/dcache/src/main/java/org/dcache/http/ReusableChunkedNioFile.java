@@ -7,6 +7,7 @@ import io.netty.handler.stream.ChunkedInput;
 import io.netty.handler.stream.ChunkedNioFile;
 
 import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
 
 import org.dcache.pool.repository.RepositoryChannel;
 
@@ -34,6 +35,7 @@ public class ReusableChunkedNioFile implements ChunkedInput<ByteBuf>
     private final long _startOffset;
     private final long _endOffset;
     private final int _chunkSize;
+    private final LongConsumer _onRead;
 
     private volatile long _offset;
 
@@ -41,6 +43,18 @@ public class ReusableChunkedNioFile implements ChunkedInput<ByteBuf>
                                   long offset,
                                   long length,
                                   int chunkSize)
+    {
+        this(channel, offset, length, chunkSize, bytes -> {});
+    }
+
+    /**
+     * @param onRead called with the size of each chunk read from the channel
+     */
+    public ReusableChunkedNioFile(RepositoryChannel channel,
+                                  long offset,
+                                  long length,
+                                  int chunkSize,
+                                  LongConsumer onRead)
     {
         if (channel == null) {
             throw new NullPointerException("Channel must not be null");
@@ -63,6 +77,7 @@ public class ReusableChunkedNioFile implements ChunkedInput<ByteBuf>
 
         _channel = channel;
         _chunkSize = chunkSize;
+        _onRead = onRead;
         _startOffset = _offset = offset;
         _endOffset = _offset + length;
     }
@@ -117,6 +132,7 @@ public class ReusableChunkedNioFile implements ChunkedInput<ByteBuf>
             }
             chunk.writerIndex(buffer.position());
             _offset = offset;
+            _onRead.accept(buffer.position());
             release = false;
             return chunk;
         } finally {
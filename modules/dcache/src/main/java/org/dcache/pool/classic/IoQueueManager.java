@@ -23,6 +23,7 @@ import diskCacheV111.util.CacheException;
 import diskCacheV111.vehicles.IoJobInfo;
 
 import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellSetupProvider;
 import dmg.util.CommandException;
 import dmg.util.command.Argument;
@@ -40,7 +41,7 @@ import static dmg.util.CommandException.checkCommand;
 import static java.util.stream.Collectors.joining;
 
 public class IoQueueManager
-        implements FaultListener, CellCommandListener, CellSetupProvider
+        implements FaultListener, CellCommandListener, CellSetupProvider, CellInfoProvider
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(IoQueueManager.class);
 
@@ -174,6 +175,13 @@ public class IoQueueManager
                         + " -total=" + (q.getTotal() / 1000L)));
     }
 
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.println("Mover queue wait:");
+        queues().forEach(q -> pw.println("    " + q.getName() + " : " + q.getQueueWait()));
+    }
+
     public synchronized void shutdown() throws InterruptedException
     {
         for (MoverRequestScheduler queue : queuesById.values()) {
@@ -0,0 +1,437 @@
+package org.dcache.pool.classic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+import diskCacheV111.util.PnfsId;
+
+/**
+ * Index of removable replicas by last access time.
+ *
+ * Replicas are partitioned into stripes by the hash of their PNFS ID. Each
+ * stripe is an open addressing hash table with linear probing that keeps
+ * keys, access times and sizes in parallel arrays, so an entry costs a
+ * reference and two longs rather than the map entry, boxed time stamp and
+ * tree node of a sorted queue. Adding and removing entries locks a single
+ * stripe.
+ *
+ * Updating the access time of an entry does not take a lock at all unless
+ * the stripe is modified concurrently. The price is that the order of the
+ * entries is approximate: a time stamp written while a concurrent removal
+ * shifts entries within the table may be attributed to a neighbouring
+ * entry. As the sweeper re-validates every replica before removing it,
+ * this at worst alters the order in which replicas are removed.
+ *
+ * The entries are only ordered when replicas are selected for removal.
+ * Selecting the eldest entries that together account for a given number
+ * of bytes takes time linear in the number of entries and space linear in
+ * the number of selected entries.
+ */
+class LruIndex
+{
+    private static final int STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Stripe[] _stripes = new Stripe[STRIPES];
+
+    LruIndex()
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new Stripe();
+        }
+    }
+
+    private static int hash(PnfsId id)
+    {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Stripe stripeOf(int hash)
+    {
+        return _stripes[hash >>> 28 & (STRIPES - 1)];
+    }
+
+    /**
+     * Adds an entry unless an entry for the same PNFS ID already exists.
+     *
+     * @return true if the entry was added
+     */
+    boolean add(PnfsId id, long time, long size)
+    {
+        int hash = hash(id);
+        Stripe stripe = stripeOf(hash);
+        long stamp = stripe.writeLock();
+        try {
+            return stripe.insert(id, hash, time, size);
+        } finally {
+            stripe.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entry of a PNFS ID.
+     *
+     * @return true if an entry was removed
+     */
+    boolean remove(PnfsId id)
+    {
+        int hash = hash(id);
+        Stripe stripe = stripeOf(hash);
+        long stamp = stripe.writeLock();
+        try {
+            return stripe.delete(id, hash);
+        } finally {
+            stripe.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Updates the access time of the entry of a PNFS ID.
+     *
+     * @return true if the index contains an entry for the PNFS ID
+     */
+    boolean touch(PnfsId id, long time)
+    {
+        int hash = hash(id);
+        Stripe stripe = stripeOf(hash);
+
+        long stamp = stripe.tryOptimisticRead();
+        if (stamp != 0) {
+            PnfsId[] keys = stripe.keys;
+            AtomicLongArray times = stripe.times;
+            int slot = find(keys, id, hash);
+            if (stripe.validate(stamp)) {
+                if (slot < 0) {
+                    return false;
+                }
+                times.set(slot, time);
+                if (stripe.validate(stamp)) {
+                    return true;
+                }
+            }
+        }
+
+        /* The stripe was modified concurrently; the table may have been
+         * resized or the entry moved, so repeat the update under the lock.
+         * The update itself only needs the shared lock, as the times are
+         * updated atomically.
+         */
+        stamp = stripe.readLock();
+        try {
+            int slot = find(stripe.keys, id, hash);
+            if (slot < 0) {
+                return false;
+            }
+            stripe.times.set(slot, time);
+            return true;
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int size()
+    {
+        int size = 0;
+        for (Stripe stripe : _stripes) {
+            long stamp = stripe.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the access time of the eldest entry, or 0 if the index is
+     * empty.
+     */
+    long getTimeOfEldest()
+    {
+        long eldest = Long.MAX_VALUE;
+        for (Stripe stripe : _stripes) {
+            long stamp = stripe.readLock();
+            try {
+                PnfsId[] keys = stripe.keys;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        eldest = Math.min(eldest, stripe.times.get(i));
+                    }
+                }
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+        return (eldest == Long.MAX_VALUE) ? 0 : eldest;
+    }
+
+    /**
+     * Returns the access times of all entries in no particular order.
+     */
+    long[] getTimes()
+    {
+        long[] times = new long[0];
+        int count = 0;
+        for (Stripe stripe : _stripes) {
+            long stamp = stripe.readLock();
+            try {
+                PnfsId[] keys = stripe.keys;
+                times = Arrays.copyOf(times, count + stripe.size);
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        times[count++] = stripe.times.get(i);
+                    }
+                }
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Returns the PNFS IDs of the eldest entries, eldest first, such that
+     * their combined size is at least {@code bytes}. All entries are
+     * returned if the index does not account for that many bytes.
+     */
+    List<PnfsId> getEldest(long bytes)
+    {
+        Selection selection = new Selection(bytes);
+        for (Stripe stripe : _stripes) {
+            long stamp = stripe.readLock();
+            try {
+                PnfsId[] keys = stripe.keys;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        selection.offer(keys[i], stripe.times.get(i), stripe.sizes[i]);
+                    }
+                }
+            } finally {
+                stripe.unlockRead(stamp);
+            }
+        }
+        return selection.drain();
+    }
+
+    private static int find(PnfsId[] keys, PnfsId id, int hash)
+    {
+        /* May be called on a table that is modified concurrently, hence
+         * the bound on the number of probes.
+         */
+        int mask = keys.length - 1;
+        for (int i = hash & mask, n = 0; n < keys.length; i = (i + 1) & mask, n++) {
+            PnfsId key = keys[i];
+            if (key == null) {
+                return -1;
+            }
+            if (key.equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Stripe extends StampedLock
+    {
+        private static final long serialVersionUID = 1L;
+
+        /* Replaced as a whole on resize; read without the lock by touch. */
+        volatile PnfsId[] keys = new PnfsId[INITIAL_CAPACITY];
+        volatile AtomicLongArray times = new AtomicLongArray(INITIAL_CAPACITY);
+        long[] sizes = new long[INITIAL_CAPACITY];
+        int size;
+
+        boolean insert(PnfsId id, int hash, long time, long size)
+        {
+            if (find(keys, id, hash) >= 0) {
+                return false;
+            }
+            if ((this.size + 1) * 4L > keys.length * 3L) {
+                resize(keys.length * 2);
+            }
+            put(keys, times, sizes, id, hash, time, size);
+            this.size++;
+            return true;
+        }
+
+        boolean delete(PnfsId id, int hash)
+        {
+            PnfsId[] keys = this.keys;
+            AtomicLongArray times = this.times;
+            int slot = find(keys, id, hash);
+            if (slot < 0) {
+                return false;
+            }
+
+            /* Shift subsequent entries of the probe sequence backwards, so
+             * that lookups never have to skip deleted slots.
+             */
+            int mask = keys.length - 1;
+            int free = slot;
+            int i = slot;
+            while (true) {
+                i = (i + 1) & mask;
+                PnfsId key = keys[i];
+                if (key == null) {
+                    break;
+                }
+                int home = hash(key) & mask;
+                boolean reachable = (free <= i) ? (free < home && home <= i) : (free < home || home <= i);
+                if (!reachable) {
+                    keys[free] = key;
+                    times.set(free, times.get(i));
+                    sizes[free] = sizes[i];
+                    free = i;
+                }
+            }
+            keys[free] = null;
+            sizes[free] = 0;
+            size--;
+            return true;
+        }
+
+        private void resize(int capacity)
+        {
+            PnfsId[] newKeys = new PnfsId[capacity];
+            AtomicLongArray newTimes = new AtomicLongArray(capacity);
+            long[] newSizes = new long[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                PnfsId key = keys[i];
+                if (key != null) {
+                    put(newKeys, newTimes, newSizes, key, hash(key), times.get(i), sizes[i]);
+                }
+            }
+            sizes = newSizes;
+            times = newTimes;
+            keys = newKeys;
+        }
+
+        private static void put(PnfsId[] keys, AtomicLongArray times, long[] sizes,
+                                PnfsId id, int hash, long time, long size)
+        {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            times.set(i, time);
+            sizes[i] = size;
+            keys[i] = id;
+        }
+    }
+
+    /**
+     * Maintains the eldest entries that account for a given number of bytes.
+     *
+     * The entries are kept in a binary max-heap ordered by access time, so
+     * the youngest selected entry can be dropped when the remaining entries
+     * are sufficient.
+     */
+    private static class Selection
+    {
+        private final long _bytes;
+        private long _total;
+        private int _count;
+        private PnfsId[] _keys = new PnfsId[16];
+        private long[] _times = new long[16];
+        private long[] _sizes = new long[16];
+
+        Selection(long bytes)
+        {
+            _bytes = bytes;
+        }
+
+        void offer(PnfsId id, long time, long size)
+        {
+            if (_total < _bytes || (_count > 0 && time < _times[0])) {
+                push(id, time, size);
+                while (_count > 0 && _total - _sizes[0] >= _bytes) {
+                    pop();
+                }
+            }
+        }
+
+        /**
+         * Returns the selected PNFS IDs, eldest first.
+         */
+        List<PnfsId> drain()
+        {
+            PnfsId[] sorted = new PnfsId[_count];
+            for (int i = _count - 1; i >= 0; i--) {
+                sorted[i] = _keys[0];
+                pop();
+            }
+            return new ArrayList<>(Arrays.asList(sorted));
+        }
+
+        private void push(PnfsId id, long time, long size)
+        {
+            if (_count == _keys.length) {
+                int capacity = _count * 2;
+                _keys = Arrays.copyOf(_keys, capacity);
+                _times = Arrays.copyOf(_times, capacity);
+                _sizes = Arrays.copyOf(_sizes, capacity);
+            }
+            int i = _count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (_times[parent] >= time) {
+                    break;
+                }
+                set(i, _keys[parent], _times[parent], _sizes[parent]);
+                i = parent;
+            }
+            set(i, id, time, size);
+            _total += size;
+        }
+
+        private void pop()
+        {
+            _total -= _sizes[0];
+            int last = --_count;
+            PnfsId id = _keys[last];
+            long time = _times[last];
+            long size = _sizes[last];
+            _keys[last] = null;
+            if (last == 0) {
+                return;
+            }
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= last) {
+                    break;
+                }
+                if (child + 1 < last && _times[child + 1] > _times[child]) {
+                    child++;
+                }
+                if (_times[child] <= time) {
+                    break;
+                }
+                set(i, _keys[child], _times[child], _sizes[child]);
+                i = child;
+            }
+            set(i, id, time, size);
+        }
+
+        private void set(int i, PnfsId id, long time, long size)
+        {
+            _keys[i] = id;
+            _times[i] = time;
+            _sizes[i] = size;
+        }
+    }
+}
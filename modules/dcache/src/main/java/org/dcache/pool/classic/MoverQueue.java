@@ -0,0 +1,138 @@
+package org.dcache.pool.classic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.util.IoPrioritizable;
+import org.dcache.util.IoPriority;
+
+/**
+ * Non-blocking queue of requests ordered by priority.
+ *
+ * Requests of each priority are kept in a separate lock-free deque.
+ * Requests of higher priority are always polled first. Requests of the
+ * same priority are polled in the order of their arrival if the queue is
+ * FIFO, and in reverse order of their arrival if the queue is LIFO.
+ *
+ * Changing the order briefly removes all requests from the queue. Removing
+ * and draining requests waits for such a change to complete, as otherwise
+ * a request could be missed and later be added back.
+ */
+class MoverQueue<T extends IoPrioritizable>
+{
+    private static final IoPriority[] PRIORITIES = IoPriority.values();
+
+    private final List<Deque<T>> _deques = new ArrayList<>(PRIORITIES.length);
+
+    /**
+     * Number of requests per priority. Maintained separately as the size
+     * of a ConcurrentLinkedDeque is expensive to determine.
+     */
+    private final AtomicIntegerArray _sizes = new AtomicIntegerArray(PRIORITIES.length);
+
+    private volatile Order _order;
+
+    MoverQueue(Order order)
+    {
+        _order = order;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            _deques.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    Order getOrder()
+    {
+        return _order;
+    }
+
+    /**
+     * Changes the order of the queue. Requests added concurrently with
+     * the change may be ordered according to either order.
+     */
+    synchronized void setOrder(Order order)
+    {
+        if (order != _order) {
+            _order = order;
+            List<T> requests = drain();
+            requests.sort(Comparator.comparingLong(IoPrioritizable::getCreateTime));
+            requests.forEach(this::add);
+        }
+    }
+
+    void add(T request)
+    {
+        int priority = request.getPriority().ordinal();
+        Deque<T> deque = _deques.get(priority);
+        _sizes.incrementAndGet(priority);
+        if (_order == Order.FIFO) {
+            deque.addLast(request);
+        } else {
+            deque.addFirst(request);
+        }
+    }
+
+    /**
+     * Retrieves and removes the next request, or returns null if the queue
+     * is empty.
+     */
+    T poll()
+    {
+        for (int priority = PRIORITIES.length - 1; priority >= 0; priority--) {
+            if (_sizes.get(priority) > 0) {
+                T request = _deques.get(priority).pollFirst();
+                if (request != null) {
+                    _sizes.decrementAndGet(priority);
+                    return request;
+                }
+            }
+        }
+        return null;
+    }
+
+    synchronized boolean remove(T request)
+    {
+        int priority = request.getPriority().ordinal();
+        if (_deques.get(priority).remove(request)) {
+            _sizes.decrementAndGet(priority);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all requests, highest priority first.
+     */
+    synchronized List<T> drain()
+    {
+        List<T> requests = new ArrayList<>();
+        T request;
+        while ((request = poll()) != null) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    int size()
+    {
+        int size = 0;
+        for (int priority = 0; priority < PRIORITIES.length; priority++) {
+            size += _sizes.get(priority);
+        }
+        return size;
+    }
+
+    int size(IoPriority priority)
+    {
+        return _sizes.get(priority.ordinal());
+    }
+}
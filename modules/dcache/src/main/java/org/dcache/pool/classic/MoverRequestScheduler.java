@@ -5,7 +5,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.InterruptedIOException;
 import java.nio.channels.CompletionHandler;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -13,11 +12,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -40,6 +38,7 @@ import org.dcache.pool.movers.json.MoverData;
 import org.dcache.util.AdjustableSemaphore;
 import org.dcache.util.IoPrioritizable;
 import org.dcache.util.IoPriority;
+import org.dcache.util.LatencyHistogram;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
@@ -96,19 +95,19 @@ public class MoverRequestScheduler
     private long _total = DEFAULT_TOTAL;
 
     /**
-     * Current queue order.
+     * Queued movers.
      */
-    private Order _order;
+    private final MoverQueue<PrioritizedRequest> _queue;
 
     /**
-     * Queued movers.
+     * Job id generator
      */
-    private BlockingQueue<PrioritizedRequest> _queue;
+    private final AtomicInteger _nextId = new AtomicInteger();
 
     /**
-     * Job id generator
+     * Time movers spent in the queue before being started.
      */
-    private int _nextId;
+    private final LatencyHistogram _queueWait = new LatencyHistogram();
 
     /**
      * True when scheduler has been terminated.
@@ -124,8 +123,7 @@ public class MoverRequestScheduler
     {
         _name = name;
         _queueId = queueId;
-        _order = order;
-        _queue = createQueue(order);
+        _queue = new MoverQueue<>(order);
         _semaphore.setMaxPermits(2);
     }
 
@@ -139,38 +137,18 @@ public class MoverRequestScheduler
         _faultListeners.remove(listener);
     }
 
-    private PriorityBlockingQueue<PrioritizedRequest> createQueue(Order order)
-    {
-        /* PriorityBlockingQueue returns the least elements first, that is, the
-         * the highest priority requests have to be first in the ordering.
-         */
-        Comparator<IoPrioritizable> comparator =
-                order == Order.FIFO
-                ? Comparator
-                        .comparing(IoPrioritizable::getPriority)
-                        .reversed()
-                        .thenComparingLong(IoPrioritizable::getCreateTime)
-                : Comparator
-                        .comparing(IoPrioritizable::getPriority)
-                        .thenComparingLong(IoPrioritizable::getCreateTime)
-                        .reversed();
-
-        return new PriorityBlockingQueue<>(16, comparator);
-    }
-
     public Order getOrder()
     {
-        return _order;
+        return _queue.getOrder();
     }
 
-    public synchronized void setOrder(Order order)
+    public void setOrder(Order order)
     {
-        if (order != _order) {
-            PriorityBlockingQueue<PrioritizedRequest> queue = createQueue(order);
-            _queue.drainTo(queue);
-            _queue = queue;
-            _order = order;
-        }
+        _queue.setOrder(order);
+        /* Requests are briefly removed from the queue while it is reordered,
+         * so a job slot may have been released in the meantime.
+         */
+        dispatch();
     }
 
     /**
@@ -242,7 +220,7 @@ public class MoverRequestScheduler
      * @param request
      * @return
      */
-    private synchronized boolean submit(PrioritizedRequest request)
+    private boolean submit(PrioritizedRequest request)
     {
         if (_jobs.put(request.getId(), request) != null) {
             throw new RuntimeException("Duplicate mover id detected. Please report to support@dcache.org.");
@@ -252,6 +230,10 @@ public class MoverRequestScheduler
             return true;
         } else {
             _queue.add(request);
+            /* A job slot may have been released after we failed to acquire
+             * it, but before the request was queued.
+             */
+            dispatch();
             return false;
         }
     }
@@ -263,23 +245,42 @@ public class MoverRequestScheduler
      *
      * @return
      */
-    private synchronized PrioritizedRequest nextOrRelease()
+    private PrioritizedRequest nextOrRelease()
     {
         PrioritizedRequest request = _queue.poll();
         if (request == null) {
             _semaphore.release();
+            /* A request may have been queued after we found the queue empty,
+             * but before the job slot was released.
+             */
+            dispatch();
         }
         return request;
     }
 
-    private synchronized int nextId()
+    /**
+     * Sends queued jobs to execution while there are free job slots.
+     *
+     * Must be called after queuing a request and after releasing a job slot.
+     * As both the queue and the job slots are updated without a common lock,
+     * this guarantees that no request is left in the queue while a job slot
+     * is free.
+     */
+    private void dispatch()
     {
-        if (_nextId == 0x00FFFFFF) {
-            _nextId = 0;
-        } else {
-            _nextId++;
+        while (!_queue.isEmpty() && _semaphore.tryAcquire()) {
+            PrioritizedRequest request = _queue.poll();
+            if (request == null) {
+                _semaphore.release();
+            } else {
+                sendToExecution(request);
+            }
         }
-        return _nextId;
+    }
+
+    private int nextId()
+    {
+        return _nextId.updateAndGet(id -> (id == 0x00FFFFFF) ? 0 : id + 1);
     }
 
     /**
@@ -287,9 +288,17 @@ public class MoverRequestScheduler
      *
      * @return number of running jobs.
      */
-    public synchronized int getActiveJobs()
+    public int getActiveJobs()
     {
-        return _jobs.size() - _queue.size();
+        return Math.max(_jobs.size() - _queue.size(), 0);
+    }
+
+    /**
+     * Get the time movers spent in the queue before being started.
+     */
+    public LatencyHistogram getQueueWait()
+    {
+        return _queueWait;
     }
 
     /**
@@ -358,10 +367,7 @@ public class MoverRequestScheduler
     public void setMaxActiveJobs(int maxJobs)
     {
         _semaphore.setMaxPermits(maxJobs);
-        PrioritizedRequest request;
-        while (_semaphore.tryAcquire() && (request = nextOrRelease()) != null) {
-            sendToExecution(request);
-        }
+        dispatch();
     }
 
     /**
@@ -371,11 +377,7 @@ public class MoverRequestScheduler
      */
     public int getQueueSize()
     {
-        BlockingQueue<PrioritizedRequest> queue;
-        synchronized (this) {
-            queue = _queue;
-        }
-        return queue.size();
+        return _queue.size();
     }
 
     /**
@@ -383,13 +385,7 @@ public class MoverRequestScheduler
      */
     public int getCountByPriority(IoPriority priority)
     {
-        BlockingQueue<PrioritizedRequest> queue;
-        synchronized (this) {
-            queue = _queue;
-        }
-        return (int) queue.stream()
-                .filter(r -> r.getPriority() == priority)
-                .count();
+        return _queue.size(priority);
     }
 
     /**
@@ -414,7 +410,7 @@ public class MoverRequestScheduler
      * @param explanation A reason to log
      * @return true if a job was killed, false otherwise
      */
-    public synchronized boolean cancel(int id, @Nullable String explanation)
+    public boolean cancel(int id, @Nullable String explanation)
     {
         boolean killed = false;
         PrioritizedRequest request = _jobs.get(id);
@@ -468,8 +464,7 @@ public class MoverRequestScheduler
          * before killing jobs as otherwise the queued jobs will immediatley fill
          * the freed job slot.
          */
-        Collection<PrioritizedRequest> toBeCancelled = new ArrayList<>();
-        _queue.drainTo(toBeCancelled);
+        Collection<PrioritizedRequest> toBeCancelled = _queue.drain();
 
         /* Kill both the jobs that were queued and which are running. */
         _jobs.values().forEach(j -> j.kill("shutdown"));
@@ -495,6 +490,7 @@ public class MoverRequestScheduler
 
     private void sendToExecution(final PrioritizedRequest request)
     {
+        _queueWait.update(System.nanoTime() - request.getCreateTime(), TimeUnit.NANOSECONDS);
         try (CDC ignore = request.getCdc().restore()) {
             request.transfer(
                     new CompletionHandler<Void, Void>()
@@ -746,6 +742,7 @@ public class MoverRequestScheduler
             try {
                 if (_state != QUEUED) {
                     completionHandler.failed(new InterruptedException("Transfer cancelled"), null);
+                    return;
                 }
                 _state = RUNNING;
                 _startTime = System.currentTimeMillis();
@@ -7,12 +7,9 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import diskCacheV111.util.CacheException;
@@ -41,8 +38,6 @@ import org.dcache.pool.repository.StickyChangeEvent;
 import org.dcache.util.histograms.CountingHistogram;
 import org.dcache.vehicles.FileAttributes;
 
-import static java.util.Comparator.naturalOrder;
-
 public class SpaceSweeper2
     implements Runnable, CellCommandListener, StateChangeListener,
                SpaceSweeperPolicy, PoolDataBeanProvider<SweeperData>
@@ -52,7 +47,7 @@ public class SpaceSweeper2
     private static final DateTimeFormatter ISO8601_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
 
-    private final LruQueue<PnfsId> _queue = new LruQueue<>();
+    private final LruIndex _index = new LruIndex();
 
     private Repository _repository;
 
@@ -97,21 +92,13 @@ public class SpaceSweeper2
         return entry.getState() == ReplicaState.CACHED && !entry.isSticky();
     }
 
-    /**
-     * Returns the pnfsid of the eldest removable entry.
-     */
-    private synchronized PnfsId getEldest()
-    {
-        return _queue.getLeastRecentlyUsedElement();
-    }
-
     /**
      * Returns the last access time of the eldest removable entry.
      */
     @Override
     public long getLru()
     {
-        return _queue.getTimeOfLeastRecentlyUsedElement();
+        return _index.getTimeOfEldest();
     }
 
     /**
@@ -119,28 +106,30 @@ public class SpaceSweeper2
      *
      * @throws IllegalArgumentException if entry is precious or not cached
      */
-    private synchronized void add(CacheEntry entry)
+    private void add(CacheEntry entry)
     {
         if (!isRemovable(entry)) {
             throw new IllegalArgumentException("Cannot add a precious or un-cached file to the sweeper queue.");
         }
 
         PnfsId id = entry.getPnfsId();
-        if (_queue.add(id, entry.getLastAccessTime())) {
+        if (_index.add(id, entry.getLastAccessTime(), entry.getReplicaSize())) {
             _log.debug("Added {} to sweeper", id);
             /* The sweeper thread may be waiting for more files to
              * delete.
              */
-            notifyAll();
+            synchronized (this) {
+                notifyAll();
+            }
         }
     }
 
     /** Remove entry from the queue.
      */
-    private synchronized boolean remove(CacheEntry entry)
+    private boolean remove(CacheEntry entry)
     {
         PnfsId id = entry.getPnfsId();
-        if (_queue.remove(id)) {
+        if (_index.remove(id)) {
             _log.debug("Removed {} from sweeper", id);
             return true;
         }
@@ -148,7 +137,7 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void stateChanged(StateChangeEvent event)
+    public void stateChanged(StateChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
         switch (event.getNewState()) {
@@ -168,7 +157,7 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void stickyChanged(StickyChangeEvent event)
+    public void stickyChanged(StickyChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
         if (isRemovable(entry)) {
@@ -179,12 +168,10 @@ public class SpaceSweeper2
     }
 
     @Override
-    public synchronized void accessTimeChanged(EntryChangeEvent event)
+    public void accessTimeChanged(EntryChangeEvent event)
     {
         CacheEntry entry = event.getNewEntry();
-        if (remove(entry)) {
-            add(entry);
-        }
+        _index.touch(entry.getPnfsId(), entry.getLastAccessTime());
     }
 
     @Command(name = "sweeper purge", hint = "Purges all removable files from pool",
@@ -253,10 +240,7 @@ public class SpaceSweeper2
                 throws CacheException, InterruptedException
         {
             StringBuilder sb = new StringBuilder();
-            List<PnfsId> list;
-            synchronized (SpaceSweeper2.this) {
-                list = _queue.values();
-            }
+            List<PnfsId> list = _index.getEldest(Long.MAX_VALUE);
             int i = 0;
             for (PnfsId id : list) {
                 try {
@@ -293,31 +277,15 @@ public class SpaceSweeper2
         SweeperData info = new SweeperData();
         info.setLabel("Space Sweeper v2");
 
-        List<PnfsId> list;
-
-        synchronized (this) {
-            list = _queue.values();
-            info.setLruQueueSize(_queue.values().size());
-            info.setLruTimestamp(System.currentTimeMillis() - getLru());
-        }
+        long[] times = _index.getTimes();
+        info.setLruQueueSize(times.length);
+        info.setLruTimestamp(System.currentTimeMillis() - getLru());
 
         long now = System.currentTimeMillis();
 
-        List<Double> fileLifetime = new ArrayList<>();
-
-        for (PnfsId id : list) {
-            try {
-                CacheEntry entry = _repository.getEntry(id);
-                Long lvalue = now - entry.getLastAccessTime();
-                fileLifetime.add(lvalue.doubleValue());
-            } catch (FileNotInCacheException e) {
-                // Ignored
-            } catch (InterruptedException e) {
-                // should exit
-                return null;
-            } catch (CacheException e) {
-                // Continue trying
-            }
+        List<Double> fileLifetime = new ArrayList<>(times.length);
+        for (long time : times) {
+            fileLifetime.add((double) (now - time));
         }
 
         CountingHistogram histogram = SweeperData.createLastAccessHistogram();
@@ -370,41 +338,55 @@ public class SpaceSweeper2
     {
         _log.debug("Sweeper tries to reclaim {} bytes.", amount);
 
-        /* We copy the entries into a tmp list to avoid
-         * ConcurrentModificationException.
-         */
-        List<PnfsId> tmpList = _queue.values();
-
-        /* Delete the files.
+        /* Candidates are selected in batches of the eldest entries that
+         * together are large enough to cover the remaining amount. Entries
+         * that were skipped or that are still in the index while their
+         * removal is being processed are selected again, so each batch is
+         * extended by the size of the entries already tried.
          */
+        Set<PnfsId> tried = new HashSet<>();
+        long triedBytes = 0;
         long deleted = 0;
-        for (PnfsId id: tmpList) {
-            try {
-                CacheEntry entry = _repository.getEntry(id);
-
-                // Removing an open file will not free space until
-                // the file is closed, so we skip it this time around.
-                if (entry.getLinkCount() > 0) {
-                    _log.debug("File skipped by sweeper (in use): {}", entry);
-                    continue;
-                }
-                if (!isRemovable(entry)) {
-                    _log.debug("File skipped by sweeper (not removable): {}", entry);
+        while (deleted < amount) {
+            long remaining = amount - deleted;
+            long batch = (triedBytes > Long.MAX_VALUE - remaining) ? Long.MAX_VALUE : triedBytes + remaining;
+            boolean progress = false;
+            for (PnfsId id : _index.getEldest(batch)) {
+                if (!tried.add(id)) {
                     continue;
                 }
+                progress = true;
+                try {
+                    CacheEntry entry = _repository.getEntry(id);
+                    long size = entry.getReplicaSize();
+                    triedBytes += size;
+
+                    // Removing an open file will not free space until
+                    // the file is closed, so we skip it this time around.
+                    if (entry.getLinkCount() > 0) {
+                        _log.debug("File skipped by sweeper (in use): {}", entry);
+                        continue;
+                    }
+                    if (!isRemovable(entry)) {
+                        _log.debug("File skipped by sweeper (not removable): {}", entry);
+                        continue;
+                    }
 
-                long size = entry.getReplicaSize();
-                _log.debug("Sweeper removes {}.", id);
-                _repository.setState(id, ReplicaState.REMOVED);
-                deleted += size;
-            } catch (IllegalTransitionException | FileNotInCacheException e) {
-                /* Normal if file got removed just as we wanted to
-                 * remove it ourselves.
-                 */
-            } catch (CacheException e) {
-                _log.error(e.getMessage());
+                    _log.debug("Sweeper removes {}.", id);
+                    _repository.setState(id, ReplicaState.REMOVED);
+                    deleted += size;
+                } catch (IllegalTransitionException | FileNotInCacheException e) {
+                    /* Normal if file got removed just as we wanted to
+                     * remove it ourselves.
+                     */
+                } catch (CacheException e) {
+                    _log.error(e.getMessage());
+                }
+                if (deleted >= amount) {
+                    break;
+                }
             }
-            if (deleted >= amount) {
+            if (!progress) {
                 break;
             }
         }
@@ -459,67 +441,4 @@ public class SpaceSweeper2
             _repository.removeListener(this);
         }
     }
-
-    /**
-     * Queue of keys ordered by a timestamp.
-     */
-    private static class LruQueue<T extends Comparable<T>>
-    {
-        /**
-         * Tracks the time stamp of each element in the queue.
-         */
-        private final Map<T, Long> timeStamps = new HashMap<>();
-
-        /**
-         * Elements sorted by access time and value.
-         * <p>
-         * The comparator uses {@code timeStamps} to look up the time of keys. A compound comparator is used
-         * to ensure consistency with equals (otherwise two keys with the same time would be collapsed to
-         * a single element in the set).
-         * <p>
-         * Any element inserted into this set must have its access time recorded in {@code timeStamps}
-         * before being inserted into the set. The time must not change while the key is in the set.
-         */
-        private final SortedSet<T> queue =
-                new TreeSet<>(Comparator.<T, Long>comparing(k -> timeStamps.getOrDefault(k, 0L)).thenComparing(naturalOrder()));
-
-        public synchronized boolean add(T key, long time)
-        {
-            if (timeStamps.putIfAbsent(key, time) == null) {
-                queue.add(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized boolean remove(T key)
-        {
-            if (queue.remove(key)) {
-                timeStamps.remove(key);
-                return true;
-            }
-            return false;
-        }
-
-        public synchronized T getLeastRecentlyUsedElement()
-        {
-            if (queue.isEmpty()) {
-                return null;
-            }
-            return queue.first();
-        }
-
-        public synchronized long getTimeOfLeastRecentlyUsedElement()
-        {
-            if (queue.isEmpty()) {
-                return 0;
-            }
-            return timeStamps.get(queue.first());
-        }
-
-        public synchronized List<T> values()
-        {
-            return new ArrayList<>(queue);
-        }
-    }
 }
@@ -5,6 +5,7 @@ import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,10 +17,13 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -38,12 +42,34 @@ import static org.dcache.util.Exceptions.messageOrClassName;
  * A wrapper for RepositoryChannel that computes a digest
  * on the fly during write as long as all writes are
  * sequential.
+ *
+ * The digests are updated by a {@link DigestPipeline}, so hashing
+ * does not stall the writing thread and several digests are computed
+ * in parallel.
  */
 public class ChecksumChannel extends ForwardingRepositoryChannel
 {
     private static final Logger _log =
             LoggerFactory.getLogger(ChecksumChannel.class);
 
+    /**
+     * Threads updating the digests of all channels. Digest updates never
+     * block, thus one thread per core suffices. Idle threads terminate, so
+     * no threads linger once no files are written.
+     */
+    private static final ExecutorService DIGEST_EXECUTOR = newDigestExecutor();
+
+    /**
+     * Size of the chunks in which data is passed to the digests.
+     */
+    private static final int CHUNK_SIZE = KiB.toBytes(256);
+
+    /**
+     * Maximum number of chunks not yet processed by all digests. Writes
+     * block once this limit is reached.
+     */
+    private static final int MAX_CHUNKS_IN_FLIGHT = 4;
+
     /**
      * Inner channel to which all operations are delegated.
      */
@@ -55,6 +81,13 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
      */
     private final List<MessageDigest> _digests;
 
+    /**
+     * Pipeline updating the digests.
+     */
+    @GuardedBy("_digests")
+    private final DigestPipeline _pipeline =
+            new DigestPipeline(DIGEST_EXECUTOR, CHUNK_SIZE, MAX_CHUNKS_IN_FLIGHT);
+
     /**
      * Cached checksum after getChecksums is called the first time.
      */
@@ -112,12 +145,23 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
     @VisibleForTesting
     ByteBuffer _zerosBuffer = ZERO_BUFFER.duplicate();
 
+    private static ExecutorService newDigestExecutor()
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                       new ThreadFactoryBuilder().setDaemon(true).setNameFormat("checksum-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public ChecksumChannel(RepositoryChannel inner, Set<ChecksumType> types)
     {
         _channel = inner;
         _digests = types.stream()
                 .map(t -> t.createMessageDigest())
                 .collect(Collectors.toList());
+        _digests.forEach(_pipeline::add);
     }
 
     /**
@@ -140,7 +184,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
 
                 if (_isChecksumViable) {
                     try {
-                        updateFromChannel(Collections.singleton(digest), 0L, _nextChecksumOffset);
+                        updateFromChannel(b -> digest.update(b), 0L, _nextChecksumOffset);
                     } catch (IOException e) {
                         throw new IOException("Failed when reading received data: "
                                 + messageOrClassName(e), e);
@@ -148,6 +192,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
                 }
 
                 _digests.add(digest);
+                _pipeline.add(digest);
             }
         }
     }
@@ -270,12 +315,13 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
                     if (_dataRangeSet.asRanges().size() != 1 || _nextChecksumOffset == 0) {
                         feedZerosToDigesterForRangeGaps();
                     }
+                    _pipeline.await();
 
                     return _digests.stream()
                             .map(Checksum::new)
                             .collect(Collectors.toSet());
                 } catch (IOException e) {
-                    _log.info("Unable to generate checksum of sparse file: {}", e.toString());
+                    _log.info("Unable to generate checksum: {}", e.toString());
                     return Collections.emptySet();
                 }
             }
@@ -377,11 +423,13 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
             // update offset prior digest calculation as digests#update will update position in the buffer
             _nextChecksumOffset += buffer.remaining();
 
-            _digests.forEach(d -> d.update(buffer.duplicate()));
-
             long expectedOffsetAfterRead = _nextChecksumOffset + bytesToRead;
             try {
-                updateFromChannel(_digests, _nextChecksumOffset, bytesToRead);
+                _pipeline.update(buffer);
+                updateFromChannel(_pipeline::update, _nextChecksumOffset, bytesToRead);
+            } catch (IOException | RuntimeException e) {
+                _isChecksumViable = false;
+                throw e;
             } finally {
                 _nextChecksumOffset = expectedOffsetAfterRead;
                 _digests.notifyAll();
@@ -390,7 +438,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
     }
 
     @GuardedBy("_digests")
-    private void updateFromChannel(Collection<MessageDigest> digests, long offset, long bytesToRead)
+    private void updateFromChannel(DigestUpdate update, long offset, long bytesToRead)
             throws IOException
     {
         try {
@@ -405,7 +453,7 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
 
                 _readBackBuffer.flip();
 
-                digests.forEach(d -> d.update(_readBackBuffer.asReadOnlyBuffer()));
+                update.accept(_readBackBuffer.asReadOnlyBuffer());
 
                 bytesToRead -= bytesRead;
                 offset += bytesRead;
@@ -415,4 +463,13 @@ public class ChecksumChannel extends ForwardingRepositoryChannel
             throw e;
         }
     }
+
+    /**
+     * Receives data to be added to digests.
+     */
+    @FunctionalInterface
+    private interface DigestUpdate
+    {
+        void accept(ByteBuffer buffer) throws IOException;
+    }
 }
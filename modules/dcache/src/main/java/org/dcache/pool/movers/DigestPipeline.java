@@ -0,0 +1,202 @@
+package org.dcache.pool.movers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates message digests on worker threads.
+ *
+ * Data passed to the pipeline is copied into chunks. Once a chunk is full,
+ * every digest is updated with it by a task of its own. The tasks of a
+ * digest are chained, so each digest sees the data in order, while different
+ * digests are updated in parallel. The caller thus only pays for copying the
+ * data, and hashing overlaps with receiving further data.
+ *
+ * The number of chunks in flight is bounded. If the digests fall behind,
+ * {@link #update} blocks until a chunk is released.
+ *
+ * Chunks are sized to the data written: the first chunk is only as large as
+ * the first write, and each further chunk allocated doubles in size up to the
+ * maximum chunk size. Small files thus do not cause large buffers to be
+ * allocated. Released chunks are reused.
+ *
+ * The pipeline is not thread safe; callers must serialize calls to
+ * {@link #add}, {@link #update} and {@link #await}.
+ */
+class DigestPipeline
+{
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    private final Executor _executor;
+    private final int _chunkSize;
+    private final Semaphore _permits;
+    private final Queue<ByteBuffer> _free = new ConcurrentLinkedQueue<>();
+    private final List<Lane> _lanes = new ArrayList<>();
+
+    /**
+     * Chunk being filled by the caller, or null.
+     */
+    private ByteBuffer _current;
+
+    /**
+     * Size of the next chunk to allocate.
+     */
+    private int _nextChunkSize;
+
+    private volatile RuntimeException _failure;
+
+    DigestPipeline(Executor executor, int chunkSize, int maxChunks)
+    {
+        _executor = executor;
+        _chunkSize = chunkSize;
+        _nextChunkSize = Math.min(chunkSize, MIN_CHUNK_SIZE);
+        _permits = new Semaphore(maxChunks);
+    }
+
+    /**
+     * Adds a digest to the pipeline. The digest is only updated with data
+     * passed to the pipeline after this call.
+     */
+    void add(MessageDigest digest)
+    {
+        submit();
+        _lanes.add(new Lane(digest));
+    }
+
+    /**
+     * Updates all digests with the remaining bytes of {@code data}. The
+     * position of {@code data} is not modified.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for the
+     * digests to catch up
+     */
+    void update(ByteBuffer data) throws InterruptedIOException
+    {
+        if (_lanes.isEmpty()) {
+            return;
+        }
+        ByteBuffer source = data.duplicate();
+        while (source.hasRemaining()) {
+            if (_current == null) {
+                _current = acquire(source.remaining());
+            }
+            int length = Math.min(_current.remaining(), source.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            _current.put(slice);
+            source.position(source.position() + length);
+            if (!_current.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Waits until all digests have been updated with the data passed to the
+     * pipeline so far.
+     *
+     * @throws IOException if updating a digest failed
+     */
+    void await() throws IOException
+    {
+        submit();
+        try {
+            for (Lane lane : _lanes) {
+                lane.tail.get();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException("Checksum computation failed: " + e.getCause(), e.getCause());
+        }
+        RuntimeException failure = _failure;
+        if (failure != null) {
+            throw new IOException("Checksum computation failed: " + failure, failure);
+        }
+    }
+
+    /**
+     * Returns a chunk for at least {@code length} bytes, unless this exceeds
+     * the maximum chunk size.
+     */
+    private ByteBuffer acquire(int length) throws InterruptedIOException
+    {
+        try {
+            _permits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        int size = Math.min(_chunkSize, Math.max(length, _nextChunkSize));
+        ByteBuffer chunk;
+        do {
+            chunk = _free.poll();
+        } while (chunk != null && chunk.capacity() < size);
+        if (chunk == null) {
+            chunk = ByteBuffer.allocate(size);
+            _nextChunkSize = (int) Math.min(_chunkSize, 2L * size);
+        }
+        return chunk;
+    }
+
+    private void release(ByteBuffer chunk)
+    {
+        chunk.clear();
+        _free.offer(chunk);
+        _permits.release();
+    }
+
+    private void submit()
+    {
+        ByteBuffer chunk = _current;
+        if (chunk == null) {
+            return;
+        }
+        _current = null;
+        chunk.flip();
+        if (!chunk.hasRemaining() || _lanes.isEmpty()) {
+            release(chunk);
+            return;
+        }
+
+        AtomicInteger pending = new AtomicInteger(_lanes.size());
+        for (Lane lane : _lanes) {
+            lane.tail = lane.tail.thenRunAsync(() -> {
+                try {
+                    lane.digest.update(chunk.duplicate());
+                } catch (RuntimeException e) {
+                    _failure = e;
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        release(chunk);
+                    }
+                }
+            }, _executor);
+        }
+    }
+
+    private static class Lane
+    {
+        private final MessageDigest digest;
+
+        /**
+         * Completes once all updates submitted so far have been applied.
+         */
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        Lane(MessageDigest digest)
+        {
+            this.digest = digest;
+        }
+    }
+}
@@ -27,10 +27,9 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +39,7 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
@@ -49,6 +49,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 import diskCacheV111.util.CacheException;
@@ -57,6 +58,7 @@ import diskCacheV111.vehicles.PoolIoFileMessage;
 import diskCacheV111.vehicles.ProtocolInfo;
 
 import dmg.cells.nucleus.CDC;
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.CellPath;
 import dmg.cells.nucleus.NoRouteToCellException;
 
@@ -69,6 +71,7 @@ import org.dcache.pool.repository.ReplicaDescriptor;
 import org.dcache.util.CDCThreadFactory;
 import org.dcache.util.ChecksumType;
 import org.dcache.util.NettyPortRange;
+import org.dcache.util.NettyTransport;
 import org.dcache.util.TryCatchTemplate;
 import org.dcache.vehicles.FileAttributes;
 
@@ -83,7 +86,7 @@ import static com.google.common.base.Preconditions.checkState;
  * the Netty channel to close.
  */
 public abstract class NettyTransferService<P extends ProtocolInfo>
-    implements TransferService<NettyMover<P>>, MoverFactory
+    implements TransferService<NettyMover<P>>, MoverFactory, CellInfoProvider
 {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(NettyTransferService.class);
@@ -91,11 +94,26 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
     /** Manages connection timeouts. */
     private ScheduledExecutorService timeoutScheduler;
 
+    /** Socket transport requested by the configuration. */
+    private NettyTransport transport = NettyTransport.AUTO;
+
+    /** Socket transport used by the event loops. */
+    private NettyTransport effectiveTransport;
+
+    /** Whether reads may be served by sending file regions. */
+    private boolean zeroCopy;
+
+    /** Bytes sent to clients as file regions. */
+    private final LongAdder zeroCopyBytes = new LongAdder();
+
+    /** Bytes copied to buffers before being sent to clients. */
+    private final LongAdder copiedBytes = new LongAdder();
+
     /** Event loop for the server channel. */
-    private NioEventLoopGroup acceptGroup;
+    private EventLoopGroup acceptGroup;
 
     /** Event loop for the child channels. */
-    private NioEventLoopGroup socketGroup;
+    private EventLoopGroup socketGroup;
 
     /** Shared Netty server channel. */
     private Channel serverChannel;
@@ -152,6 +170,47 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         this.threads = threads;
     }
 
+    public void setTransport(NettyTransport transport)
+    {
+        this.transport = transport;
+    }
+
+    /**
+     * Returns whether reads may be sent as {@link RepositoryFileRegion}s.
+     * Only the NIO transport sends such regions with sendfile; the epoll
+     * transport would copy them through a buffer anyway.
+     */
+    public boolean isZeroCopy()
+    {
+        return zeroCopy && effectiveTransport == NettyTransport.NIO;
+    }
+
+    /**
+     * Enables sending unencrypted reads as {@link RepositoryFileRegion}s
+     * rather than copying them to buffers. Has no effect unless the NIO
+     * transport is used.
+     */
+    public void setZeroCopy(boolean zeroCopy)
+    {
+        this.zeroCopy = zeroCopy;
+    }
+
+    /**
+     * Accounts for bytes sent to a client as a file region.
+     */
+    public void addZeroCopyBytes(long bytes)
+    {
+        zeroCopyBytes.add(bytes);
+    }
+
+    /**
+     * Accounts for bytes copied to a buffer to be sent to a client.
+     */
+    public void addCopiedBytes(long bytes)
+    {
+        copiedBytes.add(bytes);
+    }
+
     @Required
     public void setPostTransferService(
             PostTransferService postTransferService)
@@ -250,7 +309,7 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         if (serverChannel == null) {
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(acceptGroup, socketGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(effectiveTransport.getServerChannelClass())
                     .childOption(ChannelOption.TCP_NODELAY, false)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
                     .childHandler(new ChannelInitializer<Channel>()
@@ -286,8 +345,14 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         timeoutScheduler =
                 Executors.newSingleThreadScheduledExecutor(
                         new ThreadFactoryBuilder().setNameFormat(name + "-connect-timeout").build());
-        acceptGroup = new NioEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat(name + "-listen-%d").build()));
-        socketGroup = new NioEventLoopGroup(threads, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat(
+        effectiveTransport = transport.resolve();
+        LOGGER.debug("Using {} transport for {}", effectiveTransport, name);
+        if (zeroCopy && effectiveTransport != NettyTransport.NIO) {
+            LOGGER.warn("Zero-copy reads require the NIO transport, but {} uses {}; reads are copied to buffers.",
+                        name, effectiveTransport);
+        }
+        acceptGroup = effectiveTransport.newEventLoopGroup(0, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat(name + "-listen-%d").build()));
+        socketGroup = effectiveTransport.newEventLoopGroup(threads, new CDCThreadFactory(new ThreadFactoryBuilder().setNameFormat(
                 name + "-net-%d").build()));
     }
 
@@ -409,6 +474,15 @@ public abstract class NettyTransferService<P extends ProtocolInfo>
         };
     }
 
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.println(name + " transport   : " + effectiveTransport);
+        pw.println(name + " zero-copy   : " + (isZeroCopy() ? "enabled" : zeroCopy ? "disabled (requires NIO transport)" : "disabled"));
+        pw.println(name + " bytes sent  : " + zeroCopyBytes.sum() + " zero-copy, " +
+                   copiedBytes.sum() + " copied");
+    }
+
     public FileAttributes getFileAttributes(UUID uuid)
     {
         NettyMoverChannel channel = uuids.get(uuid);
@@ -0,0 +1,164 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2017 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.movers;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongConsumer;
+
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * FileRegion backed by a RepositoryChannel.
+ *
+ * Allows Netty to send part of a replica using
+ * {@link RepositoryChannel#transferTo}, i.e. without copying the data
+ * through buffers, provided the file system supports this and the NIO
+ * transport is used. Netty's epoll transport only uses sendfile for its
+ * own DefaultFileRegion and copies other regions through a buffer.
+ *
+ * As for ReusableChunkedNioFile, releasing the region does not close the
+ * channel; the channel belongs to the mover and may be used for further
+ * requests.
+ */
+public class RepositoryFileRegion extends AbstractReferenceCounted implements FileRegion
+{
+    private final RepositoryChannel channel;
+    private final long position;
+    private final long count;
+    private final LongConsumer onTransfer;
+    private long transferred;
+
+    /**
+     * @param channel the channel to read from
+     * @param position the offset of the region in the file
+     * @param count the length of the region
+     * @param onTransfer called with the number of bytes of each transfer
+     */
+    public RepositoryFileRegion(RepositoryChannel channel, long position, long count,
+                                LongConsumer onTransfer)
+    {
+        if (position < 0) {
+            throw new IllegalArgumentException("position: " + position + " (expected: 0 or greater)");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("count: " + count + " (expected: 0 or greater)");
+        }
+        this.channel = requireNonNull(channel);
+        this.position = position;
+        this.count = count;
+        this.onTransfer = requireNonNull(onTransfer);
+    }
+
+    public RepositoryChannel getChannel()
+    {
+        return channel;
+    }
+
+    @Override
+    public long position()
+    {
+        return position;
+    }
+
+    @Override
+    public long count()
+    {
+        return count;
+    }
+
+    @Deprecated
+    @Override
+    public long transfered()
+    {
+        return transferred;
+    }
+
+    @Override
+    public long transferred()
+    {
+        return transferred;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long position) throws IOException
+    {
+        long remaining = count - position;
+        if (remaining < 0 || position < 0) {
+            throw new IllegalArgumentException("position out of range: " + position +
+                                               " (expected: 0 - " + (count - 1) + ')');
+        }
+        if (remaining == 0) {
+            return 0L;
+        }
+        if (refCnt() == 0) {
+            throw new IllegalReferenceCountException(0);
+        }
+
+        long written = channel.transferTo(this.position + position, remaining, target);
+        if (written > 0) {
+            transferred += written;
+            onTransfer.accept(written);
+        } else if (this.position + position >= channel.size()) {
+            /* Netty retries a region until it is complete; fail rather
+             * than spinning on a replica shorter than the region.
+             */
+            throw new EOFException("Replica ends before offset " + (this.position + position));
+        }
+        return written;
+    }
+
+    @Override
+    protected void deallocate()
+    {
+        /* the channel is closed by the mover */
+    }
+
+    @Override
+    public FileRegion retain()
+    {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FileRegion retain(int increment)
+    {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FileRegion touch()
+    {
+        return this;
+    }
+
+    @Override
+    public FileRegion touch(Object hint)
+    {
+        return this;
+    }
+}
@@ -0,0 +1,280 @@
+package org.dcache.pool.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import diskCacheV111.util.CacheException;
+
+import org.dcache.vehicles.FileAttributes;
+
+/**
+ * Compact binary copies of replica records in off-heap memory.
+ *
+ * A record is encoded as a fixed size header holding the state, size,
+ * times and number of sticky flags, followed by the sticky flags and the
+ * serialized file attributes. The header fields can be read without
+ * decoding the rest of the record.
+ *
+ * Memory is allocated from direct buffers in chunks of one MiB, which are
+ * divided into slots of power-of-two sizes. A record occupies the smallest
+ * slot it fits into and freed slots are reused by records of the same size
+ * class. Records larger than the largest slot are not accepted.
+ *
+ * The class is thread safe, however callers must ensure that a record is
+ * not read while or after it is freed.
+ */
+class OffHeapReplicaRecords
+{
+    /**
+     * Address of no record.
+     */
+    static final long NONE = -1;
+
+    private static final int MIN_SLOT_SHIFT = 6;
+    private static final int MAX_SLOT_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final ReplicaState[] STATES = ReplicaState.values();
+
+    private static final int STATE = 0;
+    private static final int SIZE = 1;
+    private static final int CREATION_TIME = 9;
+    private static final int LAST_ACCESS_TIME = 17;
+    private static final int STICKY_COUNT = 25;
+    private static final int BODY_LENGTH = 29;
+    private static final int HEADER_LENGTH = 33;
+
+    private final long _capacity;
+    private final SizeClass[] _classes = new SizeClass[MAX_SLOT_SHIFT - MIN_SLOT_SHIFT + 1];
+
+    private long _allocated;
+    private int _records;
+
+    OffHeapReplicaRecords(long capacity)
+    {
+        _capacity = capacity;
+        for (int i = 0; i < _classes.length; i++) {
+            _classes[i] = new SizeClass(MIN_SLOT_SHIFT + i);
+        }
+    }
+
+    /**
+     * Stores a copy of {@code record}.
+     *
+     * @return the address of the copy, or NONE if there is no space for it
+     */
+    long put(ReplicaRecord record) throws CacheException
+    {
+        byte[] body = encodeBody(record);
+        long address = allocate(HEADER_LENGTH + body.length);
+        if (address != NONE) {
+            ByteBuffer buffer = buffer(address);
+            buffer.put((byte) record.getState().ordinal());
+            buffer.putLong(record.getReplicaSize());
+            buffer.putLong(record.getCreationTime());
+            buffer.putLong(record.getLastAccessTime());
+            buffer.putInt(record.stickyRecords().size());
+            buffer.putInt(body.length);
+            buffer.put(body);
+        }
+        return address;
+    }
+
+    ReplicaState getState(long address)
+    {
+        return STATES[buffer(address).get(STATE)];
+    }
+
+    long getReplicaSize(long address)
+    {
+        return buffer(address).getLong(SIZE);
+    }
+
+    long getCreationTime(long address)
+    {
+        return buffer(address).getLong(CREATION_TIME);
+    }
+
+    long getLastAccessTime(long address)
+    {
+        return buffer(address).getLong(LAST_ACCESS_TIME);
+    }
+
+    boolean isSticky(long address)
+    {
+        return buffer(address).getInt(STICKY_COUNT) > 0;
+    }
+
+    Collection<StickyRecord> stickyRecords(long address)
+    {
+        try (DataInputStream in = openBody(address)) {
+            return readStickyRecords(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted off-heap replica record: " + e, e);
+        }
+    }
+
+    FileAttributes getFileAttributes(long address)
+    {
+        try (DataInputStream in = openBody(address)) {
+            readStickyRecords(in);
+            return (FileAttributes) new ObjectInputStream(in).readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Corrupted off-heap replica record: " + e, e);
+        }
+    }
+
+    synchronized void free(long address)
+    {
+        _classes[(int) (address >>> 32)].free((int) address);
+        _records--;
+    }
+
+    synchronized int size()
+    {
+        return _records;
+    }
+
+    synchronized long getAllocated()
+    {
+        return _allocated;
+    }
+
+    long getCapacity()
+    {
+        return _capacity;
+    }
+
+    private static byte[] encodeBody(ReplicaRecord record) throws CacheException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Collection<StickyRecord> sticky = record.stickyRecords();
+            out.writeInt(sticky.size());
+            for (StickyRecord flag : sticky) {
+                out.writeUTF(flag.owner());
+                out.writeLong(flag.expire());
+            }
+            ObjectOutputStream object = new ObjectOutputStream(out);
+            object.writeObject(record.getFileAttributes());
+            object.flush();
+        } catch (IOException e) {
+            throw new CacheException("Failed to encode replica record: " + e, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<StickyRecord> readStickyRecords(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        List<StickyRecord> sticky = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sticky.add(new StickyRecord(in.readUTF(), in.readLong()));
+        }
+        return sticky;
+    }
+
+    private DataInputStream openBody(long address)
+    {
+        ByteBuffer buffer = buffer(address);
+        byte[] body = new byte[buffer.getInt(BODY_LENGTH)];
+        buffer.position(HEADER_LENGTH);
+        buffer.get(body);
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    private synchronized long allocate(int length)
+    {
+        int shift = Math.max(MIN_SLOT_SHIFT, 32 - Integer.numberOfLeadingZeros(length - 1));
+        if (shift > MAX_SLOT_SHIFT) {
+            return NONE;
+        }
+        int index = shift - MIN_SLOT_SHIFT;
+        int slot = _classes[index].allocate();
+        if (slot < 0) {
+            return NONE;
+        }
+        _records++;
+        return ((long) index << 32) | slot;
+    }
+
+    /**
+     * Returns a buffer covering the slot at {@code address}.
+     */
+    private ByteBuffer buffer(long address)
+    {
+        return _classes[(int) (address >>> 32)].buffer((int) address);
+    }
+
+    /**
+     * Slots of a single size.
+     */
+    private class SizeClass
+    {
+        private final int _shift;
+        private final int _slotsPerChunk;
+
+        /**
+         * Chunks of this class. Chunks are only ever added, thus the list
+         * is safe to read without synchronization once a slot has been
+         * handed out.
+         */
+        private volatile ByteBuffer[] _chunks = new ByteBuffer[0];
+
+        /* Guarded by the enclosing OffHeapReplicaRecords. */
+        private int[] _free = new int[16];
+        private int _freeCount;
+        private int _next;
+
+        SizeClass(int shift)
+        {
+            _shift = shift;
+            _slotsPerChunk = CHUNK_SIZE >> shift;
+        }
+
+        int allocate()
+        {
+            if (_freeCount > 0) {
+                return _free[--_freeCount];
+            }
+            if (_next == _chunks.length * _slotsPerChunk) {
+                if (_allocated + CHUNK_SIZE > _capacity) {
+                    return -1;
+                }
+                ByteBuffer[] chunks = new ByteBuffer[_chunks.length + 1];
+                System.arraycopy(_chunks, 0, chunks, 0, _chunks.length);
+                chunks[_chunks.length] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                _allocated += CHUNK_SIZE;
+                _chunks = chunks;
+            }
+            return _next++;
+        }
+
+        void free(int slot)
+        {
+            if (_freeCount == _free.length) {
+                int[] free = new int[_free.length * 2];
+                System.arraycopy(_free, 0, free, 0, _freeCount);
+                _free = free;
+            }
+            _free[_freeCount++] = slot;
+        }
+
+        ByteBuffer buffer(int slot)
+        {
+            ByteBuffer buffer = _chunks[slot / _slotsPerChunk].duplicate();
+            int offset = (slot % _slotsPerChunk) << _shift;
+            buffer.limit(offset + (1 << _shift)).position(offset);
+            return buffer.slice();
+        }
+    }
+}
@@ -3,13 +3,19 @@ package org.dcache.pool.repository;
 import javax.annotation.concurrent.GuardedBy;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.file.OpenOption;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.DiskErrorCacheException;
@@ -21,7 +27,10 @@ import org.dcache.pool.FaultListener;
 import org.dcache.pool.repository.v5.CacheEntryImpl;
 import org.dcache.vehicles.FileAttributes;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static org.dcache.pool.repository.OffHeapReplicaRecords.NONE;
+import static org.dcache.pool.repository.ReplicaState.CACHED;
 import static org.dcache.pool.repository.ReplicaState.DESTROYED;
 import static org.dcache.pool.repository.ReplicaState.NEW;
 
@@ -41,6 +50,13 @@ import static org.dcache.pool.repository.ReplicaState.NEW;
  * listener is called from the thread making the modification and with
  * the ReplicaRecord locked. Care must be taken in the listener to
  * not cause deadlocks or slow down the store.
+ *
+ * Optionally, the number of records kept on the heap may be limited. The
+ * cache then tracks the loaded records in a clock queue. {@link #evict}
+ * replaces records beyond the limit that have not been accessed recently,
+ * are not in use and are CACHED or PRECIOUS by compact copies in off-heap
+ * memory. Read operations are served from the copy. Any other operation
+ * reloads the record from the inner ReplicaStore.
  */
 public class ReplicaStoreCache
     implements ReplicaStore
@@ -53,6 +69,21 @@ public class ReplicaStoreCache
     private final StateChangeListener _stateChangeListener;
     private final FaultListener _faultListener;
 
+    /**
+     * Off-heap copies of evicted records, or null if records are never
+     * evicted.
+     */
+    private OffHeapReplicaRecords _offHeap;
+    private int _maxOnHeap;
+
+    /**
+     * Monitors that loaded their record, in the order in which the records
+     * were loaded. The queue may contain monitors whose records have since
+     * been destroyed.
+     */
+    private final Queue<Monitor> _onHeap = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _onHeapCount = new AtomicInteger();
+
     private volatile boolean _isClosed;
 
     /**
@@ -66,6 +97,20 @@ public class ReplicaStoreCache
         _entries = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Limits the number of records kept on the heap. Must be called before
+     * {@link #init}.
+     *
+     * @param maxOnHeap the number of records to keep on the heap
+     * @param offHeapCapacity bytes of off-heap memory for evicted records
+     */
+    public void setOffHeapTier(int maxOnHeap, long offHeapCapacity)
+    {
+        checkArgument(maxOnHeap > 0, "Number of records on heap must be positive.");
+        _maxOnHeap = maxOnHeap;
+        _offHeap = new OffHeapReplicaRecords(offHeapCapacity);
+    }
+
     /**
      * Encapsulates operations on meta data records, ensuring sequential
      * access to any particular record. The class delegates operations to
@@ -95,7 +140,30 @@ public class ReplicaStoreCache
     private class Monitor implements ReplicaRecord
     {
         private final PnfsId _id;
-        private ReplicaRecord _record;
+
+        /**
+         * The record, or null if it was not loaded yet or has been evicted.
+         */
+        private volatile ReplicaRecord _record;
+
+        /**
+         * Address of the off-heap copy of an evicted record, or NONE.
+         */
+        @GuardedBy("this")
+        private long _address = NONE;
+
+        /**
+         * Creation time of the record at the time it was evicted, or zero.
+         * Not all stores persist the creation time, so the original time
+         * is retained when the record is reloaded. Written before and read
+         * after accessing _record.
+         */
+        private long _creationTime;
+
+        /**
+         * Whether the record was used since the last eviction attempt.
+         */
+        private volatile boolean _referenced;
 
         private Monitor(PnfsId id)
         {
@@ -109,29 +177,127 @@ public class ReplicaStoreCache
                 return null;
             }
             assert _entries.get(_id) == this;
-            if (_record == null) {
-                _record = _inner.get(_id);
-                if (_record == null) {
+            if (_record == null && _address == NONE) {
+                ReplicaRecord record = _inner.get(_id);
+                if (record == null) {
                     _entries.remove(_id, this);
                     return null;
                 }
-                CacheEntry entry = new CacheEntryImpl(_record);
+                setRecord(record);
+                CacheEntry entry = new CacheEntryImpl(record);
                 _stateChangeListener.stateChanged(
-                        new StateChangeEvent(entry, entry, NEW, _record.getState()));
+                        new StateChangeEvent(entry, entry, NEW, record.getState()));
             }
             return this;
         }
 
+        @GuardedBy("this")
+        private void setRecord(ReplicaRecord record)
+        {
+            _record = record;
+            if (_offHeap != null) {
+                _onHeap.add(this);
+                _onHeapCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the record, reloading it from the inner store if it was
+         * evicted.
+         */
+        private ReplicaRecord load() throws CacheException
+        {
+            ReplicaRecord record = _record;
+            if (record == null) {
+                record = reload();
+            }
+            _referenced = true;
+            return record;
+        }
+
+        private ReplicaRecord loadUnchecked()
+        {
+            try {
+                return load();
+            } catch (CacheException e) {
+                throw new IllegalStateException("Failed to reload meta data of " + _id + ": " + e.getMessage(), e);
+            }
+        }
+
+        private synchronized ReplicaRecord reload() throws CacheException
+        {
+            if (_record == null) {
+                ReplicaRecord record = _inner.get(_id);
+                if (record == null) {
+                    throw new DiskErrorCacheException("Meta data of evicted replica " + _id + " is missing");
+                }
+                _offHeap.free(_address);
+                _address = NONE;
+                setRecord(record);
+            }
+            return _record;
+        }
+
+        /**
+         * Reads a property of the record. The property is read from the
+         * off-heap copy if the record was evicted.
+         */
+        private <T> T read(Function<ReplicaRecord, T> onHeap, LongFunction<T> offHeap)
+        {
+            ReplicaRecord record = _record;
+            if (record != null) {
+                return onHeap.apply(record);
+            }
+            synchronized (this) {
+                record = _record;
+                return (record != null) ? onHeap.apply(record) : offHeap.apply(_address);
+            }
+        }
+
+        /**
+         * Moves the record to off-heap memory unless it was used recently,
+         * is in use, or is in a transient state.
+         *
+         * @return false if the monitor should remain in the clock queue
+         */
+        private synchronized boolean evict()
+        {
+            ReplicaRecord record = _record;
+            if (_entries.get(_id) != this || record == null) {
+                return true;
+            }
+            if (_referenced) {
+                _referenced = false;
+                return false;
+            }
+            ReplicaState state = record.getState();
+            if (record.getLinkCount() > 0 || (state != CACHED && state != ReplicaState.PRECIOUS)) {
+                return false;
+            }
+            try {
+                long address = _offHeap.put(record);
+                if (address == NONE) {
+                    return false;
+                }
+                _address = address;
+                _creationTime = record.getCreationTime();
+                _record = null;
+                return true;
+            } catch (CacheException e) {
+                return false;
+            }
+        }
+
         private synchronized ReplicaRecord create(Set<? extends OpenOption> flags)
                 throws CacheException
         {
-            if (_entries.get(_id) != this || _record != null) {
+            if (_entries.get(_id) != this || _record != null || _address != NONE) {
                 throw new DuplicateEntryException(_id);
             }
             assert _entries.get(_id) == this;
             try {
                 checkState(!_isClosed);
-                _record = _inner.create(_id, flags);
+                setRecord(_inner.create(_id, flags));
             } catch (DuplicateEntryException e) {
                 throw e;
             } catch (RuntimeException | CacheException e) {
@@ -176,7 +342,7 @@ public class ReplicaStoreCache
         public long getReplicaSize()
         {
             try {
-                return _record.getReplicaSize();
+                return read(ReplicaRecord::getReplicaSize, a -> _offHeap.getReplicaSize(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -188,7 +354,16 @@ public class ReplicaStoreCache
         public FileAttributes getFileAttributes() throws CacheException
         {
             try {
-                return _record.getFileAttributes();
+                ReplicaRecord record = _record;
+                if (record == null) {
+                    synchronized (this) {
+                        record = _record;
+                        if (record == null) {
+                            return _offHeap.getFileAttributes(_address);
+                        }
+                    }
+                }
+                return record.getFileAttributes();
             } catch (RuntimeException | DiskErrorCacheException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -200,7 +375,7 @@ public class ReplicaStoreCache
         public ReplicaState getState()
         {
             try {
-                return _record.getState();
+                return read(ReplicaRecord::getState, a -> _offHeap.getState(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -212,7 +387,7 @@ public class ReplicaStoreCache
         public URI getReplicaUri()
         {
             try {
-                return _record.getReplicaUri();
+                return loadUnchecked().getReplicaUri();
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -223,14 +398,21 @@ public class ReplicaStoreCache
         @Override
         public RepositoryChannel openChannel(Set<? extends OpenOption> mode) throws IOException
         {
-            return _record.openChannel(mode);
+            try {
+                return load().openChannel(mode);
+            } catch (CacheException e) {
+                throw new IOException(e.getMessage(), e);
+            }
         }
 
         @Override
         public long getCreationTime()
         {
             try {
-                return _record.getCreationTime();
+                return read(record -> {
+                                long creationTime = _creationTime;
+                                return (creationTime != 0) ? creationTime : record.getCreationTime();
+                            }, a -> _offHeap.getCreationTime(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -242,7 +424,7 @@ public class ReplicaStoreCache
         public long getLastAccessTime()
         {
             try {
-                return _record.getLastAccessTime();
+                return read(ReplicaRecord::getLastAccessTime, a -> _offHeap.getLastAccessTime(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -254,7 +436,7 @@ public class ReplicaStoreCache
         public void setLastAccessTime(long time) throws CacheException
         {
             try {
-                _record.setLastAccessTime(time);
+                load().setLastAccessTime(time);
             } catch (IllegalArgumentException e) {
                 throw e;
             } catch (RuntimeException | DiskErrorCacheException e) {
@@ -267,7 +449,7 @@ public class ReplicaStoreCache
         @Override
         public synchronized int decrementLinkCount()
         {
-            int cnt = _record.decrementLinkCount();
+            int cnt = loadUnchecked().decrementLinkCount();
             if (cnt == 0 && _record.getState() == ReplicaState.REMOVED) {
                 destroy();
             }
@@ -278,7 +460,7 @@ public class ReplicaStoreCache
         public int incrementLinkCount()
         {
             try {
-                return _record.incrementLinkCount();
+                return loadUnchecked().incrementLinkCount();
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -290,7 +472,7 @@ public class ReplicaStoreCache
         public int getLinkCount()
         {
             try {
-                return _record.getLinkCount();
+                return read(ReplicaRecord::getLinkCount, a -> 0);
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -302,7 +484,7 @@ public class ReplicaStoreCache
         public boolean isSticky()
         {
             try {
-                return _record.isSticky();
+                return read(ReplicaRecord::isSticky, a -> _offHeap.isSticky(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -314,8 +496,9 @@ public class ReplicaStoreCache
         public synchronized Collection<StickyRecord> removeExpiredStickyFlags() throws CacheException
         {
             try {
-                CacheEntry oldEntry = new CacheEntryImpl(_record);
-                Collection<StickyRecord> removed = _record.removeExpiredStickyFlags();
+                ReplicaRecord record = load();
+                CacheEntry oldEntry = new CacheEntryImpl(record);
+                Collection<StickyRecord> removed = record.removeExpiredStickyFlags();
                 if (!removed.isEmpty()) {
                     CacheEntryImpl newEntry = new CacheEntryImpl(_record);
                     _stateChangeListener.stickyChanged(new StickyChangeEvent(oldEntry, newEntry));
@@ -332,7 +515,7 @@ public class ReplicaStoreCache
         public Collection<StickyRecord> stickyRecords()
         {
             try {
-                return _record.stickyRecords();
+                return read(ReplicaRecord::stickyRecords, a -> _offHeap.stickyRecords(a));
             } catch (RuntimeException e) {
                 _faultListener.faultOccurred(
                         new FaultEvent("repository", FaultAction.DEAD, "Internal repository error", e));
@@ -344,6 +527,7 @@ public class ReplicaStoreCache
         public synchronized <T> T update(Update<T> update) throws CacheException
         {
             try {
+                load();
                 T result = _record.update(
                         r -> update.apply(
                                 new UpdatableRecord()
@@ -477,6 +661,40 @@ public class ReplicaStoreCache
         _inner.close();
     }
 
+    /**
+     * Moves records to off-heap memory until at most the configured
+     * number of records remains on the heap, or until every record on
+     * the heap was considered twice. Does nothing unless an off-heap tier
+     * was configured.
+     */
+    public void evict()
+    {
+        if (_offHeap == null || _isClosed) {
+            return;
+        }
+        int attempts = 2 * _onHeapCount.get();
+        while (_onHeapCount.get() > _maxOnHeap && attempts-- > 0) {
+            Monitor monitor = _onHeap.poll();
+            if (monitor == null) {
+                break;
+            }
+            if (monitor.evict()) {
+                _onHeapCount.decrementAndGet();
+            } else {
+                _onHeap.add(monitor);
+            }
+        }
+    }
+
+    public void getInfo(PrintWriter pw)
+    {
+        if (_offHeap != null) {
+            pw.println("Replica records on heap    : " + _onHeapCount.get() + " (limit " + _maxOnHeap + ")");
+            pw.println("Replica records off heap   : " + _offHeap.size() + " in " +
+                       (_offHeap.getAllocated() >> 20) + " of " + (_offHeap.getCapacity() >> 20) + " MiB");
+        }
+    }
+
     @Override
     public long getFreeSpace()
     {
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -36,11 +37,13 @@ import java.nio.file.OpenOption;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.StorageInfo;
 
+import dmg.cells.nucleus.CellInfoProvider;
 import dmg.cells.nucleus.EnvironmentAware;
 
 import org.dcache.pool.repository.ReplicaStore;
@@ -58,12 +61,16 @@ import static org.dcache.util.Exceptions.messageOrClassName;
  * The cache repository entries generated by this store fetch storage
  * info from the database on demand.
  */
-public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, EnvironmentAware
+public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, EnvironmentAware, CellInfoProvider
 {
     protected static final Logger LOGGER =
         LoggerFactory.getLogger(AbstractBerkeleyDBReplicaStore.class);
     protected static final String DIRECTORY_NAME = "meta";
 
+    private static final String COMMIT_MODE = "pool.plugins.meta.db.commit.mode";
+    private static final String COMMIT_WINDOW = "pool.plugins.meta.db.commit.window";
+    private static final String COMMIT_WINDOW_UNIT = "pool.plugins.meta.db.commit.window.unit";
+
     protected final boolean readOnly;
 
     /**
@@ -71,6 +78,13 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
      */
     private final Properties properties = new Properties();
 
+    /**
+     * Durability of meta data updates.
+     */
+    private CommitMode commitMode = CommitMode.SYNC;
+    private long commitWindow;
+    private TimeUnit commitWindowUnit = TimeUnit.MILLISECONDS;
+
     /**
      * Directory containing the database.
      */
@@ -108,13 +122,21 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
         factory.buildMap();
         properties.clear();
         properties.putAll(factory.getObject());
+
+        Object mode = environment.get(COMMIT_MODE);
+        if (mode != null) {
+            commitMode = CommitMode.valueOf(mode.toString());
+            commitWindow = Long.parseLong(environment.get(COMMIT_WINDOW).toString());
+            commitWindowUnit = TimeUnit.valueOf(environment.get(COMMIT_WINDOW_UNIT).toString());
+        }
     }
 
     @Override
     public void init() throws CacheException
     {
         try {
-            database = new ReplicaStoreDatabase(properties, dir.toFile(), readOnly);
+            database = new ReplicaStoreDatabase(properties, dir.toFile(), readOnly,
+                                                commitMode, commitWindow, commitWindowUnit);
             views = new ReplicaStoreView(database);
         } catch (EnvironmentFailureException e) {
             throw new CacheException(CacheException.PANIC, "Failed to open Berkeley DB database. You should contact " +
@@ -168,6 +190,14 @@ public abstract class AbstractBerkeleyDBReplicaStore implements ReplicaStore, En
         }
     }
 
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        if (database != null) {
+            database.getInfo(pw);
+        }
+    }
+
     public boolean isValid()
     {
         return database.getEnvironment().isValid();
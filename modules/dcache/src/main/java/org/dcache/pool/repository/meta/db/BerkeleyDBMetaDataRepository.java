@@ -137,8 +137,7 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
             if (_fileStore.contains(id)) {
                 throw new DuplicateEntryException(id);
             }
-            views.getStorageInfoMap().remove(id.toString());
-            views.getStateMap().remove(id.toString());
+            removeMetaData(id);
             if (flags.contains(StandardOpenOption.CREATE)) {
                 _fileStore.create(id);
             }
@@ -158,9 +157,20 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
         } catch (IOException e) {
             throw new DiskErrorCacheException("Failed to delete " + id + ": " + messageOrClassName(e), e);
         }
+        removeMetaData(id);
+    }
+
+    /**
+     * Removes the meta data of a replica. The removal is a transaction of
+     * its own and is thus synced according to the commit mode.
+     */
+    private void removeMetaData(PnfsId id) throws CacheException
+    {
         try {
-            views.getStorageInfoMap().remove(id.toString());
-            views.getStateMap().remove(id.toString());
+            run(() -> {
+                views.getStorageInfoMap().remove(id.toString());
+                views.getStateMap().remove(id.toString());
+            });
         } catch (EnvironmentFailureException e) {
             if (!isValid()) {
                 throw new DiskErrorCacheException("Meta data update failed and a pool restart is required: " + e.getMessage(), e);
@@ -168,6 +178,8 @@ public class BerkeleyDBMetaDataRepository extends AbstractBerkeleyDBReplicaStore
             throw new CacheException("Meta data update failed: " + e.getMessage(), e);
         } catch (OperationFailureException e) {
             throw new CacheException("Meta data update failed: " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new CacheException("Meta data update failed: " + e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,26 @@
+package org.dcache.pool.repository.meta.db;
+
+/**
+ * Durability of meta data updates of the Berkeley DB replica store.
+ */
+public enum CommitMode
+{
+    /**
+     * Every transaction is synced to disk when it commits.
+     */
+    SYNC,
+
+    /**
+     * Transactions are committed without sync. Concurrent updates share a
+     * single sync of the log, and an update only completes once it has
+     * been synced.
+     */
+    GROUP,
+
+    /**
+     * Transactions are committed without sync, and the log is synced
+     * periodically in the background. Updates committed since the last
+     * sync are lost if the host crashes.
+     */
+    ASYNC
+}
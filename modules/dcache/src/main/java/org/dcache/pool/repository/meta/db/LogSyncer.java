@@ -0,0 +1,204 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sleepycat.je.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.util.LatencyHistogram;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Makes transactions committed without sync durable.
+ *
+ * In GROUP mode, every thread that committed a transaction waits in
+ * {@link #committed} for the log to be synced. The first thread of a batch
+ * becomes its leader: it waits for the commit window to let concurrent
+ * commits join the batch, then closes the batch and syncs the log once on
+ * behalf of all of them. An update is thus delayed by at most one window
+ * plus one sync, while a burst of updates causes a single sync.
+ *
+ * In ASYNC mode, the log is synced by a background thread once per window
+ * and threads committing transactions do not wait.
+ *
+ * In SYNC mode, transactions are synced by Berkeley DB itself and only the
+ * commit latency is recorded.
+ */
+class LogSyncer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogSyncer.class);
+
+    private final Environment _env;
+    private final CommitMode _mode;
+    private final long _window;
+    private final TimeUnit _unit;
+
+    private final LatencyHistogram _commitLatency = new LatencyHistogram();
+    private final LatencyHistogram _syncLatency = new LatencyHistogram();
+    private final LongAdder _batched = new LongAdder();
+    private final LongAccumulator _maxBatchSize = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Batch new commits join in GROUP mode.
+     */
+    private Batch _batch = new Batch();
+
+    /**
+     * Transactions committed since the last sync in ASYNC mode.
+     */
+    private final AtomicInteger _pending = new AtomicInteger();
+
+    private ScheduledExecutorService _executor;
+
+    LogSyncer(Environment env, CommitMode mode, long window, TimeUnit unit)
+    {
+        checkArgument(window >= 0, "Commit window must not be negative.");
+        checkArgument(window > 0 || mode != CommitMode.ASYNC, "Commit window must be positive in ASYNC mode.");
+        _env = env;
+        _mode = mode;
+        _window = window;
+        _unit = unit;
+    }
+
+    void start()
+    {
+        if (_mode == CommitMode.ASYNC) {
+            _executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("meta-sync-%d").setDaemon(true).build());
+            _executor.scheduleWithFixedDelay(this::syncPending, _window, _window, _unit);
+        }
+    }
+
+    /**
+     * Syncs any transactions committed without sync. Must be called before
+     * the environment is closed.
+     */
+    void stop()
+    {
+        if (_executor != null) {
+            MoreExecutors.shutdownAndAwaitTermination(_executor, 10, TimeUnit.SECONDS);
+            syncPending();
+        }
+    }
+
+    /**
+     * Called after a transaction committed.
+     *
+     * @param start value of {@link System#nanoTime} when the transaction began
+     */
+    void committed(long start)
+    {
+        switch (_mode) {
+        case GROUP:
+            awaitSync();
+            break;
+        case ASYNC:
+            _pending.incrementAndGet();
+            break;
+        }
+        _commitLatency.update(System.nanoTime() - start, NANOSECONDS);
+    }
+
+    private void awaitSync()
+    {
+        Batch batch;
+        boolean isLeader;
+        synchronized (this) {
+            batch = _batch;
+            isLeader = (batch.size++ == 0);
+        }
+
+        if (isLeader) {
+            Uninterruptibles.sleepUninterruptibly(_window, _unit);
+            int size;
+            synchronized (this) {
+                _batch = new Batch();
+                size = batch.size;
+            }
+            RuntimeException failure = null;
+            try {
+                sync(size);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                batch.failure = failure;
+                batch.done = true;
+                notifyAll();
+            }
+        } else {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!batch.done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+    }
+
+    private void syncPending()
+    {
+        int size = _pending.getAndSet(0);
+        if (size > 0) {
+            try {
+                sync(size);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to sync meta data: {}", e.toString());
+            }
+        }
+    }
+
+    private void sync(int batchSize)
+    {
+        long start = System.nanoTime();
+        _env.flushLog(true);
+        _syncLatency.update(System.nanoTime() - start, NANOSECONDS);
+        _batched.add(batchSize);
+        _maxBatchSize.accumulate(batchSize);
+    }
+
+    void getInfo(PrintWriter pw)
+    {
+        pw.println("Meta data commit mode : " + _mode +
+                   (_mode == CommitMode.SYNC ? "" : " (window " + _window + " " + _unit.toString().toLowerCase() + ")"));
+        pw.println("    Commit latency : " + _commitLatency);
+        if (_mode != CommitMode.SYNC) {
+            long syncs = _syncLatency.getCount();
+            pw.println("    Log sync       : " + _syncLatency);
+            pw.println(String.format("    Batch size     : mean=%.1f max=%d",
+                                     (syncs == 0) ? 0.0 : _batched.sum() / (double) syncs,
+                                     _maxBatchSize.get()));
+        }
+    }
+
+    private static class Batch
+    {
+        /* All fields are guarded by the enclosing LogSyncer. */
+        private int size;
+        private boolean done;
+        private RuntimeException failure;
+    }
+}
@@ -8,6 +8,7 @@ import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.DiskOrderedCursor;
 import com.sleepycat.je.DiskOrderedCursorConfig;
+import com.sleepycat.je.Durability;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.EnvironmentFailureException;
@@ -15,7 +16,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MetaDataRepositoryDatabase encapsulates the initialisation of
@@ -36,17 +39,25 @@ public class ReplicaStoreDatabase
     private final Database storageInfoDatabase;
     private final Database stateDatabase;
     private final TransactionRunner transactionRunner;
+    private final LogSyncer logSyncer;
 
     private boolean _failed;
     private boolean _closed;
 
-    public ReplicaStoreDatabase(Properties properties, File homeDirectory, boolean readonly)
+    public ReplicaStoreDatabase(Properties properties, File homeDirectory, boolean readonly,
+                                CommitMode commitMode, long commitWindow, TimeUnit commitWindowUnit)
         throws DatabaseException
     {
         EnvironmentConfig envConfig = new EnvironmentConfig(properties);
         envConfig.setTransactional(true);
         envConfig.setAllowCreate(true);
         envConfig.setReadOnly(readonly);
+        if (commitMode != CommitMode.SYNC) {
+            /* Applies to auto-commit operations too. The log is synced by
+             * the LogSyncer instead.
+             */
+            envConfig.setDurability(Durability.COMMIT_WRITE_NO_SYNC);
+        }
 
         env = new Environment(homeDirectory, envConfig);
 
@@ -71,6 +82,9 @@ public class ReplicaStoreDatabase
         stateDatabase = env.openDatabase(null, STATE_STORE, dbConfig);
 
         transactionRunner = new TransactionRunner(env);
+
+        logSyncer = new LogSyncer(env, readonly ? CommitMode.SYNC : commitMode, commitWindow, commitWindowUnit);
+        logSyncer.start();
     }
 
     private synchronized void setFailed()
@@ -87,6 +101,7 @@ public class ReplicaStoreDatabase
         throws DatabaseException
     {
         if (!_closed) {
+            logSyncer.stop();
             stateDatabase.close();
             storageInfoDatabase.close();
             javaCatalog.close();
@@ -100,9 +115,20 @@ public class ReplicaStoreDatabase
         return env;
     }
 
+    /**
+     * Runs {@code worker} in a transaction. Depending on the commit mode,
+     * waits for the transaction to be synced to disk.
+     */
     public void run(TransactionWorker worker) throws Exception
     {
+        long start = System.nanoTime();
         transactionRunner.run(worker);
+        logSyncer.committed(start);
+    }
+
+    public void getInfo(PrintWriter pw)
+    {
+        logSyncer.getInfo(pw);
     }
 
     public final StoredClassCatalog getClassCatalog()
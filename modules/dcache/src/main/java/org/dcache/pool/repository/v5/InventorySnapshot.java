@@ -0,0 +1,129 @@
+package org.dcache.pool.repository.v5;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import diskCacheV111.util.PnfsId;
+
+/**
+ * Inventory of the replicas of a pool written on clean shutdown.
+ *
+ * The snapshot records the size of every CACHED or PRECIOUS replica. It
+ * allows the repository to account for these replicas on startup
+ * without reading their meta data records.
+ *
+ * The file starts with a magic number and a format version, followed by
+ * the number of entries and the entries themselves. A CRC32 checksum of
+ * all preceding bytes concludes the file. The file is written to a
+ * temporary file that is atomically moved into place, so a crash during
+ * shutdown never leaves a partially written snapshot behind.
+ */
+class InventorySnapshot
+{
+    private static final int MAGIC = 0x64436976;
+    private static final int VERSION = 1;
+
+    /**
+     * Replica recorded in a snapshot.
+     */
+    static class Entry
+    {
+        private final long _size;
+        private final boolean _isPrecious;
+
+        Entry(long size, boolean isPrecious)
+        {
+            _size = size;
+            _isPrecious = isPrecious;
+        }
+
+        long getSize()
+        {
+            return _size;
+        }
+
+        boolean isPrecious()
+        {
+            return _isPrecious;
+        }
+    }
+
+    private InventorySnapshot()
+    {
+    }
+
+    static void write(File file, Map<PnfsId, Entry> entries) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(new FileOutputStream(tmp), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<PnfsId, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey().toString());
+                out.writeLong(e.getValue().getSize());
+                out.writeBoolean(e.getValue().isPrecious());
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @throws IOException if the snapshot cannot be read or is corrupted
+     */
+    static Map<PnfsId, Entry> read(File file) throws IOException
+    {
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length < Long.BYTES) {
+            throw new IOException("Truncated inventory snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Long.BYTES);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported inventory snapshot version " + version);
+            }
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Invalid number of entries");
+            }
+            Map<PnfsId, Entry> entries = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                PnfsId id;
+                try {
+                    id = new PnfsId(in.readUTF());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid PNFS ID: " + e.getMessage());
+                }
+                entries.put(id, new Entry(in.readLong(), in.readBoolean()));
+            }
+            if (in.available() != Long.BYTES || in.readLong() != crc.getValue()) {
+                throw new IOException("Checksum mismatch");
+            }
+            return entries;
+        } catch (EOFException e) {
+            throw new IOException("Truncated inventory snapshot", e);
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package org.dcache.pool.repository.v5;
 
+import com.google.common.base.Throwables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.GuardedBy;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.OpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -17,9 +22,15 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -73,6 +84,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static org.dcache.namespace.FileAttribute.PNFSID;
 import static org.dcache.namespace.FileAttribute.STORAGEINFO;
+import static org.dcache.pool.repository.ReplicaState.CACHED;
 import static org.dcache.pool.repository.ReplicaState.NEW;
 import static org.dcache.pool.repository.ReplicaState.PRECIOUS;
 import static org.dcache.pool.repository.ReplicaState.REMOVED;
@@ -113,6 +125,11 @@ public class ReplicaRepository
 
     public static final long DEFAULT_GAP = GiB.toBytes(4L);
 
+    /**
+     * Number of meta data records read by a single task during load.
+     */
+    private static final int LOAD_BATCH_SIZE = 1024;
+
     private final List<FaultListener> _faultListeners =
         new CopyOnWriteArrayList<>();
 
@@ -131,6 +148,13 @@ public class ReplicaRepository
     private final Set<PnfsId> _removable =
         Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    /**
+     * Replicas accounted for from the inventory snapshot, but whose meta
+     * data record has not been read yet.
+     */
+    private final Map<PnfsId,InventorySnapshot.Entry> _unverified =
+        new ConcurrentHashMap<>();
+
     /** Executor for periodic tasks. */
     @GuardedBy("_stateLock")
     private ScheduledExecutorService _executor;
@@ -139,7 +163,7 @@ public class ReplicaRepository
      * Meta data about files in the pool.
      */
     @GuardedBy("_stateLock")
-    private ReplicaStore _store;
+    private ReplicaStoreCache _store;
 
     @GuardedBy("_stateLock")
     private String _poolName;
@@ -211,6 +235,48 @@ public class ReplicaRepository
     @GuardedBy("_stateLock")
     private DiskSpace _gap = DiskSpace.UNSPECIFIED;
 
+    /**
+     * Number of threads used to read meta data records during load.
+     */
+    @GuardedBy("_stateLock")
+    private int _loadThreads = 1;
+
+    /**
+     * Number of meta data records kept on the heap, or zero to keep all
+     * records on the heap.
+     */
+    @GuardedBy("_stateLock")
+    private int _maxOnHeapRecords;
+
+    /**
+     * Bytes of off-heap memory for records evicted from the heap.
+     */
+    @GuardedBy("_stateLock")
+    private long _offHeapRecordMemory;
+
+    /**
+     * Periodic task evicting meta data records from the heap.
+     */
+    private ScheduledFuture<?> _evictionTask;
+
+    /**
+     * Inventory snapshot written on shutdown and read on load.
+     */
+    @GuardedBy("_stateLock")
+    private File _inventorySnapshotFile;
+
+    /**
+     * Whether the inventory snapshot is written on shutdown and used
+     * to open the repository before all meta data records are read.
+     */
+    @GuardedBy("_stateLock")
+    private boolean _trustInventorySnapshot;
+
+    /**
+     * Task reading the meta data records of replicas in {@code _unverified}.
+     */
+    private volatile Future<?> _verifier;
+
     /**
      * Throws an IllegalStateException if the repository has been
      * initialized.
@@ -374,8 +440,20 @@ public class ReplicaRepository
                             /* Usually space has to be allocated before writing the
                              * data to disk, however during pool startup we are notified
                              * about "new" files that already consume space, so we
-                             * adjust the allocation here.
+                             * adjust the allocation here. Replicas in the inventory
+                             * snapshot have already been accounted for with the size
+                             * recorded in the snapshot.
                              */
+                            InventorySnapshot.Entry unverified = _unverified.remove(event.getPnfsId());
+                            if (unverified != null) {
+                                if (unverified.isPrecious()) {
+                                    _account.adjustPrecious(-unverified.getSize());
+                                }
+                                size -= unverified.getSize();
+                                if (size < 0) {
+                                    _account.free(-size);
+                                }
+                            }
                             if (size > 0) {
                                 _account.growTotalAndUsed(size);
                             }
@@ -446,6 +524,83 @@ public class ReplicaRepository
         }
     }
 
+    /**
+     * Sets the number of threads used to read meta data records
+     * during load.
+     */
+    public void setLoadThreads(int threads)
+    {
+        checkArgument(threads > 0, "Number of load threads must be positive");
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _loadThreads = threads;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the number of meta data records kept on the heap. Records beyond
+     * this number are moved to compact copies in off-heap memory. Zero
+     * keeps all records on the heap.
+     */
+    public void setMaxOnHeapRecords(int records)
+    {
+        checkArgument(records >= 0, "Number of records on heap must not be negative");
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _maxOnHeapRecords = records;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the amount of off-heap memory for meta data records evicted
+     * from the heap.
+     */
+    public void setOffHeapRecordMemory(long bytes)
+    {
+        checkArgument(bytes >= 0, "Off-heap memory must not be negative");
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _offHeapRecordMemory = bytes;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    public void setInventorySnapshotFile(File file)
+    {
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _inventorySnapshotFile = file;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets whether the inventory snapshot written on shutdown is used
+     * on the next load. If enabled, the repository opens as soon as
+     * the replicas not in the snapshot have been read, and the meta data
+     * records of the remaining replicas are read in the background.
+     */
+    public void setTrustInventorySnapshot(boolean trust)
+    {
+        _stateLock.readLock().lock();
+        try {
+            checkUninitialized();
+            _trustInventorySnapshot = trust;
+        } finally {
+            _stateLock.readLock().unlock();
+        }
+    }
+
     public void setSpaceSweeperPolicy(SpaceSweeperPolicy sweeper)
     {
         _stateLock.readLock().lock();
@@ -522,28 +677,40 @@ public class ReplicaRepository
         }
         try {
             LOGGER.warn("Reading inventory from {}.", _store);
+            if (_maxOnHeapRecords > 0) {
+                _store.setOffHeapTier(_maxOnHeapRecords, _offHeapRecordMemory);
+                _evictionTask = _executor.scheduleWithFixedDelay(_store::evict, 1, 1, TimeUnit.SECONDS);
+            }
             _store.init();
 
             Collection<PnfsId> ids = _store.index();
+            Map<PnfsId,InventorySnapshot.Entry> snapshot = readInventorySnapshot(ids);
 
-            int fileCount = ids.size();
-            LOGGER.info("Checking meta data for {} files.", fileCount);
-            int cnt = 0;
-            for (PnfsId id: ids) {
-                ReplicaRecord entry = readReplicaRecord(id);
-                if (entry != null)  {
-                    ReplicaState state = entry.getState();
-                    LOGGER.debug("{} {}", id, state);
+            List<PnfsId> unknown = new ArrayList<>(ids.size() - snapshot.size());
+            for (PnfsId id : ids) {
+                if (!snapshot.containsKey(id)) {
+                    unknown.add(id);
                 }
-                _initializationProgress = ((float) cnt) / fileCount;
-                cnt++;
+            }
 
-                // Lazily check if repository was closed
-                if (_state != State.LOADING) {
-                    throw new IllegalStateException("Repository was closed during loading.");
+            if (!snapshot.isEmpty()) {
+                long used = 0;
+                long precious = 0;
+                for (InventorySnapshot.Entry entry : snapshot.values()) {
+                    used += entry.getSize();
+                    if (entry.isPrecious()) {
+                        precious += entry.getSize();
+                    }
                 }
+                _unverified.putAll(snapshot);
+                _account.growTotalAndUsed(used);
+                _account.adjustPrecious(precious);
+                LOGGER.info("Inventory snapshot accounts for {} files.", snapshot.size());
             }
 
+            LOGGER.info("Checking meta data for {} files.", unknown.size());
+            readReplicaRecords(unknown, State.LOADING);
+
             _stateLock.writeLock().lock();
             try {
                 updateAccountSize();
@@ -558,6 +725,196 @@ public class ReplicaRepository
         }
 
         LOGGER.info("Done generating inventory.");
+
+        if (!_unverified.isEmpty()) {
+            startVerifier();
+        }
+    }
+
+    /**
+     * Reads and deletes the inventory snapshot. The snapshot is only
+     * used if it is trusted, intact, and all replicas it lists are in
+     * the given index; otherwise an empty map is returned.
+     */
+    private Map<PnfsId,InventorySnapshot.Entry> readInventorySnapshot(Collection<PnfsId> ids)
+    {
+        File file = _inventorySnapshotFile;
+        if (file == null || !file.exists()) {
+            return Collections.emptyMap();
+        }
+        try {
+            if (!_trustInventorySnapshot) {
+                return Collections.emptyMap();
+            }
+            Map<PnfsId,InventorySnapshot.Entry> snapshot = InventorySnapshot.read(file);
+            if (!ids.containsAll(snapshot.keySet())) {
+                LOGGER.warn("Ignoring inventory snapshot {} as it does not match the meta data store.", file);
+                return Collections.emptyMap();
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring inventory snapshot {}: {}", file, e.toString());
+            return Collections.emptyMap();
+        } finally {
+            /* The snapshot is only valid until the content of the repository
+             * changes, so it must not survive an unclean shutdown.
+             */
+            if (!file.delete()) {
+                LOGGER.warn("Failed to delete inventory snapshot {}.", file);
+            }
+        }
+    }
+
+    /**
+     * Writes the inventory snapshot for all CACHED and PRECIOUS replicas.
+     */
+    @GuardedBy("_stateLock")
+    private void writeInventorySnapshot()
+    {
+        try {
+            Map<PnfsId,InventorySnapshot.Entry> snapshot = new HashMap<>();
+            for (PnfsId id : _store.index()) {
+                InventorySnapshot.Entry entry = _unverified.get(id);
+                if (entry == null) {
+                    ReplicaRecord record = _store.get(id);
+                    if (record != null) {
+                        ReplicaState state = record.getState();
+                        if (state == CACHED || state == PRECIOUS) {
+                            entry = new InventorySnapshot.Entry(record.getReplicaSize(), state == PRECIOUS);
+                        }
+                    }
+                }
+                if (entry != null) {
+                    snapshot.put(id, entry);
+                }
+            }
+            InventorySnapshot.write(_inventorySnapshotFile, snapshot);
+            LOGGER.info("Wrote inventory snapshot of {} files to {}.", snapshot.size(), _inventorySnapshotFile);
+        } catch (IOException | CacheException e) {
+            LOGGER.warn("Failed to write inventory snapshot {}: {}", _inventorySnapshotFile, e.toString());
+        }
+    }
+
+    /**
+     * Submits a task reading the meta data records of the replicas
+     * accounted for from the inventory snapshot.
+     */
+    private void startVerifier()
+    {
+        _verifier = _executor.submit(() -> {
+            LOGGER.info("Verifying {} files of the inventory snapshot.", _unverified.size());
+            try {
+                readReplicaRecords(new ArrayList<>(_unverified.keySet()), State.OPEN);
+                LOGGER.info("Done verifying inventory snapshot.");
+            } catch (InterruptedException | IllegalStateException e) {
+                LOGGER.info("Verification of inventory snapshot was interrupted.");
+            } catch (CacheException | RuntimeException e) {
+                LOGGER.error("Verification of inventory snapshot failed: {}", e.toString());
+            }
+        });
+    }
+
+    /**
+     * Undoes the space accounting of a replica from the inventory
+     * snapshot that turned out not to exist.
+     */
+    private void discardUnverified(PnfsId id)
+    {
+        InventorySnapshot.Entry entry = _unverified.remove(id);
+        if (entry != null) {
+            LOGGER.warn("{} of the inventory snapshot is no longer in the repository.", id);
+            if (entry.isPrecious()) {
+                _account.adjustPrecious(-entry.getSize());
+            }
+            _account.free(entry.getSize());
+        }
+    }
+
+    /**
+     * Reads the meta data records of the given replicas using the
+     * configured number of load threads.
+     *
+     * @param ids the replicas to read
+     * @param state the state the repository has to stay in while reading
+     * @throws IllegalStateException if the repository left {@code state}
+     */
+    private void readReplicaRecords(List<PnfsId> ids, State state)
+        throws CacheException, InterruptedException
+    {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(_loadThreads);
+        try {
+            pool.submit(new ReadRecordsTask(ids, 0, ids.size(), state, failure, new AtomicInteger())).get();
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        Throwable t = failure.get();
+        if (t != null) {
+            Throwables.propagateIfPossible(t, CacheException.class, InterruptedException.class);
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Reads a range of meta data records, splitting the range between
+     * tasks if it is larger than the batch size. The first failure is
+     * recorded and causes all tasks to stop.
+     */
+    private class ReadRecordsTask extends RecursiveAction
+    {
+        private final List<PnfsId> _ids;
+        private final int _from;
+        private final int _to;
+        private final State _expected;
+        private final AtomicReference<Throwable> _failure;
+        private final AtomicInteger _done;
+
+        ReadRecordsTask(List<PnfsId> ids, int from, int to, State expected,
+                        AtomicReference<Throwable> failure, AtomicInteger done)
+        {
+            _ids = ids;
+            _from = from;
+            _to = to;
+            _expected = expected;
+            _failure = failure;
+            _done = done;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (_to - _from > LOAD_BATCH_SIZE) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new ReadRecordsTask(_ids, _from, middle, _expected, _failure, _done),
+                          new ReadRecordsTask(_ids, middle, _to, _expected, _failure, _done));
+                return;
+            }
+            for (int i = _from; i < _to && _failure.get() == null; i++) {
+                // Lazily check if repository was closed
+                if (_state != _expected) {
+                    _failure.compareAndSet(null, new IllegalStateException("Repository was closed during loading."));
+                    return;
+                }
+                PnfsId id = _ids.get(i);
+                try {
+                    ReplicaRecord entry = readReplicaRecord(id);
+                    if (entry != null) {
+                        LOGGER.debug("{} {}", id, entry.getState());
+                    } else {
+                        discardUnverified(id);
+                    }
+                } catch (CacheException | InterruptedException | RuntimeException e) {
+                    _failure.compareAndSet(null, e);
+                    return;
+                }
+                int done = _done.incrementAndGet();
+                if (_expected == State.LOADING) {
+                    _initializationProgress = ((float) done) / _ids.size();
+                }
+            }
+        }
     }
 
     @Override
@@ -566,11 +923,7 @@ public class ReplicaRepository
         _stateLock.readLock().lock();
         try {
             checkOpen();
-            try {
-                return Collections.unmodifiableCollection(_store.index()).iterator();
-            } catch (CacheException e) {
-                throw new RuntimeException(e);
-            }
+            return Collections.unmodifiableCollection(_store.index()).iterator();
         } finally {
             _stateLock.readLock().unlock();
         }
@@ -895,6 +1248,11 @@ public class ReplicaRepository
     public void getInfo(PrintWriter pw)
     {
        getDataObject().print(pw);
+       int unverified = _unverified.size();
+       if (unverified > 0) {
+           pw.println("Files not yet verified against the inventory snapshot : " + unverified);
+       }
+       _store.getInfo(pw);
     }
 
     @Override
@@ -908,14 +1266,10 @@ public class ReplicaRepository
             if (_state == State.LOADING) {
                 info.setInitializationProgress((int) (_initializationProgress * 100));
             }
-            try {
-                if (_state == State.OPEN ||
-                                _state == State.LOADING ||
-                                _state == State.INITIALIZED) {
-                    info.setFiles(_store.index().size());
-                }
-            } catch (CacheException e) {
-                info.setFilesException(e.getMessage());
+            if (_state == State.OPEN ||
+                            _state == State.LOADING ||
+                            _state == State.INITIALIZED) {
+                info.setFiles(_store.index().size());
             }
 
             SpaceRecord space = getSpaceRecord();
@@ -955,7 +1309,18 @@ public class ReplicaRepository
         _stateLock.writeLock().lock();
         try {
             _stateChangeListeners.stop();
+            State state = _state;
             _state = State.CLOSED;
+            Future<?> verifier = _verifier;
+            if (verifier != null) {
+                verifier.cancel(true);
+            }
+            if (state == State.OPEN && _trustInventorySnapshot && _inventorySnapshotFile != null) {
+                writeInventorySnapshot();
+            }
+            if (_evictionTask != null) {
+                _evictionTask.cancel(false);
+            }
             _store.close();
         } finally {
             _stateLock.writeLock().unlock();
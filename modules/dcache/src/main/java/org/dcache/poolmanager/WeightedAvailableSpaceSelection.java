@@ -3,8 +3,8 @@ package org.dcache.poolmanager;
 import com.google.common.base.Function;
 
 import java.io.Serializable;
-import java.security.SecureRandom;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import diskCacheV111.pools.PoolCostInfo;
 
@@ -55,15 +55,21 @@ import static java.util.concurrent.TimeUnit.DAYS;
  * Note that setting both factors to zero causes pool selection to
  * become random. This it the same behaviour as with the classic
  * partition.
+ *
+ * Selection is performed for every write and thus is implemented to not
+ * allocate: the intermediate results are kept in primitive arrays that
+ * are reused by each thread, and randomness is drawn from a thread local
+ * generator.
  */
 public class WeightedAvailableSpaceSelection implements Serializable
 {
     private static final long serialVersionUID = 6196398425106858164L;
 
-    /* SecureRandom is a higher quality source for randomness than
-     * Random.
+    /**
+     * Scratch space of the thread calling selectByAvailableSpace. The arrays
+     * grow to the size of the largest pool list seen by the thread.
      */
-    protected static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
 
     static final double SECONDS_IN_WEEK = DAYS.toSeconds(7);
     static final double LOG2 = Math.log(2);
@@ -77,9 +83,14 @@ public class WeightedAvailableSpaceSelection implements Serializable
         this.spaceCostFactor = spaceCostFactor;
     }
 
+    /**
+     * Returns a uniformly distributed value in [0, 1). The selection does
+     * not need cryptographic quality randomness and a shared generator
+     * would serialize concurrent selections.
+     */
     protected double random()
     {
-        return RANDOM.nextDouble();
+        return ThreadLocalRandom.current().nextDouble();
     }
 
     /**
@@ -226,7 +237,14 @@ public class WeightedAvailableSpaceSelection implements Serializable
 
     protected double getWeightedAvailable(PoolCostInfo info, double available, double load)
     {
-        return (available == 0) ? 0 : (Math.pow(available, spaceCostFactor) / Math.pow(2.0, load));
+        if (available == 0) {
+            return 0;
+        }
+        /* Avoid Math.pow for the default space cost factor and for the
+         * least loaded pools.
+         */
+        double weighted = (spaceCostFactor == 1.0) ? available : Math.pow(available, spaceCostFactor);
+        return (load == 0) ? weighted : weighted / Math.pow(2.0, load);
     }
 
     private double getLoad(PoolCostInfo info)
@@ -243,9 +261,12 @@ public class WeightedAvailableSpaceSelection implements Serializable
                                         Function<P, PoolCostInfo> getCost)
     {
         int length = pools.size();
-        double[] available = new double[length];
+        Buffers buffers = BUFFERS.get();
+        buffers.ensureCapacity(length);
+        double[] available = buffers.available;
+        double[] load = buffers.load;
 
-        /* Calculate available space adjusted by space cost factor. Determine the smallest
+        /* Calculate available space and load of every pool. Determine the smallest
          * load of all pools able to hold the file.
          */
         double minLoad = Double.POSITIVE_INFINITY;
@@ -254,7 +275,11 @@ public class WeightedAvailableSpaceSelection implements Serializable
             double free = getAvailable(info.getSpaceInfo(), filesize);
             if (free > 0) {
                 available[i] = free;
-                minLoad = Math.min(minLoad, getLoad(info));
+                load[i] = getLoad(info);
+                minLoad = Math.min(minLoad, load[i]);
+            } else {
+                available[i] = 0;
+                load[i] = 0;
             }
         }
 
@@ -264,29 +289,54 @@ public class WeightedAvailableSpaceSelection implements Serializable
 
         /* Weight available space by normalized load. Load is normalized to ensure that at least
          * for one pool we maintain enough precision to not reduce available space to zero.
+         * The array is turned into the cumulative sum of the weights.
          */
         double sum = 0.0;
         for (int i = 0; i < length; i++) {
-            PoolCostInfo info = getCost.apply(pools.get(i));
-            double normalizedLoad = getLoad(info) - minLoad;
-            double weightedAvailable = getWeightedAvailable(info, available[i], normalizedLoad);
-            sum += weightedAvailable;
+            if (available[i] > 0) {
+                PoolCostInfo info = getCost.apply(pools.get(i));
+                sum += getWeightedAvailable(info, available[i], load[i] - minLoad);
+            }
             available[i] = sum;
         }
 
-        /* Randomly choose one of the pools.
+        if (sum == Double.POSITIVE_INFINITY) {
+            throw new IllegalStateException("WASS overflow: Configured space cost factor (" + spaceCostFactor + ") is too large.");
+        }
+
+        /* Randomly choose one of the pools, i.e. find the first pool whose
+         * cumulative weight exceeds the threshold.
          */
         double threshold = random() * sum;
-        for (int i = 0; i < length; i++) {
-            if (threshold < available[i]) {
-                return pools.get(i);
+        int low = 0;
+        int high = length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (threshold < available[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-
-        if (sum == Double.POSITIVE_INFINITY) {
-            throw new IllegalStateException("WASS overflow: Configured space cost factor (" + spaceCostFactor + ") is too large.");
+        if (threshold < available[low]) {
+            return pools.get(low);
         }
 
         throw new RuntimeException("Unreachable statement.");
     }
+
+    private static class Buffers
+    {
+        double[] available = new double[0];
+        double[] load = new double[0];
+
+        void ensureCapacity(int length)
+        {
+            if (available.length < length) {
+                int capacity = Math.max(length, 2 * available.length);
+                available = new double[capacity];
+                load = new double[capacity];
+            }
+        }
+    }
 }
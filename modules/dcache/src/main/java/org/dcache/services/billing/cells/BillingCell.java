@@ -11,12 +11,12 @@ import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.compiler.STException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
@@ -27,6 +27,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import diskCacheV111.cells.DateRenderer;
@@ -51,8 +52,6 @@ import org.dcache.services.billing.text.StringTemplateInfoMessageVisitor;
 import org.dcache.util.Args;
 import org.dcache.util.Slf4jSTErrorListener;
 
-import static java.nio.file.StandardOpenOption.*;
-
 /**
  * This class is responsible for the processing of messages from other
  * domains regarding transfers and pool usage.
@@ -85,6 +84,7 @@ public final class BillingCell
     private int _requests;
     private int _failed;
     private Path _currentDbFile;
+    private BillingFileWriter _writer;
 
     /*
      * Injected
@@ -93,6 +93,11 @@ public final class BillingCell
     private Path _logsDir;
     private boolean _enableText;
     private boolean _flatTextDir;
+    private int _textMaxQueueSize = 100_000;
+    private long _textFlushInterval = 100;
+    private TimeUnit _textFlushIntervalUnit = TimeUnit.MILLISECONDS;
+    private boolean _textSync;
+    private boolean _textDropMessagesAtLimit;
 
     public BillingCell()
     {
@@ -129,6 +134,12 @@ public final class BillingCell
     @Override
     public void getInfo(PrintWriter pw) {
         pw.format("%20s : %6d / %d\n", "Requests", _requests, _failed);
+        if (_writer != null) {
+            pw.format("%20s : %6d\n", "Queued records", _writer.getQueueSize());
+            pw.format("%20s : %6d\n", "Written records", _writer.getWritten());
+            pw.format("%20s : %6d\n", "Failed records", _writer.getFailed());
+            pw.format("%20s : %6d\n", "Dropped records", _writer.getDropped());
+        }
         for (Map.Entry<String,int[]> entry: _map.entrySet()) {
             int[] values = entry.getValue();
             pw.format("%20s : %6d / %d\n",
@@ -143,6 +154,18 @@ public final class BillingCell
             String ext = getFilenameExtension(new Date());
             appendHeaders(getBillingPath(ext));
             appendHeaders(getErrorPath(ext));
+            _writer = new BillingFileWriter(getFormatHeaders(), _textMaxQueueSize,
+                                            _textFlushInterval, _textFlushIntervalUnit,
+                                            _textSync, _textDropMessagesAtLimit);
+            _writer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException
+    {
+        if (_writer != null) {
+            _writer.stop();
         }
     }
 
@@ -180,9 +203,9 @@ public final class BillingCell
             String output = getFormattedMessage(info);
             if (!output.isEmpty()) {
                 String ext = getFilenameExtension(new Date(info.getTimestamp()));
-                log(getBillingPath(ext), output);
+                _writer.append(getBillingPath(ext), output);
                 if (info.getResultCode() != 0) {
-                    log(getErrorPath(ext), output);
+                    _writer.append(getErrorPath(ext), output);
                 }
             }
         }
@@ -326,35 +349,10 @@ public final class BillingCell
         } else {
             Date now = new Date();
             _currentDbFile = _logsDir.resolve(_directoryNameFormat.format(now));
-            try {
-                Files.createDirectories(_currentDbFile);
-            } catch (IOException e) {
-                _log.error("Failed to create directory {}: {}", _currentDbFile, e.toString());
-            }
             return _fileNameFormat.format(now);
         }
     }
 
-    private void log(Path path, String output)
-    {
-        byte[] outputBytes = (output + "\n").getBytes(UTF8);
-        try {
-            try {
-                Files.write(path, outputBytes, WRITE, APPEND);
-            } catch (NoSuchFileException f) {
-                String outputWithHeader = getFormatHeaders() + output + '\n';
-                try {
-                    Files.write(path, outputWithHeader.getBytes(UTF8), WRITE, CREATE_NEW);
-                } catch (FileAlreadyExistsException e) {
-                    // Lost the race, so try appending again
-                    Files.write(path, outputBytes, WRITE, APPEND);
-                }
-            }
-        } catch (IOException e) {
-            _log.warn("Can't write billing [{}] : {}", path, e.toString());
-        }
-    }
-
     private String getFormatHeaders()
     {
         return _formats.entrySet().stream()
@@ -456,4 +454,24 @@ public final class BillingCell
         _enableText = enableText;
     }
 
+    public void setTextMaxQueueSize(int maxQueueSize) {
+        _textMaxQueueSize = maxQueueSize;
+    }
+
+    public void setTextFlushInterval(long flushInterval) {
+        _textFlushInterval = flushInterval;
+    }
+
+    public void setTextFlushIntervalUnit(TimeUnit unit) {
+        _textFlushIntervalUnit = unit;
+    }
+
+    public void setTextSync(boolean sync) {
+        _textSync = sync;
+    }
+
+    public void setTextDropMessagesAtLimit(boolean dropMessagesAtLimit) {
+        _textDropMessagesAtLimit = dropMessagesAtLimit;
+    }
+
 }
@@ -0,0 +1,309 @@
+package org.dcache.services.billing.cells;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appends billing records to the plain text billing files.
+ *
+ * Records are placed in a bounded queue and written by a dedicated thread,
+ * so the cell's message thread never blocks on file I/O unless the queue is
+ * full. The writer collects records for up to the flush interval and
+ * appends them in as few writes as possible. The channels of recently used
+ * files are kept open; as file names change daily only a handful of files
+ * are ever written to concurrently.
+ *
+ * When a file is created, the format headers are written to it first.
+ *
+ * If records are dropped because the queue is full, this is logged once
+ * when the queue fills up and once when records are accepted again.
+ */
+public class BillingFileWriter
+{
+    private static final Logger _log = LoggerFactory.getLogger(BillingFileWriter.class);
+
+    /**
+     * Maximum number of files kept open. The billing and error files of the
+     * current day and of the previous day around midnight.
+     */
+    private static final int MAX_OPEN_FILES = 4;
+
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private final BlockingQueue<Record> _queue;
+    private final String _headers;
+    private final long _flushInterval;
+    private final boolean _sync;
+    private final boolean _dropMessagesAtLimit;
+
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+
+    /** Whether records are currently dropped because the queue is full. */
+    private final AtomicBoolean _isDropping = new AtomicBoolean();
+
+    /* Accessed by the writer thread only. */
+    private final Map<Path,FileChannel> _channels =
+            new LinkedHashMap<>(MAX_OPEN_FILES * 2, 0.75f, true);
+
+    private final Thread _thread = new Thread(this::run, "billing-writer");
+
+    private volatile boolean _isRunning = true;
+
+    private static class Record
+    {
+        final Path path;
+        final String line;
+
+        Record(Path path, String line)
+        {
+            this.path = path;
+            this.line = line;
+        }
+    }
+
+    /**
+     * @param headers written to every newly created file
+     * @param maxQueueSize maximum number of records waiting to be written
+     * @param flushInterval maximum time a record waits for others to be
+     *                      written in the same batch
+     * @param sync whether to force written records to disk after each batch
+     * @param dropMessagesAtLimit whether to drop records rather than block
+     *                            when the queue is full
+     */
+    public BillingFileWriter(String headers, int maxQueueSize, long flushInterval,
+                             TimeUnit unit, boolean sync, boolean dropMessagesAtLimit)
+    {
+        _headers = headers;
+        _queue = new ArrayBlockingQueue<>(maxQueueSize);
+        _flushInterval = unit.toNanos(flushInterval);
+        _sync = sync;
+        _dropMessagesAtLimit = dropMessagesAtLimit;
+    }
+
+    public void start()
+    {
+        _thread.start();
+    }
+
+    /**
+     * Writes all queued records and closes all files.
+     */
+    public void stop() throws InterruptedException
+    {
+        _isRunning = false;
+        _thread.join();
+    }
+
+    /**
+     * Queues a line to be appended to the file at path.
+     */
+    public void append(Path path, String line)
+    {
+        Record record = new Record(path, line);
+        if (_dropMessagesAtLimit) {
+            if (!_queue.offer(record)) {
+                _dropped.incrementAndGet();
+                if (_isDropping.compareAndSet(false, true)) {
+                    _log.warn("Billing queue is full; records are dropped until it drains");
+                }
+            } else if (_isDropping.get() && _isDropping.compareAndSet(true, false)) {
+                _log.warn("Billing queue accepts records again; {} records have been dropped in total",
+                          _dropped.get());
+            }
+        } else {
+            try {
+                _queue.put(record);
+            } catch (InterruptedException e) {
+                _dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getQueueSize()
+    {
+        return _queue.size();
+    }
+
+    public long getWritten()
+    {
+        return _written.get();
+    }
+
+    /**
+     * Returns the number of records that could not be written to their
+     * billing file.
+     */
+    public long getFailed()
+    {
+        return _failed.get();
+    }
+
+    public long getDropped()
+    {
+        return _dropped.get();
+    }
+
+    private void run()
+    {
+        List<Record> batch = new ArrayList<>();
+        try {
+            while (_isRunning || !_queue.isEmpty()) {
+                Record first = _queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            _log.warn("Billing writer interrupted; {} records have not been written",
+                      _queue.size() + batch.size());
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Adds queued records to batch until either the batch is full or the
+     * flush interval has passed since the first record of the batch was
+     * taken.
+     */
+    private void collect(List<Record> batch) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + _flushInterval;
+        while (batch.size() < MAX_BATCH_SIZE) {
+            if (_queue.drainTo(batch, MAX_BATCH_SIZE - batch.size()) == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !_isRunning) {
+                    break;
+                }
+                Record record = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (record == null) {
+                    break;
+                }
+                batch.add(record);
+            }
+        }
+    }
+
+    private void write(List<Record> batch)
+    {
+        Map<Path,StringBuilder> content = new LinkedHashMap<>();
+        Map<Path,Integer> counts = new HashMap<>();
+        for (Record record : batch) {
+            content.computeIfAbsent(record.path, p -> new StringBuilder())
+                    .append(record.line).append('\n');
+            counts.merge(record.path, 1, Integer::sum);
+        }
+
+        for (Map.Entry<Path,StringBuilder> entry : content.entrySet()) {
+            Path path = entry.getKey();
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(entry.getValue().toString());
+            try {
+                FileChannel channel = getChannel(path);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (_sync) {
+                    channel.force(false);
+                }
+                _written.addAndGet(counts.get(path));
+            } catch (IOException e) {
+                _log.warn("Can't write billing [{}] : {}", path, e.toString());
+                _failed.addAndGet(counts.get(path));
+                close(path);
+            }
+        }
+    }
+
+    private FileChannel getChannel(Path path) throws IOException
+    {
+        FileChannel channel = _channels.get(path);
+        if (channel == null) {
+            channel = open(path);
+            _channels.put(path, channel);
+            Iterator<Map.Entry<Path,FileChannel>> eldest = _channels.entrySet().iterator();
+            while (_channels.size() > MAX_OPEN_FILES) {
+                close(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+        return channel;
+    }
+
+    private FileChannel open(Path path) throws IOException
+    {
+        try {
+            return FileChannel.open(path, WRITE, APPEND);
+        } catch (NoSuchFileException e) {
+            Files.createDirectories(path.getParent());
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(path, WRITE, APPEND, CREATE_NEW);
+            } catch (FileAlreadyExistsException f) {
+                // Somebody else created the file, so try appending again
+                return FileChannel.open(path, WRITE, APPEND);
+            }
+            try {
+                ByteBuffer headers = StandardCharsets.UTF_8.encode(_headers);
+                while (headers.hasRemaining()) {
+                    channel.write(headers);
+                }
+            } catch (IOException f) {
+                close(channel);
+                throw f;
+            }
+            return channel;
+        }
+    }
+
+    private void close(Path path)
+    {
+        FileChannel channel = _channels.remove(path);
+        if (channel != null) {
+            close(channel);
+        }
+    }
+
+    private void close(FileChannel channel)
+    {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            _log.warn("Failed to close billing file: {}", e.toString());
+        }
+    }
+
+    private void closeAll()
+    {
+        _channels.values().forEach(this::close);
+        _channels.clear();
+    }
+}
@@ -0,0 +1,99 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2017 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.util;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Socket transport used by Netty based servers.
+ *
+ * The native epoll transport avoids the overhead of the JDK selector and
+ * uses edge-triggered I/O, but is only available on Linux. If epoll is
+ * requested but not available, NIO is used instead.
+ */
+public enum NettyTransport
+{
+    /** Uses epoll if available and NIO otherwise. */
+    AUTO,
+
+    /** The portable transport based on the JDK selector. */
+    NIO,
+
+    /** The native Linux epoll transport. */
+    EPOLL;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NettyTransport.class);
+
+    /**
+     * Returns the transport to use on this host, which is either NIO or EPOLL.
+     */
+    public NettyTransport resolve()
+    {
+        switch (this) {
+        case AUTO:
+            return Epoll.isAvailable() ? EPOLL : NIO;
+        case EPOLL:
+            if (!Epoll.isAvailable()) {
+                LOGGER.warn("Native epoll transport is not available, using NIO instead: {}",
+                            Epoll.unavailabilityCause().toString());
+                return NIO;
+            }
+            return EPOLL;
+        default:
+            return this;
+        }
+    }
+
+    /**
+     * Creates an event loop group for this transport.
+     *
+     * @param threads the number of threads, or zero for the Netty default
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory)
+    {
+        switch (resolve()) {
+        case EPOLL:
+            return new EpollEventLoopGroup(threads, threadFactory);
+        default:
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    /**
+     * Returns the server channel class for this transport.
+     */
+    public Class<? extends ServerChannel> getServerChannelClass()
+    {
+        switch (resolve()) {
+        case EPOLL:
+            return EpollServerSocketChannel.class;
+        default:
+            return NioServerSocketChannel.class;
+        }
+    }
+}
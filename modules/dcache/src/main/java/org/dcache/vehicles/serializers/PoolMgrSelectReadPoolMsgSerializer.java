@@ -0,0 +1,98 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.EnumSet;
+
+import diskCacheV111.poolManager.RequestContainerV5.RequestState;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+import diskCacheV111.vehicles.ProtocolInfo;
+
+import dmg.cells.nucleus.MessageSerializer;
+
+import org.dcache.vehicles.FileAttributes;
+
+import static org.dcache.vehicles.serializers.MessageFields.*;
+
+public class PoolMgrSelectReadPoolMsgSerializer implements MessageSerializer<PoolMgrSelectReadPoolMsg>
+{
+    @Override
+    public String getName()
+    {
+        return "PoolMgrSelectReadPoolMsg-1";
+    }
+
+    @Override
+    public Class<PoolMgrSelectReadPoolMsg> getType()
+    {
+        return PoolMgrSelectReadPoolMsg.class;
+    }
+
+    @Override
+    public void writeTo(PoolMgrSelectReadPoolMsg message, ObjectOutput out) throws IOException
+    {
+        writeFileAttributes(out, message.getFileAttributes());
+        out.writeObject(message.getProtocolInfo());
+        writeEnumSet(out, message.getAllowedStates());
+        PoolMgrSelectReadPoolMsg.Context context = message.getContext();
+        out.writeBoolean(context != null);
+        if (context != null) {
+            out.writeInt(context.getRetryCounter());
+            writeString(out, context.getPreviousStageHost());
+            writeString(out, context.getPreviousStagePool());
+        }
+        writeString(out, message.getPoolGroup());
+        writeString(out, message.getIoQueueName());
+        writeString(out, message.getBillingPath());
+        writeString(out, message.getTransferPath());
+        writeString(out, message.getLinkGroup());
+        writeAssumption(out, message.getAssumption());
+        writeString(out, message.getPoolName());
+        writeCellAddress(out, message.getPoolAddress());
+        writeMessage(out, message);
+    }
+
+    @Override
+    public PoolMgrSelectReadPoolMsg readFrom(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        FileAttributes fileAttributes = readFileAttributes(in);
+        ProtocolInfo protocolInfo = (ProtocolInfo) in.readObject();
+        EnumSet<RequestState> allowedStates = readEnumSet(in, RequestState.class);
+        PoolMgrSelectReadPoolMsg message =
+                new PoolMgrSelectReadPoolMsg(fileAttributes, protocolInfo, null, allowedStates);
+        if (in.readBoolean()) {
+            message.setContext(in.readInt(), readString(in), readString(in));
+        } else {
+            message.setContext(null);
+        }
+        message.setPoolGroup(readString(in));
+        message.setIoQueueName(readString(in));
+        message.setBillingPath(readString(in));
+        message.setTransferPath(readString(in));
+        message.setLinkGroup(readString(in));
+        message.setAssumption(readAssumption(in));
+        message.setPoolName(readString(in));
+        message.setPoolAddress(readCellAddress(in));
+        readMessage(in, message);
+        return message;
+    }
+}
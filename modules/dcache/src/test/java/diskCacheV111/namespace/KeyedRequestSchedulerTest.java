@@ -0,0 +1,140 @@
+package diskCacheV111.namespace;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedRequestSchedulerTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private KeyedRequestScheduler<String> scheduler;
+
+    @After
+    public void tearDown() throws Exception
+    {
+        scheduler.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    private void start()
+    {
+        for (int i = 0; i < scheduler.getShardCount(); i++) {
+            executor.execute(scheduler.getWorker(i));
+        }
+    }
+
+    @Test
+    public void shouldProcessRequestsWithSameKeyInOrder() throws Exception
+    {
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(300);
+        scheduler = new KeyedRequestScheduler<>(4, 0, (request, queued) -> {
+            processed.add(request);
+            done.countDown();
+        });
+        start();
+
+        for (int i = 0; i < 100; i++) {
+            for (int key = 0; key < 3; key++) {
+                scheduler.offer(key, key + ":" + i);
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int key = 0; key < 3; key++) {
+            String prefix = key + ":";
+            List<String> forKey = new ArrayList<>();
+            for (String request : processed) {
+                if (request.startsWith(prefix)) {
+                    forKey.add(request);
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                assertThat(forKey.get(i), is(prefix + i));
+            }
+        }
+    }
+
+    @Test
+    public void shouldStealFromBlockedShard() throws Exception
+    {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch stolen = new CountDownLatch(1);
+        scheduler = new KeyedRequestScheduler<>(2, 0, (request, queued) -> {
+            if (request.equals("slow")) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                stolen.countDown();
+            }
+        });
+        start();
+
+        /* Keys 0 and 2 both belong to shard 0. */
+        scheduler.offer(0, "slow");
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        scheduler.offer(2, "fast");
+
+        try {
+            assertTrue(stolen.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldRejectRequestsBeyondQueueLimit() throws Exception
+    {
+        scheduler = new KeyedRequestScheduler<>(1, 2, (request, queued) -> {});
+
+        assertTrue(scheduler.offer(0, "a"));
+        assertTrue(scheduler.offer(0, "b"));
+        assertThat(scheduler.offer(0, "c"), is(false));
+        assertThat(scheduler.getQueued(0), contains("a", "b"));
+        assertThat(scheduler.drain(), contains("a", "b"));
+        assertThat(scheduler.getQueueSize(), is(0));
+    }
+
+    @Test
+    public void shouldAllowRemovingQueuedRequests() throws Exception
+    {
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        scheduler = new KeyedRequestScheduler<>(1, 0, (request, queued) -> {
+            processed.add(request);
+            Iterator<String> i = queued.iterator();
+            while (i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+            done.countDown();
+        });
+
+        scheduler.offer(0, "a");
+        scheduler.offer(0, "b");
+        scheduler.offer(0, "c");
+        start();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertThat(processed, contains("a"));
+        assertThat(scheduler.getQueueSize(), is(0));
+    }
+}
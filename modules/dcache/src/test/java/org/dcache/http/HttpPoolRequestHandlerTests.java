@@ -57,6 +57,7 @@ import diskCacheV111.vehicles.HttpProtocolInfo;
 
 import org.dcache.pool.movers.ChecksumChannel;
 import org.dcache.pool.movers.NettyTransferService;
+import org.dcache.pool.movers.RepositoryFileRegion;
 import org.dcache.pool.repository.FileRepositoryChannel;
 import org.dcache.pool.repository.FileStore;
 import org.dcache.pool.repository.RepositoryChannel;
@@ -278,6 +279,26 @@ public class HttpPoolRequestHandlerTests
     }
 
 
+    @Test
+    public void shouldDeliverCompleteFileAsFileRegionIfZeroCopyIsEnabled()
+            throws Exception
+    {
+        given(_server.isZeroCopy()).willReturn(true);
+        givenPoolHas(file("/path/to/file").withSize(100));
+        givenDoorHasOrganisedReadOf(file("/path/to/file").with(SOME_UUID));
+
+        whenClientMakes(a(GET).
+                forUri("/path/to/file?dcache-http-uuid="+SOME_UUID));
+
+        assertThat(_response.getStatus(), is(OK));
+        assertThat(_response, hasHeader(CONTENT_LENGTH, "100"));
+
+        assertThat(_additionalWrites, hasSize(2));
+        assertThat(_additionalWrites.get(0), instanceOf(RepositoryFileRegion.class));
+        assertThat(_additionalWrites.get(0), isCompleteRead("/path/to/file"));
+        assertThat(_additionalWrites.get(1), instanceOf(LastHttpContent.class));
+    }
+
     @Test
     public void shouldDeliverPartialFileIfReceivesRequestWithSingleRange()
             throws Exception
@@ -883,6 +904,16 @@ public class HttpPoolRequestHandlerTests
         @Override
         public boolean matches(Object o)
         {
+            if (o instanceof RepositoryFileRegion) {
+                RepositoryFileRegion region = (RepositoryFileRegion) o;
+
+                NettyTransferService<HttpProtocolInfo>.NettyMoverChannel channel =
+                        (NettyTransferService<HttpProtocolInfo>.NettyMoverChannel) region.getChannel();
+
+                return _path.equals(channel.getProtocolInfo().getPath()) &&
+                       region.position() == _lower && region.count() == _upper - _lower + 1;
+            }
+
             if(!(o instanceof ReusableChunkedNioFile)) {
                 return false;
             }
@@ -0,0 +1,124 @@
+package org.dcache.pool.classic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import diskCacheV111.util.PnfsId;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LruIndexTest
+{
+    private LruIndex index;
+
+    @Before
+    public void setUp()
+    {
+        index = new LruIndex();
+    }
+
+    private static PnfsId id(int i)
+    {
+        return new PnfsId(String.format("0000%020X", i));
+    }
+
+    @Test
+    public void shouldBeEmptyInitially()
+    {
+        assertThat(index.size(), is(0));
+        assertThat(index.getTimeOfEldest(), is(0L));
+        assertThat(index.getEldest(Long.MAX_VALUE), is(empty()));
+    }
+
+    @Test
+    public void shouldNotAddEntryTwice()
+    {
+        assertThat(index.add(id(1), 100, 10), is(true));
+        assertThat(index.add(id(1), 50, 10), is(false));
+
+        assertThat(index.size(), is(1));
+        assertThat(index.getTimeOfEldest(), is(100L));
+    }
+
+    @Test
+    public void shouldRemoveEntries()
+    {
+        for (int i = 0; i < 10000; i++) {
+            index.add(id(i), i, 1);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            assertThat(index.remove(id(i)), is(true));
+        }
+
+        assertThat(index.remove(id(0)), is(false));
+        assertThat(index.size(), is(5000));
+        assertThat(index.getTimeOfEldest(), is(1L));
+        for (int i = 1; i < 10000; i += 2) {
+            assertThat(index.touch(id(i), i), is(true));
+        }
+    }
+
+    @Test
+    public void shouldOnlyTouchExistingEntries()
+    {
+        index.add(id(1), 100, 10);
+
+        assertThat(index.touch(id(1), 200), is(true));
+        assertThat(index.touch(id(2), 200), is(false));
+        assertThat(index.getTimeOfEldest(), is(200L));
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void shouldReturnAllEntriesEldestFirst()
+    {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        for (int i : order) {
+            index.add(id(i), 1000 + i, 1);
+        }
+        index.touch(id(0), 5000);
+
+        List<PnfsId> eldest = index.getEldest(Long.MAX_VALUE);
+
+        assertThat(eldest, hasSize(1000));
+        assertThat(eldest.get(0), is(id(1)));
+        assertThat(eldest.get(998), is(id(999)));
+        assertThat(eldest.get(999), is(id(0)));
+    }
+
+    @Test
+    public void shouldSelectEldestEntriesCoveringRequestedBytes()
+    {
+        index.add(id(1), 300, 10);
+        index.add(id(2), 100, 10);
+        index.add(id(3), 400, 10);
+        index.add(id(4), 200, 10);
+
+        assertThat(index.getEldest(15), contains(id(2), id(4)));
+        assertThat(index.getEldest(20), contains(id(2), id(4)));
+        assertThat(index.getEldest(21), contains(id(2), id(4), id(1)));
+        assertThat(index.getEldest(0), is(empty()));
+    }
+
+    @Test
+    public void shouldReturnAccessTimes()
+    {
+        index.add(id(1), 300, 10);
+        index.add(id(2), 100, 10);
+
+        long[] times = index.getTimes();
+
+        assertThat(times.length, is(2));
+        assertThat(times[0] + times[1], is(400L));
+    }
+}
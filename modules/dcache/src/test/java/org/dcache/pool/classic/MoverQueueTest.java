@@ -0,0 +1,132 @@
+package org.dcache.pool.classic;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.util.IoPrioritizable;
+import org.dcache.util.IoPriority;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MoverQueueTest
+{
+    private static class Request implements IoPrioritizable
+    {
+        private final IoPriority priority;
+        private final long createTime;
+
+        Request(IoPriority priority, long createTime)
+        {
+            this.priority = priority;
+            this.createTime = createTime;
+        }
+
+        @Override
+        public IoPriority getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public long getCreateTime()
+        {
+            return createTime;
+        }
+    }
+
+    private final Request low = new Request(IoPriority.LOW, 1);
+    private final Request first = new Request(IoPriority.REGULAR, 2);
+    private final Request second = new Request(IoPriority.REGULAR, 3);
+    private final Request high = new Request(IoPriority.HIGH, 4);
+
+    private MoverQueue<Request> queueOf(Order order)
+    {
+        MoverQueue<Request> queue = new MoverQueue<>(order);
+        queue.add(low);
+        queue.add(first);
+        queue.add(second);
+        queue.add(high);
+        return queue;
+    }
+
+    @Test
+    public void shouldPollInFifoOrderByPriority()
+    {
+        MoverQueue<Request> queue = queueOf(Order.FIFO);
+
+        assertThat(queue.drain(), contains(high, first, second, low));
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldPollInLifoOrderByPriority()
+    {
+        MoverQueue<Request> queue = queueOf(Order.LIFO);
+
+        assertThat(queue.drain(), contains(high, second, first, low));
+    }
+
+    @Test
+    public void shouldReorderQueuedRequestsWhenOrderChanges()
+    {
+        MoverQueue<Request> queue = queueOf(Order.LIFO);
+
+        queue.setOrder(Order.FIFO);
+
+        assertThat(queue.getOrder(), is(Order.FIFO));
+        assertThat(queue.drain(), contains(high, first, second, low));
+    }
+
+    @Test
+    public void shouldCountRequestsByPriority()
+    {
+        MoverQueue<Request> queue = queueOf(Order.FIFO);
+
+        assertThat(queue.remove(first), is(true));
+        assertThat(queue.remove(first), is(false));
+
+        assertThat(queue.size(), is(3));
+        assertThat(queue.size(IoPriority.REGULAR), is(1));
+        assertThat(queue.size(IoPriority.HIGH), is(1));
+        assertThat(queue.isEmpty(), is(false));
+    }
+
+    @Test
+    public void shouldRemoveRequestsWhileReordering() throws Exception
+    {
+        CountDownLatch sorting = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        Request blocking = new Request(IoPriority.REGULAR, 0)
+        {
+            @Override
+            public long getCreateTime()
+            {
+                sorting.countDown();
+                Uninterruptibles.awaitUninterruptibly(released);
+                return super.getCreateTime();
+            }
+        };
+        MoverQueue<Request> queue = queueOf(Order.LIFO);
+        queue.add(blocking);
+
+        Thread reorder = new Thread(() -> queue.setOrder(Order.FIFO));
+        reorder.start();
+        assertThat(sorting.await(5, TimeUnit.SECONDS), is(true));
+
+        CompletableFuture<Boolean> removed = CompletableFuture.supplyAsync(() -> queue.remove(first));
+        Thread.sleep(100);
+        assertThat(removed.isDone(), is(false));
+
+        released.countDown();
+        reorder.join(5000);
+
+        assertThat(removed.get(5, TimeUnit.SECONDS), is(true));
+        assertThat(queue.drain(), contains(high, blocking, second, low));
+    }
+}
@@ -0,0 +1,170 @@
+package org.dcache.pool.classic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcache.pool.classic.MoverRequestScheduler.Order;
+import org.dcache.pool.classic.MoverRequestScheduler.PrioritizedRequest;
+import org.dcache.pool.movers.Mover;
+import org.dcache.util.IoPriority;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MoverRequestSchedulerTest
+{
+    private final BlockingQueue<CompletionHandler<Void, Void>> running = new LinkedBlockingQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private MoverRequestScheduler scheduler;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        scheduler = new MoverRequestScheduler("test", 1, Order.FIFO);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mover<?> createMover()
+    {
+        Mover<?> mover = mock(Mover.class);
+        when(mover.execute(any())).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            running.add(invocation.getArgumentAt(0, CompletionHandler.class));
+            return (Cancellable) explanation -> {};
+        });
+        doAnswer(invocation -> {
+            completed.incrementAndGet();
+            invocation.getArgumentAt(0, CompletionHandler.class).completed(null, null);
+            return null;
+        }).when(mover).close(any());
+        return mover;
+    }
+
+    private void completeRunningMover() throws InterruptedException
+    {
+        CompletionHandler<Void, Void> handler = running.poll(10, TimeUnit.SECONDS);
+        assertThat("No mover was started", handler, is(notNullValue()));
+        active.decrementAndGet();
+        handler.completed(null, null);
+    }
+
+    @Test
+    public void shouldQueueMoversBeyondMaxActive() throws Exception
+    {
+        scheduler.setMaxActiveJobs(1);
+
+        scheduler.getOrCreateMover(this::createMover, "a", IoPriority.REGULAR);
+        scheduler.getOrCreateMover(this::createMover, "b", IoPriority.REGULAR);
+
+        assertThat(scheduler.getActiveJobs(), is(1));
+        assertThat(scheduler.getQueueSize(), is(1));
+        assertThat(scheduler.getCountByPriority(IoPriority.REGULAR), is(1));
+
+        completeRunningMover();
+
+        assertThat(scheduler.getActiveJobs(), is(1));
+        assertThat(scheduler.getQueueSize(), is(0));
+        assertThat(scheduler.getQueueWait().getCount(), is(2L));
+    }
+
+    @Test
+    public void shouldStartQueuedMoversWhenMaxActiveIsIncreased() throws Exception
+    {
+        scheduler.setMaxActiveJobs(0);
+        scheduler.getOrCreateMover(this::createMover, "a", IoPriority.REGULAR);
+        scheduler.getOrCreateMover(this::createMover, "b", IoPriority.REGULAR);
+
+        scheduler.setMaxActiveJobs(2);
+
+        assertThat(scheduler.getActiveJobs(), is(2));
+        assertThat(scheduler.getQueueSize(), is(0));
+    }
+
+    @Test
+    public void shouldRunAllMoversOfConcurrentSubmissions() throws Exception
+    {
+        int movers = 2000;
+        scheduler.setMaxActiveJobs(4);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < movers; i++) {
+            String id = Integer.toString(i);
+            IoPriority priority = (i % 3 == 0) ? IoPriority.HIGH : IoPriority.REGULAR;
+            futures.add(executor.submit(() -> scheduler.getOrCreateMover(this::createMover, id, priority)));
+        }
+        for (int i = 0; i < movers; i++) {
+            futures.add(executor.submit(() -> {
+                completeRunningMover();
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        assertThat(completed.get(), is(movers));
+        assertThat(maxActive.get(), is(lessThanOrEqualTo(4)));
+        assertThat(scheduler.getQueueSize(), is(0));
+        assertThat(scheduler.getActiveJobs(), is(0));
+        assertThat(scheduler.getQueueWait().getCount(), is((long) movers));
+    }
+
+    @Test
+    public void shouldNotStartCancelledQueuedMovers() throws Exception
+    {
+        scheduler.setMaxActiveJobs(0);
+        int id = scheduler.getOrCreateMover(this::createMover, "a", IoPriority.REGULAR);
+
+        assertThat(scheduler.cancel(id, "test"), is(true));
+        scheduler.setMaxActiveJobs(1);
+
+        assertThat(completed.get(), is(1));
+        assertThat(scheduler.getQueueSize(), is(0));
+        assertThat(running, is(empty()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotExecuteMoverOfCancelledRequest() throws Exception
+    {
+        Mover<?> mover = createMover();
+        PrioritizedRequest request = new PrioritizedRequest(1, "a", mover, IoPriority.REGULAR);
+        request.queue();
+        request.kill("test");
+
+        CompletionHandler<Void, Void> handler = mock(CompletionHandler.class);
+        request.transfer(handler);
+
+        verify(handler).failed(any(InterruptedException.class), any());
+        verify(mover, never()).execute(any());
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 
 import org.dcache.pool.repository.FileRepositoryChannel;
@@ -295,6 +296,40 @@ public class ChecksumChannelTest {
         assertThat(chksumChannel.getChecksums(), contains(expectedChecksum));
     }
 
+    @Test
+    public void shouldComputeAllChecksumTypesOfLargeFile() throws IOException {
+        byte[] content = getRandomBytes(KiB.toBytes(1024) + 17);
+        ChecksumChannel csc = new ChecksumChannel(new FileRepositoryChannel(testFile, FileStore.O_RW),
+                                                  EnumSet.of(ChecksumType.ADLER32, ChecksumType.MD5_TYPE));
+
+        for (int offset = 0; offset < content.length; offset += KiB.toBytes(4)) {
+            csc.write(ByteBuffer.wrap(content, offset, Math.min(KiB.toBytes(4), content.length - offset)), offset);
+        }
+
+        assertThat(csc.getChecksums(), containsInAnyOrder(ChecksumType.ADLER32.calculate(content),
+                                                          ChecksumType.MD5_TYPE.calculate(content)));
+    }
+
+    @Test
+    public void shouldComputeChecksumTypeAddedAfterWrites() throws IOException {
+        byte[] content = getRandomBytes(KiB.toBytes(512) + 3);
+        ChecksumChannel csc = new ChecksumChannel(new FileRepositoryChannel(testFile, FileStore.O_RW),
+                                                  EnumSet.of(ChecksumType.MD5_TYPE));
+
+        csc.write(ByteBuffer.wrap(content, 0, KiB.toBytes(300)), 0);
+        csc.addType(ChecksumType.ADLER32);
+        csc.write(ByteBuffer.wrap(content, KiB.toBytes(300), content.length - KiB.toBytes(300)), KiB.toBytes(300));
+
+        assertThat(csc.getChecksums(), containsInAnyOrder(ChecksumType.ADLER32.calculate(content),
+                                                          ChecksumType.MD5_TYPE.calculate(content)));
+    }
+
+    private byte[] getRandomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
     private Map<Long, ByteBuffer> getNonZeroBlocksFromByteArray(byte[] bytes) {
         Map<Long, ByteBuffer> result = new TreeMap<>();
         for (int position = 0; position < bytes.length; position++) {
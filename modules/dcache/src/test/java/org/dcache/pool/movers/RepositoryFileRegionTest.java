@@ -0,0 +1,86 @@
+package org.dcache.pool.movers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.FileStore;
+import org.dcache.pool.repository.RepositoryChannel;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RepositoryFileRegionTest
+{
+    private final byte[] data = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+    private Path testFile;
+    private RepositoryChannel channel;
+    private ByteArrayOutputStream out;
+    private WritableByteChannel target;
+    private AtomicLong counted;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        testFile = Files.createTempFile("RepositoryFileRegionTest", ".tmp");
+        Files.write(testFile, data);
+        channel = new FileRepositoryChannel(testFile, FileStore.O_READ);
+        out = new ByteArrayOutputStream();
+        target = Channels.newChannel(out);
+        counted = new AtomicLong();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        channel.close();
+        Files.delete(testFile);
+    }
+
+    @Test
+    public void shouldTransferRegion() throws IOException
+    {
+        RepositoryFileRegion region = new RepositoryFileRegion(channel, 10, 16, counted::addAndGet);
+
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+
+        assertThat(out.toByteArray(), is(Arrays.copyOfRange(data, 10, 26)));
+        assertThat(region.transferred(), is(16L));
+        assertThat(counted.get(), is(16L));
+    }
+
+    @Test
+    public void shouldNotCloseChannelWhenReleased() throws IOException
+    {
+        RepositoryFileRegion region = new RepositoryFileRegion(channel, 0, data.length, counted::addAndGet);
+
+        region.release();
+
+        assertThat(channel.isOpen(), is(true));
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldFailIfRegionExceedsFile() throws IOException
+    {
+        RepositoryFileRegion region = new RepositoryFileRegion(channel, 0, data.length + 1, counted::addAndGet);
+
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+    }
+}
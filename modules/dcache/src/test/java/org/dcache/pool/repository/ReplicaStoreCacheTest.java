@@ -0,0 +1,153 @@
+package org.dcache.pool.repository;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.pool.FaultListener;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.*;
+
+public class ReplicaStoreCacheTest
+{
+    private static final PnfsId ID1 = new PnfsId("000000000000000000000000000000000001");
+    private static final PnfsId ID2 = new PnfsId("000000000000000000000000000000000002");
+    private static final PnfsId ID3 = new PnfsId("000000000000000000000000000000000003");
+
+    private ReplicaStore inner;
+    private ReplicaStoreCache cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        inner = mock(ReplicaStore.class);
+        when(inner.index(anyVararg())).thenReturn(ImmutableSet.of(ID1, ID2, ID3));
+        cache = new ReplicaStoreCache(inner, mock(StateChangeListener.class), mock(FaultListener.class));
+    }
+
+    private ReplicaRecord givenRecord(PnfsId id, ReplicaState state, long size) throws Exception
+    {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(id);
+        attributes.setSize(size);
+
+        ReplicaRecord record = mock(ReplicaRecord.class);
+        when(record.getPnfsId()).thenReturn(id);
+        when(record.getState()).thenReturn(state);
+        when(record.getReplicaSize()).thenReturn(size);
+        when(record.getCreationTime()).thenReturn(1000L);
+        when(record.getLastAccessTime()).thenReturn(2000L);
+        when(record.getFileAttributes()).thenReturn(attributes);
+        when(record.stickyRecords()).thenReturn(Collections.singletonList(new StickyRecord("system", -1)));
+        when(record.isSticky()).thenReturn(true);
+        when(inner.get(id)).thenReturn(record);
+        return record;
+    }
+
+    @Test
+    public void shouldReadEvictedRecordsFromOffHeapCopy() throws Exception
+    {
+        ReplicaRecord record = givenRecord(ID1, ReplicaState.CACHED, 10);
+        givenRecord(ID2, ReplicaState.CACHED, 20);
+        givenRecord(ID3, ReplicaState.CACHED, 30);
+        cache.setOffHeapTier(1, 16 << 20);
+        cache.init();
+
+        ReplicaRecord monitor = cache.get(ID1);
+        cache.get(ID2);
+        cache.get(ID3);
+        cache.evict();
+        when(record.getReplicaSize()).thenReturn(99L);
+
+        assertThat(monitor.getReplicaSize(), is(10L));
+        assertThat(monitor.getState(), is(ReplicaState.CACHED));
+        assertThat(monitor.getCreationTime(), is(1000L));
+        assertThat(monitor.getLastAccessTime(), is(2000L));
+        assertThat(monitor.getLinkCount(), is(0));
+        assertThat(monitor.isSticky(), is(true));
+        assertThat(monitor.stickyRecords(), contains(new StickyRecord("system", -1)));
+        assertThat(monitor.getFileAttributes().getPnfsId(), is(ID1));
+        assertThat(monitor.getFileAttributes().getSize(), is(10L));
+        assertThat(cache.get(ID1), is(sameInstance(monitor)));
+        verify(inner, times(1)).get(ID1);
+    }
+
+    @Test
+    public void shouldReloadEvictedRecordWhenModified() throws Exception
+    {
+        ReplicaRecord record = givenRecord(ID1, ReplicaState.CACHED, 10);
+        givenRecord(ID2, ReplicaState.CACHED, 20);
+        cache.setOffHeapTier(1, 16 << 20);
+        cache.init();
+
+        ReplicaRecord monitor = cache.get(ID1);
+        cache.get(ID2);
+        cache.evict();
+        monitor.setLastAccessTime(3000L);
+        when(record.getReplicaSize()).thenReturn(99L);
+
+        verify(inner, times(2)).get(ID1);
+        verify(record).setLastAccessTime(3000L);
+        assertThat(monitor.getReplicaSize(), is(99L));
+        assertThat(monitor.getCreationTime(), is(1000L));
+    }
+
+    @Test
+    public void shouldNotEvictRecordsInUseOrInTransientStates() throws Exception
+    {
+        ReplicaRecord inUse = givenRecord(ID1, ReplicaState.CACHED, 10);
+        when(inUse.getLinkCount()).thenReturn(1);
+        ReplicaRecord incomplete = givenRecord(ID2, ReplicaState.FROM_CLIENT, 20);
+        givenRecord(ID3, ReplicaState.PRECIOUS, 30);
+        cache.setOffHeapTier(1, 16 << 20);
+        cache.init();
+
+        ReplicaRecord first = cache.get(ID1);
+        ReplicaRecord second = cache.get(ID2);
+        cache.get(ID3);
+        cache.evict();
+        when(inUse.getReplicaSize()).thenReturn(11L);
+        when(incomplete.getReplicaSize()).thenReturn(21L);
+
+        assertThat(first.getReplicaSize(), is(11L));
+        assertThat(second.getReplicaSize(), is(21L));
+    }
+
+    @Test
+    public void shouldKeepRecordsOnHeapWhenOffHeapMemoryIsExhausted() throws Exception
+    {
+        ReplicaRecord record = givenRecord(ID1, ReplicaState.CACHED, 10);
+        givenRecord(ID2, ReplicaState.CACHED, 20);
+        cache.setOffHeapTier(1, 0);
+        cache.init();
+
+        ReplicaRecord monitor = cache.get(ID1);
+        cache.get(ID2);
+        cache.evict();
+        when(record.getReplicaSize()).thenReturn(11L);
+
+        assertThat(monitor.getReplicaSize(), is(11L));
+    }
+
+    @Test
+    public void shouldReuseFreedOffHeapSlots() throws Exception
+    {
+        ReplicaRecord record = givenRecord(ID1, ReplicaState.CACHED, 10);
+        OffHeapReplicaRecords records = new OffHeapReplicaRecords(1 << 20);
+
+        long address = records.put(record);
+        records.free(address);
+
+        assertThat(records.put(record), is(address));
+        assertThat(records.size(), is(1));
+        assertThat(records.getAllocated(), is(1L << 20));
+    }
+}
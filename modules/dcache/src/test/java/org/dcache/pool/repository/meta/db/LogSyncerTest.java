@@ -0,0 +1,136 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.sleepycat.je.Environment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class LogSyncerTest
+{
+    private final AtomicInteger syncs = new AtomicInteger();
+
+    private Environment env;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        env = mock(Environment.class);
+        doAnswer(invocation -> {
+            syncs.incrementAndGet();
+            Thread.sleep(5);
+            return null;
+        }).when(env).flushLog(anyBoolean());
+        executor = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private void commitConcurrently(LogSyncer syncer, int commits) throws Exception
+    {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < commits; i++) {
+            futures.add(executor.submit(() -> syncer.committed(System.nanoTime())));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldNotSyncInSyncMode() throws Exception
+    {
+        LogSyncer syncer = new LogSyncer(env, CommitMode.SYNC, 0, TimeUnit.MILLISECONDS);
+        syncer.start();
+
+        commitConcurrently(syncer, 10);
+        syncer.stop();
+
+        verify(env, never()).flushLog(anyBoolean());
+    }
+
+    @Test
+    public void shouldShareSyncsBetweenConcurrentCommitsInGroupMode() throws Exception
+    {
+        LogSyncer syncer = new LogSyncer(env, CommitMode.GROUP, 20, TimeUnit.MILLISECONDS);
+        syncer.start();
+
+        commitConcurrently(syncer, 200);
+
+        assertThat(syncs.get(), is(both(greaterThan(0)).and(lessThan(200))));
+        assertThat(info(syncer), containsString("Batch size"));
+    }
+
+    @Test
+    public void shouldSyncAfterSingleCommitInGroupMode() throws Exception
+    {
+        LogSyncer syncer = new LogSyncer(env, CommitMode.GROUP, 0, TimeUnit.MILLISECONDS);
+
+        syncer.committed(System.nanoTime());
+
+        assertThat(syncs.get(), is(1));
+    }
+
+    @Test
+    public void shouldPropagateSyncFailureInGroupMode() throws Exception
+    {
+        LogSyncer syncer = new LogSyncer(env, CommitMode.GROUP, 0, TimeUnit.MILLISECONDS);
+        doThrow(new IllegalStateException("disk failed")).when(env).flushLog(anyBoolean());
+
+        try {
+            syncer.committed(System.nanoTime());
+            fail("Expected sync failure");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("disk failed"));
+        }
+    }
+
+    @Test
+    public void shouldSyncPeriodicallyInAsyncMode() throws Exception
+    {
+        LogSyncer syncer = new LogSyncer(env, CommitMode.ASYNC, 10, TimeUnit.MILLISECONDS);
+        syncer.start();
+
+        commitConcurrently(syncer, 100);
+        syncer.stop();
+
+        assertThat(syncs.get(), is(both(greaterThan(0)).and(lessThanOrEqualTo(100))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyWindowInAsyncMode()
+    {
+        new LogSyncer(env, CommitMode.ASYNC, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private static String info(LogSyncer syncer)
+    {
+        StringWriter out = new StringWriter();
+        syncer.getInfo(new PrintWriter(out));
+        return out.toString();
+    }
+}
@@ -12,6 +12,7 @@ import org.dcache.pool.classic.IoQueueManager;
 import static java.util.Arrays.asList;
 import static java.util.Collections.*;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
@@ -136,4 +137,57 @@ public class WeightedAvailableSpaceSelectionTest
                                             Functions.<PoolCostInfo>identity());
         assertThat(selected, is(info));
     }
+
+    private static PoolCostInfo pool(String name, long free)
+    {
+        PoolCostInfo info = new PoolCostInfo(name, IoQueueManager.DEFAULT_QUEUE);
+        info.setSpaceUsage(100_000, free, 100_000 - free, 0);
+        info.getSpaceInfo().setParameter(0, 0);
+        return info;
+    }
+
+    private static WeightedAvailableSpaceSelection wassWithRandom(double random)
+    {
+        return new WeightedAvailableSpaceSelection(1.0, 1.0)
+        {
+            @Override
+            protected double random()
+            {
+                return random;
+            }
+        };
+    }
+
+    @Test
+    public void testSelectionIsProportionalToAvailableSpace()
+    {
+        PoolCostInfo small = pool("pool1", 1000);
+        PoolCostInfo full = pool("pool2", 0);
+        PoolCostInfo large = pool("pool3", 3000);
+
+        assertThat(wassWithRandom(0.0).selectByAvailableSpace(asList(small, full, large), 0,
+                                                              Functions.<PoolCostInfo>identity()), is(small));
+        assertThat(wassWithRandom(0.2).selectByAvailableSpace(asList(small, full, large), 0,
+                                                              Functions.<PoolCostInfo>identity()), is(small));
+        assertThat(wassWithRandom(0.25).selectByAvailableSpace(asList(small, full, large), 0,
+                                                               Functions.<PoolCostInfo>identity()), is(large));
+        assertThat(wassWithRandom(0.99).selectByAvailableSpace(asList(small, full, large), 0,
+                                                               Functions.<PoolCostInfo>identity()), is(large));
+    }
+
+    @Test
+    public void testSelectionIgnoresPoolsOfPreviousSelection()
+    {
+        WeightedAvailableSpaceSelection wass = wassWithRandom(0.99);
+        PoolCostInfo small = pool("pool1", 1000);
+        PoolCostInfo full = pool("pool2", 0);
+        PoolCostInfo large = pool("pool3", 3000);
+
+        assertThat(wass.selectByAvailableSpace(asList(small, large, large, large), 0,
+                                               Functions.<PoolCostInfo>identity()), is(large));
+        assertThat(wass.selectByAvailableSpace(asList(small, full), 0,
+                                               Functions.<PoolCostInfo>identity()), is(small));
+        assertThat(wass.selectByAvailableSpace(asList(full, full), 0,
+                                               Functions.<PoolCostInfo>identity()), is(nullValue()));
+    }
 }
@@ -0,0 +1,91 @@
+package org.dcache.services.billing.cells;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class BillingFileWriterTest
+{
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteHeadersToNewFiles() throws Exception
+    {
+        Path path = dir.getRoot().toPath().resolve("2018").resolve("01").resolve("billing-2018.01.01");
+        BillingFileWriter writer = new BillingFileWriter("## header\n", 10, 1, TimeUnit.MILLISECONDS, false, false);
+        writer.start();
+
+        writer.append(path, "first");
+        writer.append(path, "second");
+        writer.stop();
+
+        assertThat(Files.readAllLines(path, StandardCharsets.UTF_8), contains("## header", "first", "second"));
+        assertThat(writer.getWritten(), is(2L));
+        assertThat(writer.getQueueSize(), is(0));
+    }
+
+    @Test
+    public void shouldAppendToExistingFiles() throws Exception
+    {
+        Path billing = dir.newFile("billing-2018.01.01").toPath();
+        Path errors = dir.getRoot().toPath().resolve("billing-error-2018.01.01");
+        Files.write(billing, "existing\n".getBytes(StandardCharsets.UTF_8));
+        BillingFileWriter writer = new BillingFileWriter("## header\n", 10, 1, TimeUnit.SECONDS, true, false);
+        writer.start();
+
+        writer.append(billing, "first");
+        writer.append(errors, "failed");
+        writer.append(billing, "second");
+        writer.stop();
+
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8), contains("existing", "first", "second"));
+        assertThat(Files.readAllLines(errors, StandardCharsets.UTF_8), contains("## header", "failed"));
+    }
+
+    @Test
+    public void shouldDropRecordsWhenQueueIsFull() throws Exception
+    {
+        Path path = dir.getRoot().toPath().resolve("billing-2018.01.01");
+        BillingFileWriter writer = new BillingFileWriter("", 2, 1, TimeUnit.MILLISECONDS, false, true);
+
+        writer.append(path, "first");
+        writer.append(path, "second");
+        writer.append(path, "third");
+
+        assertThat(writer.getQueueSize(), is(2));
+        assertThat(writer.getDropped(), is(1L));
+
+        writer.start();
+        writer.stop();
+
+        assertThat(Files.readAllLines(path, StandardCharsets.UTF_8), contains("first", "second"));
+    }
+
+    @Test
+    public void shouldCountRecordsThatFailedToBeWritten() throws Exception
+    {
+        Path billing = dir.getRoot().toPath().resolve("billing-2018.01.01");
+        Path notADirectory = dir.newFile("2018").toPath();
+        Path errors = notADirectory.resolve("billing-error-2018.01.01");
+        BillingFileWriter writer = new BillingFileWriter("", 10, 1, TimeUnit.SECONDS, false, false);
+        writer.start();
+
+        writer.append(billing, "first");
+        writer.append(errors, "failed");
+        writer.append(errors, "failed again");
+        writer.stop();
+
+        assertThat(Files.readAllLines(billing, StandardCharsets.UTF_8), contains("first"));
+        assertThat(writer.getWritten(), is(1L));
+        assertThat(writer.getFailed(), is(2L));
+    }
+}
@@ -766,6 +766,41 @@ public class PoolSelectionUnitTest {
     }
 
 
+    @Test
+    public void testCachedSelectionIsInvalidatedBySetupChange() throws CommandException {
+
+        _ci.command("psu set allpoolsactive on");
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("h1:u1@osm", "*"), fileAttributes);
+
+        PoolPreferenceLevel[] preference =
+                _psu.match(DirectionType.READ, "131.169.214.149", null, fileAttributes, null);
+        assertEquals(2, preference.length);
+        assertEquals("h1-read", preference[0].getPoolList().get(0));
+
+        _ci.command(new Args("psu set link h1-read-link -readpref=0"));
+
+        preference = _psu.match(DirectionType.READ, "131.169.214.149", null, fileAttributes, null);
+        assertEquals(1, preference.length);
+        assertEquals("default-read", preference[0].getPoolList().get(0));
+    }
+
+    @Test
+    public void testCachedSelectionReflectsPoolState() throws CommandException {
+
+        FileAttributes fileAttributes = new FileAttributes();
+        StorageInfos.injectInto(GenericStorageInfo.valueOf("h1:u1@osm", "*"), fileAttributes);
+
+        _ci.command(new Args("psu set active -on h1-read"));
+        PoolPreferenceLevel[] preference =
+                _psu.match(DirectionType.READ, "131.169.214.149", null, fileAttributes, null);
+        assertEquals(1, preference[0].getPoolList().size());
+
+        _psu.setActive("h1-read", false);
+        preference = _psu.match(DirectionType.READ, "131.169.214.149", null, fileAttributes, null);
+        assertEquals(0, preference[0].getPoolList().size());
+    }
+
     @Test
     public void testActive() throws CommandException {
 
@@ -937,4 +937,84 @@ public class RepositorySubsystemTest
         repository.setState(id2, PRECIOUS);
         assertSpaceRecord(repoSize, r.getFreeSpace(), r.getPreciousSpace(), r.getRemovableSpace());
     }
+
+    private void reopenRepository(boolean trustInventorySnapshot)
+            throws IOException, DatabaseException, InterruptedException
+    {
+        sweeper.stop();
+        repository.shutdown();
+        replicaStore.close();
+
+        initRepository();
+        repository.setInventorySnapshotFile(metaRoot.resolve("inventory").toFile());
+        repository.setTrustInventorySnapshot(trustInventorySnapshot);
+        sweeper.setAccount(account);
+        sweeper.setRepository(repository);
+        sweeper.start();
+    }
+
+    @Test
+    public void testLoadWithInventorySnapshot()
+        throws IOException, CacheException, InterruptedException
+    {
+        repository.setInventorySnapshotFile(metaRoot.resolve("inventory").toFile());
+        repository.setTrustInventorySnapshot(true);
+        repository.init();
+        repository.load();
+        assertFalse(Files.exists(metaRoot.resolve("inventory")));
+
+        reopenRepository(true);
+        assertTrue(Files.exists(metaRoot.resolve("inventory")));
+
+        repository.init();
+        repository.load();
+        assertFalse(Files.exists(metaRoot.resolve("inventory")));
+
+        SpaceRecord space = repository.getSpaceRecord();
+        assertEquals(repoSize, space.getTotalSpace());
+        assertEquals(repoSize - 2048 - 1024, space.getFreeSpace());
+        assertEquals(1024, space.getPreciousSpace());
+
+        stateChangeEvents.clear();
+        assertCanOpen(id1, size1, PRECIOUS);
+        assertCanOpen(id2, size2, CACHED);
+        assertCanOpen(id3, size3, CACHED);
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+    }
+
+    @Test
+    public void testLoadIgnoresCorruptedInventorySnapshot()
+        throws IOException, CacheException, InterruptedException
+    {
+        repository.setInventorySnapshotFile(metaRoot.resolve("inventory").toFile());
+        repository.setTrustInventorySnapshot(true);
+        repository.init();
+        repository.load();
+
+        reopenRepository(true);
+        byte[] snapshot = Files.readAllBytes(metaRoot.resolve("inventory"));
+        snapshot[snapshot.length / 2] ^= 1;
+        Files.write(metaRoot.resolve("inventory"), snapshot);
+
+        repository.init();
+        repository.load();
+        assertFalse(Files.exists(metaRoot.resolve("inventory")));
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+    }
+
+    @Test
+    public void testLoadIgnoresUntrustedInventorySnapshot()
+        throws IOException, CacheException, InterruptedException
+    {
+        repository.setInventorySnapshotFile(metaRoot.resolve("inventory").toFile());
+        repository.setTrustInventorySnapshot(true);
+        repository.init();
+        repository.load();
+
+        reopenRepository(false);
+        repository.init();
+        repository.load();
+        assertFalse(Files.exists(metaRoot.resolve("inventory")));
+        assertSpaceRecord(repoSize, repoSize - 2048 - 1024, 1024, 1024);
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2018 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.vehicles.serializers;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import diskCacheV111.poolManager.RequestContainerV5.RequestState;
+import diskCacheV111.util.AccessLatency;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.RetentionPolicy;
+import diskCacheV111.vehicles.DCapProtocolInfo;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.PoolMgrSelectReadPoolMsg;
+
+import dmg.cells.nucleus.CellAddressCore;
+import dmg.cells.nucleus.MessageCodec;
+
+import org.dcache.vehicles.FileAttributes;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PoolMgrSelectReadPoolMsgSerializerTest
+{
+    @Test
+    public void shouldRoundTripReply() throws Exception
+    {
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(new PnfsId("000000000000000000000000000000000001"));
+        attributes.setStorageInfo(new GenericStorageInfo("osm", "test:disk"));
+        attributes.setStorageClass("test:disk@osm");
+        attributes.setCacheClass(null);
+        attributes.setHsm("osm");
+        attributes.setLocations(asList("pool1"));
+        attributes.setSize(1024);
+        attributes.setAccessLatency(AccessLatency.ONLINE);
+        attributes.setRetentionPolicy(RetentionPolicy.REPLICA);
+        attributes.setChecksums(Collections.emptySet());
+        attributes.setFlags(ImmutableMap.of());
+        DCapProtocolInfo protocolInfo = new DCapProtocolInfo("DCap", 3, 0, new InetSocketAddress("localhost", 22125));
+
+        PoolMgrSelectReadPoolMsg message =
+                new PoolMgrSelectReadPoolMsg(attributes, protocolInfo, null,
+                                             EnumSet.of(RequestState.ST_INIT, RequestState.ST_DONE));
+        message.setContext(2, "host", "pool2");
+        message.setIoQueueName("regular");
+        message.setBillingPath("/data/file");
+        message.setLinkGroup("lg");
+        message.setPoolName("pool1");
+        message.setPoolAddress(new CellAddressCore("pool1", "poolDomain"));
+        message.setSucceeded();
+
+        MessageCodec codec = MessageCodec.getDefault();
+        byte[] bytes = codec.encode(message);
+        PoolMgrSelectReadPoolMsg decoded = (PoolMgrSelectReadPoolMsg) codec.decode(bytes);
+
+        assertThat(MessageCodec.getSerializerName(bytes), is("PoolMgrSelectReadPoolMsg-1"));
+        assertThat(decoded.getFileAttributes().toString(), is(attributes.toString()));
+        assertThat(decoded.getProtocolInfo().getProtocol(), is("DCap"));
+        assertThat(decoded.getAllowedStates(), is(message.getAllowedStates()));
+        assertThat(decoded.getContext().getRetryCounter(), is(2));
+        assertThat(decoded.getContext().getPreviousStageHost(), is("host"));
+        assertThat(decoded.getContext().getPreviousStagePool(), is("pool2"));
+        assertThat(decoded.getIoQueueName(), is("regular"));
+        assertThat(decoded.getBillingPath(), is("/data/file"));
+        assertThat(decoded.getTransferPath(), is("/data/file"));
+        assertThat(decoded.getLinkGroup(), is("lg"));
+        assertThat(decoded.getPoolName(), is("pool1"));
+        assertThat(decoded.getPoolAddress(), is(new CellAddressCore("pool1", "poolDomain")));
+        assertThat(decoded.isReply(), is(true));
+        assertThat(decoded.getReplyRequired(), is(true));
+    }
+}